@@ -0,0 +1,325 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_DEFAULT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_MAX_CONCURRENCY;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_MAX_CONCURRENCY_DEFAULT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_MAX_SIZE;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_MAX_SIZE_DEFAULT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_MIN_SIZE;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_MIN_SIZE_DEFAULT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_TARGET_LATENCY_MS;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.BATCH_ADAPTIVE_TARGET_LATENCY_MS_DEFAULT;
+import static org.apache.hadoop.hbase.util.ConcurrentMapUtils.computeIfAbsent;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CallQueueTooBigException;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.RegionTooBusyException;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.backoff.ServerStatistics;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Limits the size and the number of in flight multi requests the batches of a connection send to
+ * each region server.
+ * <p/>
+ * The limits follow additive increase, multiplicative decrease. A multi request which is slower
+ * than the target latency, fails with {@link CallQueueTooBigException} or
+ * {@link RegionTooBusyException}, or hits a region whose {@link RegionLoadStats} show a high load
+ * halves the batch size of its server and takes away one of its concurrent requests. Any other
+ * completed multi request grows the concurrency of its server if there are requests queued for the
+ * server, and the batch size otherwise.
+ * <p/>
+ * The requests queued for a server are coalesced when they get room: the first one takes the ones
+ * behind it along, as long as they all fit in the batch size of the server. A batch splits its
+ * actions for a server to the batch size, so it is the small requests of concurrent batches, and
+ * the small leftovers of larger ones, which share a multi request instead of each taking one of
+ * the few concurrent requests of a server.
+ */
+@InterfaceAudience.Private
+class AdaptiveBatchLimiter {
+
+  // memstore load and compaction pressure above this percent mean the region is loaded
+  private static final int HIGH_LOAD_PERCENT = 80;
+
+  private final int minBatchSize;
+
+  private final int maxBatchSize;
+
+  private final int maxConcurrency;
+
+  private final long targetLatencyNs;
+
+  private final int heapOccupancyLowWatermarkPercent;
+
+  private final ConcurrentMap<ServerName, ServerLimit> limits = new ConcurrentHashMap<>();
+
+  /**
+   * A multi request to send within the limits of its server.
+   */
+  interface Send {
+
+    /**
+     * @return the number of actions of the multi request
+     */
+    int size();
+
+    /**
+     * Sends the multi request, together with the {@code coalesced} ones which were queued behind it
+     * for the same server, in one multi request.
+     */
+    void run(List<Send> coalesced);
+  }
+
+  @VisibleForTesting
+  AdaptiveBatchLimiter(int minBatchSize, int maxBatchSize, int maxConcurrency,
+      long targetLatencyNs, float heapOccupancyLowWatermark) {
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = maxBatchSize;
+    this.maxConcurrency = maxConcurrency;
+    this.targetLatencyNs = targetLatencyNs;
+    this.heapOccupancyLowWatermarkPercent = Math.round(heapOccupancyLowWatermark * 100);
+  }
+
+  static AdaptiveBatchLimiter create(Configuration conf) {
+    if (!conf.getBoolean(BATCH_ADAPTIVE, BATCH_ADAPTIVE_DEFAULT)) {
+      return null;
+    }
+    int minBatchSize =
+      Math.max(1, conf.getInt(BATCH_ADAPTIVE_MIN_SIZE, BATCH_ADAPTIVE_MIN_SIZE_DEFAULT));
+    int maxBatchSize =
+      Math.max(minBatchSize, conf.getInt(BATCH_ADAPTIVE_MAX_SIZE, BATCH_ADAPTIVE_MAX_SIZE_DEFAULT));
+    int maxConcurrency = Math.max(1,
+      conf.getInt(BATCH_ADAPTIVE_MAX_CONCURRENCY, BATCH_ADAPTIVE_MAX_CONCURRENCY_DEFAULT));
+    long targetLatencyNs = TimeUnit.MILLISECONDS.toNanos(
+      conf.getLong(BATCH_ADAPTIVE_TARGET_LATENCY_MS, BATCH_ADAPTIVE_TARGET_LATENCY_MS_DEFAULT));
+    float heapOccupancyLowWatermark = conf.getFloat(HConstants.HEAP_OCCUPANCY_LOW_WATERMARK_KEY,
+      HConstants.DEFAULT_HEAP_OCCUPANCY_LOW_WATERMARK);
+    return new AdaptiveBatchLimiter(minBatchSize, maxBatchSize, maxConcurrency, targetLatencyNs,
+      heapOccupancyLowWatermark);
+  }
+
+  private final class ServerLimit {
+
+    private int batchSize = maxBatchSize;
+
+    private int concurrency = maxConcurrency;
+
+    private int inFlight;
+
+    private final Queue<Send> queued = new ArrayDeque<>();
+
+    // the sends which got room but have not been run yet, each with the ones coalesced with it
+    private final Queue<List<Send>> toRun = new ArrayDeque<>();
+
+    private boolean running;
+
+    synchronized void add(Send send) {
+      if (inFlight < concurrency) {
+        inFlight++;
+        toRun.add(Collections.singletonList(send));
+      } else {
+        queued.add(send);
+      }
+    }
+
+    synchronized void adjust(boolean overloaded) {
+      if (overloaded) {
+        batchSize = Math.max(minBatchSize, batchSize / 2);
+        concurrency = Math.max(1, concurrency - 1);
+      } else if (!queued.isEmpty() && concurrency < maxConcurrency) {
+        concurrency++;
+      } else {
+        batchSize = Math.min(maxBatchSize, batchSize + minBatchSize);
+      }
+    }
+
+    synchronized void release() {
+      inFlight--;
+      while (inFlight < concurrency && !queued.isEmpty()) {
+        inFlight++;
+        toRun.add(pollCoalesced());
+      }
+    }
+
+    // Takes the first queued send along with the ones behind it which fit in the batch size.
+    private List<Send> pollCoalesced() {
+      Send first = queued.poll();
+      List<Send> sends = new ArrayList<>();
+      sends.add(first);
+      int size = first.size();
+      while (!queued.isEmpty() && size + queued.peek().size() <= batchSize) {
+        Send send = queued.poll();
+        size += send.size();
+        sends.add(send);
+      }
+      return sends;
+    }
+
+    /**
+     * @return whether the caller should run the sends, false if someone else is already doing it
+     */
+    synchronized boolean startRunning() {
+      if (running || toRun.isEmpty()) {
+        return false;
+      }
+      running = true;
+      return true;
+    }
+
+    synchronized List<Send> nextToRun() {
+      List<Send> sends = toRun.poll();
+      if (sends == null) {
+        running = false;
+      }
+      return sends;
+    }
+
+    synchronized void stopRunning() {
+      running = false;
+    }
+
+    synchronized int getBatchSize() {
+      return batchSize;
+    }
+
+    synchronized int getConcurrency() {
+      return concurrency;
+    }
+
+    synchronized int getQueued() {
+      return queued.size();
+    }
+
+    synchronized int getInFlight() {
+      return inFlight;
+    }
+  }
+
+  private ServerLimit getLimit(ServerName serverName) {
+    return computeIfAbsent(limits, serverName, ServerLimit::new);
+  }
+
+  /**
+   * @return the max number of actions to put in one multi request to {@code serverName}
+   */
+  int getBatchSize(ServerName serverName) {
+    return getLimit(serverName).getBatchSize();
+  }
+
+  @VisibleForTesting
+  int getConcurrency(ServerName serverName) {
+    return getLimit(serverName).getConcurrency();
+  }
+
+  @VisibleForTesting
+  int getQueued(ServerName serverName) {
+    return getLimit(serverName).getQueued();
+  }
+
+  @VisibleForTesting
+  int getInFlight(ServerName serverName) {
+    return getLimit(serverName).getInFlight();
+  }
+
+  /**
+   * Runs the sends of {@code limit} which got room. A send which fails fast gives its room back
+   * right away, which lets the next queued send go. Running that one from within would nest a call
+   * deeper for every queued send, so they are run in a loop instead, by the first caller which is
+   * not already doing it further up the stack or in another thread.
+   */
+  private static void runSends(ServerLimit limit) {
+    if (!limit.startRunning()) {
+      return;
+    }
+    boolean done = false;
+    try {
+      for (List<Send> sends; (sends = limit.nextToRun()) != null;) {
+        sends.get(0).run(sends.subList(1, sends.size()));
+      }
+      done = true;
+    } finally {
+      if (!done) {
+        // leave the rest to the next caller
+        limit.stopRunning();
+      }
+    }
+  }
+
+  /**
+   * Runs {@code send} if {@code serverName} has room for another multi request, otherwise once one
+   * of its in flight requests is done, possibly coalesced with other queued sends. Every run of a
+   * {@code send} must end with one call to {@link #onComplete(ServerName, long, boolean)} or
+   * {@link #release(ServerName)}, whatever the number of sends coalesced with it.
+   */
+  void execute(ServerName serverName, Send send) {
+    ServerLimit limit = getLimit(serverName);
+    limit.add(send);
+    runSends(limit);
+  }
+
+  /**
+   * Adjusts the limits of {@code serverName} with the outcome of a multi request, and lets the
+   * requests queued for the server go if there is room for them.
+   */
+  void onComplete(ServerName serverName, long latencyNs, boolean overloaded) {
+    ServerLimit limit = getLimit(serverName);
+    limit.adjust(overloaded || latencyNs > targetLatencyNs);
+    limit.release();
+    runSends(limit);
+  }
+
+  /**
+   * Gives back the room of a multi request which was not sent, without adjusting the limits.
+   */
+  void release(ServerName serverName) {
+    ServerLimit limit = getLimit(serverName);
+    limit.release();
+    runSends(limit);
+  }
+
+  static boolean isOverloadError(Throwable error) {
+    return error instanceof CallQueueTooBigException || error instanceof RegionTooBusyException;
+  }
+
+  /**
+   * @return whether the last statistics of the region show a high load
+   */
+  boolean isLoaded(ServerStatistics stats, byte[] regionName) {
+    if (stats == null) {
+      return false;
+    }
+    ServerStatistics.RegionStatistics regionStats = stats.getStatsForRegion(regionName);
+    return regionStats != null && (regionStats.getMemStoreLoadPercent() >= HIGH_LOAD_PERCENT ||
+      regionStats.getCompactionPressure() >= HIGH_LOAD_PERCENT ||
+      regionStats.getHeapOccupancyPercent() >= heapOccupancyLowWatermarkPercent);
+  }
+}
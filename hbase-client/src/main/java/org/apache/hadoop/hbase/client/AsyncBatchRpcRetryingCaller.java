@@ -35,6 +35,7 @@ import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -47,6 +48,7 @@ import java.util.stream.Stream;
 import org.apache.commons.lang3.mutable.MutableBoolean;
 import org.apache.hadoop.hbase.CallQueueTooBigException;
 import org.apache.hadoop.hbase.CellScannable;
+import org.apache.hadoop.hbase.CellScanner;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HRegionLocation;
@@ -70,6 +72,7 @@ import org.apache.hadoop.hbase.shaded.protobuf.RequestConverter;
 import org.apache.hadoop.hbase.shaded.protobuf.ResponseConverter;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ClientService;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.HBaseProtos.RegionSpecifier;
 
 /**
  * Retry caller for batch.
@@ -149,6 +152,102 @@ class AsyncBatchRpcRetryingCaller<T> {
     }
   }
 
+  // The actions of a batch for a server, sent within the limits of the server. The ones of
+  // concurrent batches which are queued for the same server are sent together in one multi
+  // request, each with its own region actions, so the original indexes of different batches
+  // never mix.
+  private static final class ServerSend implements AdaptiveBatchLimiter.Send {
+
+    private final AsyncBatchRpcRetryingCaller<?> caller;
+
+    private final ServerName serverName;
+
+    private final ServerRequest serverReq;
+
+    private final int tries;
+
+    private final int size;
+
+    private final List<CellScannable> cells = new ArrayList<>();
+
+    // Map from a created RegionAction to the original index for a RowMutations within
+    // the original list of actions. This will be used to process the results when there
+    // is RowMutations in the action list.
+    private final Map<Integer, Integer> rowMutationsIndexMap = new HashMap<>();
+
+    private ClientProtos.MultiRequest req;
+
+    private long remainingNs;
+
+    ServerSend(AsyncBatchRpcRetryingCaller<?> caller, ServerName serverName,
+        ServerRequest serverReq, int tries) {
+      this.caller = caller;
+      this.serverName = serverName;
+      this.serverReq = serverReq;
+      this.tries = tries;
+      this.size = serverReq.actionsByRegion.values().stream().mapToInt(r -> r.actions.size()).sum();
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void run(List<AdaptiveBatchLimiter.Send> coalesced) {
+      List<ServerSend> sends = new ArrayList<>(coalesced.size() + 1);
+      sends.add(this);
+      coalesced.forEach(send -> sends.add((ServerSend) send));
+      caller.sendToServer(serverName, sends);
+    }
+
+    /**
+     * @return false if the operation has timed out, in which case the actions are failed
+     */
+    boolean checkRemainingTime() {
+      if (caller.operationTimeoutNs <= 0) {
+        remainingNs = Long.MAX_VALUE;
+        return true;
+      }
+      remainingNs = caller.remainingTimeNs();
+      if (remainingNs <= 0) {
+        caller.failAll(serverReq.actionsByRegion.values().stream().flatMap(r -> r.actions.stream()),
+          tries);
+        return false;
+      }
+      return true;
+    }
+
+    /**
+     * @return false if the request could not be built, in which case the error is handled
+     */
+    boolean buildReq() {
+      try {
+        req = caller.buildReq(serverReq.actionsByRegion, cells, rowMutationsIndexMap);
+        return true;
+      } catch (IOException e) {
+        onError(e);
+        return false;
+      }
+    }
+
+    long getTimeoutNs() {
+      return Math.min(caller.rpcTimeoutNs, remainingNs);
+    }
+
+    int getPriority() {
+      return calcPriority(serverReq.getPriority(), caller.tableName);
+    }
+
+    void onComplete(MultiResponse resp) {
+      caller.onComplete(serverReq.actionsByRegion, tries, serverName, resp);
+    }
+
+    void onError(Throwable error) {
+      caller.onError(serverReq.actionsByRegion, tries, error, serverName);
+    }
+  }
+
   public AsyncBatchRpcRetryingCaller(Timer retryTimer, AsyncConnectionImpl conn,
       TableName tableName, List<? extends Row> actions, long pauseNs, long pauseForCQTBENs,
       int maxAttempts, long operationTimeoutNs, long rpcTimeoutNs, int startLogErrorsCnt) {
@@ -344,58 +443,168 @@ class AsyncBatchRpcRetryingCaller<T> {
     }
   }
 
-  private void sendToServer(ServerName serverName, ServerRequest serverReq, int tries) {
-    long remainingNs;
-    if (operationTimeoutNs > 0) {
-      remainingNs = remainingTimeNs();
-      if (remainingNs <= 0) {
-        failAll(serverReq.actionsByRegion.values().stream().flatMap(r -> r.actions.stream()),
-          tries);
-        return;
+  // Takes the results of the region actions of one of the coalesced requests, which start at
+  // start, out of the response to all of them. Only the statistics of the regions of the request
+  // are kept, so they are not counted once for every coalesced request.
+  private static ClientProtos.MultiResponse getResponse(ClientProtos.MultiResponse resp,
+      int start, ClientProtos.MultiRequest req) {
+    ClientProtos.MultiResponse.Builder builder = ClientProtos.MultiResponse.newBuilder()
+      .addAllRegionActionResult(resp.getRegionActionResultList().subList(start,
+        start + req.getRegionActionCount()));
+    if (resp.hasProcessed()) {
+      builder.setProcessed(resp.getProcessed());
+    }
+    if (resp.hasRegionStatistics()) {
+      Set<RegionSpecifier> regions = req.getRegionActionList().stream()
+        .map(ClientProtos.RegionAction::getRegion).collect(Collectors.toSet());
+      ClientProtos.MultiRegionLoadStats stats = resp.getRegionStatistics();
+      ClientProtos.MultiRegionLoadStats.Builder statsBuilder =
+        ClientProtos.MultiRegionLoadStats.newBuilder();
+      for (int i = 0; i < stats.getRegionCount(); i++) {
+        if (regions.contains(stats.getRegion(i))) {
+          statsBuilder.addRegion(stats.getRegion(i)).addStat(stats.getStat(i));
+        }
       }
-    } else {
-      remainingNs = Long.MAX_VALUE;
+      builder.setRegionStatistics(statsBuilder);
+    }
+    return builder.build();
+  }
+
+  // Sends the requests to the server in one multi request. They are all to the same server, and of
+  // batches of this connection, but not necessarily of this batch.
+  private void sendToServer(ServerName serverName, List<ServerSend> sends) {
+    List<ServerSend> toSend =
+      sends.stream().filter(ServerSend::checkRemainingTime).collect(Collectors.toList());
+    if (toSend.isEmpty()) {
+      conn.getBatchLimiter().ifPresent(limiter -> limiter.release(serverName));
+      return;
     }
     ClientService.Interface stub;
     try {
       stub = conn.getRegionServerStub(serverName);
     } catch (IOException e) {
-      onError(serverReq.actionsByRegion, tries, e, serverName);
+      conn.getBatchLimiter().ifPresent(limiter -> limiter.release(serverName));
+      toSend.forEach(send -> send.onError(e));
       return;
     }
-    ClientProtos.MultiRequest req;
-    List<CellScannable> cells = new ArrayList<>();
-    // Map from a created RegionAction to the original index for a RowMutations within
-    // the original list of actions. This will be used to process the results when there
-    // is RowMutations in the action list.
-    Map<Integer, Integer> rowMutationsIndexMap = new HashMap<>();
-    try {
-      req = buildReq(serverReq.actionsByRegion, cells, rowMutationsIndexMap);
-    } catch (IOException e) {
-      onError(serverReq.actionsByRegion, tries, e, serverName);
+    toSend = toSend.stream().filter(ServerSend::buildReq).collect(Collectors.toList());
+    if (toSend.isEmpty()) {
+      conn.getBatchLimiter().ifPresent(limiter -> limiter.release(serverName));
       return;
     }
+    ClientProtos.MultiRequest req;
+    List<CellScannable> cells;
+    if (toSend.size() == 1) {
+      req = toSend.get(0).req;
+      cells = toSend.get(0).cells;
+    } else {
+      ClientProtos.MultiRequest.Builder reqBuilder = ClientProtos.MultiRequest.newBuilder();
+      cells = new ArrayList<>();
+      for (ServerSend send : toSend) {
+        reqBuilder.addAllRegionAction(send.req.getRegionActionList());
+        if (send.req.hasNonceGroup()) {
+          reqBuilder.setNonceGroup(send.req.getNonceGroup());
+        }
+        cells.addAll(send.cells);
+      }
+      req = reqBuilder.build();
+    }
     HBaseRpcController controller = conn.rpcControllerFactory.newController();
-    resetController(controller, Math.min(rpcTimeoutNs, remainingNs),
-      calcPriority(serverReq.getPriority(), tableName));
+    long timeoutNs = toSend.stream().mapToLong(ServerSend::getTimeoutNs).min().getAsLong();
+    int priority = toSend.stream().mapToInt(ServerSend::getPriority).max().getAsInt();
+    resetController(controller, timeoutNs, priority);
     if (!cells.isEmpty()) {
       controller.setCellScanner(createCellScanner(cells));
     }
+    List<ServerSend> sent = toSend;
+    long sendNs = System.nanoTime();
     stub.multi(controller, req, resp -> {
       if (controller.failed()) {
-        onError(serverReq.actionsByRegion, tries, controller.getFailed(), serverName);
-      } else {
+        onMultiDone(serverName, sent, sendNs, controller.getFailed(), Collections.emptyList());
+        sent.forEach(send -> send.onError(controller.getFailed()));
+        return;
+      }
+      // the results of the coalesced requests come in their order, and so do their cells
+      CellScanner cellScanner = controller.cellScanner();
+      List<MultiResponse> multiResps = new ArrayList<>(sent.size());
+      Throwable error = null;
+      int start = 0;
+      for (ServerSend send : sent) {
+        if (error != null) {
+          // the cells of the requests after a broken one can not be told apart
+          send.onError(error);
+          continue;
+        }
         try {
-          onComplete(serverReq.actionsByRegion, tries, serverName, ResponseConverter.getResults(req,
-            rowMutationsIndexMap, resp, controller.cellScanner()));
+          MultiResponse multiResp = ResponseConverter.getResults(send.req,
+            send.rowMutationsIndexMap, sent.size() == 1 ? resp : getResponse(resp, start, send.req),
+            cellScanner);
+          multiResps.add(multiResp);
+          send.onComplete(multiResp);
         } catch (Exception e) {
-          onError(serverReq.actionsByRegion, tries, e, serverName);
-          return;
+          error = e;
+          send.onError(e);
         }
+        start += send.req.getRegionActionCount();
       }
+      onMultiDone(serverName, sent, sendNs, error, multiResps);
     });
   }
 
+  // Tell the batch limiter how the multi request went, which also lets the requests queued for the
+  // server go. Called after onComplete so the load statistics of the response are taken into
+  // account.
+  private void onMultiDone(ServerName serverName, List<ServerSend> sends, long sendNs,
+      Throwable error, List<MultiResponse> resps) {
+    Optional<AdaptiveBatchLimiter> optLimiter = conn.getBatchLimiter();
+    if (!optLimiter.isPresent()) {
+      return;
+    }
+    AdaptiveBatchLimiter limiter = optLimiter.get();
+    boolean overloaded = AdaptiveBatchLimiter.isOverloadError(translateException(error));
+    if (!overloaded && !resps.isEmpty()) {
+      overloaded = resps.stream().flatMap(resp -> resp.getExceptions().values().stream())
+        .anyMatch(e -> AdaptiveBatchLimiter.isOverloadError(translateException(e)));
+      if (!overloaded) {
+        ServerStatistics serverStats =
+          conn.getStatisticsTracker().map(stats -> stats.getStats(serverName)).orElse(null);
+        overloaded = sends.stream()
+          .flatMap(send -> send.serverReq.actionsByRegion.keySet().stream())
+          .anyMatch(regionName -> limiter.isLoaded(serverStats, regionName));
+      }
+    }
+    limiter.onComplete(serverName, System.nanoTime() - sendNs, overloaded);
+  }
+
+  // Split the request to the batch size of the server, and send the parts within the concurrency
+  // limit of the server.
+  private void sendWithinLimit(ServerName serverName, ServerRequest serverReq, int tries) {
+    Optional<AdaptiveBatchLimiter> optLimiter = conn.getBatchLimiter();
+    if (!optLimiter.isPresent()) {
+      sendToServer(serverName,
+        Collections.singletonList(new ServerSend(this, serverName, serverReq, tries)));
+      return;
+    }
+    AdaptiveBatchLimiter limiter = optLimiter.get();
+    int batchSize = limiter.getBatchSize(serverName);
+    List<ServerRequest> parts = new ArrayList<>();
+    ServerRequest part = new ServerRequest();
+    int partSize = 0;
+    for (RegionRequest regionReq : serverReq.actionsByRegion.values()) {
+      for (Action action : regionReq.actions) {
+        if (partSize == batchSize) {
+          parts.add(part);
+          part = new ServerRequest();
+          partSize = 0;
+        }
+        part.addAction(regionReq.loc, action);
+        partSize++;
+      }
+    }
+    parts.add(part);
+    parts.forEach(p -> limiter.execute(serverName, new ServerSend(this, serverName, p, tries)));
+  }
+
   // We will make use of the ServerStatisticTracker to determine whether we need to delay a bit,
   // based on the load of the region server and the region.
   private void sendOrDelay(Map<ServerName, ServerRequest> actionsByServer, int tries) {
@@ -404,7 +613,7 @@ class AsyncBatchRpcRetryingCaller<T> {
     if (!optStats.isPresent()) {
       actionsByServer.forEach((serverName, serverReq) -> {
         metrics.ifPresent(MetricsConnection::incrNormalRunners);
-        sendToServer(serverName, serverReq, tries);
+        sendWithinLimit(serverName, serverReq, tries);
       });
       return;
     }
@@ -421,11 +630,11 @@ class AsyncBatchRpcRetryingCaller<T> {
       groupByBackoff.forEach((backoff, sr) -> {
         if (backoff > 0) {
           metrics.ifPresent(m -> m.incrDelayRunnersAndUpdateDelayInterval(backoff));
-          retryTimer.newTimeout(timer -> sendToServer(serverName, sr, tries), backoff,
+          retryTimer.newTimeout(timer -> sendWithinLimit(serverName, sr, tries), backoff,
             TimeUnit.MILLISECONDS);
         } else {
           metrics.ifPresent(MetricsConnection::incrNormalRunners);
-          sendToServer(serverName, sr, tries);
+          sendWithinLimit(serverName, sr, tries);
         }
       });
     });
@@ -471,6 +680,28 @@ class AsyncBatchRpcRetryingCaller<T> {
   }
 
   private void groupAndSend(Stream<Action> actions, int tries) {
+    long prefetchTimeoutNs;
+    if (operationTimeoutNs > 0) {
+      prefetchTimeoutNs = remainingTimeNs();
+      if (prefetchTimeoutNs <= 0) {
+        failAll(actions, tries);
+        return;
+      }
+    } else {
+      prefetchTimeoutNs = -1L;
+    }
+    List<Action> actionList = actions.collect(Collectors.toList());
+    // If many of the rows are not in the location cache, fill it with a range scan of meta first,
+    // instead of locating the regions one by one. A failed prefetch is fine, we will locate the
+    // regions which are still not cached one by one.
+    addListener(
+      conn.getLocator().prefetchRegionLocations(tableName,
+        actionList.stream().map(action -> action.getAction().getRow()).collect(Collectors.toList()),
+        prefetchTimeoutNs),
+      (r, e) -> locateAndSend(actionList.stream(), tries));
+  }
+
+  private void locateAndSend(Stream<Action> actions, int tries) {
     long locateTimeoutNs;
     if (operationTimeoutNs > 0) {
       locateTimeoutNs = remainingTimeNs();
@@ -45,6 +45,8 @@ import static org.apache.hadoop.hbase.client.ConnectionConfiguration.PRIMARY_CAL
 import static org.apache.hadoop.hbase.client.ConnectionConfiguration.PRIMARY_CALL_TIMEOUT_MICROSECOND_DEFAULT;
 import static org.apache.hadoop.hbase.client.ConnectionConfiguration.PRIMARY_SCAN_TIMEOUT_MICROSECOND;
 import static org.apache.hadoop.hbase.client.ConnectionConfiguration.PRIMARY_SCAN_TIMEOUT_MICROSECOND_DEFAULT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.SCANNER_PIPELINE_CREDITS;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.SCANNER_PIPELINE_CREDITS_DEFAULT;
 import static org.apache.hadoop.hbase.client.ConnectionConfiguration.WRITE_BUFFER_PERIODIC_FLUSH_TIMEOUT_MS;
 import static org.apache.hadoop.hbase.client.ConnectionConfiguration.WRITE_BUFFER_PERIODIC_FLUSH_TIMEOUT_MS_DEFAULT;
 import static org.apache.hadoop.hbase.client.ConnectionConfiguration.WRITE_BUFFER_SIZE_DEFAULT;
@@ -111,6 +113,8 @@ class AsyncConnectionConfiguration {
 
   private final long scannerMaxResultSize;
 
+  private final int scannerPipelineCredits;
+
   private final long writeBufferSize;
 
   private final long writeBufferPeriodicFlushTimeoutNs;
@@ -158,6 +162,8 @@ class AsyncConnectionConfiguration {
       conf.getInt(HBASE_META_SCANNER_CACHING, DEFAULT_HBASE_META_SCANNER_CACHING);
     this.scannerMaxResultSize = conf.getLong(HBASE_CLIENT_SCANNER_MAX_RESULT_SIZE_KEY,
       DEFAULT_HBASE_CLIENT_SCANNER_MAX_RESULT_SIZE);
+    this.scannerPipelineCredits =
+      Math.max(0, conf.getInt(SCANNER_PIPELINE_CREDITS, SCANNER_PIPELINE_CREDITS_DEFAULT));
     this.writeBufferSize = conf.getLong(WRITE_BUFFER_SIZE_KEY, WRITE_BUFFER_SIZE_DEFAULT);
     this.writeBufferPeriodicFlushTimeoutNs =
       TimeUnit.MILLISECONDS.toNanos(conf.getLong(WRITE_BUFFER_PERIODIC_FLUSH_TIMEOUT_MS,
@@ -224,6 +230,10 @@ class AsyncConnectionConfiguration {
     return scannerMaxResultSize;
   }
 
+  int getScannerPipelineCredits() {
+    return scannerPipelineCredits;
+  }
+
   long getWriteBufferSize() {
     return writeBufferSize;
   }
@@ -103,6 +103,8 @@ class AsyncConnectionImpl implements AsyncConnection {
 
   private final ConcurrentMap<String, ClientService.Interface> rsStubs = new ConcurrentHashMap<>();
   private final ConcurrentMap<String, AdminService.Interface> adminSubs = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, MasterService.Interface> backupMasterStubs =
+    new ConcurrentHashMap<>();
 
   private final AtomicReference<MasterService.Interface> masterStub = new AtomicReference<>();
 
@@ -112,6 +114,10 @@ class AsyncConnectionImpl implements AsyncConnection {
   private final Optional<ServerStatisticTracker> stats;
   private final ClientBackoffPolicy backoffPolicy;
 
+  private final Optional<HedgedReadPolicy> hedgedReadPolicy;
+
+  private final Optional<AdaptiveBatchLimiter> batchLimiter;
+
   private ChoreService authService;
 
   private final AtomicBoolean closed = new AtomicBoolean(false);
@@ -150,6 +156,8 @@ class AsyncConnectionImpl implements AsyncConnection {
     }
     this.stats = Optional.ofNullable(ServerStatisticTracker.create(conf));
     this.backoffPolicy = ClientBackoffPolicyFactory.create(conf);
+    this.hedgedReadPolicy = Optional.ofNullable(HedgedReadPolicy.create(conf));
+    this.batchLimiter = Optional.ofNullable(AdaptiveBatchLimiter.create(conf));
     ClusterStatusListener listener = null;
     if (conf.getBoolean(STATUS_PUBLISHED, STATUS_PUBLISHED_DEFAULT)) {
       // TODO: this maybe a blocking operation, better to create it outside the constructor and pass
@@ -254,6 +262,16 @@ class AsyncConnectionImpl implements AsyncConnection {
       () -> createAdminServerStub(serverName));
   }
 
+  /**
+   * @return a stub for the given master, which may be a backup master, see
+   *         {@link AsyncRegistry#getBackupMasters()}
+   */
+  MasterService.Interface getMasterStub(ServerName serverName) throws IOException {
+    return ConcurrentMapUtils.computeIfAbsentEx(backupMasterStubs,
+      getStubKey(MasterService.Interface.class.getSimpleName(), serverName, hostnameCanChange),
+      () -> createMasterStub(serverName));
+  }
+
   CompletableFuture<MasterService.Interface> getMasterStub() {
     return ConnectionUtils.getOrFetch(masterStub, masterStubMakeFuture, false, () -> {
       CompletableFuture<MasterService.Interface> future = new CompletableFuture<>();
@@ -394,4 +412,12 @@ class AsyncConnectionImpl implements AsyncConnection {
   Optional<MetricsConnection> getConnectionMetrics() {
     return metrics;
   }
+
+  Optional<HedgedReadPolicy> getHedgedReadPolicy() {
+    return hedgedReadPolicy;
+  }
+
+  Optional<AdaptiveBatchLimiter> getBatchLimiter() {
+    return batchLimiter;
+  }
 }
@@ -29,15 +29,20 @@ import static org.apache.hadoop.hbase.client.AsyncRegionLocatorHelper.isGood;
 import static org.apache.hadoop.hbase.client.AsyncRegionLocatorHelper.removeRegionLocation;
 import static org.apache.hadoop.hbase.client.ConnectionUtils.createClosestRowAfter;
 import static org.apache.hadoop.hbase.client.ConnectionUtils.isEmptyStopRow;
+import static org.apache.hadoop.hbase.client.ConnectionUtils.resetController;
 import static org.apache.hadoop.hbase.client.RegionInfo.createRegionName;
 import static org.apache.hadoop.hbase.util.Bytes.BYTES_COMPARATOR;
 import static org.apache.hadoop.hbase.util.ConcurrentMapUtils.computeIfAbsent;
+import static org.apache.hadoop.hbase.util.FutureUtils.addListener;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -46,6 +51,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.hadoop.hbase.HBaseIOException;
 import org.apache.hadoop.hbase.HConstants;
@@ -56,6 +63,9 @@ import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.TableNotFoundException;
 import org.apache.hadoop.hbase.client.Scan.ReadType;
+import org.apache.hadoop.hbase.exceptions.ClientExceptionsUtil;
+import org.apache.hadoop.hbase.ipc.HBaseRpcController;
+import org.apache.hadoop.hbase.ipc.ServerNotRunningYetException;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
@@ -63,6 +73,14 @@ import org.slf4j.LoggerFactory;
 
 import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
 import org.apache.hbase.thirdparty.com.google.common.base.Objects;
+import org.apache.hbase.thirdparty.com.google.protobuf.ByteString;
+import org.apache.hbase.thirdparty.com.google.protobuf.UnsafeByteOperations;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.HBaseProtos;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.MasterService;
 
 /**
  * The asynchronous locator for regions other than meta.
@@ -83,14 +101,54 @@ class AsyncNonMetaRegionLocator {
 
   private static final int DEFAULT_LOCATE_PREFETCH_LIMIT = 10;
 
+  /**
+   * If a batch needs the locations of more rows than this which are not in the cache, fill the
+   * cache with one range scan of meta, instead of locating the regions one by one. A non positive
+   * value disables the bulk prefetch.
+   */
+  @VisibleForTesting
+  static final String LOCATE_BULK_PREFETCH_THRESHOLD =
+    "hbase.client.locate.bulk.prefetch.threshold";
+
+  private static final int DEFAULT_LOCATE_BULK_PREFETCH_THRESHOLD = 100;
+
+  /**
+   * The max number of meta rows a bulk prefetch reads. The rows not covered are located one by one.
+   */
+  static final String LOCATE_BULK_PREFETCH_LIMIT = "hbase.client.locate.bulk.prefetch.limit";
+
+  private static final int DEFAULT_LOCATE_BULK_PREFETCH_LIMIT = 10000;
+
+  /**
+   * If true, locate the regions with the in memory region states of the active master first, and
+   * fall back to scanning meta if the master can not tell the location.
+   */
+  static final String LOCATE_FROM_MASTER = "hbase.client.locate.from.master";
+
+  private static final boolean DEFAULT_LOCATE_FROM_MASTER = false;
+
   private final AsyncConnectionImpl conn;
 
   private final int maxConcurrentLocateRequestPerTable;
 
   private final int locatePrefetchLimit;
 
+  private final int locateBulkPrefetchThreshold;
+
+  private final int locateBulkPrefetchLimit;
+
   private final boolean useMetaReplicas;
 
+  private final boolean locateFromMaster;
+
+  // The location version of the last response from master, -1 if we have not got any yet. The
+  // master tells us the regions whose locations changed after it, so we can drop them from cache.
+  private long masterLocationVersion = -1;
+
+  // The backup masters, which serve the locations too. Fetched from the registry again after one of
+  // them fails.
+  private volatile CompletableFuture<List<ServerName>> backupMasters;
+
   private final ConcurrentMap<TableName, TableCache> cache = new ConcurrentHashMap<>();
 
   private static final class LocateRequest {
@@ -129,6 +187,9 @@ class AsyncNonMetaRegionLocator {
     private final Map<LocateRequest, CompletableFuture<RegionLocations>> allRequests =
       new LinkedHashMap<>();
 
+    // the bulk prefetch in progress, we only run one at a time for a table
+    private CompletableFuture<Void> bulkPrefetch;
+
     public boolean hasQuota(int max) {
       return pendingRequests.size() < max;
     }
@@ -196,8 +257,14 @@ class AsyncNonMetaRegionLocator {
       MAX_CONCURRENT_LOCATE_REQUEST_PER_TABLE, DEFAULT_MAX_CONCURRENT_LOCATE_REQUEST_PER_TABLE);
     this.locatePrefetchLimit =
       conn.getConfiguration().getInt(LOCATE_PREFETCH_LIMIT, DEFAULT_LOCATE_PREFETCH_LIMIT);
+    this.locateBulkPrefetchThreshold = conn.getConfiguration()
+      .getInt(LOCATE_BULK_PREFETCH_THRESHOLD, DEFAULT_LOCATE_BULK_PREFETCH_THRESHOLD);
+    this.locateBulkPrefetchLimit = conn.getConfiguration().getInt(LOCATE_BULK_PREFETCH_LIMIT,
+      DEFAULT_LOCATE_BULK_PREFETCH_LIMIT);
     this.useMetaReplicas =
       conn.getConfiguration().getBoolean(USE_META_REPLICAS, DEFAULT_USE_META_REPLICAS);
+    this.locateFromMaster =
+      conn.getConfiguration().getBoolean(LOCATE_FROM_MASTER, DEFAULT_LOCATE_FROM_MASTER);
   }
 
   private TableCache getTableCache(TableName tableName) {
@@ -291,7 +358,7 @@ class AsyncNonMetaRegionLocator {
         toSend = tableCache.getCandidate();
         toSend.ifPresent(r -> tableCache.send(r));
       }
-      toSend.ifPresent(r -> locateInMeta(tableName, r));
+      toSend.ifPresent(r -> locate(tableName, r));
     } else {
       // we meet an error
       assert error != null;
@@ -309,7 +376,7 @@ class AsyncNonMetaRegionLocator {
         toSend = tableCache.getCandidate();
         toSend.ifPresent(r -> tableCache.send(r));
       }
-      toSend.ifPresent(r -> locateInMeta(tableName, r));
+      toSend.ifPresent(r -> locate(tableName, r));
     }
   }
 
@@ -412,6 +479,171 @@ class AsyncNonMetaRegionLocator {
     }
   }
 
+  private void locate(TableName tableName, LocateRequest req) {
+    // the master only supports locating the region containing a row
+    if (locateFromMaster && req.locateType.equals(RegionLocateType.CURRENT)) {
+      locateInMaster(tableName, req);
+    } else {
+      locateInMeta(tableName, req);
+    }
+  }
+
+  @VisibleForTesting
+  synchronized long getMasterLocationVersion() {
+    return masterLocationVersion;
+  }
+
+  // Drop the regions the master says have changed from cache. Must be called before adding the
+  // locations in the same response to cache.
+  private synchronized void applyLocationChanges(LocateRegionResponse resp) {
+    if (resp.getAllChanged()) {
+      LOG.debug("Master does not know the location changes since version {}, clear cache",
+        masterLocationVersion);
+      cache.values().forEach(tableCache -> tableCache.cache.clear());
+      // the version of a new active master may be smaller than the one of the old
+      masterLocationVersion = resp.getVersion();
+      return;
+    }
+    for (ByteString regionName : resp.getChangedRegionNameList()) {
+      byte[][] parts = RegionInfo.parseRegionNameOrReturnNull(regionName.toByteArray());
+      if (parts == null) {
+        continue;
+      }
+      TableCache tableCache = cache.get(TableName.valueOf(parts[0]));
+      if (tableCache != null && tableCache.cache.remove(parts[1]) != null) {
+        recordClearRegionCache();
+      }
+    }
+    masterLocationVersion = Math.max(masterLocationVersion, resp.getVersion());
+  }
+
+  private CompletableFuture<List<ServerName>> getBackupMasters() {
+    CompletableFuture<List<ServerName>> future = backupMasters;
+    if (future == null) {
+      future = conn.registry.getBackupMasters();
+      backupMasters = future;
+    }
+    return future;
+  }
+
+  private void locateInMaster(TableName tableName, LocateRequest req) {
+    addListener(getBackupMasters(), (servers, error) -> {
+      List<ServerName> backups = servers;
+      if (error != null) {
+        LOG.debug("Failed to get the backup masters, locate in the active master", error);
+        backupMasters = null;
+        backups = Collections.emptyList();
+      }
+      // spread the lookups over the active master and the backup masters
+      int index = ThreadLocalRandom.current().nextInt(backups.size() + 1);
+      if (index < backups.size()) {
+        locateInBackupMaster(backups.get(index), tableName, req);
+      } else {
+        locateInActiveMaster(tableName, req);
+      }
+    });
+  }
+
+  private void locateInActiveMaster(TableName tableName, LocateRequest req) {
+    addListener(conn.getMasterStub(), (stub, error) -> {
+      if (error != null) {
+        fallbackToMeta(tableName, req, error);
+        return;
+      }
+      locateInMaster(tableName, req, stub, failure -> {
+        // ServerNotRunningYetException may because it is the backup master.
+        if (ClientExceptionsUtil.isConnectionException(failure) ||
+          failure instanceof ServerNotRunningYetException) {
+          conn.clearMasterStubCache(stub);
+        }
+        fallbackToMeta(tableName, req, failure);
+      });
+    });
+  }
+
+  private void locateInBackupMaster(ServerName backupMaster, TableName tableName,
+      LocateRequest req) {
+    MasterService.Interface stub;
+    try {
+      stub = conn.getMasterStub(backupMaster);
+    } catch (IOException e) {
+      backupMasterFailed(backupMaster, tableName, req, e);
+      return;
+    }
+    locateInMaster(tableName, req, stub,
+      failure -> backupMasterFailed(backupMaster, tableName, req, failure));
+  }
+
+  // A backup master fails if it has not mirrored the location changes of the active master yet, or
+  // it has gone, so ask the active master instead, and fetch the backup masters again next time.
+  private void backupMasterFailed(ServerName backupMaster, TableName tableName, LocateRequest req,
+      Throwable error) {
+    LOG.debug("Failed to locate '{}', row='{}' in backup master {}, try the active master",
+      tableName, Bytes.toStringBinary(req.row), backupMaster, error);
+    backupMasters = null;
+    locateInActiveMaster(tableName, req);
+  }
+
+  private void locateInMaster(TableName tableName, LocateRequest req,
+      MasterService.Interface stub, Consumer<Throwable> onFailure) {
+    if (LOG.isTraceEnabled()) {
+      LOG.trace("Try locate '" + tableName + "', row='" + Bytes.toStringBinary(req.row) +
+        "', locateType=" + req.locateType + " in master");
+    }
+    LocateRegionRequest.Builder builder =
+      LocateRegionRequest.newBuilder().setTableName(ProtobufUtil.toProtoTableName(tableName))
+        .setRow(UnsafeByteOperations.unsafeWrap(req.row)).setLimit(locatePrefetchLimit);
+    long knownVersion = getMasterLocationVersion();
+    if (knownVersion >= 0) {
+      builder.setKnownVersion(knownVersion);
+    }
+    HBaseRpcController controller = conn.rpcControllerFactory.newController();
+    resetController(controller, conn.connConf.getRpcTimeoutNs(), HConstants.NORMAL_QOS);
+    stub.locateRegion(controller, builder.build(), resp -> {
+      if (controller.failed()) {
+        onFailure.accept(controller.getFailed());
+        return;
+      }
+      applyLocationChanges(resp);
+      // group the replicas of each region, the primary comes first
+      List<RegionLocations> regions = new ArrayList<>();
+      List<HRegionLocation> replicas = new ArrayList<>();
+      for (HBaseProtos.RegionLocation proto : resp.getRegionLocationList()) {
+        HRegionLocation loc = ProtobufUtil.toRegionLocation(proto);
+        if (RegionReplicaUtil.isDefaultReplica(loc.getRegion()) && !replicas.isEmpty()) {
+          regions.add(new RegionLocations(replicas));
+          replicas = new ArrayList<>();
+        }
+        replicas.add(loc);
+      }
+      if (!replicas.isEmpty()) {
+        regions.add(new RegionLocations(replicas));
+      }
+      if (regions.isEmpty()) {
+        fallbackToMeta(tableName, req, null);
+        return;
+      }
+      LOG.debug("The location of '{}', row='{}' fetched from master is {}", tableName,
+        Bytes.toStringBinary(req.row), regions.get(0));
+      complete(tableName, req, regions.get(0), null);
+      TableCache tableCache = getTableCache(tableName);
+      for (int i = 1; i < regions.size(); i++) {
+        addPrefetchedToCache(tableCache, regions.get(i));
+      }
+    });
+  }
+
+  private void fallbackToMeta(TableName tableName, LocateRequest req, Throwable error) {
+    if (error != null) {
+      LOG.debug("Failed to locate '{}', row='{}' in master, try meta", tableName,
+        Bytes.toStringBinary(req.row), error);
+    } else {
+      LOG.debug("Master does not know the location of '{}', row='{}', try meta", tableName,
+        Bytes.toStringBinary(req.row));
+    }
+    locateInMeta(tableName, req);
+  }
+
   private void locateInMeta(TableName tableName, LocateRequest req) {
     if (LOG.isTraceEnabled()) {
       LOG.trace("Try locate '" + tableName + "', row='" + Bytes.toStringBinary(req.row) +
@@ -476,22 +708,139 @@ class AsyncNonMetaRegionLocator {
         if (i < results.length) {
           TableCache tableCache = getTableCache(tableName);
           for (; i < results.length; i++) {
-            RegionLocations locs = MetaTableAccessor.getRegionLocations(results[i]);
-            if (locs == null) {
-              continue;
-            }
-            HRegionLocation loc = locs.getDefaultRegionLocation();
-            if (loc == null) {
-              continue;
-            }
-            RegionInfo info = loc.getRegion();
-            if (info == null || info.isOffline() || info.isSplitParent()) {
-              continue;
-            }
-            RegionLocations addedLocs = addToCache(tableCache, locs);
-            synchronized (tableCache) {
-              tableCache.clearCompletedRequests(addedLocs);
-            }
+            addPrefetchedToCache(tableCache, results[i]);
+          }
+        }
+      }
+    });
+  }
+
+  // Add the locations in a meta row which we did not ask for to the cache, and complete the locate
+  // requests they satisfy. Returns the cached region, or null if the row has no usable location.
+  private RegionInfo addPrefetchedToCache(TableCache tableCache, Result result) {
+    RegionLocations locs = MetaTableAccessor.getRegionLocations(result);
+    return locs != null ? addPrefetchedToCache(tableCache, locs) : null;
+  }
+
+  private RegionInfo addPrefetchedToCache(TableCache tableCache, RegionLocations locs) {
+    HRegionLocation loc = locs.getDefaultRegionLocation();
+    if (loc == null) {
+      return null;
+    }
+    RegionInfo info = loc.getRegion();
+    if (info == null || info.isOffline() || info.isSplitParent()) {
+      return null;
+    }
+    RegionLocations addedLocs = addToCache(tableCache, locs);
+    synchronized (tableCache) {
+      tableCache.clearCompletedRequests(addedLocs);
+    }
+    return info;
+  }
+
+  private static boolean isCached(TableCache tableCache, byte[] row) {
+    Map.Entry<byte[], RegionLocations> entry = tableCache.cache.floorEntry(row);
+    if (entry == null) {
+      return false;
+    }
+    HRegionLocation loc = entry.getValue().getDefaultRegionLocation();
+    if (loc == null) {
+      return false;
+    }
+    byte[] endKey = loc.getRegion().getEndKey();
+    return isEmptyStopRow(endKey) || Bytes.compareTo(row, endKey) < 0;
+  }
+
+  /**
+   * Fills the cache with the locations of the regions between the smallest and the largest of the
+   * given rows which are not cached yet, using one reverse scan of meta, if there are more of them
+   * than the bulk prefetch threshold. Only one bulk prefetch runs at a time for a table, others
+   * just wait for it.
+   * <p/>
+   * The returned future never fails. The rows which are still not cached after it is done will be
+   * located one by one as usual.
+   */
+  CompletableFuture<Void> prefetchRegionLocations(TableName tableName, List<byte[]> rows) {
+    if (locateBulkPrefetchThreshold <= 0 || rows.size() <= locateBulkPrefetchThreshold) {
+      return CompletableFuture.completedFuture(null);
+    }
+    TableCache tableCache = getTableCache(tableName);
+    byte[] minRow = null;
+    byte[] maxRow = null;
+    int notCached = 0;
+    for (byte[] row : rows) {
+      if (isCached(tableCache, row)) {
+        continue;
+      }
+      notCached++;
+      if (minRow == null || Bytes.compareTo(row, minRow) < 0) {
+        minRow = row;
+      }
+      if (maxRow == null || Bytes.compareTo(row, maxRow) > 0) {
+        maxRow = row;
+      }
+    }
+    if (notCached <= locateBulkPrefetchThreshold) {
+      return CompletableFuture.completedFuture(null);
+    }
+    CompletableFuture<Void> future;
+    synchronized (tableCache) {
+      if (tableCache.bulkPrefetch != null) {
+        return tableCache.bulkPrefetch;
+      }
+      future = new CompletableFuture<>();
+      tableCache.bulkPrefetch = future;
+    }
+    bulkPrefetchInMeta(tableName, tableCache, minRow, maxRow, future);
+    return future;
+  }
+
+  private void bulkPrefetchInMeta(TableName tableName, TableCache tableCache, byte[] minRow,
+      byte[] maxRow, CompletableFuture<Void> future) {
+    LOG.debug("Prefetch the locations of '{}' from row='{}' to row='{}'", tableName,
+      Bytes.toStringBinary(minRow), Bytes.toStringBinary(maxRow));
+    byte[] metaStartKey = createRegionName(tableName, maxRow, NINES, false);
+    byte[] metaStopKey =
+      RegionInfo.createRegionName(tableName, HConstants.EMPTY_START_ROW, "", false);
+    // no caching set, so each rpc returns as many meta rows as the max result size allows
+    Scan scan = new Scan().withStartRow(metaStartKey).withStopRow(metaStopKey, true)
+      .addFamily(HConstants.CATALOG_FAMILY).setReversed(true).setReadType(ReadType.PREAD);
+    if (useMetaReplicas) {
+      scan.setConsistency(Consistency.TIMELINE);
+    }
+    conn.getTable(META_TABLE_NAME).scan(scan, new AdvancedScanResultConsumer() {
+
+      private int fetched = 0;
+
+      private void done() {
+        synchronized (tableCache) {
+          if (tableCache.bulkPrefetch == future) {
+            tableCache.bulkPrefetch = null;
+          }
+        }
+        future.complete(null);
+      }
+
+      @Override
+      public void onError(Throwable error) {
+        LOG.debug("Failed to prefetch the locations of '{}'", tableName, error);
+        done();
+      }
+
+      @Override
+      public void onComplete() {
+        done();
+      }
+
+      @Override
+      public void onNext(Result[] results, ScanController controller) {
+        for (Result result : results) {
+          RegionInfo info = addPrefetchedToCache(tableCache, result);
+          fetched++;
+          if ((info != null && Bytes.compareTo(info.getStartKey(), minRow) <= 0) ||
+            fetched >= locateBulkPrefetchLimit) {
+            controller.terminate();
+            return;
           }
         }
       }
@@ -542,7 +891,7 @@ class AsyncNonMetaRegionLocator {
       }
     }
     if (sendRequest) {
-      locateInMeta(tableName, req);
+      locate(tableName, req);
     }
     return future;
   }
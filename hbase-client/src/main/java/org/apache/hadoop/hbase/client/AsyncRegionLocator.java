@@ -20,6 +20,7 @@ package org.apache.hadoop.hbase.client;
 import static org.apache.hadoop.hbase.TableName.META_TABLE_NAME;
 import static org.apache.hadoop.hbase.util.FutureUtils.addListener;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
@@ -146,6 +147,20 @@ class AsyncRegionLocator {
     return getRegionLocation(tableName, row, type, false, timeoutNs);
   }
 
+  /**
+   * Fills the location cache for a batch on {@code tableName} touching {@code rows}. See
+   * {@link AsyncNonMetaRegionLocator#prefetchRegionLocations(TableName, List)}.
+   */
+  CompletableFuture<Void> prefetchRegionLocations(TableName tableName, List<byte[]> rows,
+      long timeoutNs) {
+    if (isMeta(tableName)) {
+      return CompletableFuture.completedFuture(null);
+    }
+    return withTimeout(nonMetaRegionLocator.prefetchRegionLocations(tableName, rows), timeoutNs,
+      () -> "Timeout(" + TimeUnit.NANOSECONDS.toMillis(timeoutNs) +
+        "ms) waiting for the region locations of " + tableName + " to be prefetched");
+  }
+
   void updateCachedLocationOnError(HRegionLocation loc, Throwable exception) {
     if (loc.getRegion().isMetaRegion()) {
       metaRegionLocator.updateCachedLocationOnError(loc, exception);
@@ -18,6 +18,8 @@
 package org.apache.hadoop.hbase.client;
 
 import java.io.Closeable;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import org.apache.hadoop.hbase.RegionLocations;
 import org.apache.hadoop.hbase.ServerName;
@@ -47,6 +49,13 @@ interface AsyncRegistry extends Closeable {
    */
   CompletableFuture<ServerName> getMasterAddress();
 
+  /**
+   * Get the addresses of the backup HMasters, which serve region locations too.
+   */
+  default CompletableFuture<List<ServerName>> getBackupMasters() {
+    return CompletableFuture.completedFuture(Collections.emptyList());
+  }
+
   /**
    * Closes this instance and releases any system resources associated with it
    */
@@ -29,6 +29,7 @@ import static org.apache.hadoop.hbase.client.ConnectionUtils.updateResultsMetric
 import static org.apache.hadoop.hbase.client.ConnectionUtils.updateServerSideMetrics;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -67,6 +68,17 @@ import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ScanRespon
  * <p>
  * We will modify the {@link Scan} object passed in directly. The upper layer should store the
  * reference of this object and use it to open new single region scanners.
+ * <p>
+ * If {@code hbase.client.scanner.pipeline.credits} is positive, we fetch up to that many batches
+ * of the region ahead of the consumer. The next scan request is sent before the results of a
+ * response are passed to the consumer, so the region server reads the next batch while the consumer
+ * is busy with the current one, and a scan does not pay for a round trip per batch. The scan
+ * requests of a scanner are ordered by the call sequence, so one is in flight at a time, and the
+ * responses are queued until the consumer asks for them. The consumer gives a credit back each time
+ * it is done with a batch, so a slow or suspended consumer stops the fetching once the credits run
+ * out, and the memory used is bounded by the credits times the max result size of the scan. With a
+ * limit we fetch at most one batch ahead, as the limit of a request depends on the rows the
+ * consumer has got before it.
  */
 @InterfaceAudience.Private
 class AsyncScanSingleRegionRpcRetryingCaller {
@@ -114,6 +126,12 @@ class AsyncScanSingleRegionRpcRetryingCaller {
 
   private final HBaseRpcController controller;
 
+  // Use a separated controller for lease renewal, so that it does not interfere with a scan request
+  // fetching ahead of a suspended consumer.
+  private final HBaseRpcController leaseController;
+
+  private final int pipelineCredits;
+
   private byte[] nextStartRowWhenError;
 
   private boolean includeNextStartRowWhenError;
@@ -126,6 +144,59 @@ class AsyncScanSingleRegionRpcRetryingCaller {
 
   private long nextCallSeq = -1L;
 
+  // A scan response with its results, decoded when it arrives as the controller is reused by the
+  // next request. A failed call is kept too, so that it is retried in order.
+  private static final class FetchedBatch {
+
+    private final ScanResponse resp;
+
+    private Result[] rawResults;
+
+    private Throwable callError;
+
+    private IOException decodeError;
+
+    FetchedBatch(HBaseRpcController controller, ScanResponse resp) {
+      this.resp = resp;
+      if (controller.failed()) {
+        callError = controller.getFailed();
+        return;
+      }
+      try {
+        rawResults = ResponseConverter.getResults(controller.cellScanner(), resp);
+      } catch (IOException e) {
+        decodeError = e;
+      }
+    }
+
+    boolean hasMoreResultsInRegion() {
+      return callError == null && decodeError == null && hasMoreToFetch(resp);
+    }
+
+    boolean isScannerOpen() {
+      return callError != null || decodeError != null || resp.getMoreResultsInRegion();
+    }
+  }
+
+  // The batches fetched ahead of the consumer, in order. This and the fields below are guarded by
+  // this, as the responses and the consumer may come from different threads.
+  private final ArrayDeque<FetchedBatch> fetched = new ArrayDeque<>();
+
+  // Whether a scan request fetching ahead of the consumer is in flight.
+  private boolean fetching;
+
+  // Whether the consumer is done with its batch and waits for the request in flight.
+  private boolean consumerWaiting;
+
+  // Whether the consumer has terminated the scan while a request was in flight.
+  private boolean discarded;
+
+  // Whether there are more results in the region after the last fetched batch, and whether the
+  // scanner is still open at the region server.
+  private boolean lastHasMore;
+
+  private boolean lastScannerOpen;
+
   private enum ScanControllerState {
     INITIALIZED, SUSPENDED, TERMINATED, DESTROYED
   }
@@ -265,7 +336,7 @@ class AsyncScanSingleRegionRpcRetryingCaller {
         localResp = this.resp;
         localNumberOfCompleteRows = this.numberOfCompleteRows;
       }
-      completeOrNext(localResp, localNumberOfCompleteRows);
+      completeOrNextFetched(localResp, localNumberOfCompleteRows);
     }
 
     private void scheduleRenewLeaseTask() {
@@ -334,6 +405,8 @@ class AsyncScanSingleRegionRpcRetryingCaller {
     this.priority = priority;
     this.controller = conn.rpcControllerFactory.newController();
     this.controller.setPriority(priority);
+    this.leaseController = conn.rpcControllerFactory.newController();
+    this.pipelineCredits = conn.connConf.getScannerPipelineCredits();
     this.exceptions = new ArrayList<>();
   }
 
@@ -458,12 +531,7 @@ class AsyncScanSingleRegionRpcRetryingCaller {
     }
   }
 
-  private void completeOrNext(ScanResponse resp, int numberOfCompleteRows) {
-    if (resp.hasMoreResults() && !resp.getMoreResults()) {
-      // RS tells us there is no more data for the whole scan
-      completeNoMoreResults();
-      return;
-    }
+  private void updateLimit(int numberOfCompleteRows) {
     if (scan.getLimit() > 0) {
       // The RS should have set the moreResults field in ScanResponse to false when we have reached
       // the limit, so we add an assert here.
@@ -471,6 +539,15 @@ class AsyncScanSingleRegionRpcRetryingCaller {
       assert newLimit > 0;
       scan.setLimit(newLimit);
     }
+  }
+
+  private void completeOrNext(ScanResponse resp, int numberOfCompleteRows) {
+    if (resp.hasMoreResults() && !resp.getMoreResults()) {
+      // RS tells us there is no more data for the whole scan
+      completeNoMoreResults();
+      return;
+    }
+    updateLimit(numberOfCompleteRows);
     // as in 2.0 this value will always be set
     if (!resp.getMoreResultsInRegion()) {
       completeWhenNoMoreResultsInRegion.run();
@@ -480,17 +557,24 @@ class AsyncScanSingleRegionRpcRetryingCaller {
   }
 
   private void onComplete(HBaseRpcController controller, ScanResponse resp) {
-    if (controller.failed()) {
-      onError(controller.getFailed());
+    onComplete(new FetchedBatch(controller, resp));
+  }
+
+  private void onComplete(FetchedBatch batch) {
+    if (batch.callError != null) {
+      onError(batch.callError);
       return;
     }
+    ScanResponse resp = batch.resp;
     updateServerSideMetrics(scanMetrics, resp);
     boolean isHeartbeatMessage = resp.hasHeartbeatMessage() && resp.getHeartbeatMessage();
-    Result[] rawResults;
+    Result[] rawResults = batch.rawResults;
     Result[] results;
     int numberOfCompleteRowsBefore = resultCache.numberOfCompleteRows();
     try {
-      rawResults = ResponseConverter.getResults(controller.cellScanner(), resp);
+      if (batch.decodeError != null) {
+        throw batch.decodeError;
+      }
       updateResultsMetrics(scanMetrics, rawResults, isHeartbeatMessage);
       results = resultCache.addAndGet(
         Optional.ofNullable(rawResults).orElse(ScanResultCache.EMPTY_RESULT_ARRAY),
@@ -503,6 +587,8 @@ class AsyncScanSingleRegionRpcRetryingCaller {
       completeWhenError(true);
       return;
     }
+    int numberOfCompleteRows = resultCache.numberOfCompleteRows() - numberOfCompleteRowsBefore;
+    fetchAhead(resp, numberOfCompleteRows);
 
     ScanControllerImpl scanController;
     if (results.length > 0) {
@@ -531,21 +617,137 @@ class AsyncScanSingleRegionRpcRetryingCaller {
     }
     ScanControllerState state = scanController.destroy();
     if (state == ScanControllerState.TERMINATED) {
-      if (resp.getMoreResultsInRegion()) {
-        // we have more results in region but user request to stop the scan, so we need to close the
-        // scanner explicitly.
-        closeScanner();
-      }
+      discardFetched(resp);
       completeNoMoreResults();
       return;
     }
-    int numberOfCompleteRows = resultCache.numberOfCompleteRows() - numberOfCompleteRowsBefore;
     if (state == ScanControllerState.SUSPENDED) {
       if (scanController.resumer.prepare(resp, numberOfCompleteRows)) {
         return;
       }
     }
-    completeOrNext(resp, numberOfCompleteRows);
+    completeOrNextFetched(resp, numberOfCompleteRows);
+  }
+
+  private static boolean hasMoreToFetch(ScanResponse resp) {
+    return !(resp.hasMoreResults() && !resp.getMoreResults()) && resp.getMoreResultsInRegion();
+  }
+
+  private int getPipelineCredits() {
+    // the limit of the next request depends on the rows of the previous batch
+    return scan.getLimit() > 0 ? Math.min(1, pipelineCredits) : pipelineCredits;
+  }
+
+  /**
+   * Sends the next scan request before the results of {@code resp} are passed to the consumer, if
+   * there are more results in the region and we have credits left.
+   */
+  private void fetchAhead(ScanResponse resp, int numberOfCompleteRows) {
+    if (pipelineCredits == 0) {
+      return;
+    }
+    synchronized (this) {
+      if (fetching) {
+        return;
+      }
+      if (fetched.isEmpty()) {
+        // resp is the last response we have got
+        lastHasMore = hasMoreToFetch(resp);
+        lastScannerOpen = resp.getMoreResultsInRegion();
+      }
+      if (!lastHasMore || fetched.size() >= getPipelineCredits()) {
+        return;
+      }
+      fetching = true;
+    }
+    // Only changes the limit when nothing else is fetched ahead, see getPipelineCredits
+    updateLimit(numberOfCompleteRows);
+    next();
+  }
+
+  private void onResponse(ScanResponse resp) {
+    boolean fetchingAhead;
+    synchronized (this) {
+      fetchingAhead = fetching;
+    }
+    if (!fetchingAhead) {
+      // the consumer is waiting for this response
+      onComplete(controller, resp);
+      return;
+    }
+    FetchedBatch batch = new FetchedBatch(controller, resp);
+    boolean discard;
+    boolean deliver;
+    boolean fetchMore = false;
+    synchronized (this) {
+      fetching = false;
+      lastHasMore = batch.hasMoreResultsInRegion();
+      lastScannerOpen = batch.isScannerOpen();
+      discard = discarded;
+      discarded = false;
+      deliver = !discard && consumerWaiting;
+      consumerWaiting = false;
+      if (!discard && !deliver) {
+        // the consumer is still busy with a previous batch, keep this one for later, and use the
+        // credits left to fetch more
+        fetched.addLast(batch);
+        fetchMore = lastHasMore && fetched.size() < getPipelineCredits();
+        fetching = fetchMore;
+      }
+    }
+    if (discard) {
+      if (batch.isScannerOpen()) {
+        closeScanner();
+      }
+    } else if (deliver) {
+      onComplete(batch);
+    } else if (fetchMore) {
+      next();
+    }
+  }
+
+  // The consumer is done with the batch of resp, go on with the batch fetched after it, if any.
+  private void completeOrNextFetched(ScanResponse resp, int numberOfCompleteRows) {
+    FetchedBatch batch;
+    synchronized (this) {
+      batch = fetched.pollFirst();
+      if (batch == null && fetching) {
+        consumerWaiting = true;
+        return;
+      }
+    }
+    if (batch == null) {
+      completeOrNext(resp, numberOfCompleteRows);
+      return;
+    }
+    // the retries of a failed fetch should not be charged for the time the consumer took
+    nextCallStartNs = System.nanoTime();
+    onComplete(batch);
+  }
+
+  // The consumer has terminated the scan, drop the batches fetched ahead and close the scanner.
+  private void discardFetched(ScanResponse resp) {
+    boolean scannerOpen;
+    synchronized (this) {
+      if (fetching) {
+        fetched.clear();
+        discarded = true;
+        return;
+      }
+      scannerOpen = fetched.isEmpty() ? resp.getMoreResultsInRegion() : lastScannerOpen;
+      fetched.clear();
+    }
+    if (scannerOpen) {
+      // we have more results in region but user request to stop the scan, so we need to close the
+      // scanner explicitly.
+      closeScanner();
+    }
+  }
+
+  // A lease renewal can not be sent while a request is in flight as it would break the call
+  // sequence, and is not needed if the last fetched batch tells us the scanner has been closed.
+  private synchronized boolean canRenewLease() {
+    return !fetching && (fetched.isEmpty() || lastHasMore);
   }
 
   private void call() {
@@ -572,7 +774,7 @@ class AsyncScanSingleRegionRpcRetryingCaller {
     resetController(controller, callTimeoutNs, priority);
     ScanRequest req = RequestConverter.buildScanRequest(scannerId, scan.getCaching(), false,
       nextCallSeq, scan.isScanMetricsEnabled(), false, scan.getLimit());
-    stub.scan(controller, req, resp -> onComplete(controller, resp));
+    stub.scan(controller, req, this::onResponse);
   }
 
   private void next() {
@@ -584,12 +786,15 @@ class AsyncScanSingleRegionRpcRetryingCaller {
   }
 
   private void renewLease() {
+    if (!canRenewLease()) {
+      return;
+    }
     incRPCCallsMetrics(scanMetrics, regionServerRemote);
     nextCallSeq++;
-    resetController(controller, rpcTimeoutNs, priority);
+    resetController(leaseController, rpcTimeoutNs, priority);
     ScanRequest req =
         RequestConverter.buildScanRequest(scannerId, 0, false, nextCallSeq, false, true, -1);
-    stub.scan(controller, req, resp -> {
+    stub.scan(leaseController, req, resp -> {
     });
   }
 
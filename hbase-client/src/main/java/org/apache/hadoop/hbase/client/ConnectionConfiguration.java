@@ -44,6 +44,46 @@ public class ConnectionConfiguration {
   public static final String PRIMARY_SCAN_TIMEOUT_MICROSECOND =
     "hbase.client.replicaCallTimeout.scan";
   public static final int PRIMARY_SCAN_TIMEOUT_MICROSECOND_DEFAULT = 1000000; // 1s
+  /**
+   * If true, timeline consistent gets send a backup request to a secondary replica once the primary
+   * is slower than the recent {@link #HEDGED_READ_PERCENTILE} of its server, instead of after
+   * {@link #PRIMARY_CALL_TIMEOUT_MICROSECOND}.
+   */
+  public static final String HEDGED_READ_ADAPTIVE = "hbase.client.hedged.read.adaptive";
+  public static final boolean HEDGED_READ_ADAPTIVE_DEFAULT = false;
+  public static final String HEDGED_READ_PERCENTILE = "hbase.client.hedged.read.percentile";
+  public static final double HEDGED_READ_PERCENTILE_DEFAULT = 95;
+  /**
+   * The backup requests of adaptive hedged reads are bounded to this percentage of the gets.
+   */
+  public static final String HEDGED_READ_BUDGET_PERCENT = "hbase.client.hedged.read.budget.percent";
+  public static final double HEDGED_READ_BUDGET_PERCENT_DEFAULT = 5;
+  /**
+   * If true, the multi requests of batches are split to a per server batch size, and the number of
+   * multi requests in flight to a server is limited. Both adapt to the latency, the load statistics
+   * and the overload errors of the server.
+   */
+  public static final String BATCH_ADAPTIVE = "hbase.client.batch.adaptive";
+  public static final boolean BATCH_ADAPTIVE_DEFAULT = false;
+  public static final String BATCH_ADAPTIVE_MIN_SIZE = "hbase.client.batch.adaptive.min.size";
+  public static final int BATCH_ADAPTIVE_MIN_SIZE_DEFAULT = 16;
+  public static final String BATCH_ADAPTIVE_MAX_SIZE = "hbase.client.batch.adaptive.max.size";
+  public static final int BATCH_ADAPTIVE_MAX_SIZE_DEFAULT = 1000;
+  public static final String BATCH_ADAPTIVE_MAX_CONCURRENCY =
+    "hbase.client.batch.adaptive.max.concurrency";
+  public static final int BATCH_ADAPTIVE_MAX_CONCURRENCY_DEFAULT = 8;
+  /**
+   * A multi request slower than this is taken as a sign that the server is overloaded.
+   */
+  public static final String BATCH_ADAPTIVE_TARGET_LATENCY_MS =
+    "hbase.client.batch.adaptive.target.latency.ms";
+  public static final long BATCH_ADAPTIVE_TARGET_LATENCY_MS_DEFAULT = 200;
+  /**
+   * The number of batches the async scanner may fetch from a region ahead of the consumer. The
+   * consumer gives a credit back each time it is done with a batch. 0 turns the prefetching off.
+   */
+  public static final String SCANNER_PIPELINE_CREDITS = "hbase.client.scanner.pipeline.credits";
+  public static final int SCANNER_PIPELINE_CREDITS_DEFAULT = 0;
   public static final String LOG_SCANNER_ACTIVITY = "hbase.client.log.scanner.activity";
 
   private final long writeBufferSize;
@@ -448,10 +448,38 @@ public final class ConnectionUtils {
     }
   }
 
+  /**
+   * Sends the backup request of an adaptive hedged read, see {@link HedgedReadPolicy}.
+   */
+  private static <T> void sendRequestToSecondaryReplica(
+      Function<Integer, CompletableFuture<T>> requestReplica, RegionLocations locs,
+      CompletableFuture<T> future, HedgedReadPolicy hedgedReadPolicy,
+      Optional<MetricsConnection> metrics) {
+    if (future.isDone() || !hedgedReadPolicy.tryAcquireBackupRequest()) {
+      return;
+    }
+    int replicaId = hedgedReadPolicy.selectSecondaryReplica(locs);
+    if (replicaId < 0) {
+      return;
+    }
+    long startNs = System.nanoTime();
+    CompletableFuture<T> secondaryFuture = requestReplica.apply(replicaId);
+    hedgedReadPolicy.track(secondaryFuture, locs.getRegionLocation(replicaId).getServerName(),
+      startNs, false);
+    metrics.ifPresent(MetricsConnection::incrHedgedReadOps);
+    connect(secondaryFuture, future, metrics);
+  }
+
+  /**
+   * @param hedgedReadPolicy if present, decides when and to which secondary replica a single
+   *          backup request is sent, otherwise requests are sent to all the secondary replicas
+   *          after {@code primaryCallTimeoutNs}
+   */
   static <T> CompletableFuture<T> timelineConsistentRead(AsyncRegionLocator locator,
       TableName tableName, Query query, byte[] row, RegionLocateType locateType,
       Function<Integer, CompletableFuture<T>> requestReplica, long rpcTimeoutNs,
-      long primaryCallTimeoutNs, Timer retryTimer, Optional<MetricsConnection> metrics) {
+      long primaryCallTimeoutNs, Timer retryTimer, Optional<MetricsConnection> metrics,
+      Optional<HedgedReadPolicy> hedgedReadPolicy) {
     if (query.getConsistency() != Consistency.TIMELINE) {
       return requestReplica.apply(RegionReplicaUtil.DEFAULT_REPLICA_ID);
     }
@@ -464,6 +492,7 @@ public final class ConnectionUtils {
     CompletableFuture<T> future = new CompletableFuture<>();
     connect(primaryFuture, future, Optional.empty());
     long startNs = System.nanoTime();
+    hedgedReadPolicy.ifPresent(HedgedReadPolicy::onRequest);
     // after the getRegionLocations, all the locations for the replicas of this region should have
     // been cached, so it is not big deal to locate them again when actually sending requests to
     // these replicas.
@@ -482,6 +511,23 @@ public final class ConnectionUtils {
             locs.getDefaultRegionLocation().getRegion());
           return;
         }
+        if (hedgedReadPolicy.isPresent()) {
+          HedgedReadPolicy policy = hedgedReadPolicy.get();
+          HRegionLocation primaryLoc = locs.getDefaultRegionLocation();
+          ServerName primary = primaryLoc != null ? primaryLoc.getServerName() : null;
+          policy.track(primaryFuture, primary, startNs, true);
+          long delayNs =
+            policy.getDelayNs(primary, primaryCallTimeoutNs) - (System.nanoTime() - startNs);
+          if (delayNs <= 0) {
+            sendRequestToSecondaryReplica(requestReplica, locs, future, policy, metrics);
+          } else {
+            retryTimer.newTimeout(
+              timeout -> sendRequestToSecondaryReplica(requestReplica, locs, future, policy,
+                metrics),
+              delayNs, TimeUnit.NANOSECONDS);
+          }
+          return;
+        }
         long delayNs = primaryCallTimeoutNs - (System.nanoTime() - startNs);
         if (delayNs <= 0) {
           sendRequestsToSecondaryReplicas(requestReplica, locs, future, metrics);
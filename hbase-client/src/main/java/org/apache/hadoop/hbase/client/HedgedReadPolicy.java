@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.HEDGED_READ_ADAPTIVE;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.HEDGED_READ_ADAPTIVE_DEFAULT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.HEDGED_READ_BUDGET_PERCENT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.HEDGED_READ_BUDGET_PERCENT_DEFAULT;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.HEDGED_READ_PERCENTILE;
+import static org.apache.hadoop.hbase.client.ConnectionConfiguration.HEDGED_READ_PERCENTILE_DEFAULT;
+import static org.apache.hadoop.hbase.util.ConcurrentMapUtils.computeIfAbsent;
+import static org.apache.hadoop.hbase.util.FutureUtils.addListener;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.RegionLocations;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * Decides when a timeline consistent get sends a backup request to a secondary replica.
+ * <p/>
+ * Instead of waiting for the static {@code hbase.client.primaryCallTimeout.get}, the backup request
+ * is sent once the primary has taken longer than the recent latency percentile of its region
+ * server, and only to the secondary whose region server has answered fastest recently. Each get
+ * earns a configured percentage of a backup request, which bounds the extra load the backup
+ * requests put on the cluster.
+ */
+@InterfaceAudience.Private
+class HedgedReadPolicy {
+
+  // the number of recent latencies kept per server
+  @VisibleForTesting
+  static final int WINDOW_SIZE = 128;
+
+  // the percentile is not used until we have seen this many latencies of a server
+  @VisibleForTesting
+  static final int MIN_SAMPLES = 16;
+
+  // recompute the percentile every this many latencies
+  private static final int RECOMPUTE_INTERVAL = 8;
+
+  // the budget is kept in thousandths of a backup request
+  private static final long BACKUP_REQUEST_COST = 1000;
+
+  // allow a burst of this many backup requests
+  private static final long MAX_BUDGET = 10 * BACKUP_REQUEST_COST;
+
+  private final ConcurrentMap<ServerName, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+  private final double percentile;
+
+  private final long budgetPerRequest;
+
+  private final AtomicLong budget = new AtomicLong(MAX_BUDGET);
+
+  @VisibleForTesting
+  HedgedReadPolicy(double percentile, double budgetPercent) {
+    this.percentile = percentile;
+    this.budgetPerRequest = Math.round(budgetPercent * BACKUP_REQUEST_COST / 100);
+  }
+
+  static HedgedReadPolicy create(Configuration conf) {
+    if (!conf.getBoolean(HEDGED_READ_ADAPTIVE, HEDGED_READ_ADAPTIVE_DEFAULT)) {
+      return null;
+    }
+    double percentile = conf.getDouble(HEDGED_READ_PERCENTILE, HEDGED_READ_PERCENTILE_DEFAULT);
+    return new HedgedReadPolicy(Math.max(0, Math.min(100, percentile)) / 100,
+      Math.max(0, conf.getDouble(HEDGED_READ_BUDGET_PERCENT, HEDGED_READ_BUDGET_PERCENT_DEFAULT)));
+  }
+
+  private final class LatencyWindow {
+
+    private final long[] latencies = new long[WINDOW_SIZE];
+
+    private int count;
+
+    private int next;
+
+    private int sinceComputed;
+
+    private long percentileNs = -1;
+
+    synchronized void add(long latencyNs) {
+      latencies[next] = latencyNs;
+      next = (next + 1) % latencies.length;
+      count = Math.min(count + 1, latencies.length);
+      if (count >= MIN_SAMPLES && (percentileNs < 0 || ++sinceComputed >= RECOMPUTE_INTERVAL)) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        percentileNs = sorted[Math.min(count - 1, (int) (count * percentile))];
+        sinceComputed = 0;
+      }
+    }
+
+    synchronized long getPercentileNs() {
+      return percentileNs;
+    }
+  }
+
+  /**
+   * Records how long the request sent to {@code server} at {@code startNs} takes, if it succeeds.
+   * A primary request cancelled because the backup request won is recorded with the time it ran,
+   * a lower bound of its latency, otherwise the primary would only be known by its fast requests.
+   * A cancelled backup request is not recorded, it only ran for as long as the primary took.
+   */
+  void track(CompletableFuture<?> future, ServerName server, long startNs, boolean primary) {
+    if (server == null) {
+      return;
+    }
+    addListener(future, (r, e) -> {
+      if (e == null || (primary && e instanceof CancellationException)) {
+        record(server, System.nanoTime() - startNs);
+      }
+    });
+  }
+
+  @VisibleForTesting
+  void record(ServerName server, long latencyNs) {
+    computeIfAbsent(latencies, server, LatencyWindow::new).add(latencyNs);
+  }
+
+  /**
+   * @return how long to wait for the primary on {@code server} before sending a backup request,
+   *         or {@code defaultDelayNs} if we do not know enough about its latencies yet
+   */
+  long getDelayNs(ServerName server, long defaultDelayNs) {
+    long percentileNs = getPercentileNs(server);
+    return percentileNs >= 0 ? percentileNs : defaultDelayNs;
+  }
+
+  private long getPercentileNs(ServerName server) {
+    LatencyWindow window = server != null ? latencies.get(server) : null;
+    return window != null ? window.getPercentileNs() : -1;
+  }
+
+  /**
+   * Called for every timeline consistent get, which earns its share of a backup request.
+   */
+  void onRequest() {
+    budget.accumulateAndGet(budgetPerRequest,
+      (current, inc) -> Math.min(current + inc, MAX_BUDGET));
+  }
+
+  /**
+   * @return whether the budget allows another backup request, in which case it is charged
+   */
+  boolean tryAcquireBackupRequest() {
+    for (;;) {
+      long current = budget.get();
+      if (current < BACKUP_REQUEST_COST) {
+        return false;
+      }
+      if (budget.compareAndSet(current, current - BACKUP_REQUEST_COST)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Selects the secondary replica to send the backup request to. Servers we know nothing about yet
+   * are preferred, so that we learn their latencies.
+   * @return the replica id, or -1 if there is no secondary replica with a known location
+   */
+  int selectSecondaryReplica(RegionLocations locs) {
+    int selected = -1;
+    long selectedNs = Long.MAX_VALUE;
+    for (int replicaId = 1, n = locs.size(); replicaId < n; replicaId++) {
+      HRegionLocation loc = locs.getRegionLocation(replicaId);
+      if (loc == null || loc.getServerName() == null) {
+        continue;
+      }
+      long percentileNs = getPercentileNs(loc.getServerName());
+      if (percentileNs < selectedNs) {
+        selected = replicaId;
+        selectedNs = percentileNs;
+      }
+    }
+    return selected;
+  }
+}
@@ -229,6 +229,12 @@ class ZKAsyncRegistry implements AsyncRegistry {
         });
   }
 
+  @Override
+  public CompletableFuture<List<ServerName>> getBackupMasters() {
+    return zk.list(znodePaths.backupMasterAddressesZNode).thenApply(children -> children.stream()
+      .map(ServerName::parseServerName).collect(Collectors.toList()));
+  }
+
   @Override
   public void close() {
     zk.close();
@@ -0,0 +1,798 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.filter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.hbase.ByteBufferExtendedCell;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.exceptions.DeserializationException;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.InvalidProtocolBufferException;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.FilterProtos;
+
+/**
+ * Compiles a tree of filters into a single filter evaluating the same per cell decisions without
+ * going through {@link FilterList} and {@link CompareFilter} for every cell.
+ * <p>
+ * Only trees made of {@link ValueFilter}s, {@link QualifierFilter}s, {@link FamilyFilter}s,
+ * {@link SingleColumnValueFilter}s, {@link ColumnPrefixFilter}s and {@link ColumnRangeFilter}s
+ * combined by {@link FilterList}s are compiled. These filters only act on cells through
+ * {@link Filter#filterCell(Cell)} and {@link Filter#getNextCellHint(Cell)}, so the compiled filter
+ * can stand in for the original one where cells are filtered, while the original one keeps
+ * receiving the row level calls. The compiled form of a {@link SingleColumnValueFilter} keeps its
+ * row state in the original filter, where {@link Filter#filterRow()} and {@link Filter#reset()}
+ * find it. When compiling:
+ * <ul>
+ * <li>nested lists with the same operator are flattened;</li>
+ * <li>the compare operator is folded into the set of accepted comparison results, and binary
+ * equality checks compare the lengths first;</li>
+ * <li>{@link CompareOperator#NO_OP} leaves, which never accept a cell, are folded, together with
+ * the siblings they make useless;</li>
+ * <li>a list which must pass all its filters, none of them keeping state, merges the seek hints
+ * of all the filters asking to seek past the cell, and seeks to the furthest one.</li>
+ * </ul>
+ * Trees without state nor hints can also be evaluated over a batch of cells, such as a decoded
+ * block, with {@link CompiledFilter#filterCells(List, Filter.ReturnCode[])}. Any other filter,
+ * including subclasses of the above, is left to the interpreter: the original filter is returned
+ * as is.
+ */
+@InterfaceAudience.Private
+public final class FilterCompiler {
+
+  private FilterCompiler() {
+  }
+
+  /**
+   * @return a compiled equivalent of the given filter, or the given filter if it cannot be
+   *         compiled
+   */
+  public static Filter compile(Filter filter) {
+    if (filter == null) {
+      return null;
+    }
+    Node node = compileNode(filter);
+    if (node == null) {
+      return filter;
+    }
+    CompiledFilter compiled = new CompiledFilter(node, filter);
+    compiled.setReversed(filter.isReversed());
+    return compiled;
+  }
+
+  private static Node compileNode(Filter filter) {
+    if (filter.getClass() == SingleColumnValueFilter.class) {
+      SingleColumnValueFilter f = (SingleColumnValueFilter) filter;
+      return new SingleColumnValueNode(f, compileComparison(Component.VALUE,
+        f.getCompareOperator(), f.getComparator(), Filter.ReturnCode.SKIP));
+    }
+    if (filter.getClass() == ColumnPrefixFilter.class
+        || filter.getClass() == ColumnRangeFilter.class) {
+      // stateless, the hint only depends on the cell
+      return new HintNode(filter);
+    }
+    Class<?> clazz = filter.getClass();
+    if (clazz == ValueFilter.class) {
+      CompareFilter f = (CompareFilter) filter;
+      return compileComparison(Component.VALUE, f.getCompareOperator(), f.getComparator(),
+        Filter.ReturnCode.SKIP);
+    }
+    if (clazz == QualifierFilter.class) {
+      CompareFilter f = (CompareFilter) filter;
+      return compileComparison(Component.QUALIFIER, f.getCompareOperator(), f.getComparator(),
+        Filter.ReturnCode.SKIP);
+    }
+    if (clazz == FamilyFilter.class) {
+      CompareFilter f = (CompareFilter) filter;
+      // Cells without a family are always included.
+      return new FamilyNode(compileComparison(Component.FAMILY, f.getCompareOperator(),
+        f.getComparator(), Filter.ReturnCode.NEXT_ROW));
+    }
+    if (clazz == FilterList.class) {
+      FilterList list = (FilterList) filter;
+      List<Node> children = new ArrayList<>(list.size());
+      for (Filter f : list.getFilters()) {
+        Node child = compileNode(f);
+        if (child == null) {
+          return null;
+        }
+        children.add(child);
+      }
+      return list.getOperator() == FilterList.Operator.MUST_PASS_ALL ? and(children)
+          : or(children);
+    }
+    return null;
+  }
+
+  /**
+   * A list which must pass all its filters returns the rejection of the first filter which does
+   * not include the cell, and stops there.
+   */
+  private static Node and(List<Node> children) {
+    List<Node> flattened = new ArrayList<>(children.size());
+    for (Node child : children) {
+      List<Node> grandChildren = child instanceof AndNode ? ((AndNode) child).children
+          : Collections.singletonList(child);
+      for (Node node : grandChildren) {
+        if (node instanceof ConstantNode) {
+          if (((ConstantNode) node).code == Filter.ReturnCode.INCLUDE) {
+            continue;
+          }
+          // nothing after a constant rejection is ever evaluated
+          flattened.add(node);
+          return flattened.size() == 1 ? node : new AndNode(flattened);
+        }
+        flattened.add(node);
+      }
+    }
+    if (flattened.isEmpty()) {
+      return ConstantNode.INCLUDE;
+    }
+    return flattened.size() == 1 ? flattened.get(0) : new AndNode(flattened);
+  }
+
+  /**
+   * A list which must pass one of its filters includes the cell if any filter does. The merged
+   * rejection is only simple when all the filters reject by skipping the cell, so other lists are
+   * not compiled.
+   */
+  private static Node or(List<Node> children) {
+    if (children.isEmpty()) {
+      return ConstantNode.INCLUDE;
+    }
+    List<Node> flattened = new ArrayList<>(children.size());
+    for (Node child : children) {
+      List<Node> grandChildren = child instanceof OrNode ? ((OrNode) child).children
+          : Collections.singletonList(child);
+      for (Node node : grandChildren) {
+        if (!node.onlySkips()) {
+          return null;
+        }
+        if (node instanceof ConstantNode) {
+          if (((ConstantNode) node).code == Filter.ReturnCode.INCLUDE) {
+            return ConstantNode.INCLUDE;
+          }
+          continue;
+        }
+        flattened.add(node);
+      }
+    }
+    if (flattened.isEmpty()) {
+      return ConstantNode.SKIP;
+    }
+    return flattened.size() == 1 ? flattened.get(0) : new OrNode(flattened);
+  }
+
+  private static Node compileComparison(Component component, CompareOperator op,
+      ByteArrayComparable comparator, Filter.ReturnCode rejection) {
+    if (op == CompareOperator.NO_OP) {
+      return rejection == Filter.ReturnCode.SKIP ? ConstantNode.SKIP
+          : new ConstantNode(rejection);
+    }
+    if (comparator.getClass() == BinaryComparator.class
+        && (op == CompareOperator.EQUAL || op == CompareOperator.NOT_EQUAL)) {
+      return new BytesEqualNode(component, comparator.getValue(), op == CompareOperator.EQUAL,
+          rejection);
+    }
+    return new ComparisonNode(component, op, comparator, rejection);
+  }
+
+  enum Component {
+    FAMILY, QUALIFIER, VALUE
+  }
+
+  /**
+   * A compiled filter tree. Returns either {@link Filter.ReturnCode#INCLUDE} or the rejection of
+   * the cell.
+   */
+  abstract static class Node {
+    abstract Filter.ReturnCode evaluate(Cell cell) throws IOException;
+
+    /**
+     * Evaluates the selected cells of a batch, setting their return codes.
+     * @param selection the indexes of the cells to evaluate, in its first count entries
+     */
+    void evaluate(List<? extends Cell> cells, int[] selection, int count,
+        Filter.ReturnCode[] codes) throws IOException {
+      for (int i = 0; i < count; i++) {
+        codes[selection[i]] = evaluate(cells.get(selection[i]));
+      }
+    }
+
+    /**
+     * @return the cell to seek to once {@link #evaluate(Cell)} returned
+     *         {@link Filter.ReturnCode#SEEK_NEXT_USING_HINT} for the given cell
+     */
+    Cell getNextCellHint(Cell cell, boolean reversed) throws IOException {
+      return null;
+    }
+
+    /**
+     * @return true if the decisions of the node do not depend on the cells it saw before
+     */
+    boolean isStateless() {
+      return true;
+    }
+
+    /**
+     * @return true if the node may ask to seek using a hint
+     */
+    boolean hasHints() {
+      return false;
+    }
+
+    /**
+     * @return true if the node only ever rejects cells with {@link Filter.ReturnCode#SKIP}
+     */
+    abstract boolean onlySkips();
+  }
+
+  static final class ConstantNode extends Node {
+    static final ConstantNode INCLUDE = new ConstantNode(Filter.ReturnCode.INCLUDE);
+    static final ConstantNode SKIP = new ConstantNode(Filter.ReturnCode.SKIP);
+
+    final Filter.ReturnCode code;
+
+    ConstantNode(Filter.ReturnCode code) {
+      this.code = code;
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) {
+      return code;
+    }
+
+    @Override
+    boolean onlySkips() {
+      return code == Filter.ReturnCode.INCLUDE || code == Filter.ReturnCode.SKIP;
+    }
+
+    @Override
+    public String toString() {
+      return code.toString();
+    }
+  }
+
+  static final class AndNode extends Node {
+    final List<Node> children;
+    private final Node[] nodes;
+    // The cells up to the hint of any node asking to seek past a cell are rejected, so the hints
+    // of all those nodes can be merged, as long as skipping cells changes the state of no node.
+    private final boolean mergeHints;
+    private final List<Node> seekHintNodes = new ArrayList<>();
+
+    AndNode(List<Node> children) {
+      this.children = children;
+      this.nodes = children.toArray(new Node[children.size()]);
+      this.mergeHints = isStateless() && hasHints();
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) throws IOException {
+      seekHintNodes.clear();
+      for (int i = 0; i < nodes.length; i++) {
+        Filter.ReturnCode code = nodes[i].evaluate(cell);
+        if (code == Filter.ReturnCode.INCLUDE) {
+          continue;
+        }
+        if (code == Filter.ReturnCode.SEEK_NEXT_USING_HINT) {
+          seekHintNodes.add(nodes[i]);
+          for (int j = i + 1; mergeHints && j < nodes.length; j++) {
+            if (nodes[j].hasHints()
+                && nodes[j].evaluate(cell) == Filter.ReturnCode.SEEK_NEXT_USING_HINT) {
+              seekHintNodes.add(nodes[j]);
+            }
+          }
+        }
+        return code;
+      }
+      return Filter.ReturnCode.INCLUDE;
+    }
+
+    /**
+     * Each node only sees the cells all the previous ones included.
+     */
+    @Override
+    void evaluate(List<? extends Cell> cells, int[] selection, int count,
+        Filter.ReturnCode[] codes) throws IOException {
+      int[] included = Arrays.copyOf(selection, count);
+      for (int n = 0; n < nodes.length && count > 0; n++) {
+        nodes[n].evaluate(cells, included, count, codes);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+          if (codes[included[i]] == Filter.ReturnCode.INCLUDE) {
+            included[kept++] = included[i];
+          }
+        }
+        count = kept;
+      }
+    }
+
+    @Override
+    Cell getNextCellHint(Cell cell, boolean reversed) throws IOException {
+      Cell maxHint = null;
+      for (Node node : seekHintNodes) {
+        Cell hint = node.getNextCellHint(cell, reversed);
+        if (maxHint == null || compareCell(maxHint, hint, reversed) < 0) {
+          maxHint = hint;
+        }
+      }
+      return maxHint;
+    }
+
+    private static int compareCell(Cell a, Cell b, boolean reversed) {
+      int cmp = CellComparator.getInstance().compare(a, b);
+      return reversed ? -1 * cmp : cmp;
+    }
+
+    @Override
+    boolean isStateless() {
+      for (Node node : nodes) {
+        if (!node.isStateless()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    boolean hasHints() {
+      for (Node node : nodes) {
+        if (node.hasHints()) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    boolean onlySkips() {
+      for (Node node : nodes) {
+        if (!node.onlySkips()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "AND" + children;
+    }
+  }
+
+  static final class OrNode extends Node {
+    final List<Node> children;
+    private final Node[] nodes;
+
+    OrNode(List<Node> children) {
+      this.children = children;
+      this.nodes = children.toArray(new Node[children.size()]);
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) throws IOException {
+      for (Node node : nodes) {
+        if (node.evaluate(cell) == Filter.ReturnCode.INCLUDE) {
+          return Filter.ReturnCode.INCLUDE;
+        }
+      }
+      return Filter.ReturnCode.SKIP;
+    }
+
+    /**
+     * Each node only sees the cells none of the previous ones included.
+     */
+    @Override
+    void evaluate(List<? extends Cell> cells, int[] selection, int count,
+        Filter.ReturnCode[] codes) throws IOException {
+      int[] rejected = Arrays.copyOf(selection, count);
+      for (int n = 0; n < nodes.length && count > 0; n++) {
+        nodes[n].evaluate(cells, rejected, count, codes);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+          if (codes[rejected[i]] != Filter.ReturnCode.INCLUDE) {
+            rejected[kept++] = rejected[i];
+          }
+        }
+        count = kept;
+      }
+      for (int i = 0; i < count; i++) {
+        codes[rejected[i]] = Filter.ReturnCode.SKIP;
+      }
+    }
+
+    @Override
+    boolean isStateless() {
+      for (Node node : nodes) {
+        if (!node.isStateless()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    boolean onlySkips() {
+      return true;
+    }
+
+    @Override
+    public String toString() {
+      return "OR" + children;
+    }
+  }
+
+  static final class FamilyNode extends Node {
+    private final Node comparison;
+
+    FamilyNode(Node comparison) {
+      this.comparison = comparison;
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) throws IOException {
+      return cell.getFamilyLength() > 0 ? comparison.evaluate(cell) : Filter.ReturnCode.INCLUDE;
+    }
+
+    @Override
+    boolean onlySkips() {
+      return comparison.onlySkips();
+    }
+
+    @Override
+    public String toString() {
+      return comparison.toString();
+    }
+  }
+
+  /**
+   * A {@link SingleColumnValueFilter} with its value comparison compiled. The state of the row is
+   * kept in the original filter, which the region scanner asks whether to filter the row and
+   * resets between rows.
+   */
+  static final class SingleColumnValueNode extends Node {
+    private final SingleColumnValueFilter filter;
+    private final Node value;
+
+    SingleColumnValueNode(SingleColumnValueFilter filter, Node value) {
+      this.filter = filter;
+      this.value = value;
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) throws IOException {
+      if (filter.matchedColumn) {
+        return Filter.ReturnCode.INCLUDE;
+      } else if (filter.latestVersionOnly && filter.foundColumn) {
+        return Filter.ReturnCode.NEXT_ROW;
+      }
+      if (!CellUtil.matchingColumn(cell, filter.columnFamily, filter.columnQualifier)) {
+        return Filter.ReturnCode.INCLUDE;
+      }
+      filter.foundColumn = true;
+      if (value.evaluate(cell) != Filter.ReturnCode.INCLUDE) {
+        return filter.latestVersionOnly ? Filter.ReturnCode.NEXT_ROW : Filter.ReturnCode.INCLUDE;
+      }
+      filter.matchedColumn = true;
+      return Filter.ReturnCode.INCLUDE;
+    }
+
+    @Override
+    boolean isStateless() {
+      return false;
+    }
+
+    @Override
+    boolean onlySkips() {
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return Bytes.toStringBinary(filter.columnFamily) + ":"
+          + Bytes.toStringBinary(filter.columnQualifier) + " " + value;
+    }
+  }
+
+  /**
+   * A stateless filter asking to seek using a hint, which is called as is.
+   */
+  static final class HintNode extends Node {
+    private final Filter filter;
+
+    HintNode(Filter filter) {
+      this.filter = filter;
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) throws IOException {
+      return filter.filterCell(cell);
+    }
+
+    @Override
+    Cell getNextCellHint(Cell cell, boolean reversed) throws IOException {
+      return filter.getNextCellHint(cell);
+    }
+
+    @Override
+    boolean hasHints() {
+      return true;
+    }
+
+    @Override
+    boolean onlySkips() {
+      return false;
+    }
+
+    @Override
+    public String toString() {
+      return filter.toString();
+    }
+  }
+
+  /**
+   * Compares a component of the cell, accepting the comparison results allowed by the operator.
+   * The comparator compares its value to the one of the cell, so a cell is less than the value of
+   * the comparator when the comparison is positive.
+   */
+  static final class ComparisonNode extends Node {
+    private final Component component;
+    private final ByteArrayComparable comparator;
+    private final Filter.ReturnCode rejection;
+    private final boolean acceptLess;
+    private final boolean acceptEqual;
+    private final boolean acceptGreater;
+    private final CompareOperator op;
+
+    ComparisonNode(Component component, CompareOperator op, ByteArrayComparable comparator,
+        Filter.ReturnCode rejection) {
+      this.component = component;
+      this.comparator = comparator;
+      this.rejection = rejection;
+      this.op = op;
+      this.acceptLess = op == CompareOperator.LESS || op == CompareOperator.LESS_OR_EQUAL
+          || op == CompareOperator.NOT_EQUAL;
+      this.acceptEqual = op == CompareOperator.LESS_OR_EQUAL || op == CompareOperator.EQUAL
+          || op == CompareOperator.GREATER_OR_EQUAL;
+      this.acceptGreater = op == CompareOperator.GREATER || op == CompareOperator.GREATER_OR_EQUAL
+          || op == CompareOperator.NOT_EQUAL;
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) {
+      int compareResult;
+      switch (component) {
+        case FAMILY:
+          compareResult = PrivateCellUtil.compareFamily(cell, comparator);
+          break;
+        case QUALIFIER:
+          compareResult = PrivateCellUtil.compareQualifier(cell, comparator);
+          break;
+        default:
+          compareResult = PrivateCellUtil.compareValue(cell, comparator);
+          break;
+      }
+      boolean accepted = compareResult > 0 ? acceptLess
+          : compareResult == 0 ? acceptEqual : acceptGreater;
+      return accepted ? Filter.ReturnCode.INCLUDE : rejection;
+    }
+
+    @Override
+    boolean onlySkips() {
+      return rejection == Filter.ReturnCode.SKIP;
+    }
+
+    @Override
+    public String toString() {
+      return component + " " + op + " " + comparator.getClass().getSimpleName() + "("
+          + Bytes.toStringBinary(comparator.getValue()) + ")";
+    }
+  }
+
+  /**
+   * Binary equality of a component of the cell, with the lengths compared first.
+   */
+  static final class BytesEqualNode extends Node {
+    private final Component component;
+    private final byte[] value;
+    private final boolean equal;
+    private final Filter.ReturnCode rejection;
+
+    BytesEqualNode(Component component, byte[] value, boolean equal,
+        Filter.ReturnCode rejection) {
+      this.component = component;
+      this.value = value;
+      this.equal = equal;
+      this.rejection = rejection;
+    }
+
+    @Override
+    Filter.ReturnCode evaluate(Cell cell) {
+      return matches(cell) == equal ? Filter.ReturnCode.INCLUDE : rejection;
+    }
+
+    private boolean matches(Cell cell) {
+      int length;
+      switch (component) {
+        case FAMILY:
+          length = cell.getFamilyLength();
+          if (length != value.length) {
+            return false;
+          }
+          if (cell instanceof ByteBufferExtendedCell) {
+            return ByteBufferUtils.equals(((ByteBufferExtendedCell) cell).getFamilyByteBuffer(),
+              ((ByteBufferExtendedCell) cell).getFamilyPosition(), length, value, 0, length);
+          }
+          return Bytes.equals(cell.getFamilyArray(), cell.getFamilyOffset(), length, value, 0,
+            length);
+        case QUALIFIER:
+          length = cell.getQualifierLength();
+          if (length != value.length) {
+            return false;
+          }
+          if (cell instanceof ByteBufferExtendedCell) {
+            return ByteBufferUtils.equals(((ByteBufferExtendedCell) cell).getQualifierByteBuffer(),
+              ((ByteBufferExtendedCell) cell).getQualifierPosition(), length, value, 0, length);
+          }
+          return Bytes.equals(cell.getQualifierArray(), cell.getQualifierOffset(), length, value,
+            0, length);
+        default:
+          length = cell.getValueLength();
+          if (length != value.length) {
+            return false;
+          }
+          if (cell instanceof ByteBufferExtendedCell) {
+            return ByteBufferUtils.equals(((ByteBufferExtendedCell) cell).getValueByteBuffer(),
+              ((ByteBufferExtendedCell) cell).getValuePosition(), length, value, 0, length);
+          }
+          return Bytes.equals(cell.getValueArray(), cell.getValueOffset(), length, value, 0,
+            length);
+      }
+    }
+
+    @Override
+    boolean onlySkips() {
+      return rejection == Filter.ReturnCode.SKIP;
+    }
+
+    @Override
+    public String toString() {
+      return component + (equal ? " == " : " != ") + Bytes.toStringBinary(value);
+    }
+  }
+
+  /**
+   * The compiled form of a filter tree. Only {@link #filterCell(Cell)} and
+   * {@link #getNextCellHint(Cell)} do something: the compiled filters do not act on rows.
+   * Serialized as the original filter, and compiled again when deserialized.
+   */
+  public static final class CompiledFilter extends FilterBase {
+    private final Node root;
+    private final Filter original;
+
+    CompiledFilter(Node root, Filter original) {
+      this.root = root;
+      this.original = original;
+    }
+
+    @Override
+    public ReturnCode filterCell(Cell c) throws IOException {
+      return root.evaluate(c);
+    }
+
+    @Override
+    public Cell getNextCellHint(Cell currentCell) throws IOException {
+      return root.getNextCellHint(currentCell, isReversed());
+    }
+
+    /**
+     * @return true if {@link #filterCells(List, Filter.ReturnCode[])} can be used, that is if no
+     *         compiled filter keeps state or asks to seek using a hint
+     */
+    public boolean canFilterCells() {
+      return root.isStateless() && !root.hasHints();
+    }
+
+    /**
+     * Filters a batch of cells, such as the cells of a decoded block, with the same decisions as
+     * {@link #filterCell(Cell)} for each of them. Each node of the tree is visited once for the
+     * whole batch, and only evaluates the cells the previous nodes left undecided.
+     * @param codes receives the return code of each cell, at the same index
+     * @throws IllegalStateException if the filter cannot be evaluated over a batch
+     * @see #canFilterCells()
+     */
+    public void filterCells(List<? extends Cell> cells, ReturnCode[] codes) throws IOException {
+      if (!canFilterCells()) {
+        throw new IllegalStateException("Cannot filter a batch of cells with " + this);
+      }
+      int[] selection = new int[cells.size()];
+      for (int i = 0; i < selection.length; i++) {
+        selection[i] = i;
+      }
+      root.evaluate(cells, selection, selection.length, codes);
+    }
+
+    /**
+     * @return the filter this one was compiled from
+     */
+    Filter getOriginal() {
+      return original;
+    }
+
+    /**
+     * @return The filter serialized using pb
+     */
+    @Override
+    public byte[] toByteArray() throws IOException {
+      return ProtobufUtil.toFilter(original).toByteArray();
+    }
+
+    /**
+     * @param pbBytes A pb serialized {@link CompiledFilter} instance
+     * @return the original filter compiled again, or as is if it cannot be compiled anymore
+     * @throws DeserializationException
+     * @see #toByteArray
+     */
+    public static Filter parseFrom(final byte[] pbBytes) throws DeserializationException {
+      FilterProtos.Filter proto;
+      try {
+        proto = FilterProtos.Filter.parseFrom(pbBytes);
+      } catch (InvalidProtocolBufferException e) {
+        throw new DeserializationException(e);
+      }
+      try {
+        return compile(ProtobufUtil.toFilter(proto));
+      } catch (IOException ioe) {
+        throw new DeserializationException(ioe);
+      }
+    }
+
+    /**
+     * @param o the other filter to compare with
+     * @return true if and only if the original filters are equal in their serialized fields
+     */
+    @Override
+    boolean areSerializedFieldsEqual(Filter o) {
+      if (o == this) {
+        return true;
+      }
+      if (!(o instanceof CompiledFilter)) {
+        return false;
+      }
+      return original.areSerializedFieldsEqual(((CompiledFilter) o).original);
+    }
+
+    @Override
+    public String toString() {
+      return "CompiledFilter " + root;
+    }
+  }
+}
@@ -42,6 +42,7 @@ import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -58,6 +59,7 @@ import org.slf4j.LoggerFactory;
 import org.apache.hadoop.hbase.client.MetricsConnection;
 import org.apache.hadoop.hbase.codec.Codec;
 import org.apache.hadoop.hbase.codec.KeyValueCodec;
+import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.protobuf.generated.AuthenticationProtos.TokenIdentifier.Kind;
 import org.apache.hadoop.hbase.security.User;
 import org.apache.hadoop.hbase.security.UserProvider;
@@ -262,6 +264,27 @@ public abstract class AbstractRpcClient<T extends RpcConnection> implements RpcC
     return tcpNoDelay;
   }
 
+  /**
+   * @param conf configuration
+   * @return The compression the servers may compress response cell blocks with, or null if none
+   *         or an unknown one is configured.
+   */
+  static Compression.Algorithm getCellBlockResponseCompression(Configuration conf) {
+    String name = conf.get(CELL_BLOCK_RESPONSE_COMPRESSION_KEY, null);
+    if (name == null || name.isEmpty()) {
+      return null;
+    }
+    Compression.Algorithm compression;
+    try {
+      compression = Compression.getCompressionAlgorithmByName(name.toLowerCase(Locale.ROOT));
+    } catch (IllegalArgumentException e) {
+      LOG.warn("Unknown {} {}, response cell blocks will not be compressed",
+        CELL_BLOCK_RESPONSE_COMPRESSION_KEY, name);
+      return null;
+    }
+    return compression != Compression.Algorithm.NONE ? compression : null;
+  }
+
   /**
    * Encapsulate the ugly casting and RuntimeException conversion in private method.
    * @param conf configuration
@@ -698,8 +698,13 @@ class BlockingRpcConnection extends RpcConnection implements Runnable {
           int size = responseHeader.getCellBlockMeta().getLength();
           byte[] cellBlock = new byte[size];
           IOUtils.readFully(this.in, cellBlock, 0, cellBlock.length);
-          cellBlockScanner = this.rpcClient.cellBlockBuilder.createCellScanner(this.codec,
-            this.compressor, cellBlock);
+          if (responseHeader.getCellBlockMeta().getCompressed()) {
+            cellBlockScanner = this.rpcClient.cellBlockBuilder.createCellScanner(this.codec,
+              this.cellBlockResponseCompression, cellBlock);
+          } else {
+            cellBlockScanner = this.rpcClient.cellBlockBuilder.createCellScanner(this.codec,
+              this.compressor, cellBlock);
+          }
         }
         call.setResponse(value, cellBlockScanner);
         call.callStats.setResponseSizeBytes(totalSize);
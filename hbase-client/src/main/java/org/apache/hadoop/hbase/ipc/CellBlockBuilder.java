@@ -27,6 +27,7 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.hadoop.conf.Configurable;
@@ -42,8 +43,10 @@ import org.apache.hadoop.hbase.io.ByteBuffInputStream;
 import org.apache.hadoop.hbase.io.ByteBufferInputStream;
 import org.apache.hadoop.hbase.io.ByteBufferListOutputStream;
 import org.apache.hadoop.hbase.io.ByteBufferOutputStream;
+import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.util.ByteBufferUtils;
 import org.apache.hadoop.hbase.util.ClassSize;
 import org.apache.hadoop.io.compress.CodecPool;
 import org.apache.hadoop.io.compress.CompressionCodec;
@@ -253,6 +256,60 @@ class CellBlockBuilder {
     return codec.getDecoder(new ByteArrayInputStream(cellBlock));
   }
 
+  /**
+   * Compresses an encoded cell block, for a response to a client which negotiated
+   * <code>compression</code>. Unlike the <code>CompressionCodec</code> variants the block is
+   * compressed as a whole once it is built, so small blocks can be left alone.
+   * @param compression to compress with
+   * @param cellBlock buffers holding the cell block, flipped and ready for reading
+   * @param cellBlockSize total size of <code>cellBlock</code>
+   * @return the compressed cell block, flipped and ready for reading, or null if it is not
+   *         smaller than <code>cellBlockSize</code>
+   * @throws IOException if compressing fails
+   */
+  public ByteBuffer compressCellBlock(Compression.Algorithm compression, List<ByteBuffer> cellBlock,
+      int cellBlockSize) throws IOException {
+    ByteBufferOutputStream bbos = new ByteBufferOutputStream(cellBlockSize / 2);
+    Compressor poolCompressor = compression.getCompressor();
+    try {
+      OutputStream os = compression.createCompressionStream(bbos, poolCompressor, 0);
+      for (ByteBuffer bb : cellBlock) {
+        ByteBufferUtils.copyBufferToStream(os, bb, bb.position(), bb.remaining());
+      }
+      os.close();
+    } finally {
+      compression.returnCompressor(poolCompressor);
+    }
+    return bbos.size() < cellBlockSize ? bbos.getByteBuffer() : null;
+  }
+
+  /**
+   * @param codec to use for cellblock
+   * @param compression the cell block was compressed with by
+   *          {@link #compressCellBlock(Compression.Algorithm, List, int)}
+   * @param cellBlock to decode
+   * @return CellScanner to work against the content of <code>cellBlock</code>
+   * @throws IOException if decoding fails
+   */
+  public CellScanner createCellScanner(Codec codec, Compression.Algorithm compression,
+      byte[] cellBlock) throws IOException {
+    if (compression == null) {
+      throw new IOException("Got a compressed cell block without negotiating a compression");
+    }
+    Decompressor poolDecompressor = compression.getDecompressor();
+    try {
+      InputStream is = compression.createDecompressionStream(
+        new ByteArrayInputStream(cellBlock), poolDecompressor, 0);
+      ByteBufferOutputStream bbos =
+          new ByteBufferOutputStream(cellBlock.length * this.cellBlockDecompressionMultiplier);
+      IOUtils.copy(is, bbos);
+      bbos.close();
+      return codec.getDecoder(new ByteBufferInputStream(bbos.getByteBuffer()));
+    } finally {
+      compression.returnDecompressor(poolDecompressor);
+    }
+  }
+
   /**
    * @param codec to use for cellblock
    * @param cellBlock ByteBuffer containing the cells written by the Codec. The buffer should be
@@ -177,7 +177,13 @@ class NettyRpcDuplexHandler extends ChannelDuplexHandler {
       // The problem here is that we do not know when to release it.
       byte[] cellBlock = new byte[size];
       buf.readBytes(cellBlock);
-      cellBlockScanner = cellBlockBuilder.createCellScanner(this.codec, this.compressor, cellBlock);
+      if (responseHeader.getCellBlockMeta().getCompressed()) {
+        cellBlockScanner = cellBlockBuilder.createCellScanner(this.codec,
+          conn.cellBlockResponseCompression, cellBlock);
+      } else {
+        cellBlockScanner =
+            cellBlockBuilder.createCellScanner(this.codec, this.compressor, cellBlock);
+      }
     } else {
       cellBlockScanner = null;
     }
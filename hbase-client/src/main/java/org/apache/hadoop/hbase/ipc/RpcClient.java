@@ -40,6 +40,10 @@ public interface RpcClient extends Closeable {
   boolean IPC_CLIENT_FALLBACK_TO_SIMPLE_AUTH_ALLOWED_DEFAULT = false;
   String SPECIFIC_WRITE_THREAD = "hbase.ipc.client.specificThreadForWriting";
   String DEFAULT_CODEC_CLASS = "hbase.client.default.rpc.codec";
+  /**
+   * Compression algorithm, e.g. lz4 or zstd, servers may compress response cell blocks with.
+   */
+  String CELL_BLOCK_RESPONSE_COMPRESSION_KEY = "hbase.client.rpc.cellblock.response.compression";
 
   String SOCKET_TIMEOUT_CONNECT = "hbase.ipc.client.socket.timeout.connect";
   /**
@@ -31,6 +31,7 @@ import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.hbase.codec.Codec;
+import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.protobuf.generated.AuthenticationProtos;
 import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.RPCProtos.ConnectionHeader;
@@ -70,6 +71,9 @@ abstract class RpcConnection {
 
   protected final CompressionCodec compressor;
 
+  // compression the server may compress the cell blocks of responses with
+  protected final Compression.Algorithm cellBlockResponseCompression;
+
   protected final HashedWheelTimer timeoutTimer;
 
   protected final Configuration conf;
@@ -90,6 +94,7 @@ abstract class RpcConnection {
     this.timeoutTimer = timeoutTimer;
     this.codec = codec;
     this.compressor = compressor;
+    this.cellBlockResponseCompression = AbstractRpcClient.getCellBlockResponseCompression(conf);
     this.conf = conf;
 
     UserGroupInformation ticket = remoteId.getTicket().getUGI();
@@ -234,6 +239,9 @@ abstract class RpcConnection {
     if (this.compressor != null) {
       builder.setCellBlockCompressorClass(this.compressor.getClass().getCanonicalName());
     }
+    if (this.codec != null && this.cellBlockResponseCompression != null) {
+      builder.setCellBlockResponseCompression(this.cellBlockResponseCompression.getName());
+    }
     builder.setVersionInfo(ProtobufUtil.getVersionInfo());
     boolean isCryptoAESEnable = conf.getBoolean(CRYPTO_AES_ENABLED_KEY, CRYPTO_AES_ENABLED_DEFAULT);
     // if Crypto AES enable, setup Cipher transformation
@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CallQueueTooBigException;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.RegionTooBusyException;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.backoff.ServerStatistics;
+import org.apache.hadoop.hbase.testclassification.ClientTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ ClientTests.class, SmallTests.class })
+public class TestAdaptiveBatchLimiter {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestAdaptiveBatchLimiter.class);
+
+  private static final ServerName SERVER = ServerName.valueOf("server", 16020, 1);
+
+  private static final long TARGET_LATENCY_NS = 1000;
+
+  private static AdaptiveBatchLimiter limiter() {
+    return new AdaptiveBatchLimiter(10, 100, 4, TARGET_LATENCY_NS, 0.95f);
+  }
+
+  static AdaptiveBatchLimiter.Send send(int size, Runnable run) {
+    return new AdaptiveBatchLimiter.Send() {
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public void run(List<AdaptiveBatchLimiter.Send> coalesced) {
+        assertTrue(coalesced.isEmpty());
+        run.run();
+      }
+    };
+  }
+
+  // Records the sizes of the sends which run together.
+  private static AdaptiveBatchLimiter.Send send(int size, List<List<Integer>> runs) {
+    return new AdaptiveBatchLimiter.Send() {
+
+      @Override
+      public int size() {
+        return size;
+      }
+
+      @Override
+      public void run(List<AdaptiveBatchLimiter.Send> coalesced) {
+        List<Integer> sizes = new ArrayList<>();
+        sizes.add(size);
+        coalesced.forEach(send -> sizes.add(send.size()));
+        runs.add(sizes);
+      }
+    };
+  }
+
+  @Test
+  public void testBatchSize() {
+    AdaptiveBatchLimiter limiter = limiter();
+    assertEquals(100, limiter.getBatchSize(SERVER));
+    limiter.execute(SERVER, send(1, () -> {
+    }));
+    limiter.onComplete(SERVER, TARGET_LATENCY_NS * 2, false);
+    assertEquals(50, limiter.getBatchSize(SERVER));
+    assertEquals(3, limiter.getConcurrency(SERVER));
+    for (int i = 0; i < 10; i++) {
+      limiter.execute(SERVER, send(1, () -> {
+      }));
+      limiter.onComplete(SERVER, TARGET_LATENCY_NS, true);
+    }
+    assertEquals(10, limiter.getBatchSize(SERVER));
+    assertEquals(1, limiter.getConcurrency(SERVER));
+    // fast requests grow the batch size back additively
+    limiter.execute(SERVER, send(1, () -> {
+    }));
+    limiter.onComplete(SERVER, TARGET_LATENCY_NS / 2, false);
+    assertEquals(20, limiter.getBatchSize(SERVER));
+    // a request which was not sent does not change anything
+    limiter.execute(SERVER, send(1, () -> {
+    }));
+    limiter.release(SERVER);
+    assertEquals(20, limiter.getBatchSize(SERVER));
+  }
+
+  @Test
+  public void testConcurrency() {
+    AdaptiveBatchLimiter limiter = limiter();
+    AtomicInteger sent = new AtomicInteger();
+    for (int i = 0; i < 6; i++) {
+      limiter.execute(SERVER, send(100, sent::incrementAndGet));
+    }
+    assertEquals(4, sent.get());
+    assertEquals(2, limiter.getQueued(SERVER));
+    // an overloaded server gets fewer concurrent requests, so nothing queued is sent
+    limiter.onComplete(SERVER, 0, true);
+    assertEquals(4, sent.get());
+    // the queued requests grow the concurrency back
+    limiter.onComplete(SERVER, 0, false);
+    assertEquals(4, limiter.getConcurrency(SERVER));
+    assertEquals(6, sent.get());
+    assertEquals(0, limiter.getQueued(SERVER));
+  }
+
+  @Test
+  public void testReleaseWithoutRecursion() {
+    AdaptiveBatchLimiter limiter = limiter();
+    for (int i = 0; i < 4; i++) {
+      limiter.execute(SERVER, send(1, () -> {
+      }));
+    }
+    // every queued request fails fast and gives its room back, which lets the next one go
+    int count = 1000;
+    AtomicInteger sent = new AtomicInteger();
+    AtomicInteger minDepth = new AtomicInteger(Integer.MAX_VALUE);
+    AtomicInteger maxDepth = new AtomicInteger();
+    for (int i = 0; i < count; i++) {
+      limiter.execute(SERVER, send(100, () -> {
+        int depth = Thread.currentThread().getStackTrace().length;
+        minDepth.accumulateAndGet(depth, Math::min);
+        maxDepth.accumulateAndGet(depth, Math::max);
+        sent.incrementAndGet();
+        limiter.release(SERVER);
+      }));
+    }
+    assertEquals(count, limiter.getQueued(SERVER));
+    limiter.release(SERVER);
+    assertEquals(count, sent.get());
+    assertEquals(minDepth.get(), maxDepth.get());
+    assertEquals(0, limiter.getQueued(SERVER));
+    assertEquals(3, limiter.getInFlight(SERVER));
+  }
+
+  @Test
+  public void testCoalesce() {
+    // batch size of 10, and one multi request at a time
+    AdaptiveBatchLimiter limiter = new AdaptiveBatchLimiter(10, 10, 1, TARGET_LATENCY_NS, 0.95f);
+    List<List<Integer>> runs = new ArrayList<>();
+    limiter.execute(SERVER, send(10, runs));
+    for (int size : new int[] { 3, 5, 2, 4, 6, 20, 1 }) {
+      limiter.execute(SERVER, send(size, runs));
+    }
+    assertEquals(7, limiter.getQueued(SERVER));
+    // the queued sends go along with the ones before them as long as they fit in the batch size,
+    // and a send larger than the batch size goes alone
+    for (int i = 0; i < 4; i++) {
+      limiter.onComplete(SERVER, TARGET_LATENCY_NS, false);
+    }
+    assertEquals(Arrays.asList(Arrays.asList(10), Arrays.asList(3, 5, 2), Arrays.asList(4, 6),
+      Arrays.asList(20), Arrays.asList(1)), runs);
+    assertEquals(0, limiter.getQueued(SERVER));
+    assertEquals(1, limiter.getInFlight(SERVER));
+  }
+
+  @Test
+  public void testOverloadSignals() {
+    AdaptiveBatchLimiter limiter = limiter();
+    assertTrue(AdaptiveBatchLimiter.isOverloadError(new CallQueueTooBigException()));
+    assertTrue(AdaptiveBatchLimiter.isOverloadError(new RegionTooBusyException("busy")));
+    assertFalse(AdaptiveBatchLimiter.isOverloadError(new DoNotRetryRegionException()));
+    assertFalse(AdaptiveBatchLimiter.isOverloadError(null));
+
+    byte[] region = Bytes.toBytes("region");
+    ServerStatistics stats = new ServerStatistics();
+    assertFalse(limiter.isLoaded(null, region));
+    assertFalse(limiter.isLoaded(stats, region));
+    stats.update(region, new RegionLoadStats(10, 50, 0));
+    assertFalse(limiter.isLoaded(stats, region));
+    stats.update(region, new RegionLoadStats(90, 50, 0));
+    assertTrue(limiter.isLoaded(stats, region));
+    stats.update(region, new RegionLoadStats(10, 96, 0));
+    assertTrue(limiter.isLoaded(stats, region));
+    stats.update(region, new RegionLoadStats(10, 50, 85));
+    assertTrue(limiter.isLoaded(stats, region));
+  }
+
+  @Test
+  public void testCreate() {
+    Configuration conf = HBaseConfiguration.create();
+    assertNull(AdaptiveBatchLimiter.create(conf));
+    conf.setBoolean(ConnectionConfiguration.BATCH_ADAPTIVE, true);
+    conf.setInt(ConnectionConfiguration.BATCH_ADAPTIVE_MAX_SIZE, 64);
+    assertEquals(64, AdaptiveBatchLimiter.create(conf).getBatchSize(SERVER));
+  }
+}
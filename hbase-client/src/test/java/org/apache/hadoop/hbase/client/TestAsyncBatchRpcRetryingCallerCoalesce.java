@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.DoNotRetryIOException;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.ipc.HBaseRpcController;
+import org.apache.hadoop.hbase.security.UserProvider;
+import org.apache.hadoop.hbase.testclassification.ClientTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.RpcCallback;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.ResponseConverter;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ClientService;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.RegionActionResult;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ResultOrException;
+
+/**
+ * Tests that the small batches queued for a region server by the {@link AdaptiveBatchLimiter} are
+ * sent together in one multi request, and that each batch still gets its own results back.
+ */
+@Category({ ClientTests.class, MediumTests.class })
+public class TestAsyncBatchRpcRetryingCallerCoalesce {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestAsyncBatchRpcRetryingCallerCoalesce.class);
+
+  private static final TableName TABLE_NAME = TableName.valueOf("test");
+
+  private static final HRegionLocation LOC = new HRegionLocation(
+    RegionInfoBuilder.newBuilder(TABLE_NAME).build(), ServerName.valueOf("rs", 16010, 12345));
+
+  private static final byte[] FAMILY = Bytes.toBytes("cf");
+
+  private static final int BATCHES = 3;
+
+  private static final int PUTS = 2;
+
+  private static final byte[] FAILED_ROW = row(2, 0);
+
+  private final List<ClientProtos.MultiRequest> reqs =
+    Collections.synchronizedList(new ArrayList<>());
+
+  private final AtomicReference<RpcCallback<ClientProtos.MultiResponse>> firstDone =
+    new AtomicReference<>();
+
+  private AsyncConnectionImpl conn;
+
+  private static byte[] row(int batch, int put) {
+    return Bytes.toBytes("row-" + batch + "-" + put);
+  }
+
+  private static List<Put> puts(int batch) {
+    return IntStream.range(0, PUTS)
+      .mapToObj(i -> new Put(row(batch, i)).addColumn(FAMILY, FAMILY, Bytes.toBytes(i)))
+      .collect(Collectors.toList());
+  }
+
+  // Answers every put with an empty result, but the one of FAILED_ROW with an error.
+  private static ClientProtos.MultiResponse respond(ClientProtos.MultiRequest req) {
+    ClientProtos.MultiResponse.Builder resp = ClientProtos.MultiResponse.newBuilder();
+    for (ClientProtos.RegionAction regionAction : req.getRegionActionList()) {
+      RegionActionResult.Builder result = RegionActionResult.newBuilder();
+      for (ClientProtos.Action action : regionAction.getActionList()) {
+        if (Bytes.equals(action.getMutation().getRow().toByteArray(), FAILED_ROW)) {
+          result.addResultOrException(
+            ResponseConverter.buildActionResult(new DoNotRetryIOException("Inject error"))
+              .setIndex(action.getIndex()));
+        } else {
+          result.addResultOrException(ResultOrException.newBuilder().setIndex(action.getIndex())
+            .setResult(ProtobufUtil.toResult(new Result())));
+        }
+      }
+      resp.addRegionActionResult(result);
+    }
+    return resp.build();
+  }
+
+  @Before
+  public void setUp() throws IOException {
+    Configuration conf = HBaseConfiguration.create();
+    // ten puts per multi request, and one multi request at a time
+    conf.setBoolean(ConnectionConfiguration.BATCH_ADAPTIVE, true);
+    conf.setInt(ConnectionConfiguration.BATCH_ADAPTIVE_MIN_SIZE, 10);
+    conf.setInt(ConnectionConfiguration.BATCH_ADAPTIVE_MAX_SIZE, 10);
+    conf.setInt(ConnectionConfiguration.BATCH_ADAPTIVE_MAX_CONCURRENCY, 1);
+    conf.setLong(ConnectionConfiguration.BATCH_ADAPTIVE_TARGET_LATENCY_MS, 60000);
+    ClientService.Interface stub = mock(ClientService.Interface.class);
+    doAnswer(invocation -> {
+      ClientProtos.MultiRequest req = invocation.getArgument(1);
+      RpcCallback<ClientProtos.MultiResponse> done = invocation.getArgument(2);
+      reqs.add(req);
+      // hold the first multi request, so the batches sent meanwhile are queued
+      if (!firstDone.compareAndSet(null, done)) {
+        done.run(respond(req));
+      }
+      return null;
+    }).when(stub).multi(any(HBaseRpcController.class), any(ClientProtos.MultiRequest.class), any());
+    conn = new AsyncConnectionImpl(conf, new DoNothingAsyncRegistry(conf), "test", null,
+      UserProvider.instantiate(conf).getCurrent()) {
+
+      @Override
+      AsyncRegionLocator getLocator() {
+        AsyncRegionLocator locator = mock(AsyncRegionLocator.class);
+        doAnswer(invocation -> CompletableFuture.completedFuture(LOC)).when(locator)
+          .getRegionLocation(any(TableName.class), any(byte[].class), any(RegionLocateType.class),
+            anyLong());
+        doAnswer(invocation -> CompletableFuture.completedFuture(LOC)).when(locator)
+          .getRegionLocation(any(TableName.class), any(byte[].class), anyInt(),
+            any(RegionLocateType.class), anyLong());
+        doAnswer(invocation -> CompletableFuture.completedFuture(null)).when(locator)
+          .prefetchRegionLocations(any(TableName.class), anyList(), anyLong());
+        return locator;
+      }
+
+      @Override
+      ClientService.Interface getRegionServerStub(ServerName serverName) throws IOException {
+        return stub;
+      }
+    };
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    conn.close();
+  }
+
+  @Test
+  public void testCoalesce() {
+    AsyncTable<?> table = conn.getTable(TABLE_NAME);
+    List<CompletableFuture<Void>> first = table.put(puts(0));
+    assertEquals(1, reqs.size());
+    List<List<CompletableFuture<Void>>> batches = IntStream.rangeClosed(1, BATCHES)
+      .mapToObj(i -> table.put(puts(i))).collect(Collectors.toList());
+    assertEquals(1, reqs.size());
+    // the queued batches go in one multi request once the first one is done, each in region
+    // actions of its own, as their original indexes overlap
+    firstDone.get().run(respond(reqs.get(0)));
+    assertEquals(2, reqs.size());
+    assertEquals(BATCHES, reqs.get(1).getRegionActionCount());
+    assertEquals(BATCHES * PUTS, reqs.get(1).getRegionActionList().stream()
+      .mapToInt(ClientProtos.RegionAction::getActionCount).sum());
+    first.forEach(CompletableFuture::join);
+    for (int i = 1; i <= BATCHES; i++) {
+      for (int j = 0; j < PUTS; j++) {
+        CompletableFuture<Void> future = batches.get(i - 1).get(j);
+        if (Bytes.equals(row(i, j), FAILED_ROW)) {
+          try {
+            future.join();
+            fail("The put of the failed row should fail");
+          } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof RetriesExhaustedException);
+          }
+        } else {
+          future.join();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,156 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.testclassification.ClientTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests that the multi requests of a batch which fail before being sent give their room back to
+ * the {@link AdaptiveBatchLimiter}, and let the queued ones go without nesting a call deeper for
+ * each of them.
+ */
+@Category({ ClientTests.class, SmallTests.class })
+public class TestAsyncBatchRpcRetryingCallerLimit {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestAsyncBatchRpcRetryingCallerLimit.class);
+
+  private static final TableName TABLE_NAME = TableName.valueOf("test");
+
+  private static final ServerName SERVER = ServerName.valueOf("server", 16020, 1);
+
+  private static final byte[] FAMILY = Bytes.toBytes("cf");
+
+  private static final int COUNT = 1000;
+
+  private AdaptiveBatchLimiter limiter;
+
+  private AsyncConnectionImpl conn;
+
+  private final AtomicInteger stubs = new AtomicInteger();
+
+  private final AtomicInteger minDepth = new AtomicInteger(Integer.MAX_VALUE);
+
+  private final AtomicInteger maxDepth = new AtomicInteger();
+
+  @Before
+  public void setUp() throws IOException {
+    // one put per multi request, and one multi request at a time
+    limiter = new AdaptiveBatchLimiter(1, 1, 1, TimeUnit.SECONDS.toNanos(1), 0.95f);
+    HRegionLocation loc = new HRegionLocation(RegionInfoBuilder.newBuilder(TABLE_NAME).build(),
+      SERVER);
+    AsyncRegionLocator locator = mock(AsyncRegionLocator.class);
+    when(locator.prefetchRegionLocations(any(), any(), anyLong()))
+      .thenReturn(CompletableFuture.completedFuture(null));
+    when(locator.getRegionLocation(any(), any(), any(), anyLong()))
+      .thenReturn(CompletableFuture.completedFuture(loc));
+    conn = mock(AsyncConnectionImpl.class);
+    when(conn.getLocator()).thenReturn(locator);
+    when(conn.getBatchLimiter()).thenReturn(Optional.of(limiter));
+    when(conn.getStatisticsTracker()).thenReturn(Optional.empty());
+    when(conn.getConnectionMetrics()).thenReturn(Optional.empty());
+    when(conn.getRegionServerStub(any())).then(invocation -> {
+      int depth = Thread.currentThread().getStackTrace().length;
+      minDepth.accumulateAndGet(depth, Math::min);
+      maxDepth.accumulateAndGet(depth, Math::max);
+      stubs.incrementAndGet();
+      throw new IOException("Inject error");
+    });
+  }
+
+  private List<CompletableFuture<Void>> batch(long operationTimeoutNs) {
+    List<Put> puts = IntStream.range(0, COUNT)
+      .mapToObj(i -> new Put(Bytes.toBytes(i)).addColumn(FAMILY, FAMILY, Bytes.toBytes(i)))
+      .collect(Collectors.toList());
+    return new AsyncBatchRpcRetryingCaller<Void>(AsyncConnectionImpl.RETRY_TIMER, conn, TABLE_NAME,
+      puts, TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.MILLISECONDS.toNanos(100), 1,
+      operationTimeoutNs, TimeUnit.SECONDS.toNanos(10), Integer.MAX_VALUE).call();
+  }
+
+  private void assertAllFailed(List<CompletableFuture<Void>> futures) throws Exception {
+    for (CompletableFuture<Void> future : futures) {
+      try {
+        future.get();
+        fail("The put should fail");
+      } catch (ExecutionException e) {
+        assertTrue(e.getCause() instanceof RetriesExhaustedException);
+      }
+    }
+    // all the room is given back
+    assertEquals(0, limiter.getQueued(SERVER));
+    assertEquals(0, limiter.getInFlight(SERVER));
+  }
+
+  @Test
+  public void testStubFailure() throws Exception {
+    // take the room of the server, so all the multi requests of the batch are queued
+    limiter.execute(SERVER, TestAdaptiveBatchLimiter.send(1, () -> {
+    }));
+    List<CompletableFuture<Void>> futures = batch(0);
+    assertEquals(COUNT, limiter.getQueued(SERVER));
+    assertEquals(0, stubs.get());
+    limiter.release(SERVER);
+    assertAllFailed(futures);
+    assertEquals(COUNT, stubs.get());
+    assertEquals(minDepth.get(), maxDepth.get());
+  }
+
+  @Test
+  public void testOperationTimeout() throws Exception {
+    long operationTimeoutNs = TimeUnit.MILLISECONDS.toNanos(500);
+    limiter.execute(SERVER, TestAdaptiveBatchLimiter.send(1, () -> {
+    }));
+    long startNs = System.nanoTime();
+    List<CompletableFuture<Void>> futures = batch(operationTimeoutNs);
+    assertEquals(COUNT, limiter.getQueued(SERVER));
+    // the queued multi requests are only let go once the operation has timed out
+    TimeUnit.NANOSECONDS.sleep(operationTimeoutNs - (System.nanoTime() - startNs));
+    Thread.sleep(100);
+    limiter.release(SERVER);
+    assertAllFailed(futures);
+    assertEquals(0, stubs.get());
+  }
+}
@@ -23,6 +23,7 @@ import static org.apache.hadoop.hbase.NamespaceDescriptor.SYSTEM_NAMESPACE_NAME_
 import static org.junit.Assert.assertNotNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.atLeast;
@@ -198,6 +199,8 @@ public class TestAsyncTableRpcPriority {
           any(RegionLocateType.class), anyLong());
         doAnswer(answer).when(locator).getRegionLocation(any(TableName.class), any(byte[].class),
           anyInt(), any(RegionLocateType.class), anyLong());
+        doAnswer(invocation -> CompletableFuture.completedFuture(null)).when(locator)
+          .prefetchRegionLocations(any(TableName.class), anyList(), anyLong());
         return locator;
       }
 
@@ -0,0 +1,234 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.RegionLocations;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.testclassification.ClientTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ ClientTests.class, SmallTests.class })
+public class TestHedgedReadPolicy {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestHedgedReadPolicy.class);
+
+  private static final ServerName PRIMARY = ServerName.valueOf("primary", 16020, 1);
+  private static final ServerName SLOW = ServerName.valueOf("slow", 16020, 1);
+  private static final ServerName FAST = ServerName.valueOf("fast", 16020, 1);
+
+  private static RegionLocations locations(ServerName... servers) {
+    RegionInfo primary = RegionInfoBuilder.newBuilder(TableName.valueOf("test")).build();
+    HRegionLocation[] locs = new HRegionLocation[servers.length];
+    for (int i = 0; i < servers.length; i++) {
+      locs[i] = new HRegionLocation(RegionReplicaUtil.getRegionInfoForReplica(primary, i),
+        servers[i]);
+    }
+    return new RegionLocations(locs);
+  }
+
+  @Test
+  public void testDelayFollowsPercentile() {
+    HedgedReadPolicy policy = new HedgedReadPolicy(0.95, 10);
+    for (int i = 1; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      policy.record(PRIMARY, i);
+    }
+    // not enough latencies yet
+    assertEquals(12345, policy.getDelayNs(PRIMARY, 12345));
+    assertEquals(12345, policy.getDelayNs(null, 12345));
+    for (int i = 0; i < HedgedReadPolicy.WINDOW_SIZE; i++) {
+      policy.record(PRIMARY, i % 10 == 0 ? 50000 : 1000);
+    }
+    assertEquals(50000, policy.getDelayNs(PRIMARY, 12345));
+    // the old latencies are forgotten
+    for (int i = 0; i < HedgedReadPolicy.WINDOW_SIZE; i++) {
+      policy.record(PRIMARY, 2000);
+    }
+    assertEquals(2000, policy.getDelayNs(PRIMARY, 12345));
+  }
+
+  @Test
+  public void testBudget() {
+    HedgedReadPolicy policy = new HedgedReadPolicy(0.95, 10);
+    // the initial burst
+    int acquired = 0;
+    while (policy.tryAcquireBackupRequest()) {
+      acquired++;
+    }
+    assertEquals(10, acquired);
+    for (int i = 0; i < 9; i++) {
+      policy.onRequest();
+    }
+    assertFalse(policy.tryAcquireBackupRequest());
+    policy.onRequest();
+    assertTrue(policy.tryAcquireBackupRequest());
+    assertFalse(policy.tryAcquireBackupRequest());
+  }
+
+  @Test
+  public void testSelectSecondaryReplica() {
+    HedgedReadPolicy policy = new HedgedReadPolicy(0.95, 10);
+    RegionLocations locs = locations(PRIMARY, SLOW, FAST);
+    // we know nothing about either secondary
+    assertEquals(1, policy.selectSecondaryReplica(locs));
+    for (int i = 0; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      policy.record(SLOW, 10000);
+    }
+    assertEquals(2, policy.selectSecondaryReplica(locs));
+    for (int i = 0; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      policy.record(FAST, 100);
+    }
+    assertEquals(2, policy.selectSecondaryReplica(locs));
+    assertEquals(-1, policy.selectSecondaryReplica(locations(PRIMARY)));
+  }
+
+  @Test
+  public void testTrack() {
+    HedgedReadPolicy policy = new HedgedReadPolicy(0, 10);
+    for (int i = 0; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      policy.track(future, PRIMARY, System.nanoTime(), true);
+      if (i % 2 == 0) {
+        future.complete(null);
+      } else {
+        // the backup request won
+        future.cancel(false);
+      }
+      // the primary won
+      CompletableFuture<Void> cancelled = new CompletableFuture<>();
+      policy.track(cancelled, FAST, System.nanoTime(), false);
+      cancelled.cancel(false);
+    }
+    CompletableFuture<Void> failed = new CompletableFuture<>();
+    policy.track(failed, SLOW, System.nanoTime(), false);
+    failed.completeExceptionally(new Exception("failed"));
+    assertTrue(policy.getDelayNs(PRIMARY, -1) >= 0);
+    assertEquals(-1, policy.getDelayNs(FAST, -1));
+    assertEquals(-1, policy.getDelayNs(SLOW, -1));
+  }
+
+  private static final class Requests implements Function<Integer, CompletableFuture<String>> {
+
+    private final CompletableFuture<String>[] futures;
+
+    private final BlockingQueue<Integer> requested = new LinkedBlockingQueue<>();
+
+    @SuppressWarnings("unchecked")
+    Requests(int replicas) {
+      futures = new CompletableFuture[replicas];
+      for (int i = 0; i < replicas; i++) {
+        futures[i] = new CompletableFuture<>();
+      }
+    }
+
+    @Override
+    public CompletableFuture<String> apply(Integer replicaId) {
+      requested.add(replicaId);
+      return futures[replicaId];
+    }
+
+    Integer nextRequested() throws InterruptedException {
+      return requested.poll(10, TimeUnit.SECONDS);
+    }
+  }
+
+  private static CompletableFuture<String> timelineConsistentRead(RegionLocations locs,
+      Requests requests, HedgedReadPolicy policy) {
+    AsyncRegionLocator locator = mock(AsyncRegionLocator.class);
+    when(locator.getRegionLocations(any(), any(), any(), anyBoolean(), anyLong()))
+        .thenReturn(CompletableFuture.completedFuture(locs));
+    byte[] row = Bytes.toBytes("row");
+    return ConnectionUtils.timelineConsistentRead(locator, TableName.valueOf("test"),
+      new Get(row).setConsistency(Consistency.TIMELINE), row, RegionLocateType.CURRENT, requests,
+      TimeUnit.SECONDS.toNanos(10), 0, AsyncConnectionImpl.RETRY_TIMER, Optional.empty(),
+      Optional.of(policy));
+  }
+
+  @Test
+  public void testTimelineConsistentRead() throws Exception {
+    HedgedReadPolicy policy = new HedgedReadPolicy(0.95, 10);
+    for (int i = 0; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      policy.record(PRIMARY, TimeUnit.MILLISECONDS.toNanos(50));
+      policy.record(SLOW, TimeUnit.SECONDS.toNanos(10));
+      policy.record(FAST, TimeUnit.MILLISECONDS.toNanos(1));
+    }
+    // the primary takes longer than usual, the backup request only goes to the fastest secondary
+    Requests requests = new Requests(3);
+    CompletableFuture<String> future =
+        timelineConsistentRead(locations(PRIMARY, SLOW, FAST), requests, policy);
+    assertEquals(0, requests.nextRequested().intValue());
+    assertEquals(2, requests.nextRequested().intValue());
+    requests.futures[2].complete("fast");
+    assertEquals("fast", future.get());
+    assertTrue(requests.futures[0].isCancelled());
+    assertTrue(requests.requested.isEmpty());
+  }
+
+  @Test
+  public void testTimelineConsistentReadPrimaryWins() throws Exception {
+    HedgedReadPolicy policy = new HedgedReadPolicy(0.95, 100);
+    for (int i = 0; i < HedgedReadPolicy.MIN_SAMPLES; i++) {
+      // we know nothing about the primary yet, so the backup request is sent right away
+      Requests requests = new Requests(2);
+      CompletableFuture<String> future =
+          timelineConsistentRead(locations(PRIMARY, SLOW), requests, policy);
+      assertEquals(0, requests.nextRequested().intValue());
+      assertEquals(1, requests.nextRequested().intValue());
+      requests.futures[0].complete("primary");
+      assertEquals("primary", future.get());
+      assertTrue(requests.futures[1].isCancelled());
+    }
+    assertTrue(policy.getDelayNs(PRIMARY, -1) >= 0);
+    // the cancelled backup requests say nothing about the secondary
+    assertEquals(-1, policy.getDelayNs(SLOW, -1));
+  }
+
+  @Test
+  public void testCreate() {
+    Configuration conf = HBaseConfiguration.create();
+    assertNull(HedgedReadPolicy.create(conf));
+    conf.setBoolean(ConnectionConfiguration.HEDGED_READ_ADAPTIVE, true);
+    assertTrue(HedgedReadPolicy.create(conf) != null);
+  }
+}
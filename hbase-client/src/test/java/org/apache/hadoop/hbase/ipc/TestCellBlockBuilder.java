@@ -18,10 +18,14 @@
 package org.apache.hadoop.hbase.ipc;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
 import org.apache.commons.lang3.time.StopWatch;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellScanner;
@@ -33,6 +37,7 @@ import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.codec.Codec;
 import org.apache.hadoop.hbase.codec.KeyValueCodec;
 import org.apache.hadoop.hbase.io.SizedCellScanner;
+import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.nio.SingleByteBuff;
 import org.apache.hadoop.hbase.testclassification.ClientTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
@@ -70,6 +75,32 @@ public class TestCellBlockBuilder {
     doBuildCellBlockUndoCellBlock(this.builder, new KeyValueCodec(), new GzipCodec());
   }
 
+  @Test
+  public void testCompressCellBlock() throws IOException {
+    Codec codec = new KeyValueCodec();
+    ByteBuffer bb = builder.buildCellBlock(codec, null,
+      CellUtil.createCellScanner(Arrays.asList(getCells(10)).iterator()));
+    int size = bb.remaining();
+    ByteBuffer compressed = builder.compressCellBlock(Compression.Algorithm.GZ,
+      Collections.singletonList(bb.duplicate()), size);
+    assertTrue(compressed.remaining() < size);
+    byte[] cellBlock = new byte[compressed.remaining()];
+    compressed.get(cellBlock);
+    CellScanner cellScanner = builder.createCellScanner(codec, Compression.Algorithm.GZ, cellBlock);
+    int i = 0;
+    while (cellScanner.advance()) {
+      assertEquals(i, Bytes.toInt(CellUtil.cloneRow(cellScanner.current())));
+      i++;
+    }
+    assertEquals(10, i);
+
+    // random bytes do not compress
+    byte[] random = new byte[64];
+    new Random(1).nextBytes(random);
+    assertNull(builder.compressCellBlock(Compression.Algorithm.GZ,
+      Collections.singletonList(ByteBuffer.wrap(random)), random.length));
+  }
+
   static void doBuildCellBlockUndoCellBlock(final CellBlockBuilder builder, final Codec codec,
       final CompressionCodec compressor) throws IOException {
     doBuildCellBlockUndoCellBlock(builder, codec, compressor, 10, 1, false);
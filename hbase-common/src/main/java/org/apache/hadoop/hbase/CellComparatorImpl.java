@@ -326,8 +326,12 @@ public class CellComparatorImpl implements CellComparator {
       return ignoreSequenceid? diff: Longs.compare(b.getSequenceId(), a.getSequenceId());
     }
 
-    private static int compareRows(byte[] left, int loffset, int llength, byte[] right, int roffset,
-        int rlength) {
+    /**
+     * Compares two <code>hbase:meta</code> rows, i.e. two region names, in the order of the
+     * <code>hbase:meta</code> table: by table, then by start key, then by the rest of the name.
+     */
+    public static int compareRows(byte[] left, int loffset, int llength, byte[] right,
+        int roffset, int rlength) {
       int leftDelimiter = Bytes.searchDelimiterIndex(left, loffset, llength, HConstants.DELIMITER);
       int rightDelimiter = Bytes
           .searchDelimiterIndex(right, roffset, rlength, HConstants.DELIMITER);
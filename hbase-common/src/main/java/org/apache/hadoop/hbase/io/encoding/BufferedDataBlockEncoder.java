@@ -118,6 +118,8 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
     /** We need to store a copy of the key. */
     protected byte[] keyBuffer = HConstants.EMPTY_BYTE_ARRAY;
     protected byte[] tagsBuffer = HConstants.EMPTY_BYTE_ARRAY;
+    /** Where the keys of the returned cells are copied, shared with the other seeker state. */
+    protected KeyArena keyArena;
 
     protected long memstoreTS;
     protected int nextKvOffset;
@@ -241,7 +243,16 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
           tOffset = 0;
         }
       }
-      return new OnheapDecodedCell(Bytes.copy(keyBuffer, 0, this.keyLength),
+      byte[] keyArray;
+      int keyOffset;
+      if (keyArena != null && keyArena.copy(keyBuffer, this.keyLength)) {
+        keyArray = keyArena.getArray();
+        keyOffset = keyArena.getLastOffset();
+      } else {
+        keyArray = Bytes.copy(keyBuffer, 0, this.keyLength);
+        keyOffset = 0;
+      }
+      return new OnheapDecodedCell(keyArray, keyOffset, this.keyLength,
           currentKey.getRowLength(), currentKey.getFamilyOffset(), currentKey.getFamilyLength(),
           currentKey.getQualifierOffset(), currentKey.getQualifierLength(),
           currentKey.getTimestamp(), currentKey.getTypeByte(), valAndTagsBuffer.array(),
@@ -262,15 +273,74 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
           tOffset = 0;
         }
       }
-      return new OffheapDecodedExtendedCell(
-          ByteBuffer.wrap(Bytes.copy(keyBuffer, 0, this.keyLength)), currentKey.getRowLength(),
-          currentKey.getFamilyOffset(), currentKey.getFamilyLength(),
+      ByteBuffer keyBuf;
+      int keyOffset;
+      if (keyArena != null && keyArena.copy(keyBuffer, this.keyLength)) {
+        keyBuf = keyArena.getBuffer();
+        keyOffset = keyArena.getLastOffset();
+      } else {
+        keyBuf = ByteBuffer.wrap(Bytes.copy(keyBuffer, 0, this.keyLength));
+        keyOffset = 0;
+      }
+      return new OffheapDecodedExtendedCell(keyBuf, keyOffset, this.keyLength,
+          currentKey.getRowLength(), currentKey.getFamilyOffset(), currentKey.getFamilyLength(),
           currentKey.getQualifierOffset(), currentKey.getQualifierLength(),
           currentKey.getTimestamp(), currentKey.getTypeByte(), valAndTagsBuffer, vOffset,
           this.valueLength, memstoreTS, tagsBuf, tOffset, this.tagsLength);
     }
   }
 
+  /**
+   * The keys of the cells returned by a seeker. A key is rebuilt in the buffer of the seeker
+   * state, which the next key overwrites, so each returned cell needs a copy of it. The copies
+   * are appended to a shared array instead of allocating one per cell. Once full, an array is
+   * replaced and never written again, as the cells may outlive the seeker.
+   */
+  static final class KeyArena {
+    static final int SIZE = 8 * 1024;
+
+    private byte[] array;
+    private ByteBuffer buffer;
+    private int offset;
+    private int lastOffset;
+
+    /**
+     * @return false if the key is too large to share an array, and was not copied
+     */
+    boolean copy(byte[] key, int length) {
+      if (length > SIZE / 4) {
+        return false;
+      }
+      if (array == null || array.length - offset < length) {
+        array = new byte[SIZE];
+        buffer = null;
+        offset = 0;
+      }
+      System.arraycopy(key, 0, array, offset, length);
+      lastOffset = offset;
+      offset += length;
+      return true;
+    }
+
+    byte[] getArray() {
+      return array;
+    }
+
+    ByteBuffer getBuffer() {
+      if (buffer == null) {
+        buffer = ByteBuffer.wrap(array);
+      }
+      return buffer;
+    }
+
+    /**
+     * @return the offset of the last copied key in the array
+     */
+    int getLastOffset() {
+      return lastOffset;
+    }
+  }
+
   /**
    * Copies only the key part of the keybuffer by doing a deep copy and passes the
    * seeker state members for taking a clone.
@@ -281,9 +351,11 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
   // there. So this has to be an instance of ExtendedCell.
   protected static class OnheapDecodedCell implements ExtendedCell {
     private static final long FIXED_OVERHEAD = ClassSize.align(ClassSize.OBJECT
-        + (3 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_LONG) + (7 * Bytes.SIZEOF_INT)
+        + (3 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_LONG) + (9 * Bytes.SIZEOF_INT)
         + (Bytes.SIZEOF_SHORT) + (2 * Bytes.SIZEOF_BYTE) + (3 * ClassSize.ARRAY));
     private byte[] keyOnlyBuffer;
+    private int keyOffset;
+    private int keyLength;
     private short rowLength;
     private int familyOffset;
     private byte familyLength;
@@ -303,11 +375,26 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
         byte familyLength, int qualOffset, int qualLength, long timeStamp, byte typeByte,
         byte[] valueBuffer, int valueOffset, int valueLen, long seqId, byte[] tagsBuffer,
         int tagsOffset, int tagsLength) {
+      this(keyBuffer, 0, keyBuffer.length, rowLength, familyOffset, familyLength, qualOffset,
+          qualLength, timeStamp, typeByte, valueBuffer, valueOffset, valueLen, seqId, tagsBuffer,
+          tagsOffset, tagsLength);
+    }
+
+    /**
+     * @param keyOffset the offset of the key in keyBuffer, which the family and qualifier offsets
+     *          are relative to
+     */
+    protected OnheapDecodedCell(byte[] keyBuffer, int keyOffset, int keyLength, short rowLength,
+        int familyOffset, byte familyLength, int qualOffset, int qualLength, long timeStamp,
+        byte typeByte, byte[] valueBuffer, int valueOffset, int valueLen, long seqId,
+        byte[] tagsBuffer, int tagsOffset, int tagsLength) {
       this.keyOnlyBuffer = keyBuffer;
+      this.keyOffset = keyOffset;
+      this.keyLength = keyLength;
       this.rowLength = rowLength;
-      this.familyOffset = familyOffset;
+      this.familyOffset = keyOffset + familyOffset;
       this.familyLength = familyLength;
-      this.qualifierOffset = qualOffset;
+      this.qualifierOffset = keyOffset + qualOffset;
       this.qualifierLength = qualLength;
       this.timestamp = timeStamp;
       this.typeByte = typeByte;
@@ -337,7 +424,7 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
 
     @Override
     public int getRowOffset() {
-      return Bytes.SIZEOF_SHORT;
+      return keyOffset + Bytes.SIZEOF_SHORT;
     }
 
     @Override
@@ -412,7 +499,7 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
 
     @Override
     public String toString() {
-      return KeyValue.keyToString(this.keyOnlyBuffer, 0, KeyValueUtil.keyLength(this)) + "/vlen="
+      return KeyValue.keyToString(this.keyOnlyBuffer, keyOffset, keyLength) + "/vlen="
           + getValueLength() + "/seqid=" + seqId;
     }
 
@@ -429,10 +516,10 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
     @Override
     public int write(OutputStream out, boolean withTags) throws IOException {
       int lenToWrite = getSerializedSize(withTags);
-      ByteBufferUtils.putInt(out, keyOnlyBuffer.length);
+      ByteBufferUtils.putInt(out, keyLength);
       ByteBufferUtils.putInt(out, valueLength);
       // Write key
-      out.write(keyOnlyBuffer);
+      out.write(keyOnlyBuffer, keyOffset, keyLength);
       // Write value
       out.write(this.valueBuffer, this.valueOffset, this.valueLength);
       if (withTags && this.tagsLength > 0) {
@@ -479,9 +566,11 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
 
   protected static class OffheapDecodedExtendedCell extends ByteBufferExtendedCell {
     private static final long FIXED_OVERHEAD = ClassSize.align(ClassSize.OBJECT
-        + (3 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_LONG) + (7 * Bytes.SIZEOF_INT)
+        + (3 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_LONG) + (9 * Bytes.SIZEOF_INT)
         + (Bytes.SIZEOF_SHORT) + (2 * Bytes.SIZEOF_BYTE) + (3 * ClassSize.BYTE_BUFFER));
     private ByteBuffer keyBuffer;
+    private int keyOffset;
+    private int keyLength;
     private short rowLength;
     private int familyOffset;
     private byte familyLength;
@@ -501,14 +590,29 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
         byte familyLength, int qualOffset, int qualLength, long timeStamp, byte typeByte,
         ByteBuffer valueBuffer, int valueOffset, int valueLen, long seqId, ByteBuffer tagsBuffer,
         int tagsOffset, int tagsLength) {
+      this(keyBuffer, 0, keyBuffer.capacity(), rowLength, familyOffset, familyLength, qualOffset,
+          qualLength, timeStamp, typeByte, valueBuffer, valueOffset, valueLen, seqId, tagsBuffer,
+          tagsOffset, tagsLength);
+    }
+
+    /**
+     * @param keyOffset the offset of the key in keyBuffer, which the family and qualifier offsets
+     *          are relative to
+     */
+    protected OffheapDecodedExtendedCell(ByteBuffer keyBuffer, int keyOffset, int keyLength,
+        short rowLength, int familyOffset, byte familyLength, int qualOffset, int qualLength,
+        long timeStamp, byte typeByte, ByteBuffer valueBuffer, int valueOffset, int valueLen,
+        long seqId, ByteBuffer tagsBuffer, int tagsOffset, int tagsLength) {
       // The keyBuffer is always onheap
       assert keyBuffer.hasArray();
       assert keyBuffer.arrayOffset() == 0;
       this.keyBuffer = keyBuffer;
+      this.keyOffset = keyOffset;
+      this.keyLength = keyLength;
       this.rowLength = rowLength;
-      this.familyOffset = familyOffset;
+      this.familyOffset = keyOffset + familyOffset;
       this.familyLength = familyLength;
-      this.qualifierOffset = qualOffset;
+      this.qualifierOffset = keyOffset + qualOffset;
       this.qualifierLength = qualLength;
       this.timestamp = timeStamp;
       this.typeByte = typeByte;
@@ -618,7 +722,7 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
 
     @Override
     public int getRowPosition() {
-      return Bytes.SIZEOF_SHORT;
+      return keyOffset + Bytes.SIZEOF_SHORT;
     }
 
     @Override
@@ -674,10 +778,10 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
     @Override
     public int write(OutputStream out, boolean withTags) throws IOException {
       int lenToWrite = getSerializedSize(withTags);
-      ByteBufferUtils.putInt(out, keyBuffer.capacity());
+      ByteBufferUtils.putInt(out, keyLength);
       ByteBufferUtils.putInt(out, valueLength);
       // Write key
-      out.write(keyBuffer.array());
+      out.write(keyBuffer.array(), keyOffset, keyLength);
       // Write value
       ByteBufferUtils.copyBufferToStream(out, this.valueBuffer, this.valueOffset, this.valueLength);
       if (withTags && this.tagsLength > 0) {
@@ -744,6 +848,9 @@ abstract class BufferedDataBlockEncoder extends AbstractDataBlockEncoder {
       }
       current = createSeekerState(); // always valid
       previous = createSeekerState(); // may not be valid
+      KeyArena keyArena = new KeyArena();
+      current.keyArena = keyArena;
+      previous.keyArena = keyArena;
     }
 
     @Override
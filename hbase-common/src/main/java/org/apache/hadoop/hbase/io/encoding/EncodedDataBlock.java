@@ -64,9 +64,9 @@ public class EncodedDataBlock {
   // The is for one situation that there are some cells includes tags and others are not.
   // isTagsLenZero stores if cell tags length is zero before doing encoding since we need
   // to check cell tags length is zero or not after decoding.
-  // Encoders ROW_INDEX_V1 would abandon tags segment if tags is 0 after decode cells to
-  // byte array, other encoders won't do that. So we have to find a way to add tagsLen zero
-  // in the decoded byte array.
+  // Encoders ROW_INDEX_V1 and ROW_COLUMN_INDEX_V1 would abandon tags segment if tags is 0 after
+  // decode cells to byte array, other encoders won't do that. So we have to find a way to add
+  // tagsLen zero in the decoded byte array.
   private List<Boolean> isTagsLenZero = new ArrayList<>();
 
   /**
@@ -138,7 +138,7 @@ public class EncodedDataBlock {
           }
           // ROW_INDEX_V1 will not put tagsLen back in cell if it is zero, there is no need
           // to read short here.
-          if (!(encoding.equals(DataBlockEncoding.ROW_INDEX_V1) && noTags)) {
+          if (!(isRowIndex() && noTags)) {
             tagsLen = ((decompressedData.get() & 0xff) << 8) ^ (decompressedData.get() & 0xff);
             ByteBufferUtils.skip(decompressedData, tagsLen);
           }
@@ -239,6 +239,11 @@ public class EncodedDataBlock {
     return cachedEncodedData;
   }
 
+  private boolean isRowIndex() {
+    return encoding == DataBlockEncoding.ROW_INDEX_V1
+        || encoding == DataBlockEncoding.ROW_COLUMN_INDEX_V1;
+  }
+
   private ByteBuffer getUncompressedBuffer() {
     if (rawBuffer == null || rawBuffer.limit() < rawKVs.length) {
       rawBuffer = ByteBuffer.wrap(rawKVs);
@@ -292,7 +297,7 @@ public class EncodedDataBlock {
       // The if branch is necessary because Encoders excepts ROW_INDEX_V1 write integer in
       // baosBytes directly, without if branch and do toByteArray() again, baosBytes won't
       // contains the integer wrotten in endBlockEncoding.
-      if (this.encoding.equals(DataBlockEncoding.ROW_INDEX_V1)) {
+      if (isRowIndex()) {
         baosBytes = baos.toByteArray();
       }
     } catch (IOException e) {
@@ -0,0 +1,55 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import java.io.DataOutputStream;
+
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Same layout as {@link RowIndexCodecV1}, but the index also has an entry every
+ * {@link #COLUMN_INDEX_INTERVAL} cells within a row. A seek to a column of a wide row then
+ * binary searches the index by key and only decodes a few cells of the row, instead of all the
+ * cells before the column. Meant for wide rows read with column projections.
+ *
+ * Format:
+ * flat cells
+ * integer: number of entries
+ * integer: entry0's offset, the first cell of the first row
+ * integer: entry1's offset, the first cell of a row or a cell within a row
+ * ....
+ * integer: dataSize
+ */
+@InterfaceAudience.Private
+public class RowColumnIndexCodecV1 extends RowIndexCodecV1 {
+
+  /** Number of cells of a row between two entries of the index. */
+  static final int COLUMN_INDEX_INTERVAL = 16;
+
+  @Override
+  protected RowIndexEncoderV1 createEncoder(DataOutputStream out,
+      HFileBlockDefaultEncodingContext encodingCtx) {
+    return new RowIndexEncoderV1(out, encodingCtx, COLUMN_INDEX_INTERVAL);
+  }
+
+  @Override
+  public EncodedSeeker createSeeker(CellComparator comparator,
+      HFileBlockDecodingContext decodingCtx) {
+    return new RowColumnIndexSeekerV1(comparator, decodingCtx);
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.hadoop.hbase.io.encoding;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Seeker of {@link RowColumnIndexCodecV1} blocks, which searches the index by key rather than by
+ * row.
+ */
+@InterfaceAudience.Private
+public class RowColumnIndexSeekerV1 extends RowIndexSeekerV1 {
+
+  public RowColumnIndexSeekerV1(CellComparator comparator,
+      HFileBlockDecodingContext decodingCtx) {
+    super(comparator, decodingCtx);
+  }
+
+  @Override
+  protected int binarySearch(Cell seekCell, boolean seekBefore) {
+    // Look from the last entry smaller than the seek key: the first cell not smaller than the
+    // seek key, and the one before it for seekBefore, are after it even with duplicate keys.
+    int low = 0;
+    int high = getIndexSize() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (compareKeyAt(seekCell, getIndexOffset(mid)) > 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    // Start from the first cell of the block if the seek key is not after it.
+    return Math.max(high, 0);
+  }
+}
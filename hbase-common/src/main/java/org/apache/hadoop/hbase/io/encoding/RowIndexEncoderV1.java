@@ -32,10 +32,23 @@ public class RowIndexEncoderV1 {
   private NoneEncoder encoder;
   private int startOffset = -1;
   private ByteArrayOutputStream rowsOffsetBAOS = new ByteArrayOutputStream(64 * 4);
+  /** Number of cells of a row between two extra entries of the index, 0 for none. */
+  private final int columnIndexInterval;
+  private int cellsInRow = 0;
 
   public RowIndexEncoderV1(DataOutputStream out, HFileBlockDefaultEncodingContext encodingCtx) {
+    this(out, encodingCtx, 0);
+  }
+
+  /**
+   * @param columnIndexInterval if positive, the offset of every columnIndexInterval-th cell of a
+   *          row is written in the index as well, so seeks can jump to a column of a wide row
+   */
+  public RowIndexEncoderV1(DataOutputStream out, HFileBlockDefaultEncodingContext encodingCtx,
+      int columnIndexInterval) {
     this.out = out;
     this.encoder = new NoneEncoder(out, encodingCtx);
+    this.columnIndexInterval = columnIndexInterval;
   }
 
   public int write(Cell cell) throws IOException {
@@ -45,7 +58,11 @@ public class RowIndexEncoderV1 {
         startOffset = out.size();
       }
       rowsOffsetBAOS.writeInt(out.size() - startOffset);
+      cellsInRow = 0;
+    } else if (columnIndexInterval > 0 && cellsInRow % columnIndexInterval == 0) {
+      rowsOffsetBAOS.writeInt(out.size() - startOffset);
     }
+    cellsInRow++;
     lastCell = cell;
     return encoder.write(cell);
   }
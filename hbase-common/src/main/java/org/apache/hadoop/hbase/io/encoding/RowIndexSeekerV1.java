@@ -50,6 +50,8 @@ public class RowIndexSeekerV1 extends AbstractEncodedSeeker {
 
   private int rowNumber;
   private ByteBuff rowOffsets = null;
+  // Reused to compare keys while searching the row index
+  private final ByteBufferKeyOnlyKeyValue searchKey = new ByteBufferKeyOnlyKeyValue();
 
   public RowIndexSeekerV1(CellComparator comparator,
       HFileBlockDecodingContext decodingCtx) {
@@ -124,7 +126,11 @@ public class RowIndexSeekerV1 extends AbstractEncodedSeeker {
     return true;
   }
 
-  private int binarySearch(Cell seekCell, boolean seekBefore) {
+  /**
+   * @return the index of the entry of the row index to look for the seek key from, or a negative
+   *         value if the seek key is before the first row of the block
+   */
+  protected int binarySearch(Cell seekCell, boolean seekBefore) {
     int low = 0;
     int high = rowNumber - 1;
     int mid = low + ((high - low) >> 1);
@@ -154,6 +160,28 @@ public class RowIndexSeekerV1 extends AbstractEncodedSeeker {
     }
   }
 
+  protected int getIndexSize() {
+    return rowNumber;
+  }
+
+  /**
+   * @return the offset in the block of the cell of the given entry of the row index
+   */
+  protected int getIndexOffset(int index) {
+    return rowOffsets.getIntAfterPosition(index * Bytes.SIZEOF_INT);
+  }
+
+  /**
+   * Compares the given key with the key of the cell at the given offset of the block, ignoring
+   * the mvcc.
+   */
+  protected int compareKeyAt(Cell seekCell, int offset) {
+    int keyLength = currentBuffer.getInt(offset);
+    currentBuffer.asSubByteBuffer(offset + Bytes.SIZEOF_LONG, keyLength, tmpPair);
+    searchKey.setKey(tmpPair.getFirst(), tmpPair.getSecond(), keyLength);
+    return PrivateCellUtil.compareKeyIgnoresMvcc(comparator, seekCell, searchKey);
+  }
+
   private int compareRows(ByteBuffer row, Cell seekCell) {
     if (seekCell instanceof ByteBufferExtendedCell) {
       return ByteBufferUtils.compareTo(row, row.position(), row.remaining(),
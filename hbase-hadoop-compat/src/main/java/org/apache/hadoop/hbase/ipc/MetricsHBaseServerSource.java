@@ -101,6 +101,14 @@ public interface MetricsHBaseServerSource extends ExceptionTrackingSource {
   String NETTY_DM_USAGE_NAME = "nettyDirectMemoryUsage";
 
   String NETTY_DM_USAGE_DESC = "Current Netty direct memory usage.";
+  // Per tenant metrics of the weighted fair call queues, prefixed by tenant_<name>_
+  String TENANT_METRIC_PREFIX = "tenant_";
+  String TENANT_NUM_CALLS_TAKEN_NAME = "_numCallsTaken";
+  String TENANT_NUM_CALLS_TAKEN_DESC =
+      "Number of calls of the tenant taken from the fair call queues.";
+  String TENANT_QUEUE_TIME_NAME = "_queueCallTimeTotal";
+  String TENANT_QUEUE_TIME_DESC =
+      "Total time in milliseconds the calls of the tenant spent in the fair call queues.";
 
 
   void authorizationSuccess();
@@ -30,6 +30,11 @@ public interface MetricsTableSource extends Comparable<MetricsTableSource>, Clos
 
   String TABLE_SIZE = "tableSize";
   String TABLE_SIZE_DESC = "Total size of the table in the region server";
+  String ROW_CACHE_HIT_COUNT = "rowCacheHitCount";
+  String ROW_CACHE_HIT_COUNT_DESC = "Number of Gets of the table served by the row cache";
+  String ROW_CACHE_MISS_COUNT = "rowCacheMissCount";
+  String ROW_CACHE_MISS_COUNT_DESC =
+      "Number of Gets of the table which could use the row cache but were not in it";
 
   String getTableName();
 
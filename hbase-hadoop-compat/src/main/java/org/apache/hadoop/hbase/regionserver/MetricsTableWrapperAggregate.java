@@ -107,6 +107,16 @@ public interface MetricsTableWrapperAggregate {
    */
   long getNumReferenceFiles(String table);
 
+  /**
+   * @return Number of Gets of this table served by the row cache
+   */
+  long getRowCacheHitCount(String table);
+
+  /**
+   * @return Number of Gets of this table which could use the row cache but were not in it
+   */
+  long getRowCacheMissCount(String table);
+
 
 
 }
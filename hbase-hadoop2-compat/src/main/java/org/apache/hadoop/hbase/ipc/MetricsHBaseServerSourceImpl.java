@@ -184,6 +184,14 @@ public class MetricsHBaseServerSourceImpl extends ExceptionTrackingSourceImpl
             wrapper.getActiveScanRpcHandlerCount())
           .addGauge(Interns.info(NETTY_DM_USAGE_NAME, NETTY_DM_USAGE_DESC),
             wrapper.getNettyDmUsage());
+      wrapper.getTenantCallCounts().forEach((tenant, calls) -> mrb.addCounter(
+        Interns.info(TENANT_METRIC_PREFIX + tenant + TENANT_NUM_CALLS_TAKEN_NAME,
+          TENANT_NUM_CALLS_TAKEN_DESC),
+        calls));
+      wrapper.getTenantQueueTimes().forEach((tenant, time) -> mrb.addCounter(
+        Interns.info(TENANT_METRIC_PREFIX + tenant + TENANT_QUEUE_TIME_NAME,
+          TENANT_QUEUE_TIME_DESC),
+        time));
     }
 
     metricsRegistry.snapshot(mrb, all);
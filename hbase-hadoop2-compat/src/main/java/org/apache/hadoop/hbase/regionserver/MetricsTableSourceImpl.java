@@ -278,6 +278,12 @@ public class MetricsTableSourceImpl implements MetricsTableSource {
         mrb.addCounter(Interns.info(tableNamePrefix + MetricsRegionServerSource.TOTAL_REQUEST_COUNT,
             MetricsRegionServerSource.TOTAL_REQUEST_COUNT_DESC),
             tableWrapperAgg.getTotalRequestsCount(tableName.getNameAsString()));
+        mrb.addCounter(Interns.info(tableNamePrefix + MetricsTableSource.ROW_CACHE_HIT_COUNT,
+            MetricsTableSource.ROW_CACHE_HIT_COUNT_DESC),
+            tableWrapperAgg.getRowCacheHitCount(tableName.getNameAsString()));
+        mrb.addCounter(Interns.info(tableNamePrefix + MetricsTableSource.ROW_CACHE_MISS_COUNT,
+            MetricsTableSource.ROW_CACHE_MISS_COUNT_DESC),
+            tableWrapperAgg.getRowCacheMissCount(tableName.getNameAsString()));
         mrb.addGauge(Interns.info(tableNamePrefix + MetricsRegionServerSource.MEMSTORE_SIZE,
             MetricsRegionServerSource.MEMSTORE_SIZE_DESC),
             tableWrapperAgg.getMemStoreSize(tableName.getNameAsString()));
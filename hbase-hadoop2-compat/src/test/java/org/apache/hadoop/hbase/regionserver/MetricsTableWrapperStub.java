@@ -109,4 +109,14 @@ public class MetricsTableWrapperStub implements MetricsTableWrapperAggregate {
   public long getCpRequestsCount(String table) {
     return 99;
   }
+
+  @Override
+  public long getRowCacheHitCount(String table) {
+    return 111;
+  }
+
+  @Override
+  public long getRowCacheMissCount(String table) {
+    return 222;
+  }
 }
@@ -87,6 +87,21 @@ public class CacheConfig {
   public static final String CACHE_COMPACTED_BLOCKS_ON_WRITE_KEY =
       "hbase.rs.cachecompactedblocksonwrite";
 
+  /**
+   * Configuration key to cache only those blocks of a compacted file whose keys were hot, i.e.
+   * cached, in the files being compacted. Has no effect if all compacted blocks are cached on
+   * write.
+   */
+  public static final String CACHE_COMPACTED_HOT_BLOCKS_ON_WRITE_KEY =
+      "hbase.rs.cachecompactedhotblocksonwrite";
+
+  /**
+   * Configuration key for the maximum number of bytes a single compaction may cache on write when
+   * only caching hot blocks.
+   */
+  public static final String CACHE_COMPACTED_HOT_BLOCKS_BUDGET_KEY =
+      "hbase.rs.cachecompactedhotblocksonwrite.budget";
+
   public static final String DROP_BEHIND_CACHE_COMPACTION_KEY =
       "hbase.hfile.drop.behind.compaction";
 
@@ -100,6 +115,16 @@ public class CacheConfig {
   public static final boolean DEFAULT_CACHE_DATA_COMPRESSED = false;
   public static final boolean DEFAULT_PREFETCH_ON_OPEN = false;
   public static final boolean DEFAULT_CACHE_COMPACTED_BLOCKS_ON_WRITE = false;
+  /**
+   * Configuration key for the maximum number of cached blocks a compaction looks at when it
+   * collects the hot blocks of the files being compacted.
+   */
+  public static final String CACHE_COMPACTED_HOT_BLOCKS_MAX_SCANNED_KEY =
+      "hbase.rs.cachecompactedhotblocksonwrite.max.scanned.blocks";
+
+  public static final boolean DEFAULT_CACHE_COMPACTED_HOT_BLOCKS_ON_WRITE = false;
+  public static final long DEFAULT_CACHE_COMPACTED_HOT_BLOCKS_BUDGET = 128L * 1024 * 1024;
+  public static final long DEFAULT_CACHE_COMPACTED_HOT_BLOCKS_MAX_SCANNED = 100000;
   public static final boolean DROP_BEHIND_CACHE_COMPACTION_DEFAULT = true;
 
   /**
@@ -136,6 +161,21 @@ public class CacheConfig {
    */
   private final boolean cacheCompactedDataOnWrite;
 
+  /**
+   * Whether data blocks of a compacted file should be cached on write if their keys were cached in
+   * the compacted files
+   */
+  private final boolean cacheCompactedHotDataOnWrite;
+
+  /** Maximum number of bytes a compaction caches on write when only caching hot blocks */
+  private final long cacheCompactedHotDataBudget;
+
+  /** Maximum number of cached blocks a compaction looks at for hot blocks */
+  private final long cacheCompactedHotDataMaxScanned;
+
+  /** Key ranges which were hot in the files being compacted, set for compaction writers only */
+  private HotKeyRanges hotKeyRanges;
+
   private final boolean dropBehindCompaction;
 
   // Local reference to the block cache
@@ -188,6 +228,12 @@ public class CacheConfig {
         (family == null ? false : family.isPrefetchBlocksOnOpen());
     this.cacheCompactedDataOnWrite = conf.getBoolean(CACHE_COMPACTED_BLOCKS_ON_WRITE_KEY,
       DEFAULT_CACHE_COMPACTED_BLOCKS_ON_WRITE);
+    this.cacheCompactedHotDataOnWrite = conf.getBoolean(CACHE_COMPACTED_HOT_BLOCKS_ON_WRITE_KEY,
+      DEFAULT_CACHE_COMPACTED_HOT_BLOCKS_ON_WRITE);
+    this.cacheCompactedHotDataBudget = conf.getLong(CACHE_COMPACTED_HOT_BLOCKS_BUDGET_KEY,
+      DEFAULT_CACHE_COMPACTED_HOT_BLOCKS_BUDGET);
+    this.cacheCompactedHotDataMaxScanned = conf.getLong(CACHE_COMPACTED_HOT_BLOCKS_MAX_SCANNED_KEY,
+      DEFAULT_CACHE_COMPACTED_HOT_BLOCKS_MAX_SCANNED);
     this.blockCache = blockCache;
     this.byteBuffAllocator = byteBuffAllocator;
     LOG.info("Created cacheConfig: " + this + (family == null ? "" : " for family " + family) +
@@ -208,6 +254,10 @@ public class CacheConfig {
     this.cacheDataCompressed = cacheConf.cacheDataCompressed;
     this.prefetchOnOpen = cacheConf.prefetchOnOpen;
     this.cacheCompactedDataOnWrite = cacheConf.cacheCompactedDataOnWrite;
+    this.cacheCompactedHotDataOnWrite = cacheConf.cacheCompactedHotDataOnWrite;
+    this.cacheCompactedHotDataBudget = cacheConf.cacheCompactedHotDataBudget;
+    this.cacheCompactedHotDataMaxScanned = cacheConf.cacheCompactedHotDataMaxScanned;
+    this.hotKeyRanges = cacheConf.hotKeyRanges;
     this.dropBehindCompaction = cacheConf.dropBehindCompaction;
     this.blockCache = cacheConf.blockCache;
     this.byteBuffAllocator = cacheConf.byteBuffAllocator;
@@ -223,6 +273,9 @@ public class CacheConfig {
     this.cacheDataCompressed = false;
     this.prefetchOnOpen = false;
     this.cacheCompactedDataOnWrite = false;
+    this.cacheCompactedHotDataOnWrite = false;
+    this.cacheCompactedHotDataBudget = 0;
+    this.cacheCompactedHotDataMaxScanned = 0;
     this.dropBehindCompaction = false;
     this.blockCache = null;
     this.byteBuffAllocator = ByteBuffAllocator.HEAP;
@@ -342,6 +395,47 @@ public class CacheConfig {
     return this.cacheCompactedDataOnWrite;
   }
 
+  /**
+   * @return true if blocks written during compaction should be cached when their keys were hot in
+   *         the compacted files, false if not
+   */
+  public boolean shouldCacheCompactedHotBlocksOnWrite() {
+    return this.cacheCompactedHotDataOnWrite && !this.cacheCompactedDataOnWrite
+        && this.blockCache != null;
+  }
+
+  /**
+   * @return the maximum number of bytes a single compaction caches on write when only caching hot
+   *         blocks
+   */
+  public long getCacheCompactedHotBlocksBudget() {
+    return this.cacheCompactedHotDataBudget;
+  }
+
+  /**
+   * @return the maximum number of cached blocks a compaction looks at for the hot blocks of the
+   *         files being compacted
+   */
+  public long getCacheCompactedHotBlocksMaxScanned() {
+    return this.cacheCompactedHotDataMaxScanned;
+  }
+
+  /**
+   * @return the key ranges whose data blocks should be cached on write, or null if none. Only set
+   *         for writers of compacted files.
+   */
+  public HotKeyRanges getHotKeyRanges() {
+    return this.hotKeyRanges;
+  }
+
+  /**
+   * @param hotKeyRanges key ranges whose data blocks should be cached on write, up to the budget of
+   *          the given ranges
+   */
+  public void setHotKeyRanges(HotKeyRanges hotKeyRanges) {
+    this.hotKeyRanges = hotKeyRanges;
+  }
+
   /**
    * Return true if we may find this type of block in block cache.
    * <p>
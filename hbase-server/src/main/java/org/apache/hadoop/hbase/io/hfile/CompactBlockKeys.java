@@ -0,0 +1,376 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.HeapSize;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * The keys of a root-level block index held in memory with front coding: every
+ * {@link #RESTART_INTERVAL} keys a key is stored in full, the following ones only store the
+ * length of the prefix they share with the previous key and their remaining bytes. This avoids
+ * an object and an array per key, which is most of the heap of the root index when the keys are
+ * long and share their prefixes, as the row keys of a table usually do.
+ * <p>
+ * A lookup does a binary search on the full keys, then decodes the keys of a single restart
+ * group. Optionally a piecewise-linear {@link PositionModel} predicts the restart group of a key
+ * from the first bytes of its row, so that the binary search is done over a few groups only. The
+ * prediction is checked against the keys and a full binary search is done when it is wrong, so
+ * the model never changes the result of a lookup.
+ * <p>
+ * Thread safe, the lookups only allocate their own decoding buffer.
+ */
+@InterfaceAudience.Private
+class CompactBlockKeys implements HeapSize {
+
+  /** Number of keys between two keys stored in full. */
+  static final int RESTART_INTERVAL = 16;
+
+  private static final long FIXED_OVERHEAD = ClassSize.align(ClassSize.OBJECT
+      + 4 * ClassSize.REFERENCE + 2 * Bytes.SIZEOF_INT);
+
+  private final CellComparator comparator;
+  private final int size;
+  private final int maxKeyLength;
+  /** For each key, the varint shared prefix length and suffix length, then the suffix. */
+  private final byte[] data;
+  /** The offset in {@link #data} of each key stored in full. */
+  private final int[] restarts;
+  /** Predicts the restart group of a key, can be null. */
+  private final PositionModel model;
+
+  private CompactBlockKeys(CellComparator comparator, int size, int maxKeyLength, byte[] data,
+      int[] restarts, boolean learnedModel) {
+    this.comparator = comparator;
+    this.size = size;
+    this.maxKeyLength = maxKeyLength;
+    this.data = data;
+    this.restarts = restarts;
+    this.model = learnedModel && restarts.length > 1 ? new PositionModel(this) : null;
+  }
+
+  /**
+   * @param keys the serialized keys in the order of the comparator
+   * @param learnedModel whether to build a {@link PositionModel} over the restart keys
+   */
+  static CompactBlockKeys build(CellComparator comparator, byte[][] keys, boolean learnedModel) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    int[] restarts = new int[(keys.length + RESTART_INTERVAL - 1) / RESTART_INTERVAL];
+    int maxKeyLength = 0;
+    byte[] previous = null;
+    for (int i = 0; i < keys.length; i++) {
+      byte[] key = keys[i];
+      int shared = 0;
+      if (i % RESTART_INTERVAL == 0) {
+        restarts[i / RESTART_INTERVAL] = out.size();
+      } else {
+        int max = Math.min(previous.length, key.length);
+        while (shared < max && previous[shared] == key[shared]) {
+          shared++;
+        }
+      }
+      writeVInt(out, shared);
+      writeVInt(out, key.length - shared);
+      out.write(key, shared, key.length - shared);
+      maxKeyLength = Math.max(maxKeyLength, key.length);
+      previous = key;
+    }
+    return new CompactBlockKeys(comparator, keys.length, maxKeyLength, out.toByteArray(),
+        restarts, learnedModel);
+  }
+
+  private static void writeVInt(ByteArrayOutputStream out, int value) {
+    while ((value & ~0x7F) != 0) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean hasModel() {
+    return model != null;
+  }
+
+  /**
+   * @return the i-th key, as a new cell
+   */
+  Cell getKey(int i) {
+    Decoder decoder = new Decoder(i / RESTART_INTERVAL);
+    for (int j = i - i % RESTART_INTERVAL; j <= i; j++) {
+      decoder.next();
+    }
+    byte[] key = Arrays.copyOf(decoder.buffer, decoder.length);
+    return new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+  }
+
+  /**
+   * @return the index j of the last key such that keys[j] &lt;= key, or -1 if key is before the
+   *         first key
+   */
+  int search(Cell key) {
+    int group = searchRestarts(key);
+    if (group < 0) {
+      return -1;
+    }
+    // The first key of the group is known to be <= key, so compare the following ones only.
+    int index = group * RESTART_INTERVAL;
+    int end = Math.min(size, index + RESTART_INTERVAL);
+    Decoder decoder = new Decoder(group);
+    decoder.next();
+    for (int i = index + 1; i < end; i++) {
+      int cmp = comparator.compare(key, decoder.next());
+      if (cmp < 0) {
+        break;
+      }
+      index = i;
+      if (cmp == 0) {
+        break;
+      }
+    }
+    return index;
+  }
+
+  /**
+   * @return the last restart group whose first key is &lt;= key, or -1 if there is none
+   */
+  private int searchRestarts(Cell key) {
+    KeyValue.KeyOnlyKeyValue restartKey = new KeyValue.KeyOnlyKeyValue();
+    int low = 0;
+    int high = restarts.length - 1;
+    if (model != null) {
+      int predicted = model.predict(key);
+      int windowLow = Math.max(0, predicted - PositionModel.MAX_ERROR - 1);
+      int windowHigh = Math.min(high, predicted + PositionModel.MAX_ERROR + 1);
+      // The answer is in the window if it is bracketed by the keys around it.
+      if ((windowLow == 0 || comparator.compare(key, restartKey(windowLow, restartKey)) >= 0)
+          && (windowHigh == high
+              || comparator.compare(key, restartKey(windowHigh + 1, restartKey)) < 0)) {
+        low = windowLow;
+        high = windowHigh;
+      }
+    }
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      // Same order as Bytes.binarySearch, the comparator has special logic for the left side.
+      int cmp = comparator.compare(key, restartKey(mid, restartKey));
+      if (cmp > 0) {
+        low = mid + 1;
+      } else if (cmp < 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return low - 1;
+  }
+
+  /**
+   * Points the given cell to the full key stored at the start of the restart group, no copy.
+   */
+  private Cell restartKey(int group, KeyValue.KeyOnlyKeyValue cell) {
+    int pos = restarts[group];
+    // The shared length of a restart key is zero, a single byte.
+    pos++;
+    int length = 0;
+    int shift = 0;
+    byte b;
+    do {
+      b = data[pos++];
+      length |= (b & 0x7F) << shift;
+      shift += 7;
+    } while (b < 0);
+    cell.setKey(data, pos, length);
+    return cell;
+  }
+
+  @Override
+  public long heapSize() {
+    long heapSize = FIXED_OVERHEAD;
+    heapSize += ClassSize.align(ClassSize.ARRAY + data.length);
+    heapSize += ClassSize.align(ClassSize.ARRAY + restarts.length * Bytes.SIZEOF_INT);
+    if (model != null) {
+      heapSize += model.heapSize();
+    }
+    return heapSize;
+  }
+
+  /**
+   * Decodes the keys of a restart group one after the other.
+   */
+  private final class Decoder {
+    private final byte[] buffer = new byte[maxKeyLength];
+    private final KeyValue.KeyOnlyKeyValue cell = new KeyValue.KeyOnlyKeyValue();
+    private int pos;
+    private int length;
+
+    Decoder(int group) {
+      this.pos = restarts[group];
+    }
+
+    private int readVInt() {
+      int value = 0;
+      int shift = 0;
+      byte b;
+      do {
+        b = data[pos++];
+        value |= (b & 0x7F) << shift;
+        shift += 7;
+      } while (b < 0);
+      return value;
+    }
+
+    Cell next() {
+      int shared = readVInt();
+      int suffix = readVInt();
+      System.arraycopy(data, pos, buffer, shared, suffix);
+      pos += suffix;
+      length = shared + suffix;
+      cell.setKey(buffer, 0, length);
+      return cell;
+    }
+  }
+
+  /**
+   * A piecewise-linear approximation of the position of the restart keys as a function of the
+   * first 8 bytes of their row, read as an unsigned number. The segments are built greedily so
+   * that each restart key is predicted within {@link #MAX_ERROR} groups of its position. Several
+   * keys with the same first bytes can defeat the model, in which case the lookups fall back to
+   * the full binary search.
+   */
+  static final class PositionModel implements HeapSize {
+    static final int MAX_ERROR = 2;
+
+    private final int groups;
+    private final long[] startX;
+    private final int[] startY;
+    private final double[] slopes;
+
+    PositionModel(CompactBlockKeys keys) {
+      this.groups = keys.restarts.length;
+      long[] xs = new long[groups];
+      KeyValue.KeyOnlyKeyValue cell = new KeyValue.KeyOnlyKeyValue();
+      for (int i = 0; i < groups; i++) {
+        xs[i] = project(keys.restartKey(i, cell));
+      }
+      long[] segmentX = new long[groups];
+      int[] segmentY = new int[groups];
+      double[] segmentSlopes = new double[groups];
+      int segments = 0;
+      int start = 0;
+      while (start < groups) {
+        double slopeLow = 0;
+        double slopeHigh = Double.POSITIVE_INFINITY;
+        int end = start + 1;
+        for (; end < groups; end++) {
+          double dx = unsignedDifference(xs[end], xs[start]);
+          int dy = end - start;
+          if (dx == 0) {
+            if (dy > MAX_ERROR) {
+              break;
+            }
+            continue;
+          }
+          double low = (dy - MAX_ERROR) / dx;
+          double high = (dy + MAX_ERROR) / dx;
+          if (low > slopeHigh || high < slopeLow) {
+            break;
+          }
+          slopeLow = Math.max(slopeLow, low);
+          slopeHigh = Math.min(slopeHigh, high);
+        }
+        segmentX[segments] = xs[start];
+        segmentY[segments] = start;
+        segmentSlopes[segments] =
+            slopeHigh == Double.POSITIVE_INFINITY ? slopeLow : (slopeLow + slopeHigh) / 2;
+        segments++;
+        start = end;
+      }
+      this.startX = Arrays.copyOf(segmentX, segments);
+      this.startY = Arrays.copyOf(segmentY, segments);
+      this.slopes = Arrays.copyOf(segmentSlopes, segments);
+    }
+
+    int getSegmentCount() {
+      return startX.length;
+    }
+
+    int predict(Cell key) {
+      long x = project(key);
+      // the last segment starting at or before x
+      int low = 0;
+      int high = startX.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (Long.compareUnsigned(startX[mid], x) <= 0) {
+          low = mid + 1;
+        } else {
+          high = mid - 1;
+        }
+      }
+      int segment = low - 1;
+      if (segment < 0) {
+        return 0;
+      }
+      double y = startY[segment] + slopes[segment] * unsignedDifference(x, startX[segment]);
+      return (int) Math.min(groups - 1, Math.round(y));
+    }
+
+    /**
+     * @return the first 8 bytes of the row of the cell as an unsigned number, padded with zeros
+     */
+    static long project(Cell cell) {
+      int length = cell.getRowLength();
+      long x = 0;
+      for (int i = 0; i < Bytes.SIZEOF_LONG; i++) {
+        x <<= 8;
+        if (i < length) {
+          x |= PrivateCellUtil.getRowByte(cell, i) & 0xFF;
+        }
+      }
+      return x;
+    }
+
+    /**
+     * @return x - start as a double, both read as unsigned numbers with x &gt;= start
+     */
+    private static double unsignedDifference(long x, long start) {
+      long d = x - start;
+      return d >= 0 ? d : (double) (d >>> 1) * 2.0 + (d & 1);
+    }
+
+    @Override
+    public long heapSize() {
+      return ClassSize.align(ClassSize.OBJECT + 3 * ClassSize.REFERENCE + Bytes.SIZEOF_INT)
+          + ClassSize.align(ClassSize.ARRAY + startX.length * Bytes.SIZEOF_LONG)
+          + ClassSize.align(ClassSize.ARRAY + startY.length * Bytes.SIZEOF_INT)
+          + ClassSize.align(ClassSize.ARRAY + slopes.length * Bytes.SIZEOF_DOUBLE);
+    }
+  }
+}
@@ -40,6 +40,16 @@ public class CompoundBloomFilterBase implements BloomFilterBase {
    */
   public static final int VERSION = 3;
 
+  /**
+   * The version of compound Bloom filters made of blocked chunks, see
+   * {@link org.apache.hadoop.hbase.util.BloomFilterUtil#BLOCK_BYTES}. The metadata is the same as
+   * for {@link #VERSION}.
+   */
+  public static final int BLOCKED_VERSION = 4;
+
+  /** Whether the chunks are blocked Bloom filters */
+  protected boolean blocked;
+
   /** Target error rate for configuring the filter and for information */
   protected float errorRate;
 
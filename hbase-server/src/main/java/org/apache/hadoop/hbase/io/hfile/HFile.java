@@ -428,6 +428,22 @@ public class HFile {
     void setDataBlockIndexReader(HFileBlockIndex.CellBasedKeyBlockIndexReader reader);
     HFileBlockIndex.CellBasedKeyBlockIndexReader getDataBlockIndexReader();
 
+    /**
+     * @return the keys of the root level of the data block index. Each of them starts a part of the
+     *         file of roughly the same size, so they are a cheap sample of the key distribution.
+     */
+    default List<Cell> getRootIndexKeys() {
+      HFileBlockIndex.CellBasedKeyBlockIndexReader index = getDataBlockIndexReader();
+      if (index == null) {
+        return new ArrayList<>();
+      }
+      List<Cell> keys = new ArrayList<>(index.getRootBlockCount());
+      for (int i = 0; i < index.getRootBlockCount(); i++) {
+        keys.add(index.getRootBlockKey(i));
+      }
+      return keys;
+    }
+
     void setMetaBlockIndexReader(HFileBlockIndex.ByteArrayKeyBlockIndexReader reader);
     HFileBlockIndex.ByteArrayKeyBlockIndexReader getMetaBlockIndexReader();
 
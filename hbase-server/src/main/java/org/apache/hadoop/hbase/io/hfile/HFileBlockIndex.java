@@ -35,7 +35,7 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.hbase.ByteBufferKeyOnlyKeyValue;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellComparator;
-//import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.CellComparatorImpl;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.KeyValue;
@@ -88,6 +88,22 @@ public class HFileBlockIndex {
 
   static final int DEFAULT_MIN_INDEX_NUM_ENTRIES = 16;
 
+  /**
+   * Whether the keys of the root-level data index are held in memory with front coding, see
+   * {@link CompactBlockKeys}. The format of the files does not change.
+   */
+  public static final String COMPACT_ROOT_KEYS_KEY = "hfile.index.root.compact.keys";
+
+  static final boolean DEFAULT_COMPACT_ROOT_KEYS = false;
+
+  /**
+   * Whether the compact root-level data index also builds a piecewise-linear model of the position
+   * of the keys to narrow its binary search. Only used with {@link #COMPACT_ROOT_KEYS_KEY}.
+   */
+  public static final String LEARNED_ROOT_INDEX_KEY = "hfile.index.root.learned.model";
+
+  static final boolean DEFAULT_LEARNED_ROOT_INDEX = false;
+
   /**
    * The number of bytes stored in each "secondary index" entry in addition to
    * key bytes in the non-root index block format. The first long is the file
@@ -234,15 +250,33 @@ public class HFileBlockIndex {
   static class CellBasedKeyBlockIndexReader extends BlockIndexReader {
 
     private Cell[] blockKeys;
+    /** The block keys when they are front coded, blockKeys is null then. */
+    private CompactBlockKeys compactBlockKeys;
+    /** The serialized block keys while the root index is read, when they are front coded. */
+    private byte[][] pendingKeys;
     /** Pre-computed mid-key */
     private AtomicReference<Cell> midKey = new AtomicReference<>();
     /** Needed doing lookup on blocks. */
     private CellComparator comparator;
+    private final boolean compactKeys;
+    private final boolean learnedModel;
 
     public CellBasedKeyBlockIndexReader(final CellComparator c, final int treeLevel) {
+      this(c, treeLevel, false, false);
+    }
+
+    /**
+     * @param compactKeys whether to hold the root-level keys with front coding
+     * @param learnedModel whether to build a position model over the front coded keys
+     */
+    public CellBasedKeyBlockIndexReader(final CellComparator c, final int treeLevel,
+        boolean compactKeys, boolean learnedModel) {
       // Can be null for METAINDEX block
       comparator = c;
       searchTreeLevel = treeLevel;
+      this.compactKeys = compactKeys && c != null;
+      // The model reads the first bytes of the rows, which do not sort the rows of hbase:meta.
+      this.learnedModel = learnedModel && !(c instanceof CellComparatorImpl.MetaCellComparator);
     }
 
     @Override
@@ -257,6 +291,9 @@ public class HFileBlockIndex {
           heapSize += ClassSize.align(key.heapSize());
         }
       }
+      if (compactBlockKeys != null) {
+        heapSize += ClassSize.REFERENCE + compactBlockKeys.heapSize();
+      }
       // Add comparator and the midkey atomicreference
       heapSize += 2 * ClassSize.REFERENCE;
       return heapSize;
@@ -264,7 +301,11 @@ public class HFileBlockIndex {
 
     @Override
     public boolean isEmpty() {
-      return blockKeys.length == 0;
+      return getKeyCount() == 0;
+    }
+
+    private int getKeyCount() {
+      return compactBlockKeys != null ? compactBlockKeys.size() : blockKeys.length;
     }
 
     /**
@@ -272,7 +313,7 @@ public class HFileBlockIndex {
      *          from 0 to {@link #getRootBlockCount() - 1}
      */
     public Cell getRootBlockKey(int i) {
-      return blockKeys[i];
+      return compactBlockKeys != null ? compactBlockKeys.getKey(i) : blockKeys[i];
     }
 
     @Override
@@ -292,8 +333,8 @@ public class HFileBlockIndex {
       long currentOffset = blockOffsets[rootLevelIndex];
       int currentOnDiskSize = blockDataSizes[rootLevelIndex];
 
-      if (rootLevelIndex < blockKeys.length - 1) {
-        nextIndexedKey = blockKeys[rootLevelIndex + 1];
+      if (rootLevelIndex < getKeyCount() - 1) {
+        nextIndexedKey = getRootBlockKey(rootLevelIndex + 1);
       } else {
         nextIndexedKey = KeyValueScanner.NO_NEXT_INDEXED_KEY;
       }
@@ -430,7 +471,7 @@ public class HFileBlockIndex {
         }
       } else {
         // The middle of the root-level index.
-        targetMidKey = blockKeys[rootCount / 2];
+        targetMidKey = getRootBlockKey(rootCount / 2);
       }
 
       this.midKey.set(targetMidKey);
@@ -439,7 +480,20 @@ public class HFileBlockIndex {
 
     @Override
     protected void initialize(int numEntries) {
-      blockKeys = new Cell[numEntries];
+      if (compactKeys) {
+        pendingKeys = new byte[numEntries][];
+      } else {
+        blockKeys = new Cell[numEntries];
+      }
+    }
+
+    @Override
+    public void readRootIndex(DataInput in, final int numEntries) throws IOException {
+      super.readRootIndex(in, numEntries);
+      if (compactKeys) {
+        compactBlockKeys = CompactBlockKeys.build(comparator, pendingKeys, learnedModel);
+        pendingKeys = null;
+      }
     }
 
     /**
@@ -452,8 +506,12 @@ public class HFileBlockIndex {
     @Override
     protected void add(final byte[] key, final long offset, final int dataSize) {
       blockOffsets[rootCount] = offset;
-      // Create the blockKeys as Cells once when the reader is opened
-      blockKeys[rootCount] = new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+      if (compactKeys) {
+        pendingKeys[rootCount] = key;
+      } else {
+        // Create the blockKeys as Cells once when the reader is opened
+        blockKeys[rootCount] = new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+      }
       blockDataSizes[rootCount] = dataSize;
       rootCount++;
     }
@@ -468,6 +526,9 @@ public class HFileBlockIndex {
 
     @Override
     public int rootBlockContainingKey(Cell key) {
+      if (compactBlockKeys != null) {
+        return compactBlockKeys.search(key);
+      }
       // Here the comparator should not be null as this happens for the root-level block
       int pos = Bytes.binarySearch(blockKeys, key, comparator);
       // pos is between -(blockKeys.length + 1) to blockKeys.length - 1, see
@@ -494,7 +555,7 @@ public class HFileBlockIndex {
       StringBuilder sb = new StringBuilder();
       sb.append("size=" + rootCount).append("\n");
       for (int i = 0; i < rootCount; i++) {
-        sb.append("key=").append((blockKeys[i]))
+        sb.append("key=").append(getRootBlockKey(i))
             .append("\n  offset=").append(blockOffsets[i])
             .append(", dataSize=" + blockDataSizes[i]).append("\n");
       }
@@ -0,0 +1,313 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.Writable;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Statistics of each data block of an HFile: its offset, the range of the timestamps and of the
+ * qualifiers of its cells and whether it holds delete markers. They are written in the
+ * {@link #META_BLOCK_NAME} meta block when {@link #BLOCK_STATS_ENABLED_KEY} is set, and let a
+ * forward scan skip the data blocks which cannot hold a cell it would return, see
+ * {@link ScanPredicate}. Files without the meta block are read as before.
+ * <p>
+ * Serialized as a version and the number of blocks, then for each block its offset, min and max
+ * timestamps, delete marker flag and min and max qualifiers.
+ */
+@InterfaceAudience.Private
+public class HFileBlockStats {
+
+  /** Whether the writers collect and store the statistics of the data blocks. */
+  public static final String BLOCK_STATS_ENABLED_KEY = "hbase.hfile.block.stats.enabled";
+  public static final boolean DEFAULT_BLOCK_STATS_ENABLED = false;
+
+  public static final String META_BLOCK_NAME = "BLOCK_STATS";
+
+  /** Returned by {@link ScanPredicate#nextDataBlockOffset(long)} after the last data block. */
+  public static final long NO_MORE_BLOCKS = -1;
+  /** Returned by {@link ScanPredicate#nextDataBlockOffset(long)} for an unknown block. */
+  public static final long UNKNOWN_BLOCK = -2;
+
+  private static final int VERSION = 1;
+
+  private final long[] offsets;
+  private final long[] minTimestamps;
+  private final long[] maxTimestamps;
+  private final boolean[] hasDeletes;
+  private final byte[][] minQualifiers;
+  private final byte[][] maxQualifiers;
+
+  private HFileBlockStats(int blockCount) {
+    this.offsets = new long[blockCount];
+    this.minTimestamps = new long[blockCount];
+    this.maxTimestamps = new long[blockCount];
+    this.hasDeletes = new boolean[blockCount];
+    this.minQualifiers = new byte[blockCount][];
+    this.maxQualifiers = new byte[blockCount][];
+  }
+
+  /**
+   * @return the statistics of the data blocks of the given file, or null if it has none
+   */
+  public static HFileBlockStats load(HFile.Reader reader) throws IOException {
+    HFileBlock block = reader.getMetaBlock(META_BLOCK_NAME, false);
+    if (block == null) {
+      return null;
+    }
+    try {
+      return read(block.getByteStream());
+    } finally {
+      block.release();
+    }
+  }
+
+  static HFileBlockStats read(DataInput in) throws IOException {
+    int version = in.readInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported block statistics version " + version);
+    }
+    int blockCount = in.readInt();
+    HFileBlockStats stats = new HFileBlockStats(blockCount);
+    for (int i = 0; i < blockCount; i++) {
+      stats.offsets[i] = in.readLong();
+      stats.minTimestamps[i] = in.readLong();
+      stats.maxTimestamps[i] = in.readLong();
+      stats.hasDeletes[i] = in.readBoolean();
+      stats.minQualifiers[i] = Bytes.readByteArray(in);
+      stats.maxQualifiers[i] = Bytes.readByteArray(in);
+    }
+    return stats;
+  }
+
+  public int getBlockCount() {
+    return offsets.length;
+  }
+
+  /**
+   * @return the index of the data block at the given offset, or a negative value if there is none
+   */
+  int indexOf(long offset) {
+    return Arrays.binarySearch(offsets, offset);
+  }
+
+  long getOffset(int block) {
+    return offsets[block];
+  }
+
+  long getMinTimestamp(int block) {
+    return minTimestamps[block];
+  }
+
+  long getMaxTimestamp(int block) {
+    return maxTimestamps[block];
+  }
+
+  boolean hasDeletes(int block) {
+    return hasDeletes[block];
+  }
+
+  /**
+   * Collects the statistics of the data blocks while they are written.
+   */
+  static class Writer implements Writable {
+    private final List<long[]> blocks = new ArrayList<>();
+    private final List<byte[][]> qualifiers = new ArrayList<>();
+
+    private long minTimestamp;
+    private long maxTimestamp;
+    private boolean deletes;
+    private byte[] minQualifier;
+    private byte[] maxQualifier;
+
+    Writer() {
+      reset();
+    }
+
+    private void reset() {
+      minTimestamp = Long.MAX_VALUE;
+      maxTimestamp = Long.MIN_VALUE;
+      deletes = false;
+      minQualifier = null;
+      maxQualifier = null;
+    }
+
+    void add(Cell cell) {
+      long timestamp = cell.getTimestamp();
+      minTimestamp = Math.min(minTimestamp, timestamp);
+      maxTimestamp = Math.max(maxTimestamp, timestamp);
+      deletes |= PrivateCellUtil.isDelete(cell.getTypeByte());
+      // Only copy the qualifier when it widens the range, which is rare within a row.
+      if (minQualifier == null
+          || CellUtil.compareQualifiers(cell, minQualifier, 0, minQualifier.length) < 0) {
+        minQualifier = CellUtil.cloneQualifier(cell);
+      }
+      if (maxQualifier == null
+          || CellUtil.compareQualifiers(cell, maxQualifier, 0, maxQualifier.length) > 0) {
+        maxQualifier = CellUtil.cloneQualifier(cell);
+      }
+    }
+
+    /**
+     * Records the statistics of the cells added since the previous block.
+     * @param offset the offset of the data block which was just written
+     */
+    void finishBlock(long offset) {
+      if (minQualifier == null) {
+        return;
+      }
+      blocks.add(new long[] { offset, minTimestamp, maxTimestamp, deletes ? 1 : 0 });
+      qualifiers.add(new byte[][] { minQualifier, maxQualifier });
+      reset();
+    }
+
+    int getBlockCount() {
+      return blocks.size();
+    }
+
+    @Override
+    public void write(DataOutput out) throws IOException {
+      out.writeInt(VERSION);
+      out.writeInt(blocks.size());
+      for (int i = 0; i < blocks.size(); i++) {
+        long[] block = blocks.get(i);
+        out.writeLong(block[0]);
+        out.writeLong(block[1]);
+        out.writeLong(block[2]);
+        out.writeBoolean(block[3] != 0);
+        Bytes.writeByteArray(out, qualifiers.get(i)[0]);
+        Bytes.writeByteArray(out, qualifiers.get(i)[1]);
+      }
+    }
+
+    /**
+     * Replaces the statistics collected so far with the serialized ones, to add more blocks to
+     * them.
+     */
+    @Override
+    public void readFields(DataInput in) throws IOException {
+      HFileBlockStats stats = read(in);
+      blocks.clear();
+      qualifiers.clear();
+      reset();
+      for (int i = 0; i < stats.getBlockCount(); i++) {
+        blocks.add(new long[] { stats.offsets[i], stats.minTimestamps[i], stats.maxTimestamps[i],
+          stats.hasDeletes[i] ? 1 : 0 });
+        qualifiers.add(new byte[][] { stats.minQualifiers[i], stats.maxQualifiers[i] });
+      }
+    }
+  }
+
+  /**
+   * Tells which data blocks might hold a cell returned by a user scan, given the time range and
+   * the column range of the scan. A block is skipped when:
+   * <ul>
+   * <li>all its cells are older than the time range: the delete markers older than the time range
+   * are ignored by the scan as well;</li>
+   * <li>all its cells are newer than the time range, or its qualifiers are all out of the column
+   * range, and it has no delete marker, which could mask cells of the following blocks.</li>
+   * </ul>
+   * Not thread safe, there is one per scanner.
+   */
+  public static class ScanPredicate {
+    private final HFileBlockStats stats;
+    private final TimeRange timeRange;
+    private final byte[] minColumn;
+    private final boolean minColumnInclusive;
+    private final byte[] maxColumn;
+    private final boolean maxColumnInclusive;
+    private long skippedBlocks;
+
+    /**
+     * @param minColumn the smallest qualifier to return, or null for no lower bound
+     * @param maxColumn the largest qualifier to return, or null for no upper bound
+     */
+    public ScanPredicate(HFileBlockStats stats, TimeRange timeRange, byte[] minColumn,
+        boolean minColumnInclusive, byte[] maxColumn, boolean maxColumnInclusive) {
+      this.stats = stats;
+      this.timeRange = timeRange;
+      this.minColumn = minColumn;
+      this.minColumnInclusive = minColumnInclusive;
+      this.maxColumn = maxColumn;
+      this.maxColumnInclusive = maxColumnInclusive;
+    }
+
+    boolean mightMatch(int block) {
+      if (!timeRange.isAllTime() && stats.maxTimestamps[block] < timeRange.getMin()) {
+        return false;
+      }
+      if (stats.hasDeletes[block]) {
+        return true;
+      }
+      if (!timeRange.isAllTime() && stats.minTimestamps[block] >= timeRange.getMax()) {
+        return false;
+      }
+      if (minColumn != null) {
+        int cmp = Bytes.compareTo(stats.maxQualifiers[block], minColumn);
+        if (cmp < 0 || (cmp == 0 && !minColumnInclusive)) {
+          return false;
+        }
+      }
+      if (maxColumn != null) {
+        int cmp = Bytes.compareTo(stats.minQualifiers[block], maxColumn);
+        if (cmp > 0 || (cmp == 0 && !maxColumnInclusive)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    /**
+     * @param offset the offset of the current data block
+     * @return the offset of the next data block which might hold a matching cell,
+     *         {@link #NO_MORE_BLOCKS} if there is none, or {@link #UNKNOWN_BLOCK} if there are no
+     *         statistics for the current block
+     */
+    public long nextDataBlockOffset(long offset) {
+      int block = stats.indexOf(offset);
+      if (block < 0) {
+        return UNKNOWN_BLOCK;
+      }
+      for (block++; block < stats.getBlockCount(); block++) {
+        if (mightMatch(block)) {
+          return stats.offsets[block];
+        }
+        skippedBlocks++;
+      }
+      return NO_MORE_BLOCKS;
+    }
+
+    /**
+     * @return the number of data blocks skipped so far
+     */
+    public long getSkippedBlocks() {
+      return skippedBlocks;
+    }
+  }
+}
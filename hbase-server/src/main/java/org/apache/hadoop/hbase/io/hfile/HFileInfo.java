@@ -104,6 +104,8 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
 
   private FixedFileTrailer trailer;
   private HFileContext hfileContext;
+  private boolean compactRootIndexKeys;
+  private boolean learnedRootIndex;
 
   public HFileInfo() {
     super();
@@ -337,6 +339,10 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
       Path path = context.getFilePath();
       checkFileVersion(path);
       this.hfileContext = createHFileContext(path, trailer, conf);
+      this.compactRootIndexKeys = conf.getBoolean(HFileBlockIndex.COMPACT_ROOT_KEYS_KEY,
+          HFileBlockIndex.DEFAULT_COMPACT_ROOT_KEYS);
+      this.learnedRootIndex = conf.getBoolean(HFileBlockIndex.LEARNED_ROOT_INDEX_KEY,
+          HFileBlockIndex.DEFAULT_LEARNED_ROOT_INDEX);
     } catch (Throwable t) {
       context.getInputStreamWrapper().unbuffer();
       IOUtils.closeQuietly(context.getInputStreamWrapper());
@@ -356,8 +362,9 @@ public class HFileInfo implements SortedMap<byte[], byte[]> {
         context.getFileSize() - trailer.getTrailerSize());
     // Data index. We also read statistics about the block index written after
     // the root level.
-    this.dataIndexReader = new HFileBlockIndex
-        .CellBasedKeyBlockIndexReader(trailer.createComparator(), trailer.getNumDataIndexLevels());
+    this.dataIndexReader = new HFileBlockIndex.CellBasedKeyBlockIndexReader(
+        trailer.createComparator(), trailer.getNumDataIndexLevels(), compactRootIndexKeys,
+        learnedRootIndex);
     dataIndexReader.readMultiLevelIndexRoot(blockIter.nextBlockWithBlockType(BlockType.ROOT_INDEX),
         trailer.getDataIndexCount());
     reader.setDataBlockIndexReader(dataIndexReader);
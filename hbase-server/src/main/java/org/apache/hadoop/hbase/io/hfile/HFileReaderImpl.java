@@ -41,6 +41,8 @@ import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoder;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
 import org.apache.hadoop.hbase.io.encoding.HFileBlockDecodingContext;
+import org.apache.hadoop.hbase.ipc.RpcExecutor;
+import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
 import org.apache.hadoop.hbase.trace.TraceUtil;
@@ -351,6 +353,8 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     protected HFileBlock curBlock;
     // Previous blocks that were used in the course of the read
     protected final ArrayList<HFileBlock> prevBlocks = new ArrayList<>();
+    // Skips the data blocks which cannot match, if set
+    private HFileBlockStats.ScanPredicate blockPredicate;
 
     public HFileScannerImpl(final HFile.Reader reader, final boolean cacheBlocks,
         final boolean pread, final boolean isCompaction) {
@@ -379,11 +383,24 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
     }
 
     private void returnBlocks(boolean returnAll) {
-      this.prevBlocks.forEach(HFileBlock::release);
+      // The response being sent may reference the cells of the blocks, it then releases them
+      for (HFileBlock block : this.prevBlocks) {
+        if (!RpcServer.keepForResponse(block)) {
+          block.release();
+        }
+      }
       this.prevBlocks.clear();
-      if (returnAll && this.curBlock != null) {
-        this.curBlock.release();
+      if (this.curBlock == null) {
+        return;
+      }
+      if (returnAll) {
+        if (!RpcServer.keepForResponse(this.curBlock)) {
+          this.curBlock.release();
+        }
         this.curBlock = null;
+      } else if (this.curBlock.isSharedMem() && RpcServer.isKeepingForResponse()) {
+        // we still read from it, but a close must not free it before the response is written
+        RpcServer.keepForResponse(this.curBlock.retain());
       }
     }
 
@@ -392,6 +409,11 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       return blockBuffer != null;
     }
 
+    @Override
+    public void setBlockPredicate(HFileBlockStats.ScanPredicate predicate) {
+      this.blockPredicate = predicate;
+    }
+
     @Override
     public String toString() {
       return "HFileScanner for reader " + String.valueOf(getReader());
@@ -756,6 +778,16 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
       if (curBlock == null) {
         return null;
       }
+      if (blockPredicate != null) {
+        long nextOffset = blockPredicate.nextDataBlockOffset(curBlock.getOffset());
+        if (nextOffset == HFileBlockStats.NO_MORE_BLOCKS) {
+          return null;
+        }
+        if (nextOffset != HFileBlockStats.UNKNOWN_BLOCK) {
+          return reader.readBlock(nextOffset, -1, cacheBlocks, pread, isCompaction, true,
+            BlockType.DATA, getEffectiveDataBlockEncoding());
+        }
+      }
       HFileBlock block = this.curBlock;
       do {
         if (block.getOffset() >= lastDataBlockOffset) {
@@ -1342,8 +1374,14 @@ public abstract class HFileReaderImpl implements HFile.Reader, Configurable {
 
         TraceUtil.addTimelineAnnotation("blockCacheMiss");
         // Load block from filesystem.
-        HFileBlock hfileBlock = fsBlockReader.readBlockData(dataBlockOffset, onDiskBlockSize, pread,
-          !isCompaction, shouldUseHeap(expectedBlockType));
+        HFileBlock hfileBlock;
+        boolean blocking = RpcExecutor.beginBlocking();
+        try {
+          hfileBlock = fsBlockReader.readBlockData(dataBlockOffset, onDiskBlockSize, pread,
+            !isCompaction, shouldUseHeap(expectedBlockType));
+        } finally {
+          RpcExecutor.endBlocking(blocking);
+        }
         validateBlockType(hfileBlock, expectedBlockType);
         HFileBlock unpacked = hfileBlock.unpack(hfileContext, fsBlockReader);
         BlockType.BlockCategory category = hfileBlock.getBlockType().getCategory();
@@ -163,6 +163,15 @@ public interface HFileScanner extends Shipper, Closeable {
    */
   Cell getNextIndexedKey();
 
+  /**
+   * Lets {@link #next()} skip the data blocks which cannot hold a cell matching the given
+   * predicate. Seeks are not affected. Does nothing if the scanner does not support it.
+   * @param predicate the predicate over the block statistics of the file, or null to read all
+   *          the blocks
+   */
+  default void setBlockPredicate(HFileBlockStats.ScanPredicate predicate) {
+  }
+
   /**
    * Close this HFile scanner and do necessary cleanup.
    */
@@ -164,6 +164,9 @@ public class HFileWriterImpl implements HFile.Writer {
 
   protected long maxMemstoreTS = 0;
 
+  /** Statistics of the data blocks, null unless enabled. */
+  private final HFileBlockStats.Writer blockStatsWriter;
+
   public HFileWriterImpl(final Configuration conf, CacheConfig cacheConf, Path path,
       FSDataOutputStream outputStream,
       CellComparator comparator, HFileContext fileContext) {
@@ -183,6 +186,8 @@ public class HFileWriterImpl implements HFile.Writer {
     this.cacheConf = cacheConf;
     float encodeBlockSizeRatio = conf.getFloat(UNIFIED_ENCODED_BLOCKSIZE_RATIO, 1f);
     this.encodedBlockSizeLimit = (int)(hFileContext.getBlocksize() * encodeBlockSizeRatio);
+    this.blockStatsWriter = conf.getBoolean(HFileBlockStats.BLOCK_STATS_ENABLED_KEY,
+      HFileBlockStats.DEFAULT_BLOCK_STATS_ENABLED) ? new HFileBlockStats.Writer() : null;
     finishInit(conf);
     if (LOG.isTraceEnabled()) {
       LOG.trace("Writer" + (path != null ? " for " + path : "") +
@@ -353,9 +358,15 @@ public class HFileWriterImpl implements HFile.Writer {
       getMidpoint(this.comparator, lastCellOfPreviousBlock, firstCellInBlock);
     dataBlockIndexWriter.addEntry(PrivateCellUtil.getCellKeySerializedAsKeyValueKey(indexEntry),
       lastDataBlockOffset, onDiskSize);
+    if (blockStatsWriter != null) {
+      blockStatsWriter.finishBlock(lastDataBlockOffset);
+    }
     totalUncompressedBytes += blockWriter.getUncompressedSizeWithHeader();
     if (cacheConf.shouldCacheDataOnWrite()) {
       doCacheOnWrite(lastDataBlockOffset);
+    } else if (cacheConf.getHotKeyRanges() != null && cacheConf.getHotKeyRanges().shouldCacheBlock(
+      firstCellInBlock, lastCell, blockWriter.getUncompressedSizeWithHeader())) {
+      doCacheOnWrite(lastDataBlockOffset);
     }
   }
 
@@ -617,6 +628,9 @@ public class HFileWriterImpl implements HFile.Writer {
 
     finishBlock();
     writeInlineBlocks(true);
+    if (blockStatsWriter != null && blockStatsWriter.getBlockCount() > 0) {
+      appendMetaBlock(HFileBlockStats.META_BLOCK_NAME, blockStatsWriter);
+    }
 
     FixedFileTrailer trailer = new FixedFileTrailer(getMajorVersion(), getMinorVersion());
 
@@ -754,6 +768,9 @@ public class HFileWriterImpl implements HFile.Writer {
     }
 
     blockWriter.write(cell);
+    if (blockStatsWriter != null) {
+      blockStatsWriter.add(cell);
+    }
 
     totalKeyLength += PrivateCellUtil.estimatedSerializedSizeOfKey(cell);
     totalValueLength += cell.getValueLength();
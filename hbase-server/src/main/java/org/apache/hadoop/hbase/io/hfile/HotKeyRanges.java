@@ -0,0 +1,228 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * The key ranges covered by the data blocks of a set of HFiles which are in the block cache. It is
+ * built from the input files when a compaction starts, and the writers of the compacted files use
+ * it to cache only the output blocks which overlap one of these ranges, up to a byte budget. This
+ * keeps the hot part of a store in the cache across a compaction, while the cold data rewritten by
+ * the compaction does not push anything out of the cache.
+ * <p>
+ * Each hot block contributes the range from its first key (inclusive) to the next key in the data
+ * block index (exclusive), so no data block other than the hot ones needs to be read.
+ */
+@InterfaceAudience.Private
+public class HotKeyRanges {
+
+  private static final Logger LOG = LoggerFactory.getLogger(HotKeyRanges.class);
+
+  private final CellComparator comparator;
+
+  /**
+   * For every input file, the first key of each hot block mapped to the exclusive end of its range,
+   * or null if the block is the last one of the file. Ranges of one file never overlap.
+   */
+  private final List<NavigableMap<Cell, Cell>> ranges;
+
+  private final AtomicLong remainingBudget;
+
+  @VisibleForTesting
+  HotKeyRanges(CellComparator comparator, List<NavigableMap<Cell, Cell>> ranges, long budget) {
+    this.comparator = comparator;
+    this.ranges = ranges;
+    this.remainingBudget = new AtomicLong(budget);
+  }
+
+  /**
+   * Collects the key ranges of the data blocks of the given files which are currently cached. The
+   * block cache is walked once, and the walk stops after {@code maxScannedBlocks} cached blocks, or
+   * once the hot blocks found are enough to fill the budget, so a large cache does not make every
+   * compaction expensive. The key range of a hot block is read from the block itself, which is in
+   * the cache, and from the block index.
+   * @param cache the block cache the files are cached in
+   * @param readers the files about to be compacted
+   * @param budget maximum number of bytes the writers may cache
+   * @param maxScannedBlocks maximum number of cached blocks to look at
+   * @return the hot key ranges, or null if no cached data block of the files was found
+   */
+  public static HotKeyRanges create(BlockCache cache, Collection<HFile.Reader> readers,
+      long budget, long maxScannedBlocks) {
+    if (budget <= 0 || maxScannedBlocks <= 0 || readers.isEmpty()) {
+      return null;
+    }
+    Map<String, HFile.Reader> readersByName = new HashMap<>();
+    for (HFile.Reader reader : readers) {
+      readersByName.put(reader.getName(), reader);
+    }
+    Map<String, NavigableSet<Long>> hotBlocks = new HashMap<>();
+    long scannedBlocks = 0;
+    long hotSize = 0;
+    for (CachedBlock cb : cache) {
+      if (cb.getBlockType() != null && cb.getBlockType().isData()
+          && readersByName.containsKey(cb.getFilename())) {
+        hotBlocks.computeIfAbsent(cb.getFilename(), k -> new TreeSet<>()).add(cb.getOffset());
+        hotSize += cb.getSize();
+      }
+      if (++scannedBlocks >= maxScannedBlocks || hotSize >= budget) {
+        break;
+      }
+    }
+    if (hotBlocks.isEmpty()) {
+      return null;
+    }
+
+    CellComparator comparator = null;
+    List<NavigableMap<Cell, Cell>> ranges = new ArrayList<>(hotBlocks.size());
+    long resolvedSize = 0;
+    for (Map.Entry<String, NavigableSet<Long>> entry : hotBlocks.entrySet()) {
+      HFile.Reader reader = readersByName.get(entry.getKey());
+      if (!(reader instanceof HFileReaderImpl)) {
+        continue;
+      }
+      comparator = reader.getComparator();
+      NavigableMap<Cell, Cell> fileRanges = new TreeMap<>(keyComparator(comparator));
+      HFileReaderImpl.HFileScannerImpl scanner =
+          (HFileReaderImpl.HFileScannerImpl) reader.getScanner(false, true, true);
+      try {
+        for (long offset : entry.getValue()) {
+          // No point in resolving more hot input than the writers are allowed to cache.
+          if (resolvedSize >= budget) {
+            break;
+          }
+          resolvedSize += addRange((HFileReaderImpl) reader, scanner, offset, fileRanges);
+        }
+      } catch (IOException e) {
+        LOG.warn("Failed to read the hot key ranges of {}, its blocks will not be cached on write",
+          reader.getPath(), e);
+      } finally {
+        scanner.close();
+      }
+      if (!fileRanges.isEmpty()) {
+        ranges.add(fileRanges);
+      }
+    }
+    if (ranges.isEmpty()) {
+      return null;
+    }
+    LOG.debug("Found {} bytes of hot data blocks in {} of {} files", resolvedSize, ranges.size(),
+      readers.size());
+    return new HotKeyRanges(comparator, ranges, budget);
+  }
+
+  /**
+   * Adds the key range of the data block at the given offset.
+   * @return the size of the block
+   */
+  private static int addRange(HFileReaderImpl reader, HFileReaderImpl.HFileScannerImpl scanner,
+      long offset, NavigableMap<Cell, Cell> fileRanges) throws IOException {
+    HFileBlock block = reader.readBlock(offset, -1, false, true, true, false, BlockType.DATA,
+      scanner.getEffectiveDataBlockEncoding());
+    try {
+      // Copy the key, the block buffer goes away once the block is released.
+      Cell firstKey = KeyValueUtil.toNewKeyCell(scanner.getFirstKeyCellInBlock(block));
+      BlockWithScanInfo scanInfo = reader.getDataBlockIndexReader().loadDataBlockWithScanInfo(
+        firstKey, block, false, true, true, scanner.getEffectiveDataBlockEncoding(), reader);
+      Cell end = null;
+      if (scanInfo != null) {
+        if (scanInfo.getHFileBlock() != block) {
+          scanInfo.getHFileBlock().release();
+        }
+        Cell nextIndexedKey = scanInfo.getNextIndexedKey();
+        if (nextIndexedKey != null && nextIndexedKey != KeyValueScanner.NO_NEXT_INDEXED_KEY) {
+          end = KeyValueUtil.toNewKeyCell(nextIndexedKey);
+        }
+      }
+      fileRanges.put(firstKey, end);
+      return block.getUncompressedSizeWithoutHeader();
+    } finally {
+      block.release();
+    }
+  }
+
+  private static Comparator<Cell> keyComparator(CellComparator comparator) {
+    return (left, right) -> PrivateCellUtil.compareKeyIgnoresMvcc(comparator, left, right);
+  }
+
+  /**
+   * @return true if the given key range, both ends inclusive, overlaps one of the hot ranges
+   */
+  public boolean overlaps(Cell first, Cell last) {
+    for (NavigableMap<Cell, Cell> fileRanges : ranges) {
+      Map.Entry<Cell, Cell> floor = fileRanges.floorEntry(last);
+      // Ranges of a file are disjoint, so the one starting last before our end is the only
+      // candidate.
+      if (floor != null && (floor.getValue() == null
+          || PrivateCellUtil.compareKeyIgnoresMvcc(comparator, floor.getValue(), first) > 0)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Decides whether a written data block should be cached, and if so charges its size against the
+   * budget.
+   * @param first first cell of the block
+   * @param last last cell of the block
+   * @param size size of the block
+   * @return true if the block should be cached
+   */
+  public boolean shouldCacheBlock(Cell first, Cell last, long size) {
+    if (remainingBudget.get() < size || !overlaps(first, last)) {
+      return false;
+    }
+    long remaining;
+    do {
+      remaining = remainingBudget.get();
+      if (remaining < size) {
+        return false;
+      }
+    } while (!remainingBudget.compareAndSet(remaining, remaining - size));
+    return true;
+  }
+
+  @VisibleForTesting
+  long getRemainingBudget() {
+    return remainingBudget.get();
+  }
+}
@@ -19,6 +19,8 @@
 
 package org.apache.hadoop.hbase.ipc;
 
+import java.util.Collections;
+import java.util.Map;
 import org.apache.hadoop.hbase.util.DirectMemoryUtils;
 import org.apache.yetus.audience.InterfaceAudience;
 
@@ -195,4 +197,20 @@ public class MetricsHBaseServerWrapperImpl implements MetricsHBaseServerWrapper
 
     return DirectMemoryUtils.getNettyDirectMemoryUsage();
   }
+
+  @Override
+  public Map<String, Long> getTenantCallCounts() {
+    if (!isServerStarted() || this.server.getScheduler() == null) {
+      return Collections.emptyMap();
+    }
+    return server.getScheduler().getTenantCallCounts();
+  }
+
+  @Override
+  public Map<String, Long> getTenantQueueTimes() {
+    if (!isServerStarted() || this.server.getScheduler() == null) {
+      return Collections.emptyMap();
+    }
+    return server.getScheduler().getTenantQueueTimes();
+  }
 }
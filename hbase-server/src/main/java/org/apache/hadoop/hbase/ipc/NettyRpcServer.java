@@ -65,18 +65,38 @@ public class NettyRpcServer extends RpcServer {
 
   public static final Logger LOG = LoggerFactory.getLogger(NettyRpcServer.class);
 
+  /**
+   * Whether responses reference the cells they return, which usually live in pinned blocks, rather
+   * than copying them into a cell block. Only cells of at least
+   * {@link #ZERO_COPY_RESPONSE_MIN_CELL_SIZE_KEY} bytes are referenced, smaller ones are cheaper to
+   * copy than to send as a separate buffer.
+   */
+  public static final String ZERO_COPY_RESPONSE_CONF_KEY =
+      "hbase.ipc.server.netty.response.zerocopy";
+  public static final boolean DEFAULT_ZERO_COPY_RESPONSE = false;
+  public static final String ZERO_COPY_RESPONSE_MIN_CELL_SIZE_KEY =
+      "hbase.ipc.server.netty.response.zerocopy.min.cell.size";
+  public static final int DEFAULT_ZERO_COPY_RESPONSE_MIN_CELL_SIZE = 4096;
+
   private final InetSocketAddress bindAddress;
 
   private final CountDownLatch closed = new CountDownLatch(1);
   private final Channel serverChannel;
   private final ChannelGroup allChannels =
     new DefaultChannelGroup(GlobalEventExecutor.INSTANCE, true);
+  // -1 if responses copy all cells
+  final int zeroCopyMinCellSize;
 
   public NettyRpcServer(Server server, String name, List<BlockingServiceAndInterface> services,
       InetSocketAddress bindAddress, Configuration conf, RpcScheduler scheduler,
       boolean reservoirEnabled) throws IOException {
     super(server, name, services, bindAddress, conf, scheduler, reservoirEnabled);
     this.bindAddress = bindAddress;
+    this.zeroCopyMinCellSize =
+        conf.getBoolean(ZERO_COPY_RESPONSE_CONF_KEY, DEFAULT_ZERO_COPY_RESPONSE)
+            ? Math.max(0, conf.getInt(ZERO_COPY_RESPONSE_MIN_CELL_SIZE_KEY,
+              DEFAULT_ZERO_COPY_RESPONSE_MIN_CELL_SIZE))
+            : -1;
     EventLoopGroup eventLoopGroup;
     Class<? extends ServerChannel> channelClass;
     if (server instanceof HRegionServer) {
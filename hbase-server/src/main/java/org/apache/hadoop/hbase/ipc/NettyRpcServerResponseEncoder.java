@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hbase.ipc;
 
+import org.apache.hbase.thirdparty.io.netty.buffer.ByteBuf;
 import org.apache.hbase.thirdparty.io.netty.buffer.Unpooled;
 import org.apache.hbase.thirdparty.io.netty.channel.ChannelHandlerContext;
 import org.apache.hbase.thirdparty.io.netty.channel.ChannelOutboundHandlerAdapter;
@@ -40,6 +41,21 @@ class NettyRpcServerResponseEncoder extends ChannelOutboundHandlerAdapter {
   @Override
   public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
       throws Exception {
+    if (msg instanceof NettyServerCall) {
+      NettyServerCall call = (NettyServerCall) msg;
+      ByteBuf buf = call.takeZeroCopyResponse();
+      if (buf != null) {
+        // the cells are released by done() once netty no longer needs them
+        int size = buf.readableBytes();
+        ctx.write(buf, promise).addListener(f -> {
+          call.done();
+          if (f.isSuccess()) {
+            metrics.sentBytes(size);
+          }
+        });
+        return;
+      }
+    }
     if (msg instanceof RpcResponse) {
       RpcResponse resp = (RpcResponse) msg;
       BufferChain buf = resp.getResponse();
@@ -19,15 +19,36 @@ package org.apache.hadoop.hbase.ipc;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellScanner;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.codec.Codec;
+import org.apache.hadoop.hbase.codec.KeyValueCodec;
+import org.apache.hadoop.hbase.codec.KeyValueCodecWithTags;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
 import org.apache.hadoop.hbase.ipc.RpcServer.CallCleanup;
+import org.apache.hadoop.hbase.nio.HBaseReferenceCounted;
+import org.apache.hadoop.hbase.regionserver.ByteBufferChunkKeyValue;
+import org.apache.hadoop.hbase.regionserver.NoTagByteBufferChunkKeyValue;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.apache.hbase.thirdparty.com.google.protobuf.BlockingService;
+import org.apache.hbase.thirdparty.com.google.protobuf.CodedOutputStream;
 import org.apache.hbase.thirdparty.com.google.protobuf.Descriptors.MethodDescriptor;
 import org.apache.hbase.thirdparty.com.google.protobuf.Message;
+import org.apache.hbase.thirdparty.io.netty.buffer.ByteBuf;
+import org.apache.hbase.thirdparty.io.netty.buffer.ByteBufAllocator;
+import org.apache.hbase.thirdparty.io.netty.buffer.ByteBufOutputStream;
+import org.apache.hbase.thirdparty.io.netty.buffer.CompositeByteBuf;
+import org.apache.hbase.thirdparty.io.netty.buffer.Unpooled;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RPCProtos.CellBlockMeta;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.RPCProtos.RequestHeader;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RPCProtos.ResponseHeader;
 
 /**
  * Datastructure that holds all necessary to a method invocation and then afterward, carries the
@@ -37,6 +58,18 @@ import org.apache.hadoop.hbase.shaded.protobuf.generated.RPCProtos.RequestHeader
 @InterfaceAudience.Private
 class NettyServerCall extends ServerCall<NettyServerRpcConnection> {
 
+  /**
+   * Response written as netty buffers instead of {@link #response}, see
+   * {@link #setZeroCopyResponse(Message, CellScanner, int)}.
+   */
+  private ByteBuf zeroCopyResponse;
+
+  /**
+   * The blocks {@link #zeroCopyResponse} may point into, handed over by the callback which would
+   * have released them. They are released once the response has been written.
+   */
+  private List<HBaseReferenceCounted> responseRefs;
+
   NettyServerCall(int id, BlockingService service, MethodDescriptor md, RequestHeader header,
       Message param, CellScanner cellScanner, NettyServerRpcConnection connection, long size,
       InetAddress remoteAddress, long receiveTime, int timeout, ByteBuffAllocator bbAllocator,
@@ -45,6 +78,174 @@ class NettyServerCall extends ServerCall<NettyServerRpcConnection> {
         timeout, bbAllocator, cellBlockBuilder, reqCleanup);
   }
 
+  @Override
+  public synchronized void setResponse(Message m, CellScanner cells, Throwable t,
+      String errorMsg) {
+    int minCellSize = ((NettyRpcServer) connection.rpcServer).zeroCopyMinCellSize;
+    // The cells can only be referenced if a callback would release their blocks, and only the
+    // KeyValue codecs write them as they are laid out in the blocks.
+    if (minCellSize < 0 || cells == null || t != null || this.isError
+        || this.rpcCallback == null || connection.useWrap || connection.compressionCodec != null
+        || connection.cellBlockResponseCompression != null
+        || connection.codec == null || (connection.codec.getClass() != KeyValueCodec.class
+            && connection.codec.getClass() != KeyValueCodecWithTags.class)) {
+      super.setResponse(m, cells, t, errorMsg);
+      return;
+    }
+    boolean pinned = false;
+    try {
+      pinned = setZeroCopyResponse(m, cells, minCellSize);
+    } catch (IOException e) {
+      RpcServer.LOG.warn("Exception while creating response " + e);
+    }
+    if (!pinned) {
+      runCallback(this.rpcCallback);
+      return;
+    }
+    // The callback still runs here rather than on the event loop once the response is written, as
+    // it may read from the file system. The blocks it releases are kept by the response instead.
+    List<HBaseReferenceCounted> refs = new ArrayList<>();
+    RpcServer.RESPONSE_REFS.set(refs);
+    try {
+      runCallback(this.rpcCallback);
+    } finally {
+      RpcServer.RESPONSE_REFS.remove();
+    }
+    this.responseRefs = refs;
+  }
+
+  /**
+   * Builds the response as a composite buffer. The protobuf header and message, the length
+   * prefixes and the small cells are written to pooled direct buffers, while cells of at least
+   * {@code minCellSize} bytes are wrapped where they are, usually in a pinned block.
+   * @return whether any cell is referenced rather than copied
+   */
+  private boolean setZeroCopyResponse(Message m, CellScanner cells, int minCellSize)
+      throws IOException {
+    boolean withTags = connection.codec.getClass() == KeyValueCodecWithTags.class;
+    ByteBufAllocator alloc = connection.channel.alloc();
+    CompositeByteBuf buf = alloc.compositeDirectBuffer(Integer.MAX_VALUE);
+    ByteBuf copied = alloc.directBuffer();
+    boolean pinned = false;
+    try {
+      Codec.Encoder encoder = connection.codec.getEncoder(new ByteBufOutputStream(copied));
+      int sliceStart = 0;
+      while (cells.advance()) {
+        Cell cell = cells.current();
+        ByteBuf wrapped = wrapKeyValue(cell, withTags, minCellSize);
+        if (wrapped == null) {
+          encoder.write(cell);
+          continue;
+        }
+        copied.writeInt(wrapped.readableBytes());
+        buf.addComponent(true, copied.retainedSlice(sliceStart, copied.writerIndex() - sliceStart));
+        buf.addComponent(true, wrapped);
+        sliceStart = copied.writerIndex();
+        pinned = true;
+      }
+      encoder.flush();
+      if (copied.writerIndex() > sliceStart) {
+        buf.addComponent(true, copied.retainedSlice(sliceStart, copied.writerIndex() - sliceStart));
+      }
+      int cellBlockSize = buf.readableBytes();
+      ResponseHeader.Builder headerBuilder = ResponseHeader.newBuilder().setCallId(this.id);
+      if (cellBlockSize > 0) {
+        headerBuilder.setCellBlockMeta(CellBlockMeta.newBuilder().setLength(cellBlockSize));
+      }
+      buf.addComponent(true, 0, createHeaderAndMessageBytes(alloc, m, headerBuilder.build(),
+        cellBlockSize));
+      this.zeroCopyResponse = buf;
+      return pinned;
+    } catch (IOException | RuntimeException e) {
+      buf.release();
+      throw e;
+    } finally {
+      copied.release();
+    }
+  }
+
+  /**
+   * @return the bytes {@code cell} is serialized to by the KeyValue codecs, or null if the cell is
+   *         smaller than {@code minCellSize}, is not laid out as a KeyValue or is in the memstore
+   */
+  private static ByteBuf wrapKeyValue(Cell cell, boolean withTags, int minCellSize) {
+    // The memstore chunks are not reference counted, so a close could recycle them meanwhile
+    if (cell instanceof ByteBufferChunkKeyValue || cell instanceof NoTagByteBufferChunkKeyValue) {
+      return null;
+    }
+    if (cell instanceof ByteBufferKeyValue) {
+      ByteBufferKeyValue kv = (ByteBufferKeyValue) cell;
+      int length = kv.getSerializedSize(withTags);
+      if (length < minCellSize) {
+        return null;
+      }
+      ByteBuffer dup = kv.getBuffer().duplicate();
+      dup.limit(kv.getOffset() + length);
+      dup.position(kv.getOffset());
+      return Unpooled.wrappedBuffer(dup);
+    }
+    if (cell instanceof KeyValue && !(cell instanceof KeyValue.KeyOnlyKeyValue)) {
+      KeyValue kv = (KeyValue) cell;
+      int length = kv.getSerializedSize(withTags);
+      if (length < minCellSize) {
+        return null;
+      }
+      return Unpooled.wrappedBuffer(kv.getBuffer(), kv.getOffset(), length);
+    }
+    return null;
+  }
+
+  private static ByteBuf createHeaderAndMessageBytes(ByteBufAllocator alloc, Message result,
+      Message header, int cellBlockSize) throws IOException {
+    int headerSerializedSize = header.getSerializedSize();
+    int resultSerializedSize = result != null ? result.getSerializedSize() : 0;
+    int pbSize =
+        headerSerializedSize + CodedOutputStream.computeUInt32SizeNoTag(headerSerializedSize);
+    if (result != null) {
+      pbSize +=
+          resultSerializedSize + CodedOutputStream.computeUInt32SizeNoTag(resultSerializedSize);
+    }
+    int totalPBSize = pbSize + Bytes.SIZEOF_INT;
+    ByteBuf pbBuf = alloc.directBuffer(totalPBSize);
+    try {
+      writeToCOS(result, header, pbSize + cellBlockSize, pbBuf.nioBuffer(0, totalPBSize));
+    } catch (IOException | RuntimeException e) {
+      pbBuf.release();
+      throw e;
+    }
+    return pbBuf.writerIndex(totalPBSize);
+  }
+
+  /**
+   * @return the response built by {@link #setResponse(Message, CellScanner, Throwable, String)}
+   *         if it references the cells instead of copying them, otherwise null in which case
+   *         {@link #getResponse()} should be written. Ownership of the buffer passes to the caller.
+   */
+  synchronized ByteBuf takeZeroCopyResponse() {
+    ByteBuf buf = this.zeroCopyResponse;
+    this.zeroCopyResponse = null;
+    return buf;
+  }
+
+  @Override
+  public void done() {
+    super.done();
+    List<HBaseReferenceCounted> refs;
+    synchronized (this) {
+      refs = this.responseRefs;
+      this.responseRefs = null;
+      if (this.zeroCopyResponse != null) {
+        this.zeroCopyResponse.release();
+        this.zeroCopyResponse = null;
+      }
+    }
+    if (refs != null) {
+      for (HBaseReferenceCounted ref : refs) {
+        ref.release();
+      }
+    }
+  }
+
   /**
    * If we have a response, and delay is not set, then respond immediately. Otherwise, do not
    * respond to client. This is called by the RPC code in the context of the Handler thread.
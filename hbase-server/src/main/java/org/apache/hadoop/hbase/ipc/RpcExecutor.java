@@ -18,13 +18,23 @@
 
 package org.apache.hadoop.hbase.ipc;
 
+import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.Map;
@@ -38,12 +48,14 @@ import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.hadoop.hbase.monitoring.MonitoredRPCHandler;
+import org.apache.hadoop.hbase.monitoring.TaskMonitor;
 import org.apache.hadoop.hbase.util.BoundedPriorityBlockingQueue;
 import org.apache.hadoop.hbase.util.ReflectionUtils;
 import org.apache.hadoop.util.StringUtils;
 
 import org.apache.hbase.thirdparty.com.google.common.base.Preconditions;
 import org.apache.hbase.thirdparty.com.google.common.base.Strings;
+import org.apache.hbase.thirdparty.com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Runs the CallRunners passed here via {@link #dispatch(CallRunner)}. Subclass and add particular
@@ -62,10 +74,12 @@ public abstract class RpcExecutor {
   /**
    * The default, 'fifo', has the least friction but is dumb. If set to 'deadline', uses a priority
    * queue and deprioritizes long-running scans. Sorting by priority comes at a cost, reduced
-   * throughput.
+   * throughput. If set to 'fair', shares the handlers between the users or tables, see
+   * {@link WeightedFairCallQueue}.
    */
   public static final String CALL_QUEUE_TYPE_CODEL_CONF_VALUE = "codel";
   public static final String CALL_QUEUE_TYPE_DEADLINE_CONF_VALUE = "deadline";
+  public static final String CALL_QUEUE_TYPE_FAIR_CONF_VALUE = "fair";
   public static final String CALL_QUEUE_TYPE_FIFO_CONF_VALUE = "fifo";
   public static final String CALL_QUEUE_TYPE_CONF_KEY = "hbase.ipc.server.callqueue.type";
   public static final String CALL_QUEUE_TYPE_CONF_DEFAULT = CALL_QUEUE_TYPE_FIFO_CONF_VALUE;
@@ -79,6 +93,26 @@ public abstract class RpcExecutor {
   public static final int CALL_QUEUE_CODEL_DEFAULT_INTERVAL = 100;
   public static final double CALL_QUEUE_CODEL_DEFAULT_LIFO_THRESHOLD = 0.8;
 
+  /**
+   * If set, the handler count of each queue type is the number of calls it runs at once rather
+   * than a number of threads. The calls are run on threads created on demand, virtual threads if
+   * the JVM has them, so that calls blocked on I/O do not need a large pool of idle handlers.
+   */
+  public static final String ELASTIC_HANDLERS_CONF_KEY = "hbase.ipc.server.handler.elastic";
+  public static final boolean ELASTIC_HANDLERS_CONF_DEFAULT = false;
+
+  /**
+   * With elastic handlers, how many calls of a queue type may be taken from the queues at once,
+   * as a factor of its handler count. Only the calls which are not blocked, see
+   * {@link #beginBlocking()}, count towards the handler count.
+   */
+  public static final String ELASTIC_HANDLERS_INFLIGHT_FACTOR_CONF_KEY =
+      "hbase.ipc.server.handler.elastic.inflight.factor";
+  public static final int ELASTIC_HANDLERS_INFLIGHT_FACTOR_CONF_DEFAULT = 4;
+
+  /** The permit of the elastic handler call running on this thread, if any */
+  private static final ThreadLocal<ElasticPermit> ELASTIC_PERMIT = new ThreadLocal<>();
+
   private LongAdder numGeneralCallsDropped = new LongAdder();
   private LongAdder numLifoModeSwitches = new LongAdder();
 
@@ -88,6 +122,8 @@ public abstract class RpcExecutor {
   private final Object[] queueInitArgs;
 
   private final PriorityFunction priority;
+  /** Only set for the weighted fair queues */
+  private final WeightedFairCallQueue.TenantQueueTimes tenantQueueTimes;
 
   protected volatile int currentQueueLimit;
 
@@ -102,6 +138,13 @@ public abstract class RpcExecutor {
   private Configuration conf = null;
   private Abortable abortable = null;
 
+  private final boolean elasticHandlers;
+  private final int elasticInflightFactor;
+  /** Runs the calls taken by the elastic handlers, see {@link #ELASTIC_HANDLERS_CONF_KEY} */
+  private ThreadPoolExecutor elasticPool;
+  /** The statuses of the elastic handlers, reused as a call runs on a new thread every time */
+  private final Deque<MonitoredRPCHandler> elasticStatuses = new ConcurrentLinkedDeque<>();
+
   public RpcExecutor(final String name, final int handlerCount, final int maxQueueLength,
       final PriorityFunction priority, final Configuration conf, final Abortable abortable) {
     this(name, handlerCount, conf.get(CALL_QUEUE_TYPE_CONF_KEY,
@@ -137,8 +180,18 @@ public abstract class RpcExecutor {
     this.handlers = new ArrayList<>(this.handlerCount);
 
     this.priority = priority;
-
-    if (isDeadlineQueueType(callQueueType)) {
+    this.elasticHandlers = conf.getBoolean(ELASTIC_HANDLERS_CONF_KEY,
+      ELASTIC_HANDLERS_CONF_DEFAULT);
+    this.elasticInflightFactor = Math.max(1, conf.getInt(ELASTIC_HANDLERS_INFLIGHT_FACTOR_CONF_KEY,
+      ELASTIC_HANDLERS_INFLIGHT_FACTOR_CONF_DEFAULT));
+
+    this.tenantQueueTimes = isFairQueueType(callQueueType) ?
+        new WeightedFairCallQueue.TenantQueueTimes() : null;
+    if (tenantQueueTimes != null) {
+      this.name += ".Fair";
+      this.queueInitArgs = new Object[] { maxQueueLength, conf, tenantQueueTimes };
+      this.queueClass = WeightedFairCallQueue.class;
+    } else if (isDeadlineQueueType(callQueueType)) {
       this.name += ".Deadline";
       this.queueInitArgs = new Object[] { maxQueueLength,
         new CallPriorityComparator(conf, this.priority) };
@@ -224,6 +277,9 @@ public abstract class RpcExecutor {
 
   public void start(final int port) {
     running = true;
+    if (elasticHandlers) {
+      elasticPool = createElasticPool("RpcServer." + name + ".elastic,port=" + port);
+    }
     startHandlers(port);
   }
 
@@ -232,6 +288,43 @@ public abstract class RpcExecutor {
     for (Thread handler : handlers) {
       handler.interrupt();
     }
+    if (elasticPool != null) {
+      elasticPool.shutdownNow();
+    }
+  }
+
+  /**
+   * Creates a pool without a queue nor a bound on its threads, the concurrency being bounded by the
+   * handlers which submit to it. The threads are virtual on a JVM which has them, else they are
+   * kept for a while when idle.
+   */
+  private static ThreadPoolExecutor createElasticPool(String threadPrefix) {
+    ThreadFactory threadFactory = createVirtualThreadFactory(threadPrefix + ",thread=");
+    long keepAliveSeconds = 0;
+    if (threadFactory == null) {
+      threadFactory = new ThreadFactoryBuilder().setNameFormat(threadPrefix + ",thread=%d")
+          .setDaemon(true).build();
+      keepAliveSeconds = 60;
+    }
+    return new ThreadPoolExecutor(0, Integer.MAX_VALUE, keepAliveSeconds, TimeUnit.SECONDS,
+        new SynchronousQueue<>(), threadFactory);
+  }
+
+  /**
+   * @return a factory of virtual threads, or null if the JVM has none. Looked up by reflection as
+   *         we still compile against JDKs without them.
+   */
+  private static ThreadFactory createVirtualThreadFactory(String namePrefix) {
+    try {
+      Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+      Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+      Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+      builder = nameMethod.invoke(builder, namePrefix, 0L);
+      return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.debug("No virtual threads, elastic handlers run on platform threads", e);
+      return null;
+    }
   }
 
   /** Add the request to the executor queue */
@@ -265,6 +358,23 @@ public abstract class RpcExecutor {
     double handlerFailureThreshhold = conf == null ? 1.0 : conf.getDouble(
       HConstants.REGION_SERVER_HANDLER_ABORT_ON_ERROR_PERCENT,
       HConstants.DEFAULT_REGION_SERVER_HANDLER_ABORT_ON_ERROR_PERCENT);
+    if (elasticPool != null) {
+      // one handler per queue, which takes its calls and runs them in the elastic pool
+      Semaphore permits = new Semaphore(numHandlers);
+      Semaphore inflight = new Semaphore(numHandlers * elasticInflightFactor);
+      for (int i = 0; i < qsize; i++) {
+        final int index = qindex + i;
+        String name = "RpcServer." + threadPrefix + ".handler=elastic,queue=" + index + ",port="
+            + port;
+        Handler handler = new ElasticHandler(name, handlerFailureThreshhold,
+          callQueues.get(index), activeHandlerCount, permits, inflight);
+        handler.start();
+        handlers.add(handler);
+      }
+      LOG.debug("Started elastic handlers for at most {} calls with threadPrefix={}, "
+          + "numCallQueues={}, port={}", numHandlers, threadPrefix, qsize, port);
+      return;
+    }
     for (int i = 0; i < numHandlers; i++) {
       final int index = qindex + (i % qsize);
       String name = "RpcServer." + threadPrefix + ".handler=" + handlers.size() + ",queue=" + index
@@ -330,8 +440,14 @@ public abstract class RpcExecutor {
       }
     }
 
-    private void run(CallRunner cr) {
-      MonitoredRPCHandler status = RpcServer.getStatus();
+    /**
+     * Runs the call on this thread. Override to run it elsewhere.
+     */
+    protected void run(CallRunner cr) throws InterruptedException {
+      run(cr, RpcServer.getStatus());
+    }
+
+    protected final void run(CallRunner cr, MonitoredRPCHandler status) {
       cr.setStatus(status);
       try {
         this.activeHandlerCount.incrementAndGet();
@@ -362,6 +478,126 @@ public abstract class RpcExecutor {
     }
   }
 
+  /**
+   * Called by a call before it waits for I/O or a lock. If it runs on an elastic handler, its
+   * permit is released until {@link #endBlocking(boolean)}, so that another call of the queue type
+   * can run meanwhile instead of the handler sitting idle. Nested calls are no-ops, as are the
+   * calls of a call which runs over the limit. Use as
+   * <pre>
+   * boolean blocking = RpcExecutor.beginBlocking();
+   * try {
+   *   ...
+   * } finally {
+   *   RpcExecutor.endBlocking(blocking);
+   * }
+   * </pre>
+   * @return whether the permit was released, to pass to {@link #endBlocking(boolean)}
+   */
+  public static boolean beginBlocking() {
+    ElasticPermit permit = ELASTIC_PERMIT.get();
+    if (permit == null || permit.released) {
+      return false;
+    }
+    permit.released = true;
+    permit.permits.release();
+    return true;
+  }
+
+  /**
+   * Takes back the permit released by {@link #beginBlocking()} if one is available. It does not
+   * wait for one, as the calls run meanwhile may be waiting for this one, e.g. for the WAL sync or
+   * the mvcc write it is part of. So the call finishes over the limit instead, and gives back no
+   * permit when it completes.
+   */
+  public static void endBlocking(boolean blocking) {
+    if (!blocking) {
+      return;
+    }
+    ElasticPermit permit = ELASTIC_PERMIT.get();
+    permit.released = !permit.permits.tryAcquire();
+  }
+
+  private static final class ElasticPermit {
+    final Semaphore permits;
+    boolean released;
+
+    ElasticPermit(Semaphore permits) {
+      this.permits = permits;
+    }
+  }
+
+  /**
+   * Takes the calls of a queue and runs them in the elastic pool, with at most as many calls at
+   * once as the permits shared by the handlers of the queue type. A handler waiting on an empty
+   * queue holds no permit, it takes one once it has a call, so only this one call per queue waits
+   * outside of the queue and its deadline and CoDel behaviors. A call gives back its permit while
+   * it is blocked, but the calls taken from the queues and not completed yet are bounded as well.
+   */
+  protected class ElasticHandler extends Handler {
+    private final Semaphore permits;
+    private final Semaphore inflight;
+
+    ElasticHandler(final String name, final double handlerFailureThreshhold,
+        final BlockingQueue<CallRunner> q, final AtomicInteger activeHandlerCount,
+        final Semaphore permits, final Semaphore inflight) {
+      super(name, handlerFailureThreshhold, q, activeHandlerCount);
+      this.permits = permits;
+      this.inflight = inflight;
+    }
+
+    @Override
+    protected CallRunner getCallRunner() throws InterruptedException {
+      CallRunner cr = super.getCallRunner();
+      try {
+        inflight.acquire();
+      } catch (InterruptedException e) {
+        cr.drop();
+        throw e;
+      }
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        inflight.release();
+        cr.drop();
+        throw e;
+      }
+      return cr;
+    }
+
+    @Override
+    protected void run(CallRunner cr) {
+      MonitoredRPCHandler status = elasticStatuses.poll();
+      if (status == null) {
+        status = TaskMonitor.get().createRPCStatus(getName());
+        status.pause("Waiting for a call");
+      }
+      final MonitoredRPCHandler callStatus = status;
+      try {
+        elasticPool.execute(() -> {
+          ElasticPermit permit = new ElasticPermit(permits);
+          ELASTIC_PERMIT.set(permit);
+          try {
+            run(cr, callStatus);
+          } finally {
+            ELASTIC_PERMIT.remove();
+            elasticStatuses.push(callStatus);
+            // not held if the call could not take it back after blocking
+            if (!permit.released) {
+              permits.release();
+            }
+            inflight.release();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        // stopping
+        elasticStatuses.push(callStatus);
+        permits.release();
+        inflight.release();
+        cr.drop();
+      }
+    }
+  }
+
   public static abstract class QueueBalancer {
     /**
      * @return the index of the next queue to which a request should be inserted
@@ -445,6 +681,10 @@ public abstract class RpcExecutor {
     return callQueueType.equals(CALL_QUEUE_TYPE_FIFO_CONF_VALUE);
   }
 
+  public static boolean isFairQueueType(final String callQueueType) {
+    return callQueueType.equals(CALL_QUEUE_TYPE_FAIR_CONF_VALUE);
+  }
+
   public long getNumGeneralCallsDropped() {
     return numGeneralCallsDropped.longValue();
   }
@@ -453,6 +693,22 @@ public abstract class RpcExecutor {
     return numLifoModeSwitches.longValue();
   }
 
+  /**
+   * @return the number of calls taken from the weighted fair queues per tenant, empty for the
+   *         other queue types
+   */
+  public Map<String, Long> getTenantCallCounts() {
+    return tenantQueueTimes != null ? tenantQueueTimes.getCallCounts() : Collections.emptyMap();
+  }
+
+  /**
+   * @return the total time in milliseconds the calls spent in the weighted fair queues per tenant,
+   *         empty for the other queue types
+   */
+  public Map<String, Long> getTenantQueueTimes() {
+    return tenantQueueTimes != null ? tenantQueueTimes.getQueueTimes() : Collections.emptyMap();
+  }
+
   public int getActiveHandlerCount() {
     return activeHandlerCount.get();
   }
@@ -23,6 +23,8 @@ import org.apache.hadoop.hbase.HBaseInterfaceAudience;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
 
 /**
  * An interface for RPC request scheduling algorithm.
@@ -127,4 +129,14 @@ public abstract class RpcScheduler {
 
   /** Retrieves the number of active write rpc handler when use RWQueueRpcExecutor. */
   public abstract int getActiveScanRpcHandlerCount();
+
+  /** Retrieves the number of calls dequeued per tenant when using weighted fair queues. */
+  public Map<String, Long> getTenantCallCounts() {
+    return Collections.emptyMap();
+  }
+
+  /** Retrieves the total queue time per tenant when using weighted fair queues. */
+  public Map<String, Long> getTenantQueueTimes() {
+    return Collections.emptyMap();
+  }
 }
@@ -43,6 +43,7 @@ import org.apache.hadoop.hbase.exceptions.RequestTooBigException;
 import org.apache.hadoop.hbase.io.ByteBuffAllocator;
 import org.apache.hadoop.hbase.monitoring.MonitoredRPCHandler;
 import org.apache.hadoop.hbase.monitoring.TaskMonitor;
+import org.apache.hadoop.hbase.nio.HBaseReferenceCounted;
 import org.apache.hadoop.hbase.regionserver.RSRpcServices;
 import org.apache.hadoop.hbase.security.SaslUtil;
 import org.apache.hadoop.hbase.security.SaslUtil.QualityOfProtection;
@@ -122,6 +123,12 @@ public abstract class RpcServer implements RpcServerInterface,
   /** Keeps MonitoredRPCHandler per handler thread. */
   protected static final ThreadLocal<MonitoredRPCHandler> MONITORED_RPC = new ThreadLocal<>();
 
+  /**
+   * Set while the callback of a call whose response references its cells runs, see
+   * {@link #keepForResponse(HBaseReferenceCounted)}.
+   */
+  static final ThreadLocal<List<HBaseReferenceCounted>> RESPONSE_REFS = new ThreadLocal<>();
+
   protected final InetSocketAddress bindAddress;
 
   protected MetricsHBaseServer metrics;
@@ -186,6 +193,14 @@ public abstract class RpcServer implements RpcServerInterface,
   protected static final int DEFAULT_WARN_RESPONSE_TIME = 10000; // milliseconds
   protected static final int DEFAULT_WARN_RESPONSE_SIZE = 100 * 1024 * 1024;
 
+  /**
+   * Size from which the cell block of a response is compressed, when the client negotiated a
+   * compression for them.
+   */
+  public static final String CELL_BLOCK_COMPRESSION_MIN_SIZE =
+      "hbase.ipc.server.cellblock.compression.min.size";
+  public static final int DEFAULT_CELL_BLOCK_COMPRESSION_MIN_SIZE = 8 * 1024;
+
   protected static final int DEFAULT_TRACE_LOG_MAX_LENGTH = 1000;
   protected static final String TRACE_LOG_MAX_LENGTH = "hbase.ipc.trace.log.max.length";
   protected static final String KEY_WORD_TRUNCATED = " <TRUNCATED>";
@@ -198,6 +213,8 @@ public abstract class RpcServer implements RpcServerInterface,
 
   protected final int minClientRequestTimeout;
 
+  protected final int cellBlockCompressionMinSize;
+
   protected final Server server;
   protected final List<BlockingServiceAndInterface> services;
 
@@ -271,6 +288,8 @@ public abstract class RpcServer implements RpcServerInterface,
     this.minClientRequestTimeout = conf.getInt(MIN_CLIENT_REQUEST_TIMEOUT,
         DEFAULT_MIN_CLIENT_REQUEST_TIMEOUT);
     this.maxRequestSize = conf.getInt(MAX_REQUEST_SIZE, DEFAULT_MAX_REQUEST_SIZE);
+    this.cellBlockCompressionMinSize =
+        conf.getInt(CELL_BLOCK_COMPRESSION_MIN_SIZE, DEFAULT_CELL_BLOCK_COMPRESSION_MIN_SIZE);
 
     this.metrics = new MetricsHBaseServer(name, new MetricsHBaseServerWrapperImpl(this));
     this.tcpNoDelay = conf.getBoolean("hbase.ipc.server.tcpnodelay", true);
@@ -648,6 +667,28 @@ public abstract class RpcServer implements RpcServerInterface,
     return CurCall.get() != null;
   }
 
+  /**
+   * Hands a reference which is about to be released to the response sent on this thread, if it
+   * references the cells where they are rather than copying them. The response releases it once it
+   * has been written.
+   * @return whether the response took the reference, otherwise the caller still owns it
+   */
+  public static boolean keepForResponse(HBaseReferenceCounted ref) {
+    List<HBaseReferenceCounted> refs = RESPONSE_REFS.get();
+    if (refs == null) {
+      return false;
+    }
+    refs.add(ref);
+    return true;
+  }
+
+  /**
+   * @return whether {@link #keepForResponse(HBaseReferenceCounted)} would take a reference
+   */
+  public static boolean isKeepingForResponse() {
+    return RESPONSE_REFS.get() != null;
+  }
+
   /**
    * Returns the user credentials associated with the current RPC request or not present if no
    * credentials were provided.
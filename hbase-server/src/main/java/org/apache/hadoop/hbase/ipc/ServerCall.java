@@ -251,10 +251,31 @@ public abstract class ServerCall<T extends ServerRpcConnection> implements RpcCa
         }
       }
 
+      boolean compressed = false;
+      if (cellBlockSize >= this.connection.rpcServer.cellBlockCompressionMinSize
+          && this.connection.cellBlockResponseCompression != null
+          && this.connection.compressionCodec == null) {
+        ByteBuffer b = this.cellBlockBuilder.compressCellBlock(
+          this.connection.cellBlockResponseCompression, cellBlock, cellBlockSize);
+        if (b != null) {
+          if (this.cellBlockStream != null) {
+            this.cellBlockStream.releaseResources();
+            this.cellBlockStream = null;
+          }
+          cellBlockSize = b.remaining();
+          cellBlock = new ArrayList<>(1);
+          cellBlock.add(b);
+          compressed = true;
+        }
+      }
+
       if (cellBlockSize > 0) {
         CellBlockMeta.Builder cellBlockBuilder = CellBlockMeta.newBuilder();
         // Presumes the cellBlock bytebuffer has been flipped so limit has total size in it.
         cellBlockBuilder.setLength(cellBlockSize);
+        if (compressed) {
+          cellBlockBuilder.setCompressed(true);
+        }
         headerBuilder.setCellBlockMeta(cellBlockBuilder.build());
       }
       Message header = headerBuilder.build();
@@ -284,9 +305,13 @@ public abstract class ServerCall<T extends ServerRpcConnection> implements RpcCa
     this.response = bc;
     // Once a response message is created and set to this.response, this Call can be treated as
     // done. The Responder thread will do the n/w write of this message back to client.
-    if (this.rpcCallback != null) {
+    runCallback(this.rpcCallback);
+  }
+
+  protected static void runCallback(RpcCallback callback) {
+    if (callback != null) {
       try {
-        this.rpcCallback.run();
+        callback.run();
       } catch (Exception e) {
         // Don't allow any exception here to kill this handler thread.
         RpcServer.LOG.warn("Exception while running the Rpc Callback.", e);
@@ -362,7 +387,7 @@ public abstract class ServerCall<T extends ServerRpcConnection> implements RpcCa
     }
   }
 
-  private static void writeToCOS(Message result, Message header, int totalSize, ByteBuffer pbBuf)
+  static void writeToCOS(Message result, Message header, int totalSize, ByteBuffer pbBuf)
       throws IOException {
     ByteBufferUtils.putInt(pbBuf, totalSize);
     // create COS that works on BB
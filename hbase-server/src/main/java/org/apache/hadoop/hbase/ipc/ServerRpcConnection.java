@@ -40,6 +40,7 @@ import org.apache.yetus.audience.InterfaceAudience;
 import org.apache.hadoop.hbase.client.VersionInfoUtil;
 import org.apache.hadoop.hbase.codec.Codec;
 import org.apache.hadoop.hbase.io.ByteBufferOutputStream;
+import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.crypto.aes.CryptoAES;
 import org.apache.hadoop.hbase.ipc.RpcServer.CallCleanup;
 import org.apache.hadoop.hbase.nio.ByteBuff;
@@ -106,6 +107,11 @@ abstract class ServerRpcConnection implements Closeable {
    * Compression codec the client asked us use.
    */
   protected CompressionCodec compressionCodec;
+  /**
+   * Compression the client can decompress response cell blocks with, see
+   * {@link CellBlockBuilder#compressCellBlock(Compression.Algorithm, java.util.List, int)}.
+   */
+  protected Compression.Algorithm cellBlockResponseCompression;
   protected BlockingService service;
 
   protected AuthMethod authMethod;
@@ -197,6 +203,10 @@ abstract class ServerRpcConnection implements Closeable {
     } catch (Exception e) {
       throw new UnsupportedCellCodecException(className, e);
     }
+    if (header.hasCellBlockResponseCompression()) {
+      this.cellBlockResponseCompression =
+          getCellBlockResponseCompression(header.getCellBlockResponseCompression());
+    }
     if (!header.hasCellBlockCompressorClass()) return;
     className = header.getCellBlockCompressorClass();
     try {
@@ -207,6 +217,25 @@ abstract class ServerRpcConnection implements Closeable {
     }
   }
 
+  /**
+   * Unlike the cell block compressor, the client only offers the response compression, so when it
+   * is not available here the responses are sent uncompressed instead of failing the connection.
+   */
+  private Compression.Algorithm getCellBlockResponseCompression(String name) {
+    try {
+      Compression.Algorithm compression = Compression.getCompressionAlgorithmByName(name);
+      if (compression == Compression.Algorithm.NONE) {
+        return null;
+      }
+      // check the codec can be loaded
+      compression.returnCompressor(compression.getCompressor());
+      return compression;
+    } catch (RuntimeException e) {
+      RpcServer.LOG.debug("Not compressing response cell blocks with {} for {}", name, this, e);
+      return null;
+    }
+  }
+
   /**
    * Set up cipher for rpc encryption with Apache Commons Crypto
    *
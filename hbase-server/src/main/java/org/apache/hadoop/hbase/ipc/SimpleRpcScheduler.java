@@ -17,6 +17,7 @@
  */
 package org.apache.hadoop.hbase.ipc;
 
+import java.util.Map;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Abortable;
 import org.apache.hadoop.hbase.HBaseInterfaceAudience;
@@ -300,6 +301,16 @@ public class SimpleRpcScheduler extends RpcScheduler implements ConfigurationObs
     return callExecutor.getActiveScanHandlerCount();
   }
 
+  @Override
+  public Map<String, Long> getTenantCallCounts() {
+    return callExecutor.getTenantCallCounts();
+  }
+
+  @Override
+  public Map<String, Long> getTenantQueueTimes() {
+    return callExecutor.getTenantQueueTimes();
+  }
+
   @Override
   public CallQueueInfo getCallQueueInfo() {
     String queueName;
@@ -0,0 +1,420 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.Message;
+
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.GetRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.MultiRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.MutateRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.RegionAction;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ScanRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.HBaseProtos.RegionSpecifier;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.HBaseProtos.RegionSpecifier.RegionSpecifierType;
+
+/**
+ * Call queue sharing the handlers between tenants, the users or tables the calls are for, in
+ * proportion to their weights rather than to how many calls they send. Each call is given an
+ * estimated cost, from the number of actions of a multi, the rows asked by a scan and its size,
+ * and the calls are taken in the order of their virtual finish times, as in self-clocked fair
+ * queuing. So a tenant sending large multi gets or scans only delays its own calls and not the
+ * point reads of the others.
+ * <p>
+ * Implementing {@link BlockingQueue} interface to be compatible with {@link RpcExecutor}.
+ * @see <a href="https://doi.org/10.1109/INFCOM.1994.337677">Self-clocked fair queueing</a>
+ */
+@InterfaceAudience.Private
+public class WeightedFairCallQueue extends AbstractQueue<CallRunner>
+    implements BlockingQueue<CallRunner> {
+  private static final Logger LOG = LoggerFactory.getLogger(WeightedFairCallQueue.class);
+
+  /** Whether the tenants are the users, the default, or the tables of the calls */
+  public static final String TENANT_CONF_KEY = "hbase.ipc.server.callqueue.fair.tenant";
+  public static final String TENANT_USER = "user";
+  public static final String TENANT_TABLE = "table";
+
+  /** The weights of the tenants, as tenant:weight pairs separated by commas. Defaults to 1 */
+  public static final String WEIGHTS_CONF_KEY = "hbase.ipc.server.callqueue.fair.weights";
+
+  /** The size of a call which costs as much as a single get */
+  public static final String COST_BYTES_CONF_KEY = "hbase.ipc.server.callqueue.fair.cost.bytes";
+  public static final long DEFAULT_COST_BYTES = 64 * 1024;
+
+  /** The cost of a scan asking for as many rows or more */
+  public static final String SCAN_MAX_COST_CONF_KEY =
+      "hbase.ipc.server.callqueue.fair.scan.max.cost";
+  public static final int DEFAULT_SCAN_MAX_COST = 100;
+
+  /** Precision of the virtual times, a unit of cost at weight 1 */
+  private static final long COST_SCALE = 1000;
+
+  private final int capacity;
+  private final boolean tenantIsTable;
+  private final Map<String, Integer> weights;
+  private final long costBytes;
+  private final int scanMaxCost;
+  private final TenantQueueTimes queueTimes;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notEmpty = lock.newCondition();
+  private final PriorityQueue<Entry> entries = new PriorityQueue<>();
+  /** The tenants with queued calls */
+  private final Map<String, Tenant> tenants = new HashMap<>();
+  /** The finish time of the last call taken */
+  private long virtualTime;
+  private long sequence;
+
+  public WeightedFairCallQueue(int capacity, Configuration conf, TenantQueueTimes queueTimes) {
+    this.capacity = capacity;
+    this.tenantIsTable = TENANT_TABLE.equals(conf.get(TENANT_CONF_KEY, TENANT_USER));
+    this.weights = parseWeights(conf.getStrings(WEIGHTS_CONF_KEY));
+    this.costBytes = Math.max(1, conf.getLong(COST_BYTES_CONF_KEY, DEFAULT_COST_BYTES));
+    this.scanMaxCost = Math.max(1, conf.getInt(SCAN_MAX_COST_CONF_KEY, DEFAULT_SCAN_MAX_COST));
+    this.queueTimes = queueTimes;
+  }
+
+  private static Map<String, Integer> parseWeights(String[] pairs) {
+    if (pairs == null) {
+      return Collections.emptyMap();
+    }
+    Map<String, Integer> weights = new HashMap<>();
+    for (String pair : pairs) {
+      int index = pair.lastIndexOf(':');
+      try {
+        int weight = Integer.parseInt(pair.substring(index + 1).trim());
+        if (index <= 0 || weight <= 0) {
+          throw new NumberFormatException();
+        }
+        weights.put(pair.substring(0, index).trim(), weight);
+      } catch (NumberFormatException e) {
+        LOG.warn("Ignoring invalid tenant weight '{}' in {}", pair, WEIGHTS_CONF_KEY);
+      }
+    }
+    return weights;
+  }
+
+  private static final class Tenant {
+    long lastFinish;
+    int queued;
+  }
+
+  private static final class Entry implements Comparable<Entry> {
+    final CallRunner callRunner;
+    final String tenant;
+    final long finish;
+    final long sequence;
+
+    Entry(CallRunner callRunner, String tenant, long finish, long sequence) {
+      this.callRunner = callRunner;
+      this.tenant = tenant;
+      this.finish = finish;
+      this.sequence = sequence;
+    }
+
+    @Override
+    public int compareTo(Entry other) {
+      int c = Long.compare(finish, other.finish);
+      return c != 0 ? c : Long.compare(sequence, other.sequence);
+    }
+  }
+
+  String getTenant(RpcCall call) {
+    if (tenantIsTable) {
+      TableName table = getTable(call.getParam());
+      if (table != null) {
+        return table.getNameAsString();
+      }
+    }
+    return call.getRequestUserName().orElse("");
+  }
+
+  private static TableName getTable(Message param) {
+    RegionSpecifier region = null;
+    if (param instanceof GetRequest) {
+      region = ((GetRequest) param).getRegion();
+    } else if (param instanceof MutateRequest) {
+      region = ((MutateRequest) param).getRegion();
+    } else if (param instanceof ScanRequest && ((ScanRequest) param).hasRegion()) {
+      region = ((ScanRequest) param).getRegion();
+    } else if (param instanceof MultiRequest && ((MultiRequest) param).getRegionActionCount() > 0) {
+      region = ((MultiRequest) param).getRegionAction(0).getRegion();
+    }
+    if (region == null || region.getType() != RegionSpecifierType.REGION_NAME) {
+      return null;
+    }
+    try {
+      return RegionInfo.getTable(region.getValue().toByteArray());
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return the cost of the call, in number of gets
+   */
+  long estimateCost(RpcCall call) {
+    Message param = call.getParam();
+    long units = 1;
+    if (param instanceof MultiRequest) {
+      units = 0;
+      for (RegionAction regionAction : ((MultiRequest) param).getRegionActionList()) {
+        units += regionAction.getActionCount();
+      }
+    } else if (param instanceof ScanRequest) {
+      ScanRequest scan = (ScanRequest) param;
+      if (scan.hasNumberOfRows() && !(scan.hasCloseScanner() && scan.getCloseScanner())) {
+        units = Math.min(scan.getNumberOfRows(), scanMaxCost);
+      }
+    }
+    return Math.max(Math.max(units, 1), call.getSize() / costBytes);
+  }
+
+  private int getWeight(String tenant) {
+    return weights.getOrDefault(tenant, 1);
+  }
+
+  @Override
+  public boolean offer(CallRunner callRunner) {
+    RpcCall call = callRunner.getRpcCall();
+    String tenantName = getTenant(call);
+    long cost = estimateCost(call) * COST_SCALE / getWeight(tenantName);
+    lock.lock();
+    try {
+      if (entries.size() >= capacity) {
+        return false;
+      }
+      Tenant tenant = tenants.computeIfAbsent(tenantName, k -> new Tenant());
+      tenant.lastFinish = Math.max(virtualTime, tenant.lastFinish) + Math.max(cost, 1);
+      tenant.queued++;
+      entries.add(new Entry(callRunner, tenantName, tenant.lastFinish, sequence++));
+      notEmpty.signal();
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Must be called with the lock held and a queued call.
+   */
+  private Entry dequeue() {
+    Entry entry = entries.poll();
+    virtualTime = entry.finish;
+    Tenant tenant = tenants.get(entry.tenant);
+    // its last finish time is the virtual time, so it would start from there anyway
+    if (--tenant.queued == 0) {
+      tenants.remove(entry.tenant);
+    }
+    return entry;
+  }
+
+  private CallRunner taken(Entry entry) {
+    if (queueTimes != null) {
+      queueTimes.add(entry.tenant,
+        EnvironmentEdgeManager.currentTime() - entry.callRunner.getRpcCall().getReceiveTime());
+    }
+    return entry.callRunner;
+  }
+
+  @Override
+  public CallRunner take() throws InterruptedException {
+    Entry entry;
+    lock.lockInterruptibly();
+    try {
+      while (entries.isEmpty()) {
+        notEmpty.await();
+      }
+      entry = dequeue();
+    } finally {
+      lock.unlock();
+    }
+    return taken(entry);
+  }
+
+  @Override
+  public CallRunner poll(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    Entry entry;
+    lock.lockInterruptibly();
+    try {
+      while (entries.isEmpty()) {
+        if (nanos <= 0) {
+          return null;
+        }
+        nanos = notEmpty.awaitNanos(nanos);
+      }
+      entry = dequeue();
+    } finally {
+      lock.unlock();
+    }
+    return taken(entry);
+  }
+
+  @Override
+  public CallRunner poll() {
+    Entry entry;
+    lock.lock();
+    try {
+      if (entries.isEmpty()) {
+        return null;
+      }
+      entry = dequeue();
+    } finally {
+      lock.unlock();
+    }
+    return taken(entry);
+  }
+
+  @Override
+  public CallRunner peek() {
+    lock.lock();
+    try {
+      Entry entry = entries.peek();
+      return entry != null ? entry.callRunner : null;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void put(CallRunner callRunner) throws InterruptedException {
+    throw new UnsupportedOperationException("This class doesn't support anything,"
+        + " but take() and offer() methods");
+  }
+
+  @Override
+  public boolean offer(CallRunner callRunner, long timeout, TimeUnit unit) {
+    return offer(callRunner);
+  }
+
+  @Override
+  public int size() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public int remainingCapacity() {
+    return Math.max(0, capacity - size());
+  }
+
+  /**
+   * @return a snapshot of the queued calls, not in any particular order
+   */
+  @Override
+  public Iterator<CallRunner> iterator() {
+    List<CallRunner> callRunners;
+    lock.lock();
+    try {
+      callRunners = new ArrayList<>(entries.size());
+      for (Entry entry : entries) {
+        callRunners.add(entry.callRunner);
+      }
+    } finally {
+      lock.unlock();
+    }
+    return Collections.unmodifiableList(callRunners).iterator();
+  }
+
+  @Override
+  public int drainTo(Collection<? super CallRunner> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int drainTo(Collection<? super CallRunner> c, int maxElements) {
+    int drained = 0;
+    for (CallRunner callRunner; drained < maxElements && (callRunner = poll()) != null;) {
+      c.add(callRunner);
+      drained++;
+    }
+    return drained;
+  }
+
+  /**
+   * The time the calls of each tenant spent in the queues of an executor. Past a number of
+   * tenants, the others are accounted together.
+   */
+  public static class TenantQueueTimes {
+    static final int MAX_TENANTS = 1000;
+    static final String OTHER_TENANTS = "_other";
+
+    private final ConcurrentMap<String, LongAdder[]> times = new ConcurrentHashMap<>();
+
+    void add(String tenant, long queueTime) {
+      LongAdder[] adders = times.get(tenant);
+      if (adders == null) {
+        if (times.size() >= MAX_TENANTS) {
+          tenant = OTHER_TENANTS;
+        }
+        adders = times.computeIfAbsent(tenant, k -> new LongAdder[] { new LongAdder(),
+          new LongAdder() });
+      }
+      adders[0].increment();
+      adders[1].add(queueTime);
+    }
+
+    /**
+     * @return the number of calls taken from the queues, per tenant
+     */
+    public Map<String, Long> getCallCounts() {
+      return snapshot(0);
+    }
+
+    /**
+     * @return the total time the calls spent in the queues in milliseconds, per tenant
+     */
+    public Map<String, Long> getQueueTimes() {
+      return snapshot(1);
+    }
+
+    private Map<String, Long> snapshot(int index) {
+      Map<String, Long> snapshot = new HashMap<>();
+      times.forEach((tenant, adders) -> snapshot.put(tenant, adders[index].sum()));
+      return snapshot;
+    }
+  }
+}
@@ -397,6 +397,8 @@ public class HMaster extends HRegionServer implements MasterServices {
 
   private HbckChore hbckChore;
   CatalogJanitor catalogJanitorChore;
+  // serves the region locations while we are a backup master
+  private volatile LocationMirror locationMirror;
   private DirScanPool cleanerPool;
   private LogCleaner logCleaner;
   private HFileCleaner hfileCleaner;
@@ -2217,8 +2219,12 @@ public class HMaster extends HRegionServer implements MasterServices {
     }
     MonitoredTask status = TaskMonitor.get().createStatus("Master startup");
     status.setDescription("Master startup");
+    this.locationMirror = new LocationMirror(this);
+    getChoreService().scheduleChore(locationMirror);
     try {
-      if (activeMasterManager.blockUntilBecomingActiveMaster(timeout, status)) {
+      boolean active = activeMasterManager.blockUntilBecomingActiveMaster(timeout, status);
+      locationMirror.cancel();
+      if (active) {
         finishActiveMasterInitialization(status);
       }
     } catch (Throwable t) {
@@ -2841,6 +2847,14 @@ public class HMaster extends HRegionServer implements MasterServices {
     return this.catalogJanitorChore;
   }
 
+  /**
+   * @return the mirror of the region location changes of the active master, null until we start
+   *         waiting to become the active master
+   */
+  LocationMirror getLocationMirror() {
+    return this.locationMirror;
+  }
+
   public MemoryBoundedLogMessageBuffer getRegionServerFatalLogBuffer() {
     return rsFatals;
   }
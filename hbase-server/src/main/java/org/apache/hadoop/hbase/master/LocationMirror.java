@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.master;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.MetaTableAccessor;
+import org.apache.hadoop.hbase.RegionLocations;
+import org.apache.hadoop.hbase.ScheduledChore;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.TableNotFoundException;
+import org.apache.hadoop.hbase.client.AsyncClusterConnection;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.ipc.ServerNotRunningYetException;
+import org.apache.hadoop.hbase.master.RegionState.State;
+import org.apache.hadoop.hbase.master.assignment.LocationChangeLog;
+import org.apache.hadoop.hbase.master.assignment.RegionStateStore;
+import org.apache.hadoop.hbase.master.assignment.RegionStates;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.hbase.thirdparty.com.google.protobuf.ByteString;
+import org.apache.hbase.thirdparty.com.google.protobuf.ServiceException;
+import org.apache.hbase.thirdparty.com.google.protobuf.UnsafeByteOperations;
+
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetLocationChangesRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetLocationChangesResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.MasterService;
+
+/**
+ * Lets a backup master serve the region locations to the clients, like the active master does
+ * from its region states, see {@link MasterRpcServices#locateRegion}.
+ * <p/>
+ * Mirrors the log of the location changes of the active master, and reads the locations from
+ * hbase:meta. The active master logs a change after persisting it to hbase:meta, so the locations
+ * read after mirroring a version include all the changes up to that version, and the clients can
+ * use the versions of the backup masters and of the active master interchangeably.
+ */
+@InterfaceAudience.Private
+public class LocationMirror extends ScheduledChore {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LocationMirror.class);
+
+  public static final String PERIOD_KEY = "hbase.master.location.mirror.period";
+  public static final int DEFAULT_PERIOD = 1000;
+
+  private final HMaster master;
+
+  private final int rpcTimeout;
+
+  private final LocationChangeLog changes;
+
+  // whether we have mirrored the log of the active master once
+  private volatile boolean synced;
+
+  LocationMirror(HMaster master) {
+    super("LocationMirror-" + master.getServerName().toShortString(), master,
+      master.getConfiguration().getInt(PERIOD_KEY, DEFAULT_PERIOD));
+    this.master = master;
+    this.rpcTimeout = master.getConfiguration().getInt(
+      HConstants.HBASE_RPC_SHORTOPERATION_TIMEOUT_KEY,
+      HConstants.DEFAULT_HBASE_RPC_SHORTOPERATION_TIMEOUT);
+    this.changes = new LocationChangeLog(RegionStates.MAX_LOCATION_CHANGES, 0);
+  }
+
+  @Override
+  protected void chore() {
+    try {
+      sync();
+    } catch (IOException e) {
+      LOG.debug("Failed to mirror the location changes of the active master", e);
+    }
+  }
+
+  @VisibleForTesting
+  void sync() throws IOException {
+    ServerName activeMaster = master.getMasterAddressTracker().getMasterAddress();
+    AsyncClusterConnection conn = master.getAsyncClusterConnection();
+    if (activeMaster == null || conn == null) {
+      throw new ServerNotRunningYetException("No active master to mirror yet");
+    }
+    GetLocationChangesResponse response;
+    try {
+      response = MasterService.newBlockingStub(conn.getRpcClient()
+        .createBlockingRpcChannel(activeMaster, User.getCurrent(), rpcTimeout))
+        .getLocationChanges(null, GetLocationChangesRequest.newBuilder()
+          .setKnownVersion(changes.getVersion()).build());
+    } catch (ServiceException e) {
+      throw ProtobufUtil.getRemoteException(e);
+    }
+    if (!synced || response.getAllChanged()) {
+      changes.reset(response.getVersion());
+    } else {
+      List<byte[]> changed = new ArrayList<>(response.getChangedRegionNameCount());
+      for (ByteString regionName : response.getChangedRegionNameList()) {
+        changed.add(regionName.toByteArray());
+      }
+      changes.add(response.getVersion(), changed);
+    }
+    synced = true;
+  }
+
+  @VisibleForTesting
+  boolean isSynced() {
+    return synced;
+  }
+
+  /**
+   * Locates the regions from hbase:meta, with the location version mirrored from the active
+   * master. Stops at the first region which is not open, as the active master does.
+   */
+  LocateRegionResponse locateRegion(LocateRegionRequest request, int limit) throws IOException {
+    if (!synced) {
+      throw new ServerNotRunningYetException("Location changes of the active master not mirrored");
+    }
+    LocateRegionResponse.Builder builder = LocateRegionResponse.newBuilder();
+    // Read the version before the locations, see MasterRpcServices#locateRegion
+    long version = changes.getVersion();
+    builder.setVersion(version);
+    // A client which has seen a later version from the active master has seen all the changes we
+    // know about, and keeps its version as we report no changes.
+    if (request.hasKnownVersion() && request.getKnownVersion() <= version) {
+      List<byte[]> changed = changes.getChangesSince(request.getKnownVersion());
+      if (changed == null) {
+        builder.setAllChanged(true);
+      } else {
+        for (byte[] regionName : changed) {
+          builder.addChangedRegionName(UnsafeByteOperations.unsafeWrap(regionName));
+        }
+      }
+    }
+    TableName tableName = ProtobufUtil.toTableName(request.getTableName());
+    byte[] row = request.getRow().toByteArray();
+    List<RegionLocations> located = new ArrayList<>();
+    Connection conn = master.getConnection();
+    try {
+      MetaTableAccessor.scanMeta(conn, r -> {
+        RegionLocations locs = MetaTableAccessor.getRegionLocations(r);
+        HRegionLocation primary = locs != null ? locs.getDefaultRegionLocation() : null;
+        if (primary == null || !primary.getRegion().getTable().equals(tableName)) {
+          return false;
+        }
+        RegionInfo region = primary.getRegion();
+        if (region.isSplitParent() || region.isOffline()) {
+          return true;
+        }
+        if (located.isEmpty() && !region.containsRow(row)) {
+          return false;
+        }
+        List<HRegionLocation> openLocs = new ArrayList<>();
+        for (HRegionLocation loc : locs.getRegionLocations()) {
+          if (loc != null && loc.getServerName() != null && RegionStateStore
+            .getRegionState(r, loc.getRegion().getReplicaId(), region) == State.OPEN) {
+            openLocs.add(loc);
+          }
+        }
+        if (openLocs.isEmpty() || openLocs.get(0) != primary) {
+          return false;
+        }
+        located.add(new RegionLocations(openLocs));
+        return located.size() < limit;
+      }, tableName, row, 0);
+    } catch (TableNotFoundException e) {
+      // no region, as the active master answers
+    }
+    for (RegionLocations locs : located) {
+      for (HRegionLocation loc : locs.getRegionLocations()) {
+        builder.addRegionLocation(ProtobufUtil.toRegionLocation(loc));
+      }
+    }
+    return builder.build();
+  }
+}
@@ -37,6 +37,7 @@ import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.hbase.ClusterMetricsBuilder;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionLocation;
 import org.apache.hadoop.hbase.MetaTableAccessor;
 import org.apache.hadoop.hbase.NamespaceDescriptor;
 import org.apache.hadoop.hbase.Server;
@@ -68,6 +69,7 @@ import org.apache.hadoop.hbase.ipc.RpcServer.BlockingServiceAndInterface;
 import org.apache.hadoop.hbase.ipc.RpcServerFactory;
 import org.apache.hadoop.hbase.ipc.RpcServerInterface;
 import org.apache.hadoop.hbase.ipc.ServerRpcController;
+import org.apache.hadoop.hbase.ipc.ServerNotRunningYetException;
 import org.apache.hadoop.hbase.master.assignment.RegionStates;
 import org.apache.hadoop.hbase.master.locking.LockProcedure;
 import org.apache.hadoop.hbase.master.procedure.MasterProcedureEnv;
@@ -189,6 +191,8 @@ import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetCluster
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetClusterStatusResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetCompletedSnapshotsRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetCompletedSnapshotsResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetLocationChangesRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetLocationChangesResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetLocksRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetLocksResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.GetNamespaceDescriptorRequest;
@@ -235,6 +239,8 @@ import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.ListNamesp
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.ListNamespaceDescriptorsResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.ListNamespacesRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.ListNamespacesResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.ListTableDescriptorsByNamespaceRequest;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.ListTableDescriptorsByNamespaceResponse;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.ListTableNamesByNamespaceRequest;
@@ -358,6 +364,9 @@ public class MasterRpcServices extends RSRpcServices
   private static final Logger AUDITLOG =
       LoggerFactory.getLogger("SecurityLogger."+MasterRpcServices.class.getName());
 
+  // the max number of regions a locateRegion call returns
+  private static final int MAX_LOCATE_REGION_LIMIT = 1000;
+
   private final HMaster master;
 
   /**
@@ -1015,6 +1024,71 @@ public class MasterRpcServices extends RSRpcServices
     }
   }
 
+  @Override
+  public LocateRegionResponse locateRegion(RpcController controller, LocateRegionRequest request)
+      throws ServiceException {
+    try {
+      int limit = Math.max(1, Math.min(request.getLimit(), MAX_LOCATE_REGION_LIMIT));
+      LocationMirror locationMirror = master.getLocationMirror();
+      if (!master.isActiveMaster()) {
+        if (locationMirror == null) {
+          throw new ServerNotRunningYetException("Server is not running yet");
+        }
+        return locationMirror.locateRegion(request, limit);
+      }
+      master.checkInitialized();
+      RegionStates regionStates = master.getAssignmentManager().getRegionStates();
+      LocateRegionResponse.Builder builder = LocateRegionResponse.newBuilder();
+      // Read the version before the changes and the locations, so a change made in between is
+      // reported to the client again next time, instead of being missed.
+      builder.setVersion(regionStates.getLocationVersion());
+      if (request.hasKnownVersion()) {
+        List<byte[]> changed = regionStates.getLocationChangesSince(request.getKnownVersion());
+        if (changed == null) {
+          builder.setAllChanged(true);
+        } else {
+          for (byte[] regionName : changed) {
+            builder.addChangedRegionName(UnsafeByteOperations.unsafeWrap(regionName));
+          }
+        }
+      }
+      regionStates.locateRegions(ProtobufUtil.toTableName(request.getTableName()),
+        request.getRow().toByteArray(), limit).forEach(locs -> {
+          for (HRegionLocation loc : locs.getRegionLocations()) {
+            if (loc != null) {
+              builder.addRegionLocation(ProtobufUtil.toRegionLocation(loc));
+            }
+          }
+        });
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  @Override
+  public GetLocationChangesResponse getLocationChanges(RpcController controller,
+      GetLocationChangesRequest request) throws ServiceException {
+    try {
+      master.checkInitialized();
+      RegionStates regionStates = master.getAssignmentManager().getRegionStates();
+      GetLocationChangesResponse.Builder builder = GetLocationChangesResponse.newBuilder();
+      // the version first, as for locateRegion
+      builder.setVersion(regionStates.getLocationVersion());
+      List<byte[]> changed = regionStates.getLocationChangesSince(request.getKnownVersion());
+      if (changed == null) {
+        builder.setAllChanged(true);
+      } else {
+        for (byte[] regionName : changed) {
+          builder.addChangedRegionName(UnsafeByteOperations.unsafeWrap(regionName));
+        }
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetNamespaceDescriptorResponse getNamespaceDescriptor(
       RpcController controller, GetNamespaceDescriptorRequest request)
@@ -849,6 +849,7 @@ public class AssignmentManager {
     regionStateStore.deleteRegions(regions);
     for (int i = 0; i < regions.size(); ++i) {
       final RegionInfo regionInfo = regions.get(i);
+      regionStates.locationChanged(regionInfo);
       // we expect the region to be offline
       regionStates.removeFromOfflineRegions(regionInfo);
       regionStates.deleteRegion(regionInfo);
@@ -1650,6 +1651,7 @@ public class AssignmentManager {
     boolean succ = false;
     try {
       regionStateStore.updateRegionLocation(regionNode);
+      regionStates.locationChanged(regionNode.getRegionInfo());
       succ = true;
     } finally {
       if (!succ) {
@@ -1682,6 +1684,7 @@ public class AssignmentManager {
       boolean succ = false;
       try {
         regionStateStore.updateRegionLocation(regionNode);
+        regionStates.locationChanged(regionNode.getRegionInfo());
         succ = true;
       } finally {
         if (!succ) {
@@ -1744,6 +1747,7 @@ public class AssignmentManager {
     boolean succ = false;
     try {
       regionStateStore.updateRegionLocation(regionNode);
+      regionStates.locationChanged(regionNode.getRegionInfo());
       succ = true;
     } finally {
       if (!succ) {
@@ -1761,6 +1765,7 @@ public class AssignmentManager {
   void persistToMeta(RegionStateNode regionNode) throws IOException {
     regionStateStore.updateRegionLocation(regionNode);
     RegionInfo regionInfo = regionNode.getRegionInfo();
+    regionStates.locationChanged(regionInfo);
     if (isMetaRegion(regionInfo) && regionNode.getState() == State.OPEN) {
       // Usually we'd set a table ENABLED at this stage but hbase:meta is ALWAYs enabled, it
       // can't be disabled -- so skip the RPC (besides... enabled is managed by TableStateManager
@@ -1789,6 +1794,9 @@ public class AssignmentManager {
     nodeB.setState(State.SPLITTING_NEW);
 
     regionStateStore.splitRegion(parent, daughterA, daughterB, serverName);
+    regionStates.locationChanged(parent);
+    regionStates.locationChanged(daughterA);
+    regionStates.locationChanged(daughterB);
     if (shouldAssignFavoredNodes(parent)) {
       List<ServerName> onlineServers = this.master.getServerManager().getOnlineServersList();
       ((FavoredNodesPromoter)getBalancer()).
@@ -1816,6 +1824,10 @@ public class AssignmentManager {
 
     }
     regionStateStore.mergeRegions(child, mergeParents, serverName);
+    regionStates.locationChanged(child);
+    for (RegionInfo ri : mergeParents) {
+      regionStates.locationChanged(ri);
+    }
     if (shouldAssignFavoredNodes(child)) {
       ((FavoredNodesPromoter)getBalancer()).
         generateFavoredNodesForMergedRegion(child, mergeParents);
@@ -0,0 +1,105 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.master.assignment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.hadoop.hbase.util.Pair;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * The last regions whose locations changed, with the location version after each change. Lets the
+ * clients caching the locations served by a master find out which of them are stale.
+ * <p/>
+ * The active master logs the changes in {@link RegionStates}, and the backup masters mirror its
+ * log, see {@code LocationMirror}.
+ */
+@InterfaceAudience.Private
+public class LocationChangeLog {
+
+  private final int maxChanges;
+
+  private final ArrayDeque<Pair<Long, byte[]>> changes = new ArrayDeque<>();
+
+  private long version;
+
+  // we know all the changes after this version
+  private long knownSince;
+
+  public LocationChangeLog(int maxChanges, long version) {
+    this.maxChanges = maxChanges;
+    this.version = version;
+    this.knownSince = version;
+  }
+
+  /**
+   * Logs a change of the location of the region, with the next version.
+   */
+  public synchronized void add(byte[] regionName) {
+    add(version + 1, Collections.singletonList(regionName));
+  }
+
+  /**
+   * Logs changes of the locations of the regions, all with the given version, which must not be
+   * less than the current version.
+   */
+  public synchronized void add(long newVersion, List<byte[]> regionNames) {
+    version = newVersion;
+    for (byte[] regionName : regionNames) {
+      changes.addLast(new Pair<>(newVersion, regionName));
+      if (changes.size() > maxChanges) {
+        knownSince = changes.removeFirst().getFirst();
+      }
+    }
+  }
+
+  /**
+   * Forgets all the changes and jumps to the given version.
+   */
+  public synchronized void reset(long newVersion) {
+    changes.clear();
+    version = newVersion;
+    knownSince = newVersion;
+  }
+
+  public synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return the names of the regions whose locations changed after {@code sinceVersion}, or null if
+   *         we do not remember all of them
+   */
+  public synchronized List<byte[]> getChangesSince(long sinceVersion) {
+    if (sinceVersion > version || sinceVersion < knownSince) {
+      return null;
+    }
+    List<byte[]> changed = new ArrayList<>();
+    for (Iterator<Pair<Long, byte[]>> iter = changes.descendingIterator(); iter.hasNext();) {
+      Pair<Long, byte[]> change = iter.next();
+      if (change.getFirst() <= sinceVersion) {
+        break;
+      }
+      changed.add(change.getSecond());
+    }
+    return changed;
+  }
+}
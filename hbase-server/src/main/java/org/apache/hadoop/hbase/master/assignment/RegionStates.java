@@ -32,16 +32,20 @@ import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import org.apache.hadoop.hbase.CellComparatorImpl.MetaCellComparator;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.RegionLocations;
 import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionReplicaUtil;
 import org.apache.hadoop.hbase.client.TableState;
 import org.apache.hadoop.hbase.master.RegionState;
 import org.apache.hadoop.hbase.master.RegionState.State;
 import org.apache.hadoop.hbase.master.TableStateManager;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -73,10 +77,13 @@ public class RegionStates {
 
   // TODO: Replace the ConcurrentSkipListMaps
   /**
-   * RegionName -- i.e. RegionInfo.getRegionName() -- as bytes to {@link RegionStateNode}
+   * RegionName -- i.e. RegionInfo.getRegionName() -- as bytes to {@link RegionStateNode}. Sorted
+   * in the order of hbase:meta, so that the regions of a table are sorted by start key, see
+   * {@link #locateRegions(TableName, byte[], int)}.
    */
   private final ConcurrentSkipListMap<byte[], RegionStateNode> regionsMap =
-      new ConcurrentSkipListMap<byte[], RegionStateNode>(Bytes.BYTES_COMPARATOR);
+      new ConcurrentSkipListMap<byte[], RegionStateNode>(
+          (l, r) -> MetaCellComparator.compareRows(l, 0, l.length, r, 0, r.length));
 
   private final ConcurrentSkipListMap<RegionInfo, RegionStateNode> regionInTransition =
     new ConcurrentSkipListMap<RegionInfo, RegionStateNode>(RegionInfo.COMPARATOR);
@@ -94,6 +101,13 @@ public class RegionStates {
   private final ConcurrentHashMap<ServerName, ServerStateNode> serverMap =
       new ConcurrentHashMap<ServerName, ServerStateNode>();
 
+  public static final int MAX_LOCATION_CHANGES = 10000;
+
+  // Starts from the startup time in micro seconds, so that it keeps growing across master failovers
+  // as long as there are less than a thousand location changes per milli second.
+  private final LocationChangeLog locationChanges =
+    new LocationChangeLog(MAX_LOCATION_CHANGES, EnvironmentEdgeManager.currentTime() * 1000);
+
   public RegionStates() { }
 
   public void clear() {
@@ -362,6 +376,100 @@ public class RegionStates {
         ((hri.isOffline() || hri.isSplit()) && offline);
   }
 
+  // ============================================================================================
+  // Location helpers
+  // Serve the region locations to the clients, see MasterRpcServices#locateRegion.
+  // ============================================================================================
+
+  /**
+   * Returns the locations of the region of {@code tableName} containing {@code row} and of the
+   * regions after it, at most {@code limit} regions, each with all its open replicas. Stops at the
+   * first region which is not open, so the result is empty if the region containing {@code row} is
+   * not open.
+   * <p/>
+   * The region state nodes are not locked, a concurrent transition may or may not be seen.
+   */
+  public List<RegionLocations> locateRegions(TableName tableName, byte[] row, int limit) {
+    List<RegionLocations> result = new ArrayList<>();
+    // the same lookup as a reverse scan of meta, skipping the replicas and the split parents
+    Map.Entry<byte[], RegionStateNode> entry =
+      regionsMap.floorEntry(RegionInfo.createRegionName(tableName, row, HConstants.NINES, false));
+    for (; entry != null; entry = regionsMap.lowerEntry(entry.getKey())) {
+      RegionStateNode node = entry.getValue();
+      if (!node.getTable().equals(tableName)) {
+        return result;
+      }
+      if (RegionReplicaUtil.isDefaultReplica(node.getRegionInfo()) && include(node, false)) {
+        break;
+      }
+    }
+    if (entry == null || !entry.getValue().getRegionInfo().containsRow(row)) {
+      return result;
+    }
+    for (RegionStateNode node : regionsMap.tailMap(entry.getKey()).values()) {
+      if (result.size() >= limit || !node.getTable().equals(tableName)) {
+        break;
+      }
+      if (!RegionReplicaUtil.isDefaultReplica(node.getRegionInfo()) || !include(node, false)) {
+        continue;
+      }
+      RegionLocations locs = getOpenLocations(node);
+      if (locs == null) {
+        break;
+      }
+      result.add(locs);
+    }
+    return result;
+  }
+
+  private static HRegionLocation getOpenLocation(RegionStateNode node) {
+    ServerName serverName = node.getRegionLocation();
+    return node.isInState(State.OPEN) && serverName != null
+      ? new HRegionLocation(node.getRegionInfo(), serverName, node.getOpenSeqNum())
+      : null;
+  }
+
+  private RegionLocations getOpenLocations(RegionStateNode primary) {
+    HRegionLocation loc = getOpenLocation(primary);
+    if (loc == null) {
+      return null;
+    }
+    List<HRegionLocation> locs = new ArrayList<>();
+    locs.add(loc);
+    // the replicas are sorted right after the primary
+    for (RegionStateNode node : regionsMap
+      .tailMap(primary.getRegionInfo().getRegionName(), false).values()) {
+      if (!RegionReplicaUtil.isReplicasForSameRegion(primary.getRegionInfo(),
+        node.getRegionInfo())) {
+        break;
+      }
+      HRegionLocation replicaLoc = getOpenLocation(node);
+      if (replicaLoc != null) {
+        locs.add(replicaLoc);
+      }
+    }
+    return new RegionLocations(locs);
+  }
+
+  /**
+   * Called after the location or the state of the region has been persisted to hbase:meta.
+   */
+  public void locationChanged(RegionInfo regionInfo) {
+    locationChanges.add(regionInfo.getRegionName());
+  }
+
+  public long getLocationVersion() {
+    return locationChanges.getVersion();
+  }
+
+  /**
+   * @return the names of the regions whose locations changed after {@code version}, or null if we
+   *         do not remember all of them
+   */
+  public List<byte[]> getLocationChangesSince(long version) {
+    return locationChanges.getChangesSince(version);
+  }
+
   // ============================================================================================
   // Split helpers
   // These methods will only be called in ServerCrashProcedure, and at the end of SCP we will remove
@@ -373,6 +373,14 @@ public abstract class AbstractMemStore implements MemStore {
     return comparator;
   }
 
+  /**
+   * Samples the rows of the active segment, which holds the most recent writes.
+   * @see MutableSegment#sampleRows(int)
+   */
+  List<byte[]> sampleActiveRows(int maxSamples) {
+    return active.sampleRows(maxSamples);
+  }
+
   @VisibleForTesting
   MutableSegment getActive() {
     return active;
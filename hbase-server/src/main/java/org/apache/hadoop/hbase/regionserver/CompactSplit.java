@@ -95,6 +95,18 @@ public class CompactSplit implements CompactionRequester, PropagatingConfigurati
 
   private volatile ThroughputController compactionThroughputController;
 
+  /**
+   * Whether compaction servers are configured, see {@link RemoteCompactionClient#SERVERS_KEY}, and
+   * still in use
+   */
+  private boolean remoteCompactionsEnabled;
+
+  /**
+   * Ships compactions to standalone compaction servers, created once the cluster id is known. Null
+   * if compactions run locally.
+   */
+  private RemoteCompactionClient remoteCompactionClient;
+
   private volatile boolean compactionsEnabled;
   /**
    * Splitting should not take place if the total number of regions exceed this.
@@ -114,6 +126,41 @@ public class CompactSplit implements CompactionRequester, PropagatingConfigurati
     // compaction throughput controller
     this.compactionThroughputController =
         CompactionThroughputControllerFactory.create(server, conf);
+    this.remoteCompactionsEnabled =
+        !conf.getTrimmedStringCollection(RemoteCompactionClient.SERVERS_KEY).isEmpty();
+  }
+
+  /**
+   * @return the client for the compaction servers, or null if compactions run locally, as they do
+   *         until the cluster id is known
+   */
+  private synchronized RemoteCompactionClient getRemoteCompactionClient() {
+    if (!remoteCompactionsEnabled) {
+      return null;
+    }
+    if (remoteCompactionClient == null) {
+      // the rpc client selects the tokens of the cluster with its id
+      String clusterId = server.getClusterId();
+      if (clusterId == null) {
+        return null;
+      }
+      try {
+        remoteCompactionClient = RemoteCompactionClient.create(conf, clusterId);
+      } catch (IOException e) {
+        LOG.warn("Failed to create the remote compaction client, compactions will run locally",
+          e);
+        remoteCompactionsEnabled = false;
+      }
+    }
+    return remoteCompactionClient;
+  }
+
+  private synchronized void closeRemoteCompactionClient() {
+    remoteCompactionsEnabled = false;
+    if (remoteCompactionClient != null) {
+      remoteCompactionClient.close();
+      remoteCompactionClient = null;
+    }
   }
 
   private void createSplitExcecutors() {
@@ -430,6 +477,7 @@ public class CompactSplit implements CompactionRequester, PropagatingConfigurati
     waitFor(splits, "Split Thread");
     waitFor(longCompactions, "Large Compaction Thread");
     waitFor(shortCompactions, "Small Compaction Thread");
+    closeRemoteCompactionClient();
   }
 
   /**
@@ -612,6 +660,10 @@ public class CompactSplit implements CompactionRequester, PropagatingConfigurati
         // Note: please don't put single-compaction logic here;
         //       put it into region/store/etc. This is CST logic.
         long start = EnvironmentEdgeManager.currentTime();
+        RemoteCompactionClient remoteCompactionClient = getRemoteCompactionClient();
+        if (remoteCompactionClient != null && remoteCompactionClient.canOffload(store, c)) {
+          c = remoteCompactionClient.offload(store, c);
+        }
         boolean completed =
             region.compact(c, store, compactionThroughputController, user);
         long now = EnvironmentEdgeManager.currentTime();
@@ -137,6 +137,7 @@ import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.ipc.CallerDisconnectedException;
 import org.apache.hadoop.hbase.ipc.CoprocessorRpcUtils;
 import org.apache.hadoop.hbase.ipc.RpcCall;
+import org.apache.hadoop.hbase.ipc.RpcExecutor;
 import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.mob.MobFileCache;
 import org.apache.hadoop.hbase.monitoring.MonitoredTask;
@@ -335,6 +336,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
   private BlockCache blockCache;
   private MobFileCache mobFileCache;
+  // The part of the row cache of this region, null if it does not use it
+  private volatile RowCache.RegionRowCache rowCache;
   private final WAL wal;
   private final HRegionFileSystem fs;
   protected final Configuration conf;
@@ -796,6 +799,10 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     if (this.rsServices != null) {
       this.blockCache = rsServices.getBlockCache().orElse(null);
       this.mobFileCache = rsServices.getMobFileCache().orElse(null);
+      RowCache rsRowCache = rsServices.getRowCache().orElse(null);
+      if (rsRowCache != null) {
+        this.rowCache = rsRowCache.forRegion(this, conf);
+      }
     }
     this.regionServicesForStores = new RegionServicesForStores(this, rsServices);
 
@@ -1749,6 +1756,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       }
 
       this.closed.set(true);
+      if (this.rowCache != null) {
+        this.rowCache.close();
+      }
       if (!canFlush) {
         decrMemStoreSize(this.memStoreSizing.getMemStoreSize());
       } else if (this.memStoreSizing.getDataSize() != 0) {
@@ -1932,6 +1942,48 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     this.mobFileCache = mobFileCache;
   }
 
+  /**
+   * @return the part of the row cache of this region, or null if it does not use it
+   */
+  public RowCache.RegionRowCache getRowCache() {
+    return this.rowCache;
+  }
+
+  /**
+   * Only used for unit test which doesn't start region server.
+   */
+  @VisibleForTesting
+  public void setRowCache(RowCache rowCache) {
+    this.rowCache = rowCache == null ? null : rowCache.forRegion(this, conf);
+  }
+
+  /**
+   * Invalidates the cached cells of a row, once its mutations are visible and before its row lock
+   * is released.
+   */
+  private void invalidateRowCache(byte[] row) {
+    RowCache.RegionRowCache rowCache = this.rowCache;
+    if (rowCache != null) {
+      rowCache.invalidateRow(row);
+    }
+  }
+
+  private void invalidateRowCache(List<Mutation> mutations) {
+    for (Mutation m : mutations) {
+      invalidateRowCache(m.getRow());
+    }
+  }
+
+  /**
+   * Invalidates all the cached cells of the region, once its store files changed.
+   */
+  private void invalidateRowCache() {
+    RowCache.RegionRowCache rowCache = this.rowCache;
+    if (rowCache != null) {
+      rowCache.invalidateAll();
+    }
+  }
+
   /**
    * @return split policy for this region.
    */
@@ -2272,6 +2324,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
           // method because Store#compact will clean up unconditionally
           requestNeedsCancellation = false;
           store.compact(compaction, throughputController, user);
+          invalidateRowCache();
         } catch (InterruptedIOException iioe) {
           String msg = "compaction interrupted";
           LOG.info(msg, iioe);
@@ -2845,6 +2898,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         flushedOutputFileSize += sfc.getOutputFileSize();
       }
       storeFlushCtxs.clear();
+      invalidateRowCache();
 
       // Set down the memstore size by amount of flush.
       MemStoreSize mss = prepareResult.totalFlushableSize.getMemStoreSize();
@@ -4174,10 +4228,17 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       if (locked) {
         this.updatesLock.readLock().unlock();
       }
-      releaseRowLocks(acquiredRowLocks);
 
       final int finalLastIndexExclusive =
           miniBatchOp != null ? miniBatchOp.getLastIndexExclusive() : batchOp.size();
+      // The mutations are visible now, or failed. Invalidate while the rows are still locked, so
+      // the reads done under the row locks, as by checkAndMutate, never see a stale entry
+      if (locked && rowCache != null) {
+        for (int i = batchOp.nextIndexToProcess; i < finalLastIndexExclusive; i++) {
+          invalidateRowCache(batchOp.getMutation(i).getRow());
+        }
+      }
+      releaseRowLocks(acquiredRowLocks);
       final boolean finalSuccess = success;
       batchOp.visitBatchOperations(true, finalLastIndexExclusive, (int i) -> {
         batchOp.retCodeDetails[i] =
@@ -5987,7 +6048,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         }
       }
 
-      if (timeout <= 0 || !result.getLock().tryLock(timeout, TimeUnit.MILLISECONDS)) {
+      if (timeout <= 0 || !tryRowLock(result.getLock(), timeout)) {
         TraceUtil.addTimelineAnnotation("Failed to get row lock");
         String message = "Timed out waiting for lock for row: " + rowKey + " in region "
             + getRegionInfo().getEncodedName();
@@ -6024,6 +6085,22 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
     }
   }
 
+  /**
+   * Waits for a row lock, letting the RPC executor run another call meanwhile if it is held.
+   */
+  private static boolean tryRowLock(Lock lock, int timeout) throws InterruptedException {
+    // honors the fairness of the lock, unlike tryLock()
+    if (lock.tryLock(0, TimeUnit.MILLISECONDS)) {
+      return true;
+    }
+    boolean blocking = RpcExecutor.beginBlocking();
+    try {
+      return lock.tryLock(timeout, TimeUnit.MILLISECONDS);
+    } finally {
+      RpcExecutor.endBlocking(blocking);
+    }
+  }
+
   private void releaseRowLocks(List<RowLock> rowLocks) {
     if (rowLocks != null) {
       for (RowLock rowLock : rowLocks) {
@@ -6394,6 +6471,10 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
 
       isSuccessful = true;
     } finally {
+      if (!storeFiles.isEmpty()) {
+        // some files may be loaded even on failure
+        invalidateRowCache();
+      }
       if (wal != null && !storeFiles.isEmpty()) {
         // Write a bulk load event for hfiles that are loaded
         try {
@@ -7555,17 +7636,29 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         return results;
       }
     }
-    Scan scan = new Scan(get);
-    if (scan.getLoadColumnFamiliesOnDemandValue() == null) {
-      scan.setLoadColumnFamiliesOnDemand(isLoadingCfsOnDemandDefault());
-    }
-    RegionScanner scanner = null;
-    try {
-      scanner = getScanner(scan, null, nonceGroup, nonce);
-      scanner.next(results);
-    } finally {
-      if (scanner != null)
-        scanner.close();
+    // the internal reads, e.g. the ones of checkAndMutate under the row lock, skip the row cache
+    RowCache.RegionRowCache rowCache = withCoprocessor ? this.rowCache : null;
+    RowCache.CachedGet cachedGet = rowCache == null ? null : rowCache.newGet(get);
+    List<Cell> cachedCells = cachedGet == null ? null : cachedGet.getCells();
+    if (cachedCells != null) {
+      results = cachedCells;
+    } else {
+      Scan scan = new Scan(get);
+      if (scan.getLoadColumnFamiliesOnDemandValue() == null) {
+        scan.setLoadColumnFamiliesOnDemand(isLoadingCfsOnDemandDefault());
+      }
+      RegionScanner scanner = null;
+      try {
+        scanner = getScanner(scan, null, nonceGroup, nonce);
+        scanner.next(results);
+        if (cachedGet != null) {
+          // before closing the scanner, the cells may be backed by its blocks
+          cachedGet.cache(results);
+        }
+      } finally {
+        if (scanner != null)
+          scanner.close();
+      }
     }
 
     // post-get CP hook
@@ -7767,7 +7860,8 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
             locked = false;
           }
 
-          // STEP 11. Release row lock(s)
+          // STEP 11. Release row lock(s), once the row cache no longer has the old values
+          invalidateRowCache(mutations);
           releaseRowLocks(acquiredRowLocks);
 
           if (rsServices != null && rsServices.getMetrics() != null) {
@@ -7782,6 +7876,9 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
         if (locked) {
           this.updatesLock.readLock().unlock();
         }
+        if (!success) {
+          invalidateRowCache(mutations);
+        }
         // release locks if some were acquired but another timed out
         releaseRowLocks(acquiredRowLocks);
       }
@@ -7945,6 +8042,7 @@ public class HRegion implements HeapSize, PropagatingConfigurationObserver, Regi
       // the client. Means only way to read-your-own-increment or append is to come in with an
       // a 0 increment.
       if (writeEntry != null) mvcc.complete(writeEntry);
+      invalidateRowCache(mutation.getRow());
       if (rowLock != null) {
         rowLock.release();
       }
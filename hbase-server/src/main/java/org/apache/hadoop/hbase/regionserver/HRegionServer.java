@@ -426,6 +426,8 @@ public class HRegionServer extends HasThread implements
   private BlockCache blockCache;
   // The cache for mob files
   private MobFileCache mobFileCache;
+  // The cache for the rows read by Gets, null if disabled
+  private RowCache rowCache;
 
   /** The health check chore. */
   private HealthCheckChore healthCheckChore;
@@ -614,6 +616,7 @@ public class HRegionServer extends HasThread implements
       if (!isMasterNotCarryTable) {
         blockCache = BlockCacheFactory.createBlockCache(conf);
         mobFileCache = new MobFileCache(conf);
+        rowCache = RowCache.create(conf);
       }
 
       uncaughtExceptionHandler =
@@ -1954,7 +1957,8 @@ public class HRegionServer extends HasThread implements
         conf.getInt("hbase.regionserver.executor.closeregion.threads", 3));
     this.executorService.startExecutorService(ExecutorType.RS_CLOSE_META,
         conf.getInt("hbase.regionserver.executor.closemeta.threads", 1));
-    if (conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, false)) {
+    if (conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE,
+        StoreScanner.DEFAULT_STORESCANNER_PARALLEL_SEEK_ENABLE)) {
       this.executorService.startExecutorService(ExecutorType.RS_PARALLEL_SEEK,
           conf.getInt("hbase.storescanner.parallel.seek.threads", 10));
     }
@@ -3598,6 +3602,16 @@ public class HRegionServer extends HasThread implements
     return Optional.ofNullable(this.mobFileCache);
   }
 
+  /**
+   * May be null if this is a master which not carry table, or if it is disabled.
+   *
+   * @return The cache for the rows read by Gets used by the regionserver.
+   */
+  @Override
+  public Optional<RowCache> getRowCache() {
+    return Optional.ofNullable(this.rowCache);
+  }
+
   @Override
   public AccessChecker getAccessChecker() {
     return rpcServices.getAccessChecker();
@@ -71,6 +71,7 @@ import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.conf.ConfigurationManager;
 import org.apache.hadoop.hbase.conf.PropagatingConfigurationObserver;
 import org.apache.hadoop.hbase.io.HeapSize;
+import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.io.compress.Compression;
 import org.apache.hadoop.hbase.io.crypto.Encryption;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
@@ -80,6 +81,7 @@ import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
 import org.apache.hadoop.hbase.io.hfile.HFileDataBlockEncoder;
 import org.apache.hadoop.hbase.io.hfile.HFileDataBlockEncoderImpl;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
+import org.apache.hadoop.hbase.io.hfile.HotKeyRanges;
 import org.apache.hadoop.hbase.io.hfile.InvalidHFileException;
 import org.apache.hadoop.hbase.log.HBaseMarkers;
 import org.apache.hadoop.hbase.monitoring.MonitoredTask;
@@ -1116,11 +1118,31 @@ public class HStore implements Store, HeapSize, StoreConfigInformation, Propagat
   public StoreFileWriter createWriterInTmp(long maxKeyCount, Compression.Algorithm compression,
       boolean isCompaction, boolean includeMVCCReadpoint, boolean includesTag,
       boolean shouldDropBehind) throws IOException {
+    return createWriterInTmp(maxKeyCount, compression, isCompaction, includeMVCCReadpoint,
+      includesTag, shouldDropBehind, null);
+  }
+
+  /**
+   * @param compression Compression algorithm to use
+   * @param isCompaction whether we are creating a new file in a compaction
+   * @param includeMVCCReadpoint - whether to include MVCC or not
+   * @param includesTag - includesTag or not
+   * @param hotKeyRanges key ranges which were cached in the compacted files, only data blocks
+   *          overlapping these are cached on write. Ignored if not a compaction or null.
+   * @return Writer for a new StoreFile in the tmp dir.
+   */
+  public StoreFileWriter createWriterInTmp(long maxKeyCount, Compression.Algorithm compression,
+      boolean isCompaction, boolean includeMVCCReadpoint, boolean includesTag,
+      boolean shouldDropBehind, HotKeyRanges hotKeyRanges) throws IOException {
     final CacheConfig writerCacheConf;
     if (isCompaction) {
       // Don't cache data on write on compactions, unless specifically configured to do so
       writerCacheConf = new CacheConfig(cacheConf);
       writerCacheConf.setCacheDataOnWrite(cacheConf.shouldCacheCompactedBlocksOnWrite());
+      if (hotKeyRanges != null && cacheConf.shouldCacheCompactedHotBlocksOnWrite()) {
+        // Only cache what was hot in the compacted files
+        writerCacheConf.setHotKeyRanges(hotKeyRanges);
+      }
     } else {
       writerCacheConf = cacheConf;
     }
@@ -1259,12 +1281,35 @@ public class HStore implements Store, HeapSize, StoreConfigInformation, Propagat
   public List<KeyValueScanner> getScanners(boolean cacheBlocks, boolean usePread,
       boolean isCompaction, ScanQueryMatcher matcher, byte[] startRow, boolean includeStartRow,
       byte[] stopRow, boolean includeStopRow, long readPt) throws IOException {
+    return getScanners(cacheBlocks, usePread, isCompaction, matcher, startRow, includeStartRow,
+      stopRow, includeStopRow, TimeRange.allTime(), readPt);
+  }
+
+  /**
+   * Get all scanners with no filtering based on TTL (that happens further down the line). The
+   * store file manager may leave out the files which cannot hold cells in the given time range.
+   * @param cacheBlocks cache the blocks or not
+   * @param usePread true to use pread, false if not
+   * @param isCompaction true if the scanner is created for compaction
+   * @param matcher the scan query matcher
+   * @param startRow the start row
+   * @param includeStartRow true to include start row, false if not
+   * @param stopRow the stop row
+   * @param includeStopRow true to include stop row, false if not
+   * @param timeRange the time range of the current scan
+   * @param readPt the read point of the current scan
+   * @return all scanners for this store
+   */
+  public List<KeyValueScanner> getScanners(boolean cacheBlocks, boolean usePread,
+      boolean isCompaction, ScanQueryMatcher matcher, byte[] startRow, boolean includeStartRow,
+      byte[] stopRow, boolean includeStopRow, TimeRange timeRange, long readPt)
+      throws IOException {
     Collection<HStoreFile> storeFilesToScan;
     List<KeyValueScanner> memStoreScanners;
     this.lock.readLock().lock();
     try {
       storeFilesToScan = this.storeEngine.getStoreFileManager().getFilesForScan(startRow,
-        includeStartRow, stopRow, includeStopRow);
+        includeStartRow, stopRow, includeStopRow, timeRange);
       memStoreScanners = this.memstore.getScanners(readPt);
     } finally {
       this.lock.readLock().unlock();
@@ -2247,6 +2292,17 @@ public class HStore implements Store, HeapSize, StoreConfigInformation, Propagat
     return this.memstore.size();
   }
 
+  /**
+   * Samples the rows of the most recent writes to the memstore.
+   * @see AbstractMemStore#sampleActiveRows(int)
+   */
+  List<byte[]> sampleMemStoreRows(int maxSamples) {
+    if (this.memstore instanceof AbstractMemStore) {
+      return ((AbstractMemStore) this.memstore).sampleActiveRows(maxSamples);
+    }
+    return Collections.emptyList();
+  }
+
   @Override
   public int getCompactPriority() {
     int priority = this.storeEngine.getStoreFileManager().getStoreCompactionPriority();
@@ -92,6 +92,9 @@ public class HStoreFile implements StoreFile {
   /** Bloom filter param in FileInfo */
   public static final byte[] BLOOM_FILTER_PARAM_KEY = Bytes.toBytes("BLOOM_FILTER_PARAM");
 
+  /** Row prefix Bloom filter in FileInfo */
+  public static final byte[] ROW_PREFIX_BLOOM_KEY = Bytes.toBytes("ROW_PREFIX_BLOOM");
+
   /** Delete Family Count in FileInfo */
   public static final byte[] DELETE_FAMILY_COUNT = Bytes.toBytes("DELETE_FAMILY_COUNT");
 
@@ -442,6 +445,7 @@ public class HStoreFile implements StoreFile {
 
     // load delete family bloom filter
     initialReader.loadBloomfilter(BlockType.DELETE_FAMILY_BLOOM_META);
+    initialReader.loadBlockStats();
 
     try {
       byte[] data = metadataMap.get(TIMERANGE_KEY);
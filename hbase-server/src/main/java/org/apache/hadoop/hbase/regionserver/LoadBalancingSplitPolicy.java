@@ -0,0 +1,236 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SteppingSplitPolicy} which picks the split point that balances the load between the
+ * daughters rather than just the bytes of the largest store file.
+ * <p>
+ * Two histograms are sampled over the rows of the region, across all stores:
+ * <ul>
+ * <li>size: the root data block index keys of the store files, each one weighted by the file
+ * length divided by the number of root entries, plus the memstore;</li>
+ * <li>writes: the rows of the memstore, and the index keys of the files flushed or compacted from
+ * cells written within {@link #RECENT_WRITE_WINDOW_KEY}.</li>
+ * </ul>
+ * The split point is the sampled row where the share of the region left of it, averaging the two
+ * histograms with {@link #WRITE_WEIGHT_KEY}, is the closest to one half. Use
+ * {@link #estimateSplitPoint()} to see the split point which would be chosen without splitting.
+ * Falls back to the mid key of the largest store file if nothing could be sampled.
+ */
+@InterfaceAudience.Private
+public class LoadBalancingSplitPolicy extends SteppingSplitPolicy {
+  private static final Logger LOG = LoggerFactory.getLogger(LoadBalancingSplitPolicy.class);
+
+  /**
+   * Weight of the write histogram when balancing the daughters, between 0 (balance the size only)
+   * and 1 (balance the writes only).
+   */
+  public static final String WRITE_WEIGHT_KEY = "hbase.regionserver.region.split.write.weight";
+  public static final float DEFAULT_WRITE_WEIGHT = 0.5f;
+
+  /** Store files with cells newer than this many milliseconds count as recent writes. */
+  public static final String RECENT_WRITE_WINDOW_KEY =
+      "hbase.regionserver.region.split.recent.write.window";
+  public static final long DEFAULT_RECENT_WRITE_WINDOW = 60 * 60 * 1000L;
+
+  /** Maximum number of rows to sample from the memstore of each store. */
+  public static final String MEMSTORE_SAMPLES_KEY =
+      "hbase.regionserver.region.split.memstore.samples";
+  public static final int DEFAULT_MEMSTORE_SAMPLES = 1000;
+
+  private float writeWeight;
+  private long recentWriteWindow;
+  private int memStoreSamples;
+
+  @Override
+  protected void configureForRegion(HRegion region) {
+    super.configureForRegion(region);
+    Configuration conf = getConf();
+    writeWeight = Math.min(1f, Math.max(0f, conf.getFloat(WRITE_WEIGHT_KEY,
+      DEFAULT_WRITE_WEIGHT)));
+    recentWriteWindow = conf.getLong(RECENT_WRITE_WINDOW_KEY, DEFAULT_RECENT_WRITE_WINDOW);
+    memStoreSamples = conf.getInt(MEMSTORE_SAMPLES_KEY, DEFAULT_MEMSTORE_SAMPLES);
+  }
+
+  @Override
+  protected byte[] getSplitPoint() {
+    byte[] explicitSplitPoint = this.region.getExplicitSplitPoint();
+    if (explicitSplitPoint != null) {
+      return explicitSplitPoint;
+    }
+    SplitPointEstimate estimate = estimateSplitPoint();
+    if (estimate == null) {
+      return super.getSplitPoint();
+    }
+    LOG.info("Splitting {} at {}", region.getRegionInfo().getEncodedName(), estimate);
+    return estimate.getSplitPoint();
+  }
+
+  /**
+   * Computes the split point from the current size and write histograms of the region, without
+   * splitting it.
+   * @return the split point and the expected balance between the daughters, or null if the region
+   *         cannot be split or nothing could be sampled
+   */
+  public SplitPointEstimate estimateSplitPoint() {
+    long recentCutoffTs = EnvironmentEdgeManager.currentTime() - recentWriteWindow;
+    List<Sample> samples = new ArrayList<>();
+    for (HStore store : region.getStores()) {
+      // Stores with references cannot be split.
+      if (!store.canSplit()) {
+        return null;
+      }
+      for (HStoreFile sf : store.getStorefiles()) {
+        StoreFileReader reader = sf.getReader();
+        HFile.Reader hfileReader = reader == null ? null : reader.getHFileReader();
+        List<Cell> keys = hfileReader == null ? null : hfileReader.getRootIndexKeys();
+        if (keys == null || keys.isEmpty()) {
+          continue;
+        }
+        double bytes = (double) reader.length() / keys.size();
+        double writes = reader.getMaxTimestamp() >= recentCutoffTs ? bytes : 0;
+        for (Cell key : keys) {
+          samples.add(new Sample(CellUtil.cloneRow(key), bytes, writes));
+        }
+      }
+      List<byte[]> rows = store.sampleMemStoreRows(memStoreSamples);
+      if (!rows.isEmpty()) {
+        double bytes = (double) store.getMemStoreSize().getDataSize() / rows.size();
+        for (byte[] row : rows) {
+          samples.add(new Sample(row, bytes, bytes));
+        }
+      }
+    }
+    return chooseSplitPoint(region.getRegionInfo(), samples, writeWeight);
+  }
+
+  static SplitPointEstimate chooseSplitPoint(RegionInfo regionInfo, List<Sample> samples,
+      float writeWeight) {
+    if (samples.isEmpty()) {
+      return null;
+    }
+    samples.sort((left, right) -> Bytes.BYTES_COMPARATOR.compare(left.row, right.row));
+    double totalBytes = 0, totalWrites = 0;
+    for (Sample sample : samples) {
+      totalBytes += sample.bytes;
+      totalWrites += sample.writes;
+    }
+    if (totalBytes <= 0) {
+      return null;
+    }
+    // Without recent writes there is nothing to balance but the size.
+    float weight = totalWrites > 0 ? writeWeight : 0f;
+    byte[] startKey = regionInfo.getStartKey();
+    byte[] endKey = regionInfo.getEndKey();
+    SplitPointEstimate best = null;
+    double bestDistance = Double.MAX_VALUE;
+    double leftBytes = 0, leftWrites = 0;
+    byte[] previousRow = null;
+    for (Sample sample : samples) {
+      // A split point is the first row of the second daughter, so it is only a candidate where a
+      // new row starts and the first daughter is not empty.
+      if (previousRow != null && !Bytes.equals(previousRow, sample.row)
+          && Bytes.compareTo(sample.row, startKey) > 0
+          && (Bytes.equals(endKey, HConstants.EMPTY_END_ROW)
+            || Bytes.compareTo(sample.row, endKey) < 0)) {
+        double bytesFraction = leftBytes / totalBytes;
+        double writesFraction = totalWrites > 0 ? leftWrites / totalWrites : bytesFraction;
+        double distance =
+            Math.abs((1 - weight) * bytesFraction + weight * writesFraction - 0.5);
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          best = new SplitPointEstimate(sample.row, bytesFraction, writesFraction);
+        }
+      }
+      leftBytes += sample.bytes;
+      leftWrites += sample.writes;
+      previousRow = sample.row;
+    }
+    return best;
+  }
+
+  static final class Sample {
+    final byte[] row;
+    final double bytes;
+    final double writes;
+
+    Sample(byte[] row, double bytes, double writes) {
+      this.row = row;
+      this.bytes = bytes;
+      this.writes = writes;
+    }
+  }
+
+  /**
+   * A split point and how the region would be shared between the daughters.
+   */
+  public static final class SplitPointEstimate {
+    private final byte[] splitPoint;
+    private final double firstDaughterSizeFraction;
+    private final double firstDaughterWritesFraction;
+
+    SplitPointEstimate(byte[] splitPoint, double firstDaughterSizeFraction,
+        double firstDaughterWritesFraction) {
+      this.splitPoint = splitPoint;
+      this.firstDaughterSizeFraction = firstDaughterSizeFraction;
+      this.firstDaughterWritesFraction = firstDaughterWritesFraction;
+    }
+
+    public byte[] getSplitPoint() {
+      return splitPoint;
+    }
+
+    /**
+     * @return the expected fraction of the size of the region which goes to the first daughter
+     */
+    public double getFirstDaughterSizeFraction() {
+      return firstDaughterSizeFraction;
+    }
+
+    /**
+     * @return the expected fraction of the recent writes of the region which go to the first
+     *         daughter
+     */
+    public double getFirstDaughterWritesFraction() {
+      return firstDaughterWritesFraction;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("splitPoint=%s, size=%.2f/%.2f, writes=%.2f/%.2f",
+        Bytes.toStringBinary(splitPoint), firstDaughterSizeFraction,
+        1 - firstDaughterSizeFraction, firstDaughterWritesFraction,
+        1 - firstDaughterWritesFraction);
+    }
+  }
+}
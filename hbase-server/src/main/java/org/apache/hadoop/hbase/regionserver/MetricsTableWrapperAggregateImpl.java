@@ -62,7 +62,7 @@ public class MetricsTableWrapperAggregateImpl implements MetricsTableWrapperAggr
     public void run() {
       Map<TableName, MetricsTableValues> localMetricsTableMap = new HashMap<>();
 
-      for (Region r : regionServer.getOnlineRegionsLocalContext()) {
+      for (HRegion r : regionServer.getOnlineRegionsLocalContext()) {
         TableName tbl = r.getTableDescriptor().getTableName();
         MetricsTableValues mt = localMetricsTableMap.get(tbl);
         if (mt == null) {
@@ -88,6 +88,11 @@ public class MetricsTableWrapperAggregateImpl implements MetricsTableWrapperAggr
           mt.readRequestCount += r.getReadRequestsCount();
           mt.filteredReadRequestCount += getFilteredReadRequestCount(tbl.getNameAsString());
           mt.writeRequestCount += r.getWriteRequestsCount();
+          RowCache.RegionRowCache rowCache = r.getRowCache();
+          if (rowCache != null) {
+            mt.rowCacheHitCount += rowCache.getHitCount();
+            mt.rowCacheMissCount += rowCache.getMissCount();
+          }
 
         }
       }
@@ -259,6 +264,24 @@ public class MetricsTableWrapperAggregateImpl implements MetricsTableWrapperAggr
     return metricsTable.referenceFileCount;
   }
 
+  @Override
+  public long getRowCacheHitCount(String table) {
+    MetricsTableValues metricsTable = metricsTableMap.get(TableName.valueOf(table));
+    if (metricsTable == null) {
+      return 0;
+    }
+    return metricsTable.rowCacheHitCount;
+  }
+
+  @Override
+  public long getRowCacheMissCount(String table) {
+    MetricsTableValues metricsTable = metricsTableMap.get(TableName.valueOf(table));
+    if (metricsTable == null) {
+      return 0;
+    }
+    return metricsTable.rowCacheMissCount;
+  }
+
   @Override
   public long getAvgRegionSize(String table) {
     MetricsTableValues metricsTable = metricsTableMap.get(TableName.valueOf(table));
@@ -297,6 +320,8 @@ public class MetricsTableWrapperAggregateImpl implements MetricsTableWrapperAggr
     long totalStoreFileAge;
     long referenceFileCount;
     long cpRequestCount;
+    long rowCacheHitCount;
+    long rowCacheMissCount;
   }
 
 }
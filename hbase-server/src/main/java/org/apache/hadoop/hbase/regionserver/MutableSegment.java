@@ -18,8 +18,11 @@
  */
 package org.apache.hadoop.hbase.regionserver;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.SortedSet;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.hadoop.hbase.Cell;
@@ -29,6 +32,7 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.yetus.audience.InterfaceAudience;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.ClassSize;
 
 import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
@@ -39,13 +43,21 @@ import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesti
 @InterfaceAudience.Private
 public class MutableSegment extends Segment {
 
+  /** Number of rows kept in the reservoir sample of the segment */
+  public static final int ROW_SAMPLES = 1000;
+
   private final AtomicBoolean flushed = new AtomicBoolean(false);
 
+  // Reservoir sample of the rows written to this segment, filled on add so that sampling does not
+  // walk the segment. Racing writers may overwrite each other's slot, which only loses a sample.
+  private final byte[][] rowSamples = new byte[ROW_SAMPLES][];
+
   public final static long DEEP_OVERHEAD = ClassSize.align(Segment.DEEP_OVERHEAD
       + ClassSize.CONCURRENT_SKIPLISTMAP
       + ClassSize.SYNC_TIMERANGE_TRACKER
-      + ClassSize.REFERENCE
-      + ClassSize.ATOMIC_BOOLEAN);
+      + 2 * ClassSize.REFERENCE
+      + ClassSize.ATOMIC_BOOLEAN
+      + ClassSize.align(ClassSize.ARRAY + ROW_SAMPLES * ClassSize.REFERENCE));
 
   protected MutableSegment(CellSet cellSet, CellComparator comparator,
       MemStoreLAB memStoreLAB, MemStoreSizing memstoreSizing) {
@@ -64,11 +76,13 @@ public class MutableSegment extends Segment {
   public void add(Cell cell, boolean mslabUsed, MemStoreSizing memStoreSizing,
       boolean sizeAddedPreOperation) {
     internalAdd(cell, mslabUsed, memStoreSizing, sizeAddedPreOperation);
+    sampleRow(cell);
   }
 
   public void upsert(Cell cell, long readpoint, MemStoreSizing memStoreSizing,
       boolean sizeAddedPreOperation) {
     internalAdd(cell, false, memStoreSizing, sizeAddedPreOperation);
+    sampleRow(cell);
 
     // Get the Cells for the row/family/qualifier regardless of timestamp.
     // For this case we want to clean up any other puts
@@ -116,6 +130,43 @@ public class MutableSegment extends Segment {
     }
   }
 
+  /**
+   * Offers the row of an added cell to the reservoir. The n-th cell replaces a random sample with
+   * probability ROW_SAMPLES/n, so each cell of the segment is equally likely to be sampled and
+   * rows are only copied a logarithmic number of times.
+   */
+  private void sampleRow(Cell cell) {
+    int seen = getCellsCount();
+    int slot = seen <= ROW_SAMPLES ? seen - 1 : ThreadLocalRandom.current().nextInt(seen);
+    if (slot >= 0 && slot < ROW_SAMPLES) {
+      rowSamples[slot] = CellUtil.cloneRow(cell);
+    }
+  }
+
+  /**
+   * Returns rows sampled uniformly from the cells added to this segment, sorted by their bytes.
+   * This reads the reservoir kept on add, so it costs at most ROW_SAMPLES rows however large the
+   * segment is; a row is returned once per sampled cell.
+   * @param maxSamples the maximum number of rows to return, at most ROW_SAMPLES are available
+   */
+  List<byte[]> sampleRows(int maxSamples) {
+    List<byte[]> rows = new ArrayList<>(ROW_SAMPLES);
+    for (byte[] row : rowSamples) {
+      if (row != null) {
+        rows.add(row);
+      }
+    }
+    rows.sort(Bytes.BYTES_COMPARATOR);
+    if (rows.size() <= maxSamples) {
+      return rows;
+    }
+    List<byte[]> thinned = new ArrayList<>(Math.max(0, maxSamples));
+    for (int i = 0; i < maxSamples; i++) {
+      thinned.add(rows.get((int) ((long) i * rows.size() / maxSamples)));
+    }
+    return thinned;
+  }
+
   public boolean setInMemoryFlushed() {
     return flushed.compareAndSet(false, true);
   }
@@ -37,8 +37,11 @@ import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
@@ -139,9 +142,11 @@ import org.apache.hadoop.hbase.security.access.ZKPermissionWatcher;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.DNS;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.FutureUtils;
 import org.apache.hadoop.hbase.util.Pair;
 import org.apache.hadoop.hbase.util.ServerRegionReplicaUtil;
 import org.apache.hadoop.hbase.util.Strings;
+import org.apache.hadoop.hbase.util.Threads;
 import org.apache.hadoop.hbase.wal.WAL;
 import org.apache.hadoop.hbase.wal.WALEdit;
 import org.apache.hadoop.hbase.wal.WALKey;
@@ -293,6 +298,26 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
    */
   static final int BATCH_ROWS_THRESHOLD_DEFAULT = 5000;
 
+  /**
+   * Whether the next batch of a scanner is read in the background once the response of the
+   * previous scan request has been built, so that reading it overlaps with the time the previous
+   * batch spends on the wire and on the client.
+   */
+  public static final String SCAN_PREFETCH_ENABLED_KEY = "hbase.regionserver.scan.prefetch.enabled";
+  static final boolean DEFAULT_SCAN_PREFETCH_ENABLED = false;
+
+  /**
+   * The maximum size of the results read in the background for a scanner, on top of the size
+   * limits of the scan.
+   */
+  public static final String SCAN_PREFETCH_MAX_RESULT_SIZE_KEY =
+      "hbase.regionserver.scan.prefetch.max.result.size";
+  static final long DEFAULT_SCAN_PREFETCH_MAX_RESULT_SIZE = 2L * 1024 * 1024;
+
+  /** Number of threads reading the next batches of the scanners. */
+  public static final String SCAN_PREFETCH_THREADS_KEY = "hbase.regionserver.scan.prefetch.threads";
+  static final int DEFAULT_SCAN_PREFETCH_THREADS = 8;
+
   // Request counter. (Includes requests that are not serviced by regions.)
   // Count only once for requests with multiple actions like multi/caching-scan/replayBatch
   final LongAdder requestCount = new LongAdder();
@@ -346,6 +371,13 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
    */
   private final int rowSizeWarnThreshold;
 
+  /**
+   * Reads the next batches of the scanners, null if scan prefetching is disabled
+   */
+  private final ThreadPoolExecutor scanPrefetchPool;
+
+  private final long scanPrefetchMaxResultSize;
+
   final AtomicBoolean clearCompactionQueues = new AtomicBoolean(false);
 
   private AccessChecker accessChecker;
@@ -442,6 +474,8 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
     private final RpcCallback shippedCallback;
     private byte[] rowOfLastPartialResult;
     private boolean needCursor;
+    /** The next batch being read in the background, if any. */
+    private volatile CompletableFuture<PrefetchedResults> prefetch;
 
     public RegionScannerHolder(String scannerName, RegionScanner s, HRegion r,
         RpcCallback closeCallBack, RpcCallback shippedCallback, boolean needCursor) {
@@ -463,6 +497,22 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
     }
   }
 
+  /**
+   * A batch of a scanner read in the background, with the fields of the response set by
+   * {@link #scan(HBaseRpcController, ScanRequest, RegionScannerHolder, long, int, int, List,
+   * ScanResponse.Builder, MutableObject, RpcCallContext)}. The scanner keeps the blocks of its
+   * cells until the batch is shipped by the request which returns it.
+   */
+  private static final class PrefetchedResults {
+    private final List<Result> results;
+    private final ScanResponse response;
+
+    PrefetchedResults(List<Result> results, ScanResponse response) {
+      this.results = results;
+      this.response = response;
+    }
+  }
+
   /**
    * Instantiated as a scanner lease. If the lease times out, the scanner is
    * closed
@@ -1263,6 +1313,15 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
     minimumScanTimeLimitDelta = conf.getLong(
       REGION_SERVER_RPC_MINIMUM_SCAN_TIME_LIMIT_DELTA,
       DEFAULT_REGION_SERVER_RPC_MINIMUM_SCAN_TIME_LIMIT_DELTA);
+    if (conf.getBoolean(SCAN_PREFETCH_ENABLED_KEY, DEFAULT_SCAN_PREFETCH_ENABLED)) {
+      scanPrefetchPool = Threads.getBoundedCachedThreadPool(
+        conf.getInt(SCAN_PREFETCH_THREADS_KEY, DEFAULT_SCAN_PREFETCH_THREADS), 60L,
+        TimeUnit.SECONDS, name.replace('/', '-') + "-scan-prefetch");
+    } else {
+      scanPrefetchPool = null;
+    }
+    scanPrefetchMaxResultSize = Math.min(maxScannerResultSize,
+      conf.getLong(SCAN_PREFETCH_MAX_RESULT_SIZE_KEY, DEFAULT_SCAN_PREFETCH_MAX_RESULT_SIZE));
 
     final InetSocketAddress address = rpcServer.getListenerAddress();
     if (address == null) {
@@ -1511,6 +1570,9 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
       zkPermissionWatcher.close();
     }
     closeAllScanners();
+    if (scanPrefetchPool != null) {
+      scanPrefetchPool.shutdownNow();
+    }
     rpcServer.stop();
   }
 
@@ -3523,7 +3585,29 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
     boolean scannerClosed = false;
     try {
       List<Result> results = new ArrayList<>(Math.min(rows, 512));
-      if (rows > 0) {
+      // Wait for the batch read in the background even if it is not returned, the scanner must not
+      // be used by two threads.
+      PrefetchedResults prefetched = takePrefetchedResults(rsh);
+      // the quota of a batch read in the background was charged when it was read
+      boolean chargedByPrefetch = false;
+      if (rows > 0 && prefetched != null) {
+        chargedByPrefetch = true;
+        List<Result> prefetchedResults = prefetched.results;
+        if (prefetchedResults.size() > rows) {
+          // Keep the results that do not fit for the next request.
+          rsh.prefetch = CompletableFuture.completedFuture(new PrefetchedResults(
+            new ArrayList<>(prefetchedResults.subList(rows, prefetchedResults.size())),
+            prefetched.response));
+          prefetchedResults = prefetchedResults.subList(0, rows);
+          builder.setMoreResultsInRegion(true);
+        } else {
+          builder.mergeFrom(prefetched.response);
+        }
+        for (Result r : prefetchedResults) {
+          lastBlock.setValue(addSize(context, r, lastBlock.getValue()));
+          results.add(r);
+        }
+      } else if (rows > 0) {
         boolean done = false;
         // Call coprocessor. Get region info from scanner.
         if (region.getCoprocessorHost() != null) {
@@ -3548,7 +3632,9 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
         builder.setMoreResultsInRegion(true);
       }
 
-      quota.addScanResult(results);
+      if (!chargedByPrefetch) {
+        quota.addScanResult(results);
+      }
       addResults(builder, results, (HBaseRpcController) controller,
         RegionReplicaUtil.isDefaultReplica(region.getRegionInfo()),
         isClientCellBlockSupport(context));
@@ -3635,7 +3721,26 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
         // Adding resets expiration time on lease.
         // the closeCallBack will be set in closeScanner so here we only care about shippedCallback
         if (context != null) {
-          context.setCallBack(rsh.shippedCallback);
+          if (rsh.prefetch != null) {
+            // The results kept for the next request still reference the blocks of the scanner, so
+            // do not ship it, nor read further before they are returned.
+            context.setCallBack(() -> {
+              if (scanners.containsKey(scannerName)) {
+                addScannerLeaseBack(lease);
+              }
+            });
+          } else if (scanPrefetchPool != null && rows > 0 && limitOfRows <= 0
+              && builder.hasMoreResultsInRegion() && builder.getMoreResultsInRegion()) {
+            // The response is built when the callback runs, read the next batch while it is sent.
+            final int prefetchRows = rows;
+            final User user = context.getRequestUser().orElse(null);
+            context.setCallBack(() -> {
+              rsh.shippedCallback.run();
+              startPrefetch(rsh, request, prefetchRows, user);
+            });
+          } else {
+            context.setCallBack(rsh.shippedCallback);
+          }
         } else {
           // When context != null, adding back the lease will be done in callback set above.
           addScannerLeaseBack(lease);
@@ -3645,6 +3750,78 @@ public class RSRpcServices implements HBaseRPCErrorHandler,
     }
   }
 
+  /**
+   * @return the batch read in the background for the scanner, or null if there is none
+   */
+  private static PrefetchedResults takePrefetchedResults(RegionScannerHolder rsh)
+      throws IOException {
+    CompletableFuture<PrefetchedResults> prefetch = rsh.prefetch;
+    if (prefetch == null) {
+      return null;
+    }
+    rsh.prefetch = null;
+    return FutureUtils.get(prefetch);
+  }
+
+  /**
+   * Starts reading the next batch of the scanner in the background, with the parameters of the
+   * request which read the previous one. The read is checked against and charged to the quota of
+   * the user of that request; if it is exceeded nothing is read, and the next request reads its
+   * batch itself and is throttled as usual. A failure is thrown to the next request of the scanner.
+   */
+  private void startPrefetch(RegionScannerHolder rsh, ScanRequest request, int rows, User user) {
+    if (!scanners.containsKey(rsh.scannerName)) {
+      return;
+    }
+    OperationQuota quota;
+    try {
+      quota = getRpcQuotaManager().getQuota((user != null ? user : User.getCurrent()).getUGI(),
+        rsh.r.getTableDescriptor().getTableName());
+      quota.checkQuota(0, 0, 1);
+    } catch (IOException e) {
+      LOG.debug("Not prefetching scanner {}: {}", rsh.scannerName, e.getMessage());
+      return;
+    }
+    CompletableFuture<PrefetchedResults> future = new CompletableFuture<>();
+    rsh.prefetch = future;
+    try {
+      scanPrefetchPool.execute(() -> {
+        try {
+          future.complete(prefetch(rsh, request, rows, quota));
+        } catch (Throwable t) {
+          future.completeExceptionally(t);
+        } finally {
+          quota.close();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      // shutting down, the next request will read its batch itself
+      rsh.prefetch = null;
+      quota.close();
+    }
+  }
+
+  private PrefetchedResults prefetch(RegionScannerHolder rsh, ScanRequest request, int rows,
+      OperationQuota quota) throws IOException {
+    HRegion region = rsh.r;
+    RegionScanner scanner = rsh.s;
+    List<Result> results = new ArrayList<>(Math.min(rows, 512));
+    ScanResponse.Builder builder = ScanResponse.newBuilder();
+    Boolean bypass = null;
+    if (region.getCoprocessorHost() != null) {
+      bypass = region.getCoprocessorHost().preScannerNext(scanner, results, rows);
+    }
+    if (bypass != null && bypass.booleanValue()) {
+      builder.setMoreResultsInRegion(!results.isEmpty());
+    } else {
+      // No rpc call here, the size of the response is only bounded by the size limits.
+      scan(null, request, rsh, Math.min(scanPrefetchMaxResultSize, quota.getReadAvailable()), rows,
+        -1, results, builder, new MutableObject<>(), null);
+    }
+    quota.addScanResult(results);
+    return new PrefetchedResults(results, builder.buildPartial());
+  }
+
   private void closeScanner(HRegion region, RegionScanner scanner, String scannerName,
       RpcCallContext context) throws IOException {
     if (region.getCoprocessorHost() != null) {
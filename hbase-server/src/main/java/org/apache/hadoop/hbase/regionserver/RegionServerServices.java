@@ -307,6 +307,11 @@ public interface RegionServerServices extends Server, MutableOnlineRegions, Favo
    */
   Optional<MobFileCache> getMobFileCache();
 
+  /**
+   * @return The cache for the rows read by Gets, if enabled.
+   */
+  Optional<RowCache> getRowCache();
+
   /**
    * @return the {@link AccessChecker}
    */
@@ -0,0 +1,230 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.ipc.RpcClient;
+import org.apache.hadoop.hbase.ipc.RpcClientFactory;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequestImpl;
+import org.apache.hadoop.hbase.regionserver.compactions.DefaultCompactor;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
+import org.apache.hbase.thirdparty.com.google.protobuf.ServiceException;
+import org.apache.hbase.thirdparty.com.google.protobuf.UnsafeByteOperations;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RemoteCompactionProtos.RemoteCompactRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RemoteCompactionProtos.RemoteCompactResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RemoteCompactionProtos.RemoteCompactionService;
+
+/**
+ * Ships compactions selected by a regionserver to {@link RemoteCompactionServer}s. The store files
+ * are compacted by the remote server into the region's temporary directory; the regionserver then
+ * validates and commits the new files through {@link HStore#compact} exactly like the output of a
+ * local compaction.
+ * <p>
+ * Only stores whose compaction is fully described by the selected files are offloaded, i.e. stores
+ * using the default store engine and compactor. If the remote compaction fails, the compaction
+ * runs locally unless {@link #FALLBACK_KEY} is turned off.
+ */
+@InterfaceAudience.Private
+public class RemoteCompactionClient implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RemoteCompactionClient.class);
+
+  /**
+   * Comma separated list of host:port of the compaction servers to use. Compactions run in the
+   * regionserver if empty.
+   */
+  public static final String SERVERS_KEY = "hbase.regionserver.compaction.remote.servers";
+
+  public static final String TIMEOUT_KEY = "hbase.regionserver.compaction.remote.timeout";
+  public static final long DEFAULT_TIMEOUT = TimeUnit.HOURS.toMillis(1);
+
+  /** Whether to compact locally if the compaction server fails */
+  public static final String FALLBACK_KEY = "hbase.regionserver.compaction.remote.fallback";
+  public static final boolean DEFAULT_FALLBACK = true;
+
+  private final List<ServerName> servers;
+  private final int rpcTimeout;
+  private final boolean fallback;
+  private final RpcClient rpcClient;
+  private final User user;
+  private final AtomicInteger nextServer = new AtomicInteger();
+
+  public RemoteCompactionClient(Configuration conf, String clusterId, List<ServerName> servers)
+      throws IOException {
+    this.servers = servers;
+    this.rpcTimeout = (int) Math.min(Integer.MAX_VALUE, conf.getLong(TIMEOUT_KEY, DEFAULT_TIMEOUT));
+    this.fallback = conf.getBoolean(FALLBACK_KEY, DEFAULT_FALLBACK);
+    this.rpcClient = RpcClientFactory.createClient(conf, clusterId);
+    // Talk to the compaction servers as the regionserver, not as the user asking for a compaction.
+    this.user = User.getCurrent();
+  }
+
+  /**
+   * @return a client for the compaction servers configured under {@link #SERVERS_KEY}, or null if
+   *         none are configured
+   */
+  public static RemoteCompactionClient create(Configuration conf, String clusterId)
+      throws IOException {
+    List<ServerName> servers = new ArrayList<>();
+    for (String hostAndPort : conf.getTrimmedStringCollection(SERVERS_KEY)) {
+      servers.add(ServerName.valueOf(hostAndPort, ServerName.NON_STARTCODE));
+    }
+    if (servers.isEmpty()) {
+      return null;
+    }
+    LOG.info("Offloading compactions to {}", servers);
+    return new RemoteCompactionClient(conf, clusterId, servers);
+  }
+
+  /**
+   * @return whether the given compaction of the given store can run on a compaction server
+   */
+  public boolean canOffload(HStore store, CompactionContext compaction) {
+    if (store instanceof HMobStore) {
+      return false;
+    }
+    // the compaction server writes all the cells to one file, as the default compactor does
+    StoreEngine<?, ?, ?, ?> engine = store.getStoreEngine();
+    return engine.getClass() == DefaultStoreEngine.class
+        && engine.getCompactor().getClass() == DefaultCompactor.class
+        && (!compaction.hasSelection()
+            || compaction.getRequest().getClass() == CompactionRequestImpl.class);
+  }
+
+  /**
+   * Wraps the given compaction so that it runs on a compaction server. The files are selected by
+   * the given compaction, before or after it is wrapped, see
+   * {@link #canOffload(HStore, CompactionContext)}.
+   */
+  public CompactionContext offload(HStore store, CompactionContext compaction) {
+    return new RemoteCompactionContext(store, compaction);
+  }
+
+  @VisibleForTesting
+  List<Path> compact(HStore store, CompactionRequestImpl request) throws IOException {
+    RemoteCompactRequest.Builder builder = RemoteCompactRequest.newBuilder()
+        .setTableSchema(ProtobufUtil.toTableSchema(store.getHRegion().getTableDescriptor()))
+        .setRegionInfo(ProtobufUtil.toRegionInfo(store.getRegionInfo()))
+        .setFamily(UnsafeByteOperations.unsafeWrap(store.getColumnFamilyDescriptor().getName()))
+        .setSmallestReadPoint(store.getSmallestReadPoint())
+        .setIsMajor(request.isMajor())
+        .setIsAllFiles(request.isAllFiles());
+    for (HStoreFile sf : request.getFiles()) {
+      builder.addStoreFile(sf.getPath().getName());
+    }
+    ServerName server =
+        servers.get(Math.floorMod(nextServer.getAndIncrement(), servers.size()));
+    LOG.info("Compacting {} files of {} on {}", request.getFiles().size(), store, server);
+    RemoteCompactResponse response;
+    try {
+      response = RemoteCompactionService
+          .newBlockingStub(rpcClient.createBlockingRpcChannel(server, user, rpcTimeout))
+          .compact(null, builder.build());
+    } catch (ServiceException e) {
+      throw ProtobufUtil.getRemoteException(e);
+    }
+    Path tmpDir = store.getRegionFileSystem().getTempDir();
+    List<Path> newFiles = new ArrayList<>(response.getTmpFileCount());
+    for (String file : response.getTmpFileList()) {
+      Path newFile = new Path(file);
+      // Never commit anything which does not come from the region's own tmp dir.
+      if (newFile.getParent() == null || newFile.getParent().getParent() == null
+          || !newFile.getParent().getParent().toUri().getPath()
+              .equals(tmpDir.toUri().getPath())) {
+        throw new IOException(server + " returned " + newFile + " which is not in " + tmpDir);
+      }
+      newFiles.add(newFile);
+    }
+    return newFiles;
+  }
+
+  @Override
+  public void close() {
+    rpcClient.close();
+  }
+
+  /**
+   * Selects the files to compact with the context of the store engine, and compacts them on a
+   * compaction server. The local context compacts them if the compaction server fails.
+   */
+  private final class RemoteCompactionContext extends CompactionContext {
+
+    private final HStore store;
+    private final CompactionContext local;
+
+    RemoteCompactionContext(HStore store, CompactionContext local) {
+      this.store = store;
+      this.local = local;
+      if (local.hasSelection()) {
+        super.forceSelect(local.getRequest());
+      }
+    }
+
+    @Override
+    public List<HStoreFile> preSelect(List<HStoreFile> filesCompacting) {
+      return local.preSelect(filesCompacting);
+    }
+
+    @Override
+    public boolean select(List<HStoreFile> filesCompacting, boolean isUserCompaction,
+        boolean mayUseOffPeak, boolean forceMajor) throws IOException {
+      if (!local.select(filesCompacting, isUserCompaction, mayUseOffPeak, forceMajor)) {
+        return false;
+      }
+      super.forceSelect(local.getRequest());
+      return true;
+    }
+
+    @Override
+    public void forceSelect(CompactionRequestImpl request) {
+      local.forceSelect(request);
+      super.forceSelect(request);
+    }
+
+    @Override
+    public List<Path> compact(ThroughputController throughputController, User user)
+        throws IOException {
+      try {
+        return RemoteCompactionClient.this.compact(store, getRequest());
+      } catch (IOException e) {
+        if (!fallback) {
+          throw e;
+        }
+        LOG.warn("Remote compaction of {} failed, compacting locally", store, e);
+        return local.compact(throughputController, user);
+      }
+    }
+  }
+}
@@ -0,0 +1,343 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.io.hfile.HFileContext;
+import org.apache.hadoop.hbase.io.hfile.HFileContextBuilder;
+import org.apache.hadoop.hbase.io.hfile.HFileInfo;
+import org.apache.hadoop.hbase.ipc.FifoRpcScheduler;
+import org.apache.hadoop.hbase.ipc.RpcServer;
+import org.apache.hadoop.hbase.ipc.RpcServerFactory;
+import org.apache.hadoop.hbase.ipc.RpcServerInterface;
+import org.apache.hadoop.hbase.security.AccessDeniedException;
+import org.apache.hadoop.hbase.security.EncryptionUtil;
+import org.apache.hadoop.hbase.security.SecurityConstants;
+import org.apache.hadoop.hbase.security.Superusers;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.security.UserProvider;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.RpcController;
+import org.apache.hbase.thirdparty.com.google.protobuf.ServiceException;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RemoteCompactionProtos.RemoteCompactRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RemoteCompactionProtos.RemoteCompactResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RemoteCompactionProtos.RemoteCompactionService;
+
+/**
+ * A standalone process which runs compactions on behalf of regionservers, so that big compactions
+ * do not compete with reads for the heap, CPU and block cache of the regionserver.
+ * <p>
+ * The regionserver ships the names of the selected store files, the schema of the table, which
+ * determines the {@link ScanInfo} of the store, and the smallest read point of the region. The
+ * compaction server finds the region under the root directory of the cluster, opens a reader on
+ * each selected file and writes the compacted cells to a new file in the temporary directory of
+ * the region. It never opens the region nor the store; the regionserver validates the output and
+ * commits it as it does for local compactions, see {@link RemoteCompactionClient}.
+ * <p>
+ * The server logs in with the keytab and principal of the regionservers, and only accepts
+ * requests from superusers, such as the regionservers themselves.
+ * <p>
+ * Only the default compaction is supported: all the selected files are compacted into one file.
+ * Coprocessor hooks which run while a compaction reads its input, such as
+ * {@code preCompactScannerOpen} and {@code preCompact}, are not invoked for remote compactions,
+ * and the sequence ids of the cells are always kept.
+ */
+@InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.TOOLS)
+public class RemoteCompactionServer implements RemoteCompactionService.BlockingInterface {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RemoteCompactionServer.class);
+
+  public static final String BIND_ADDRESS_KEY = "hbase.compactionserver.bindaddress";
+  public static final String DEFAULT_BIND_ADDRESS = "0.0.0.0";
+
+  public static final String PORT_KEY = "hbase.compactionserver.port";
+  public static final int DEFAULT_PORT = 16050;
+
+  public static final String HANDLER_COUNT_KEY = "hbase.compactionserver.handler.count";
+  public static final int DEFAULT_HANDLER_COUNT = 4;
+
+  private final Configuration conf;
+
+  private final Path rootDir;
+
+  private final FileSystem fs;
+
+  private final int compactionKVMax;
+
+  private final RpcServerInterface rpcServer;
+
+  public RemoteCompactionServer(Configuration conf) throws IOException {
+    this.conf = conf;
+    UserProvider.instantiate(conf).login(SecurityConstants.REGIONSERVER_KRB_KEYTAB_FILE,
+      SecurityConstants.REGIONSERVER_KRB_PRINCIPAL, RSRpcServices.getHostname(conf, false));
+    Superusers.initialize(conf);
+    this.rootDir = CommonFSUtils.getRootDir(conf);
+    this.fs = CommonFSUtils.getRootDirFileSystem(conf);
+    this.compactionKVMax =
+        conf.getInt(HConstants.COMPACTION_KV_MAX, HConstants.COMPACTION_KV_MAX_DEFAULT);
+    InetSocketAddress bindAddress = new InetSocketAddress(
+        conf.get(BIND_ADDRESS_KEY, DEFAULT_BIND_ADDRESS), conf.getInt(PORT_KEY, DEFAULT_PORT));
+    List<RpcServer.BlockingServiceAndInterface> services = new ArrayList<>(1);
+    services.add(new RpcServer.BlockingServiceAndInterface(
+        RemoteCompactionService.newReflectiveBlockingService(this),
+        RemoteCompactionService.BlockingInterface.class));
+    this.rpcServer = RpcServerFactory.createRpcServer(null, "compactionserver", services,
+      bindAddress, conf,
+      new FifoRpcScheduler(conf, conf.getInt(HANDLER_COUNT_KEY, DEFAULT_HANDLER_COUNT)));
+  }
+
+  public void start() {
+    rpcServer.start();
+    LOG.info("Compaction server listening on {}", getListenerAddress());
+  }
+
+  public void stop() {
+    rpcServer.stop();
+  }
+
+  public void join() throws InterruptedException {
+    rpcServer.join();
+  }
+
+  public InetSocketAddress getListenerAddress() {
+    return rpcServer.getListenerAddress();
+  }
+
+  @Override
+  public RemoteCompactResponse compact(RpcController controller, RemoteCompactRequest request)
+      throws ServiceException {
+    try {
+      checkSuperUser();
+      List<Path> newFiles = compact(request);
+      RemoteCompactResponse.Builder builder = RemoteCompactResponse.newBuilder();
+      for (Path newFile : newFiles) {
+        builder.addTmpFile(newFile.toString());
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
+  /**
+   * Compactions write to the filesystem of the cluster as the compaction server, so only the
+   * regionservers and the other superusers may ask for them.
+   */
+  private void checkSuperUser() throws AccessDeniedException {
+    User user = RpcServer.getRequestUser().orElse(null);
+    if (user == null || !Superusers.isSuperUser(user)) {
+      throw new AccessDeniedException("User '" + (user != null ? user.getShortName() : "null")
+          + "' is not allowed to run compactions");
+    }
+  }
+
+  private List<Path> compact(RemoteCompactRequest request) throws IOException {
+    TableDescriptor htd = ProtobufUtil.toTableDescriptor(request.getTableSchema());
+    RegionInfo hri = ProtobufUtil.toRegionInfo(request.getRegionInfo());
+    if (!hri.getTable().equals(htd.getTableName())) {
+      throw new IOException("Region " + hri.getRegionNameAsString() + " is not in "
+          + htd.getTableName());
+    }
+    ColumnFamilyDescriptor family = htd.getColumnFamily(request.getFamily().toByteArray());
+    if (family == null) {
+      throw new IOException("Unknown family " + Bytes.toStringBinary(request.getFamily()
+          .toByteArray()) + " in " + htd.getTableName());
+    }
+    HRegionFileSystem regionFs = new HRegionFileSystem(conf, fs,
+        CommonFSUtils.getTableDir(rootDir, htd.getTableName()), hri);
+    Path familyDir = regionFs.getStoreDir(family.getNameAsString());
+    List<HStoreFile> filesToCompact = new ArrayList<>(request.getStoreFileCount());
+    try {
+      for (String name : request.getStoreFileList()) {
+        if (name.contains(Path.SEPARATOR) || !StoreFileInfo.validateStoreFileName(name)) {
+          throw new IOException("Invalid store file name " + name);
+        }
+        HStoreFile sf = new HStoreFile(fs, new Path(familyDir, name), conf, CacheConfig.DISABLED,
+            family.getBloomFilterType(), true);
+        filesToCompact.add(sf);
+        sf.initReader();
+      }
+      LOG.info("Compacting {} files of {} into tmpdir={}, major={}", filesToCompact.size(),
+        familyDir, regionFs.getTempDir(), request.getIsMajor());
+      return Collections.singletonList(compact(htd, family, regionFs, filesToCompact,
+        request.getSmallestReadPoint(), request.getIsAllFiles()));
+    } finally {
+      for (HStoreFile sf : filesToCompact) {
+        try {
+          sf.closeStoreFile(false);
+        } catch (IOException e) {
+          LOG.warn("Failed to close {}", sf, e);
+        }
+      }
+    }
+  }
+
+  /**
+   * Compacts the given files the way {@link DefaultCompactor} does, reading them through a
+   * {@link StoreScanner} which needs no store.
+   * @return the path of the compacted file, in the temporary directory of the region
+   */
+  private Path compact(TableDescriptor htd, ColumnFamilyDescriptor family,
+      HRegionFileSystem regionFs, List<HStoreFile> filesToCompact, long smallestReadPoint,
+      boolean allFiles) throws IOException {
+    long maxSeqId = 0;
+    long maxKeyCount = 0;
+    long maxMVCCReadpoint = 0;
+    int maxTagsLength = 0;
+    long earliestPutTs = HConstants.LATEST_TIMESTAMP;
+    for (HStoreFile sf : filesToCompact) {
+      StoreFileReader r = sf.getReader();
+      maxSeqId = Math.max(maxSeqId, sf.getMaxSequenceId());
+      maxKeyCount += r.getEntries();
+      Map<byte[], byte[]> fileInfo = r.loadFileInfo();
+      if (r.isBulkLoaded()) {
+        maxMVCCReadpoint = Math.max(maxMVCCReadpoint, r.getSequenceID());
+      } else {
+        byte[] tmp = fileInfo.get(HFile.Writer.MAX_MEMSTORE_TS_KEY);
+        if (tmp != null) {
+          maxMVCCReadpoint = Math.max(maxMVCCReadpoint, Bytes.toLong(tmp));
+        }
+      }
+      byte[] tmp = fileInfo.get(HFileInfo.MAX_TAGS_LEN);
+      if (tmp != null) {
+        maxTagsLength = Math.max(maxTagsLength, Bytes.toInt(tmp));
+      }
+      if (allFiles) {
+        // family delete markers older than all the puts can be dropped
+        tmp = fileInfo.get(HStoreFile.EARLIEST_PUT_TS);
+        earliestPutTs = tmp == null ? HConstants.OLDEST_TIMESTAMP
+            : Math.min(earliestPutTs, Bytes.toLong(tmp));
+      }
+    }
+    CellComparator comparator = htd.isMetaTable() ? CellComparatorImpl.META_COMPARATOR
+        : CellComparatorImpl.COMPARATOR;
+    ScanInfo scanInfo = new ScanInfo(conf, family, HStore.determineTTLFromFamily(family),
+        Math.max(conf.getLong("hbase.hstore.time.to.purge.deletes", 0), 0), comparator);
+    HFileContext fileContext = new HFileContextBuilder()
+        .withIncludesMvcc(maxMVCCReadpoint > 0)
+        .withIncludesTags(maxTagsLength > 0)
+        .withCompression(family.getCompactionCompressionType())
+        .withCompressTags(family.isCompressTags())
+        .withChecksumType(HStore.getChecksumType(conf))
+        .withBytesPerCheckSum(HStore.getBytesPerChecksum(conf))
+        .withBlockSize(family.getBlocksize())
+        .withHBaseCheckSum(true)
+        .withDataBlockEncoding(family.getDataBlockEncoding())
+        .withEncryptionContext(EncryptionUtil.createEncryptionContext(conf, family))
+        .withCreateTime(EnvironmentEdgeManager.currentTime())
+        .withColumnFamily(family.getName())
+        .withTableName(htd.getTableName().getName())
+        .build();
+    StoreFileWriter writer = new StoreFileWriter.Builder(conf, CacheConfig.DISABLED, fs)
+        .withOutputDir(new Path(regionFs.getTempDir(), family.getNameAsString()))
+        .withComparator(comparator)
+        .withBloomType(family.getBloomFilterType())
+        .withMaxKeyCount(maxKeyCount)
+        .withFileContext(fileContext)
+        .withShouldDropCacheBehind(true)
+        .build();
+    boolean finished = false;
+    try {
+      ScanType scanType =
+          allFiles ? ScanType.COMPACT_DROP_DELETES : ScanType.COMPACT_RETAIN_DELETES;
+      List<StoreFileScanner> scanners =
+          StoreFileScanner.getScannersForCompaction(filesToCompact, true, smallestReadPoint);
+      try (StoreScanner scanner =
+          new StoreScanner(scanInfo, scanType, scanners, smallestReadPoint, earliestPutTs)) {
+        ScannerContext scannerContext =
+            ScannerContext.newBuilder().setBatchLimit(compactionKVMax).build();
+        long shippedCallSizeLimit = (long) filesToCompact.size() * family.getBlocksize();
+        long bytesWritten = 0;
+        List<Cell> cells = new ArrayList<>();
+        boolean hasMore;
+        do {
+          hasMore = scanner.next(cells, scannerContext);
+          for (Cell cell : cells) {
+            writer.append(cell);
+            bytesWritten += cell.getSerializedSize();
+          }
+          cells.clear();
+          if (bytesWritten > shippedCallSizeLimit) {
+            // release the blocks read so far, once the writer no longer refers to them
+            writer.beforeShipped();
+            scanner.shipped();
+            bytesWritten = 0;
+          }
+        } while (hasMore);
+        // the writer keeps the last cell until it is closed
+        writer.beforeShipped();
+      }
+      writer.appendMetadata(maxSeqId, allFiles, filesToCompact);
+      writer.close();
+      finished = true;
+    } finally {
+      if (!finished) {
+        abortWriter(writer);
+      }
+    }
+    return writer.getPath();
+  }
+
+  private void abortWriter(StoreFileWriter writer) {
+    try {
+      writer.close();
+    } catch (IOException e) {
+      LOG.warn("Failed to close the writer after an unfinished compaction.", e);
+    }
+    try {
+      fs.delete(writer.getPath(), false);
+    } catch (IOException e) {
+      LOG.warn("Failed to delete the leftover file {} after an unfinished compaction.",
+        writer.getPath(), e);
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    RemoteCompactionServer server = new RemoteCompactionServer(HBaseConfiguration.create());
+    Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "compactionserver-shutdown"));
+    server.start();
+    server.join();
+  }
+}
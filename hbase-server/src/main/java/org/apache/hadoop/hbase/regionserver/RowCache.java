@@ -0,0 +1,378 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.KeyValueUtil;
+import org.apache.hadoop.hbase.PrivateCellUtil;
+import org.apache.hadoop.hbase.TagType;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptor;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.IsolationLevel;
+import org.apache.hadoop.hbase.client.RegionReplicaUtil;
+import org.apache.hadoop.hbase.io.HeapSize;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
+import org.apache.hadoop.hbase.util.HashedBytes;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.annotations.VisibleForTesting;
+
+/**
+ * A cache of the cells returned by the Gets of the region server, for the tables which set
+ * {@link #ROW_CACHE_ENABLED_KEY}. It is sized by {@link #ROW_CACHE_SIZE_KEY}, independently of
+ * the block cache.
+ * <p>
+ * An entry holds the cells of a row for each set of columns it was read with. Only the Gets
+ * which read the latest version of their columns, without filter nor time range, use the cache;
+ * they have the same result as long as the row is not written. So the entry of a row is
+ * invalidated once the mutations of the row are visible, and all the entries of a region when
+ * cells are added or removed without mutations, i.e. by a bulk load, a flush or a compaction.
+ * <p>
+ * A Get may read the row before a mutation is visible and cache it after the entry has been
+ * invalidated. To avoid this, each invalidation of a region is counted, and a Get only caches
+ * its result if no invalidation happened since it started.
+ */
+@InterfaceAudience.Private
+public class RowCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RowCache.class);
+
+  /** The size of the row cache of the region server, in bytes. Zero disables the cache. */
+  public static final String ROW_CACHE_SIZE_KEY = "hbase.regionserver.row.cache.size";
+  public static final long DEFAULT_ROW_CACHE_SIZE = 0;
+
+  /** Whether the Gets of a table use the row cache, usually set in the table descriptor. */
+  public static final String ROW_CACHE_ENABLED_KEY = "hbase.row.cache.enabled";
+  public static final boolean DEFAULT_ROW_CACHE_ENABLED = false;
+
+  private final Cache<RowKey, Row> cache;
+
+  @VisibleForTesting
+  RowCache(long maxSize) {
+    this.cache = Caffeine.newBuilder().maximumWeight(maxSize)
+        .weigher((RowKey key, Row row) -> (int) Math.min(key.heapSize() + row.heapSize(),
+          Integer.MAX_VALUE))
+        .build();
+  }
+
+  /**
+   * @return the row cache of a region server, or null if it is disabled
+   */
+  public static RowCache create(Configuration conf) {
+    long size = conf.getLong(ROW_CACHE_SIZE_KEY, DEFAULT_ROW_CACHE_SIZE);
+    if (size <= 0) {
+      return null;
+    }
+    LOG.info("Allocating row cache of size {}", size);
+    return new RowCache(size);
+  }
+
+  /**
+   * @param conf the configuration of the region, which includes the values of its table
+   * @return the part of the cache of the given region, or null if the region does not use it
+   */
+  RegionRowCache forRegion(HRegion region, Configuration conf) {
+    if (!conf.getBoolean(ROW_CACHE_ENABLED_KEY, DEFAULT_ROW_CACHE_ENABLED)) {
+      return null;
+    }
+    if (!RegionReplicaUtil.isDefaultReplica(region.getRegionInfo())) {
+      return null;
+    }
+    for (ColumnFamilyDescriptor family : region.getTableDescriptor().getColumnFamilies()) {
+      // the cached cells would not expire
+      if (family.getTimeToLive() != HConstants.FOREVER) {
+        LOG.info("Not using the row cache for {}, family {} has a TTL",
+          region.getRegionInfo().getEncodedName(), family.getNameAsString());
+        return null;
+      }
+    }
+    return new RegionRowCache();
+  }
+
+  @VisibleForTesting
+  long size() {
+    cache.cleanUp();
+    return cache.estimatedSize();
+  }
+
+  /**
+   * @return whether the result of the Get only depends on the latest version of its columns
+   */
+  static boolean isCacheable(Get get) {
+    return get.getFilter() == null && get.getMaxVersions() == 1
+        && get.getTimeRange().isAllTime() && get.getColumnFamilyTimeRange().isEmpty()
+        && get.getMaxResultsPerColumnFamily() < 0 && get.getRowOffsetPerColumnFamily() <= 0
+        && get.getIsolationLevel() == IsolationLevel.READ_COMMITTED;
+  }
+
+  /**
+   * @return the families and qualifiers read by the Get, serialized
+   */
+  private static HashedBytes columns(Get get) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    for (Map.Entry<byte[], NavigableSet<byte[]>> entry : get.getFamilyMap().entrySet()) {
+      writeBytes(out, entry.getKey());
+      NavigableSet<byte[]> qualifiers = entry.getValue();
+      // -1 for all the qualifiers of the family
+      writeInt(out, qualifiers == null ? -1 : qualifiers.size());
+      if (qualifiers != null) {
+        for (byte[] qualifier : qualifiers) {
+          writeBytes(out, qualifier);
+        }
+      }
+    }
+    return new HashedBytes(out.toByteArray());
+  }
+
+  private static void writeInt(ByteArrayOutputStream out, int value) {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+  }
+
+  private static void writeBytes(ByteArrayOutputStream out, byte[] bytes) {
+    writeInt(out, bytes.length);
+    out.write(bytes, 0, bytes.length);
+  }
+
+  /**
+   * The entries of a region. Its Gets are looked up with {@link #newGet(Get)}, its writes
+   * invalidate the entries with {@link #invalidateRow(byte[])} or {@link #invalidateAll()}.
+   */
+  public final class RegionRowCache {
+    /** Number of invalidations, a Get only caches its cells if none happened since it started. */
+    private final AtomicLong invalidations = new AtomicLong();
+    /** Part of the keys, changed to invalidate all the entries of the region at once. */
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private RegionRowCache() {
+    }
+
+    /**
+     * @return the entry of the Get, or null if it cannot use the cache
+     */
+    CachedGet newGet(Get get) {
+      if (!isCacheable(get)) {
+        return null;
+      }
+      // Read the number of invalidations first, the generation may change after it.
+      long stamp = invalidations.get();
+      return new CachedGet(new RowKey(this, generation.get(), get.getRow()), columns(get), stamp);
+    }
+
+    /**
+     * Removes the entry of the row. Must be called once the mutations of the row are visible.
+     */
+    void invalidateRow(byte[] row) {
+      invalidations.incrementAndGet();
+      cache.invalidate(new RowKey(this, generation.get(), row));
+    }
+
+    /**
+     * Invalidates all the entries of the region. They are evicted by the cache later on.
+     */
+    void invalidateAll() {
+      invalidations.incrementAndGet();
+      generation.incrementAndGet();
+    }
+
+    /**
+     * Removes all the entries of the region, when it is closed.
+     */
+    void close() {
+      invalidateAll();
+      cache.asMap().keySet().removeIf(key -> key.region == this);
+    }
+
+    public long getHitCount() {
+      return hits.sum();
+    }
+
+    public long getMissCount() {
+      return misses.sum();
+    }
+  }
+
+  /**
+   * The entry of a Get, created before it reads the row.
+   */
+  final class CachedGet {
+    private final RowKey key;
+    private final HashedBytes columns;
+    private final long stamp;
+
+    private CachedGet(RowKey key, HashedBytes columns, long stamp) {
+      this.key = key;
+      this.columns = columns;
+      this.stamp = stamp;
+    }
+
+    /**
+     * @return a copy of the cached cells, or null if there are none
+     */
+    List<Cell> getCells() {
+      Row row = cache.getIfPresent(key);
+      Cell[] cells = row == null ? null : row.get(columns);
+      if (cells == null) {
+        key.region.misses.increment();
+        return null;
+      }
+      key.region.hits.increment();
+      return new ArrayList<>(Arrays.asList(cells));
+    }
+
+    /**
+     * Caches the cells read by the Get, unless the region was written since it started. The cells
+     * are copied as they may point to blocks released once the Get is done.
+     */
+    void cache(List<Cell> cells) {
+      Cell[] copies = new Cell[cells.size()];
+      for (int i = 0; i < copies.length; i++) {
+        Cell cell = cells.get(i);
+        if (cell.getTagsLength() > 0
+            && PrivateCellUtil.getTag(cell, TagType.TTL_TAG_TYPE).isPresent()) {
+          // the cell expires
+          return;
+        }
+        copies[i] = KeyValueUtil.copyToNewKeyValue(cell);
+      }
+      RegionRowCache region = key.region;
+      cache.asMap().compute(key, (k, row) -> {
+        if (region.invalidations.get() != stamp) {
+          return row;
+        }
+        return row == null ? new Row(columns, copies) : row.with(columns, copies);
+      });
+    }
+  }
+
+  private static final class RowKey implements HeapSize {
+    private final RegionRowCache region;
+    private final long generation;
+    private final byte[] row;
+    private final int hashCode;
+
+    RowKey(RegionRowCache region, long generation, byte[] row) {
+      this.region = region;
+      this.generation = generation;
+      this.row = row;
+      this.hashCode = (System.identityHashCode(region) * 31 + Long.hashCode(generation)) * 31
+          + Bytes.hashCode(row);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof RowKey)) {
+        return false;
+      }
+      RowKey other = (RowKey) obj;
+      return region == other.region && generation == other.generation
+          && Bytes.equals(row, other.row);
+    }
+
+    @Override
+    public long heapSize() {
+      return ClassSize.align(ClassSize.OBJECT + 2 * ClassSize.REFERENCE + Bytes.SIZEOF_LONG
+          + Bytes.SIZEOF_INT) + ClassSize.align(ClassSize.ARRAY + row.length);
+    }
+  }
+
+  /**
+   * The cells of a row for each set of columns it was read with. Immutable.
+   */
+  private static final class Row implements HeapSize {
+    private final HashedBytes[] columns;
+    private final Cell[][] cells;
+
+    Row(HashedBytes columns, Cell[] cells) {
+      this(new HashedBytes[] { columns }, new Cell[][] { cells });
+    }
+
+    private Row(HashedBytes[] columns, Cell[][] cells) {
+      this.columns = columns;
+      this.cells = cells;
+    }
+
+    Cell[] get(HashedBytes columns) {
+      for (int i = 0; i < this.columns.length; i++) {
+        if (this.columns[i].equals(columns)) {
+          return cells[i];
+        }
+      }
+      return null;
+    }
+
+    Row with(HashedBytes columns, Cell[] cells) {
+      for (int i = 0; i < this.columns.length; i++) {
+        if (this.columns[i].equals(columns)) {
+          Cell[][] newCells = this.cells.clone();
+          newCells[i] = cells;
+          return new Row(this.columns, newCells);
+        }
+      }
+      HashedBytes[] newColumns = Arrays.copyOf(this.columns, this.columns.length + 1);
+      newColumns[this.columns.length] = columns;
+      Cell[][] newCells = Arrays.copyOf(this.cells, this.cells.length + 1);
+      newCells[this.cells.length] = cells;
+      return new Row(newColumns, newCells);
+    }
+
+    @Override
+    public long heapSize() {
+      long heapSize = ClassSize.align(ClassSize.OBJECT + 2 * ClassSize.REFERENCE);
+      heapSize += 2 * ClassSize.align(ClassSize.ARRAY + columns.length * ClassSize.REFERENCE);
+      for (int i = 0; i < columns.length; i++) {
+        heapSize += ClassSize.align(ClassSize.OBJECT + ClassSize.REFERENCE + Bytes.SIZEOF_INT)
+            + ClassSize.align(ClassSize.ARRAY + columns[i].getBytes().length);
+        heapSize += ClassSize.align(ClassSize.ARRAY + cells[i].length * ClassSize.REFERENCE);
+        for (Cell cell : cells[i]) {
+          // the cells are copied to KeyValues when cached
+          heapSize += ((KeyValue) cell).heapSize();
+        }
+      }
+      return heapSize;
+    }
+  }
+}
@@ -48,11 +48,12 @@ public class ScanInfo {
   private boolean usePread;
   private long cellsPerTimeoutCheck;
   private boolean parallelSeekEnabled;
+  private int parallelSeekMinFiles;
   private final long preadMaxBytes;
   private final boolean newVersionBehavior;
 
   public static final long FIXED_OVERHEAD = ClassSize.align(ClassSize.OBJECT
-      + (2 * ClassSize.REFERENCE) + (2 * Bytes.SIZEOF_INT)
+      + (2 * ClassSize.REFERENCE) + (3 * Bytes.SIZEOF_INT)
       + (4 * Bytes.SIZEOF_LONG) + (4 * Bytes.SIZEOF_BOOLEAN));
 
   /**
@@ -95,14 +96,18 @@ public class ScanInfo {
     this(family, minVersions, maxVersions, ttl, keepDeletedCells, timeToPurgeDeletes, comparator,
         conf.getLong(HConstants.TABLE_MAX_ROWSIZE_KEY, HConstants.TABLE_MAX_ROWSIZE_DEFAULT),
         conf.getBoolean("hbase.storescanner.use.pread", false), getCellsPerTimeoutCheck(conf),
-        conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, false),
+        conf.getBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE,
+          StoreScanner.DEFAULT_STORESCANNER_PARALLEL_SEEK_ENABLE),
+        conf.getInt(StoreScanner.STORESCANNER_PARALLEL_SEEK_MIN_FILES,
+          StoreScanner.DEFAULT_STORESCANNER_PARALLEL_SEEK_MIN_FILES),
         conf.getLong(StoreScanner.STORESCANNER_PREAD_MAX_BYTES, 4 * blockSize), newVersionBehavior);
   }
 
   private ScanInfo(byte[] family, int minVersions, int maxVersions, long ttl,
       KeepDeletedCells keepDeletedCells, long timeToPurgeDeletes, CellComparator comparator,
       long tableMaxRowSize, boolean usePread, long cellsPerTimeoutCheck,
-      boolean parallelSeekEnabled, long preadMaxBytes, boolean newVersionBehavior) {
+      boolean parallelSeekEnabled, int parallelSeekMinFiles, long preadMaxBytes,
+      boolean newVersionBehavior) {
     this.family = family;
     this.minVersions = minVersions;
     this.maxVersions = maxVersions;
@@ -114,6 +119,7 @@ public class ScanInfo {
     this.usePread = usePread;
     this.cellsPerTimeoutCheck = cellsPerTimeoutCheck;
     this.parallelSeekEnabled = parallelSeekEnabled;
+    this.parallelSeekMinFiles = parallelSeekMinFiles;
     this.preadMaxBytes = preadMaxBytes;
     this.newVersionBehavior = newVersionBehavior;
   }
@@ -134,6 +140,10 @@ public class ScanInfo {
     return this.parallelSeekEnabled;
   }
 
+  int getParallelSeekMinFiles() {
+    return this.parallelSeekMinFiles;
+  }
+
   public byte[] getFamily() {
     return family;
   }
@@ -176,6 +186,6 @@ public class ScanInfo {
   ScanInfo customize(int maxVersions, long ttl, KeepDeletedCells keepDeletedCells) {
     return new ScanInfo(family, minVersions, maxVersions, ttl, keepDeletedCells, timeToPurgeDeletes,
         comparator, tableMaxRowSize, usePread, cellsPerTimeoutCheck, parallelSeekEnabled,
-        preadMaxBytes, newVersionBehavior);
+        parallelSeekMinFiles, preadMaxBytes, newVersionBehavior);
   }
 }
@@ -27,6 +27,7 @@ import java.util.Optional;
 
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.yetus.audience.InterfaceAudience;
 
 import org.apache.hbase.thirdparty.com.google.common.collect.ImmutableCollection;
@@ -119,6 +120,20 @@ public interface StoreFileManager {
   Collection<HStoreFile> getFilesForScan(byte[] startRow, boolean includeStartRow, byte[] stopRow,
       boolean includeStopRow);
 
+  /**
+   * Gets the store files to scan for a Scan or Get request, also taking the time range of the
+   * request into account. Implementations which know how their files are laid out in time can
+   * leave out the files that cannot hold cells in the range; the default ignores the time range.
+   * @param startRow Start row of the request.
+   * @param stopRow Stop row of the request.
+   * @param timeRange Time range of the request.
+   * @return The list of files that are to be read for this request.
+   */
+  default Collection<HStoreFile> getFilesForScan(byte[] startRow, boolean includeStartRow,
+      byte[] stopRow, boolean includeStopRow, TimeRange timeRange) {
+    return getFilesForScan(startRow, includeStartRow, stopRow, includeStopRow);
+  }
+
   /**
    * Gets initial, full list of candidate store files to check for row-key-before.
    * @param targetKey The key that is the basis of the search.
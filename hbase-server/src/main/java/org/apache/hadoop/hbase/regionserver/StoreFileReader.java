@@ -21,6 +21,7 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_PARAM
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.BLOOM_FILTER_TYPE_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.DELETE_FAMILY_COUNT;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.LAST_BLOOM_KEY;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_BLOOM_KEY;
 
 import java.io.DataInput;
 import java.io.IOException;
@@ -37,11 +38,15 @@ import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
 import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.io.hfile.BlockType;
 import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.io.hfile.HFileBlock;
+import org.apache.hadoop.hbase.io.hfile.HFileBlockStats;
 import org.apache.hadoop.hbase.io.hfile.HFileInfo;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.io.hfile.ReaderContext;
@@ -50,6 +55,7 @@ import org.apache.hadoop.hbase.nio.ByteBuff;
 import org.apache.hadoop.hbase.util.BloomFilter;
 import org.apache.hadoop.hbase.util.BloomFilterFactory;
 import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.RowPrefixBloomFilter;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.apache.yetus.audience.InterfaceStability;
 import org.slf4j.Logger;
@@ -76,6 +82,8 @@ public class StoreFileReader {
   private KeyValue.KeyOnlyKeyValue lastBloomKeyOnlyKV = null;
   private boolean skipResetSeqId = true;
   private int prefixLength = -1;
+  private RowPrefixBloomFilter rowPrefixBloomFilter = null;
+  private HFileBlockStats blockStats = null;
 
   // Counter that is incremented every time a scanner is created on the
   // store file. It is decremented when the scan on the store file is
@@ -106,6 +114,8 @@ public class StoreFileReader {
     this.lastBloomKeyOnlyKV = storeFileReader.lastBloomKeyOnlyKV;
     this.skipResetSeqId = storeFileReader.skipResetSeqId;
     this.prefixLength = storeFileReader.prefixLength;
+    this.rowPrefixBloomFilter = storeFileReader.rowPrefixBloomFilter;
+    this.blockStats = storeFileReader.blockStats;
   }
 
   public boolean isPrimaryReplicaReader() {
@@ -243,6 +253,9 @@ public class StoreFileReader {
    *         False if the Bloom filter is applicable and the scan fails it.
    */
   boolean passesBloomFilter(Scan scan, final SortedSet<byte[]> columns) {
+    if (!passesRowPrefixBloomFilter(scan)) {
+      return false;
+    }
     byte[] row = scan.getStartRow();
     switch (this.bloomFilterType) {
       case ROW:
@@ -378,6 +391,52 @@ public class StoreFileReader {
     return checkGeneralBloomFilter(rowPrefix, null, bloomFilter);
   }
 
+  /**
+   * Checks the row prefix Bloom filter of the file info, if any, against the prefix shared by all
+   * the rows of the scan: the row of a get, the common prefix of the start and stop rows, or the
+   * prefix of a {@link PrefixFilter} which must pass.
+   */
+  private boolean passesRowPrefixBloomFilter(Scan scan) {
+    RowPrefixBloomFilter bloomFilter = this.rowPrefixBloomFilter;
+    if (bloomFilter == null) {
+      return true;
+    }
+    int length = bloomFilter.getPrefixLength();
+    byte[] rowPrefix = null;
+    if (scan.isGetScan()) {
+      rowPrefix = scan.getStartRow();
+    } else {
+      int commonLength = Bytes.findCommonPrefix(scan.getStartRow(), scan.getStopRow(),
+          scan.getStartRow().length, scan.getStopRow().length, 0, 0);
+      if (commonLength >= length) {
+        rowPrefix = scan.getStartRow();
+      } else {
+        rowPrefix = getMustPassRowPrefix(scan.getFilter(), length);
+      }
+    }
+    if (rowPrefix == null || rowPrefix.length < length) {
+      return true;
+    }
+    return bloomFilter.mightContain(rowPrefix);
+  }
+
+  private static byte[] getMustPassRowPrefix(Filter filter, int length) {
+    if (filter instanceof PrefixFilter) {
+      byte[] prefix = ((PrefixFilter) filter).getPrefix();
+      return prefix != null && prefix.length >= length ? prefix : null;
+    }
+    if (filter instanceof FilterList
+        && ((FilterList) filter).getOperator() == FilterList.Operator.MUST_PASS_ALL) {
+      for (Filter f : ((FilterList) filter).getFilters()) {
+        byte[] prefix = getMustPassRowPrefix(f, length);
+        if (prefix != null) {
+          return prefix;
+        }
+      }
+    }
+    return null;
+  }
+
   private boolean checkGeneralBloomFilter(byte[] key, Cell kvKey, BloomFilter bloomFilter) {
     // Empty file
     if (reader.getTrailer().getEntryCount() == 0) {
@@ -492,6 +551,16 @@ public class StoreFileReader {
       prefixLength = Bytes.toInt(p);
     }
 
+    byte[] rowPrefixBloom = fi.get(ROW_PREFIX_BLOOM_KEY);
+    if (rowPrefixBloom != null) {
+      try {
+        rowPrefixBloomFilter = new RowPrefixBloomFilter(rowPrefixBloom);
+      } catch (IllegalArgumentException e) {
+        LOG.error("Bad row prefix Bloom filter in " + reader.getName()
+            + " -- proceeding without", e);
+      }
+    }
+
     lastBloomKey = fi.get(LAST_BLOOM_KEY);
     if(bloomFilterType == BloomType.ROWCOL) {
       lastBloomKeyOnlyKV = new KeyValue.KeyOnlyKeyValue(lastBloomKey, 0, lastBloomKey.length);
@@ -558,6 +627,25 @@ public class StoreFileReader {
     }
   }
 
+  /**
+   * Loads the statistics of the data blocks, if the file has some.
+   */
+  public void loadBlockStats() {
+    try {
+      blockStats = HFileBlockStats.load(reader);
+    } catch (IOException e) {
+      LOG.error("Error reading block statistics of " + reader.getName()
+          + " -- proceeding without", e);
+    }
+  }
+
+  /**
+   * @return the statistics of the data blocks, or null if the file has none
+   */
+  public HFileBlockStats getBlockStats() {
+    return blockStats;
+  }
+
   private void setBloomFilterFaulty(BlockType blockType) {
     if (blockType == BlockType.GENERAL_BLOOM_META) {
       setGeneralBloomFilterFaulty();
@@ -677,6 +765,10 @@ public class StoreFileReader {
     return timeRange == null ? TimeRange.INITIAL_MAX_TIMESTAMP: timeRange.getMax();
   }
 
+  public long getMinTimestamp() {
+    return timeRange == null ? TimeRange.INITIAL_MIN_TIMESTAMP : timeRange.getMin();
+  }
+
   boolean isSkipResetSeqId() {
     return skipResetSeqId;
   }
@@ -38,7 +38,10 @@ import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.apache.yetus.audience.InterfaceStability;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.io.hfile.HFileBlockStats;
 import org.apache.hadoop.hbase.io.hfile.HFileScanner;
 import org.apache.hadoop.hbase.regionserver.querymatcher.ScanQueryMatcher;
 
@@ -491,6 +494,35 @@ public class StoreFileScanner implements KeyValueScanner {
         .passesKeyRangeFilter(scan) && reader.passesBloomFilter(scan, scan.getFamilyMap().get(cf));
   }
 
+  /**
+   * Lets this scanner skip the data blocks which cannot hold a cell returned by the given user
+   * scan, if the file has block statistics. Only the time range and a {@link ColumnRangeFilter}
+   * are considered, and only when there is no other filter: those skip cells before a stateful
+   * filter like a {@link org.apache.hadoop.hbase.filter.WhileMatchFilter} could see their row.
+   */
+  void setBlockPredicate(Scan scan, byte[] family) {
+    HFileBlockStats stats = reader.getBlockStats();
+    Filter filter = scan.getFilter();
+    if (stats == null || (filter != null && filter.getClass() != ColumnRangeFilter.class)) {
+      return;
+    }
+    TimeRange timeRange = scan.getColumnFamilyTimeRange().get(family);
+    if (timeRange == null) {
+      timeRange = scan.getTimeRange();
+    }
+    if (filter == null) {
+      if (!timeRange.isAllTime()) {
+        hfs.setBlockPredicate(
+          new HFileBlockStats.ScanPredicate(stats, timeRange, null, false, null, false));
+      }
+      return;
+    }
+    ColumnRangeFilter columnRange = (ColumnRangeFilter) filter;
+    hfs.setBlockPredicate(new HFileBlockStats.ScanPredicate(stats, timeRange,
+        columnRange.getMinColumn(), columnRange.getMinColumnInclusive(),
+        columnRange.getMaxColumn(), columnRange.getMaxColumnInclusive()));
+  }
+
   @Override
   public boolean seekToPreviousRow(Cell originalKey) throws IOException {
     try {
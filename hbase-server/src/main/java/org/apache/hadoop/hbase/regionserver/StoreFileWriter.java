@@ -25,6 +25,7 @@ import static org.apache.hadoop.hbase.regionserver.HStoreFile.EARLIEST_PUT_TS;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAJOR_COMPACTION_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MAX_SEQ_ID_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.MOB_CELLS_COUNT;
+import static org.apache.hadoop.hbase.regionserver.HStoreFile.ROW_PREFIX_BLOOM_KEY;
 import static org.apache.hadoop.hbase.regionserver.HStoreFile.TIMERANGE_KEY;
 
 import java.io.IOException;
@@ -58,6 +59,7 @@ import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.FSUtils;
 import org.apache.hadoop.hbase.util.RowBloomContext;
 import org.apache.hadoop.hbase.util.RowColBloomContext;
+import org.apache.hadoop.hbase.util.RowPrefixBloomFilter;
 import org.apache.hadoop.hbase.util.RowPrefixFixedLengthBloomContext;
 import org.apache.yetus.audience.InterfaceAudience;
 import org.slf4j.Logger;
@@ -83,6 +85,7 @@ public class StoreFileWriter implements CellSink, ShipperListener {
   private long deleteFamilyCnt = 0;
   private BloomContext bloomContext = null;
   private BloomContext deleteFamilyBloomContext = null;
+  private final RowPrefixBloomFilter.Writer rowPrefixBloomFilterWriter;
   private final TimeRangeTracker timeRangeTracker;
   private final Supplier<Collection<HStoreFile>> compactedFilesSupplier;
 
@@ -167,6 +170,10 @@ public class StoreFileWriter implements CellSink, ShipperListener {
       LOG.trace("Delete Family Bloom filter type for " + path + ": " +
           deleteFamilyBloomFilterWriter.getClass().getSimpleName());
     }
+    // the row prefix filter only makes sense along a general Bloom filter
+    rowPrefixBloomFilterWriter = this.bloomType != BloomType.NONE ?
+        BloomFilterFactory.createRowPrefixBloomAtWrite(conf,
+          (int) Math.min(maxKeys, Integer.MAX_VALUE)) : null;
   }
 
   /**
@@ -297,6 +304,9 @@ public class StoreFileWriter implements CellSink, ShipperListener {
   public void append(final Cell cell) throws IOException {
     appendGeneralBloomfilter(cell);
     appendDeleteFamilyBloomFilter(cell);
+    if (rowPrefixBloomFilterWriter != null) {
+      rowPrefixBloomFilterWriter.add(cell);
+    }
     writer.append(cell);
     trackTimestamps(cell);
   }
@@ -372,6 +382,12 @@ public class StoreFileWriter implements CellSink, ShipperListener {
   public void close() throws IOException {
     boolean hasGeneralBloom = this.closeGeneralBloomFilter();
     boolean hasDeleteFamilyBloom = this.closeDeleteFamilyBloomFilter();
+    if (rowPrefixBloomFilterWriter != null) {
+      byte[] rowPrefixBloom = rowPrefixBloomFilterWriter.toBytes();
+      if (rowPrefixBloom != null) {
+        writer.appendFileInfo(ROW_PREFIX_BLOOM_KEY, rowPrefixBloom);
+      }
+    }
 
     writer.close();
 
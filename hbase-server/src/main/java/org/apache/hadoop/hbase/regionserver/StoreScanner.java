@@ -38,6 +38,7 @@ import org.apache.hadoop.hbase.client.IsolationLevel;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.executor.ExecutorService;
 import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.regionserver.ScannerContext.LimitScope;
 import org.apache.hadoop.hbase.regionserver.ScannerContext.NextState;
 import org.apache.hadoop.hbase.regionserver.handler.ParallelSeekHandler;
@@ -86,13 +87,17 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
    * A flag that enables StoreFileScanner parallel-seeking
    */
   private boolean parallelSeekEnabled = false;
+  private int parallelSeekMinFiles;
   private ExecutorService executor;
   private final Scan scan;
   private final long oldestUnexpiredTS;
   private final long now;
   private final int minVersions;
+  // The number of versions of each column the scan reads
+  private final int maxVersions;
   private final long maxRowSize;
   private final long cellsPerHeartbeatCheck;
+  private final boolean blockPruning;
 
   // 1) Collects all the KVHeap that are eagerly getting closed during the
   //    course of a scan
@@ -115,6 +120,15 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
   static final boolean LAZY_SEEK_ENABLED_BY_DEFAULT = true;
   public static final String STORESCANNER_PARALLEL_SEEK_ENABLE =
       "hbase.storescanner.parallel.seek.enable";
+  public static final boolean DEFAULT_STORESCANNER_PARALLEL_SEEK_ENABLE = true;
+
+  /**
+   * Minimum number of store files which have to be read by a seek for them to be read in parallel.
+   * For gets, files whose Bloom filter rules out the row are not counted.
+   */
+  public static final String STORESCANNER_PARALLEL_SEEK_MIN_FILES =
+      "hbase.storescanner.parallel.seek.min.files";
+  public static final int DEFAULT_STORESCANNER_PARALLEL_SEEK_MIN_FILES = 10;
 
   /** Used during unit testing to ensure that lazy seek does save seek ops */
   private static boolean lazySeekEnabledGlobally = LAZY_SEEK_ENABLED_BY_DEFAULT;
@@ -174,6 +188,13 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     this.now = EnvironmentEdgeManager.currentTime();
     this.oldestUnexpiredTS = scan.isRaw() ? 0L : now - scanInfo.getTtl();
     this.minVersions = scanInfo.getMinVersions();
+    this.maxVersions = scan.isRaw() ? scan.getMaxVersions()
+        : Math.min(scan.getMaxVersions(), scanInfo.getMaxVersions());
+    // Skipping data blocks by their statistics is only safe for the cells a user scan would skip
+    // anyway, which raw scans return and which may matter to the new version behavior. Reversed
+    // scans seek back to previous rows, which may be in the skipped blocks.
+    this.blockPruning = scanType == ScanType.USER_SCAN && !scan.isRaw() && !scan.isReversed()
+        && !scanInfo.isNewVersionBehavior();
 
     // We look up row-column Bloom filters for multi-column queries as part of
     // the seek operation. However, we also look the row-column Bloom filter
@@ -201,8 +222,11 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     }
     this.preadMaxBytes = scanInfo.getPreadMaxBytes();
     this.cellsPerHeartbeatCheck = scanInfo.getCellsPerTimeoutCheck();
-    // Parallel seeking is on if the config allows and more there is more than one store file.
-    if (store != null && store.getStorefilesCount() > 1) {
+    // Parallel seeking is on if the config allows and there are enough store files. Whether a
+    // seek is parallel then depends on how many files it actually has to read.
+    this.parallelSeekMinFiles = scanInfo.getParallelSeekMinFiles();
+    if (store != null && store.getStorefilesCount() > 1
+        && store.getStorefilesCount() >= parallelSeekMinFiles) {
       RegionServerServices rsService = store.getHRegion().getRegionServerServices();
       if (rsService != null && scanInfo.isParallelSeekEnabled()) {
         this.parallelSeekEnabled = true;
@@ -239,9 +263,15 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     List<KeyValueScanner> scanners = null;
     try {
       // Pass columns to try to filter out unnecessary StoreFiles.
+      TimeRange timeRange =
+          scan.getColumnFamilyTimeRange().get(store.getColumnFamilyDescriptor().getName());
+      if (timeRange == null) {
+        timeRange = scan.getTimeRange();
+      }
       scanners = selectScannersFrom(store,
         store.getScanners(cacheBlocks, scanUsePread, false, matcher, scan.getStartRow(),
-          scan.includeStartRow(), scan.getStopRow(), scan.includeStopRow(), this.readPt));
+          scan.includeStartRow(), scan.getStopRow(), scan.includeStopRow(), timeRange,
+          this.readPt));
 
       // Seek all scanners to the start of the Row (or if the exact matching row
       // key does not exist, then to the start of the next matching Row).
@@ -338,6 +368,17 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     seekAllScanner(scanInfo, scanners);
   }
 
+  // For compactions run by a compaction server, which opens the store files without a Store.
+  public StoreScanner(ScanInfo scanInfo, ScanType scanType,
+      List<? extends KeyValueScanner> scanners, long smallestReadPoint, long earliestPutTs)
+      throws IOException {
+    this(null, SCAN_FOR_COMPACTION, scanInfo, 0, Long.MAX_VALUE, false, scanType);
+    assert scanType != ScanType.USER_SCAN;
+    this.matcher = CompactionScanQueryMatcher.create(scanInfo, scanType, smallestReadPoint,
+      earliestPutTs, oldestUnexpiredTS, now, null, null, null);
+    seekAllScanner(scanInfo, scanners);
+  }
+
   // Used to instantiate a scanner for user scan in test
   @VisibleForTesting
   StoreScanner(Scan scan, ScanInfo scanInfo, NavigableSet<byte[]> columns,
@@ -385,8 +426,24 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       for (KeyValueScanner scanner : scanners) {
         scanner.requestSeek(seekKey, false, true);
       }
+      // The files whose Bloom filter could not rule out the row are only read when they come to
+      // the top of the heap, one after the other, from the newest to the oldest, until the
+      // requested versions are found. For a get which has to read many of them, read the ones it
+      // is about to read at once instead.
+      if (isParallelSeek && get) {
+        List<StoreFileScanner> pendingScanners = new ArrayList<>();
+        for (KeyValueScanner scanner : scanners) {
+          if (scanner instanceof StoreFileScanner && !scanner.realSeekDone()) {
+            pendingScanners.add((StoreFileScanner) scanner);
+          }
+        }
+        List<StoreFileScanner> newestScanners = selectNewestFiles(pendingScanners, maxVersions);
+        if (newestScanners.size() >= parallelSeekMinFiles) {
+          parallelSeek(newestScanners, null);
+        }
+      }
     } else {
-      if (!isParallelSeek) {
+      if (!isParallelSeek || countStoreFileScanners(scanners) < parallelSeekMinFiles) {
         long totalScannersSoughtBytes = 0;
         for (KeyValueScanner scanner : scanners) {
           if (matcher.isUserScan() && totalScannersSoughtBytes >= maxRowSize) {
@@ -450,6 +507,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       }
 
       if (kvs.shouldUseScanner(scan, store, expiredTimestampCutoff)) {
+        setBlockPredicate(kvs);
         scanners.add(kvs);
       } else {
         kvs.close();
@@ -458,6 +516,13 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
     return scanners;
   }
 
+  private void setBlockPredicate(KeyValueScanner kvs) {
+    if (blockPruning && kvs instanceof StoreFileScanner) {
+      ((StoreFileScanner) kvs).setBlockPredicate(scan,
+        store.getColumnFamilyDescriptor().getName());
+    }
+  }
+
   @Override
   public Cell peek() {
     return heap != null ? heap.peek() : null;
@@ -1071,6 +1136,7 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       if (fileScanners == null) {
         return;
       }
+      fileScanners.forEach(this::setBlockPredicate);
       seekScanners(fileScanners, lastTop, false, parallelSeekEnabled);
       newCurrentScanners = new ArrayList<>(fileScanners.size() + memstoreScanners.size());
       newCurrentScanners.addAll(fileScanners);
@@ -1111,28 +1177,91 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
 
 
   /**
-   * Seek storefiles in parallel to optimize IO latency as much as possible
+   * Selects the files a lazy seek reads first: the newest one, by maximum timestamp, and the ones
+   * whose time range overlaps it, as their cells sort between its own. The older files are only
+   * read if the versions found in the newer ones are not enough, which is unlikely when fewer
+   * versions than files are requested. Otherwise all the files are selected.
+   * @param scanners the scanners of the files to read
+   * @param versions the number of versions of each column to read
+   */
+  @VisibleForTesting
+  static List<StoreFileScanner> selectNewestFiles(List<StoreFileScanner> scanners,
+      int versions) {
+    if (scanners.size() <= versions) {
+      return scanners;
+    }
+    long newestMaxTimestamp = Long.MIN_VALUE;
+    long newestMinTimestamp = Long.MAX_VALUE;
+    for (StoreFileScanner scanner : scanners) {
+      long maxTimestamp = scanner.getReader().getMaxTimestamp();
+      long minTimestamp = scanner.getReader().getMinTimestamp();
+      if (maxTimestamp > newestMaxTimestamp
+          || (maxTimestamp == newestMaxTimestamp && minTimestamp < newestMinTimestamp)) {
+        newestMaxTimestamp = maxTimestamp;
+        newestMinTimestamp = minTimestamp;
+      }
+    }
+    List<StoreFileScanner> newestScanners = new ArrayList<>();
+    for (StoreFileScanner scanner : scanners) {
+      if (scanner.getReader().getMaxTimestamp() >= newestMinTimestamp) {
+        newestScanners.add(scanner);
+      }
+    }
+    return newestScanners;
+  }
+
+  private static int countStoreFileScanners(List<? extends KeyValueScanner> scanners) {
+    int count = 0;
+    for (KeyValueScanner scanner : scanners) {
+      if (scanner instanceof StoreFileScanner) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Seek storefiles in parallel to optimize IO latency as much as possible. The last storefile is
+   * read by the calling thread, the others by the executor.
    * @param scanners the list {@link KeyValueScanner}s to be read from
-   * @param kv the KeyValue on which the operation is being requested
+   * @param kv the KeyValue on which the operation is being requested, or null to enforce the
+   *          seeks requested earlier
    * @throws IOException
    */
   private void parallelSeek(final List<? extends KeyValueScanner>
       scanners, final Cell kv) throws IOException {
-    if (scanners.isEmpty()) return;
-    int storeFileScannerCount = scanners.size();
-    CountDownLatch latch = new CountDownLatch(storeFileScannerCount);
-    List<ParallelSeekHandler> handlers = new ArrayList<>(storeFileScannerCount);
+    List<KeyValueScanner> fileScanners = new ArrayList<>(scanners.size());
     for (KeyValueScanner scanner : scanners) {
       if (scanner instanceof StoreFileScanner) {
-        ParallelSeekHandler seekHandler = new ParallelSeekHandler(scanner, kv,
-          this.readPt, latch);
-        executor.submit(seekHandler);
-        handlers.add(seekHandler);
-      } else {
+        fileScanners.add(scanner);
+      } else if (kv != null) {
         scanner.seek(kv);
-        latch.countDown();
+      } else {
+        scanner.enforceSeek();
       }
     }
+    if (fileScanners.isEmpty()) return;
+    int handlerCount = fileScanners.size() - 1;
+    CountDownLatch latch = new CountDownLatch(handlerCount);
+    List<ParallelSeekHandler> handlers = new ArrayList<>(handlerCount);
+    for (KeyValueScanner scanner : fileScanners.subList(0, handlerCount)) {
+      ParallelSeekHandler seekHandler = new ParallelSeekHandler(scanner, kv,
+        this.readPt, latch);
+      executor.submit(seekHandler);
+      handlers.add(seekHandler);
+    }
+
+    IOException error = null;
+    KeyValueScanner last = fileScanners.get(handlerCount);
+    try {
+      if (kv != null) {
+        last.seek(kv);
+      } else {
+        last.enforceSeek();
+      }
+    } catch (IOException e) {
+      error = e;
+    }
 
     try {
       latch.await();
@@ -1140,6 +1269,9 @@ public class StoreScanner extends NonReversedNonLazyKeyValueScanner
       throw (InterruptedIOException)new InterruptedIOException().initCause(ie);
     }
 
+    if (error != null) {
+      throw error;
+    }
     for (ParallelSeekHandler handler : handlers) {
       if (handler.getErr() != null) {
         throw new IOException(handler.getErr());
@@ -65,6 +65,25 @@ public class StripeStoreConfig {
   public static final String MAX_REGION_SPLIT_IMBALANCE_KEY =
       "hbase.store.stripe.region.split.max.imbalance";
 
+  /** Whether to learn the stripe boundaries from the key distribution of the store files, instead
+   of splitting stripes by key-value count. When enabled, the initial stripe count is derived from
+   the amount of data and the split part size, new stripe boundaries are placed so that stripes
+   hold roughly the same number of bytes (see {@link #RECENT_WRITE_WEIGHT_KEY}), and runs of
+   adjacent small stripes are merged (see {@link #MERGE_RATIO_KEY}). */
+  public static final String AUTO_BOUNDARIES_KEY = "hbase.store.stripe.boundaries.auto";
+  /** The extra weight given to the bytes of recently written files when placing stripe
+   boundaries, so that key ranges taking most of the writes end up in narrower stripes and the
+   stripes grow at a similar rate. 0 means boundaries are placed by size only. */
+  public static final String RECENT_WRITE_WEIGHT_KEY =
+      "hbase.store.stripe.boundaries.recentWriteWeight";
+  /** How recent, in milliseconds, the newest cell of a file must be for the file to count as
+   recently written. */
+  public static final String RECENT_WRITE_WINDOW_KEY =
+      "hbase.store.stripe.boundaries.recentWriteWindow";
+  /** With automatic boundaries, adjacent stripes are merged when their total size is less than
+   this fraction of the split part size. A value between 0 and 1. */
+  public static final String MERGE_RATIO_KEY = "hbase.store.stripe.boundaries.mergeRatio";
+
 
   private final float maxRegionSplitImbalance;
   private final int level0CompactMinFiles;
@@ -76,6 +95,10 @@ public class StripeStoreConfig {
   private final float splitPartCount;
   private final boolean flushIntoL0;
   private final long splitPartSize; // derived from sizeToSplitAt and splitPartCount
+  private final boolean autoBoundaries;
+  private final float recentWriteWeight;
+  private final long recentWriteWindow;
+  private final float mergeRatio;
 
   private static final double EPSILON = 0.001; // good enough for this, not a real epsilon.
   public StripeStoreConfig(Configuration config, StoreConfigInformation sci) {
@@ -109,6 +132,10 @@ public class StripeStoreConfig {
     }
     this.initialCount = initialCount;
     this.splitPartSize = (long)(this.sizeToSplitAt / this.splitPartCount);
+    this.autoBoundaries = config.getBoolean(AUTO_BOUNDARIES_KEY, false);
+    this.recentWriteWeight = Math.max(0f, config.getFloat(RECENT_WRITE_WEIGHT_KEY, 1f));
+    this.recentWriteWindow = config.getLong(RECENT_WRITE_WINDOW_KEY, 60 * 60 * 1000L);
+    this.mergeRatio = getFloat(config, MERGE_RATIO_KEY, 0.5f, false);
   }
 
   private static float getFloat(
@@ -163,4 +190,24 @@ public class StripeStoreConfig {
   public long getSplitPartSize() {
     return splitPartSize;
   }
+
+  public boolean isUsingAutoBoundaries() {
+    return autoBoundaries;
+  }
+
+  public float getRecentWriteWeight() {
+    return recentWriteWeight;
+  }
+
+  public long getRecentWriteWindow() {
+    return recentWriteWindow;
+  }
+
+  /**
+   * @return the total size, in bytes, below which adjacent stripes are merged when using
+   *         automatic boundaries. Derived from {@link #getSplitPartSize()}.
+   */
+  public long getMergeSize() {
+    return (long) (splitPartSize * mergeRatio);
+  }
 }
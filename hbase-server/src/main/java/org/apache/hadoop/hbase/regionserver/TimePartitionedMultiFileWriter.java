@@ -0,0 +1,76 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Cell sink that separates the provided cells into one file per fixed-size time partition. Unlike
+ * {@link DateTieredMultiFileWriter} the partitions are not known up front, a writer is created the
+ * first time a cell falls into a partition.
+ */
+@InterfaceAudience.Private
+public class TimePartitionedMultiFileWriter extends AbstractMultiFileWriter {
+
+  private final NavigableMap<Long, StoreFileWriter> partition2Writer = new TreeMap<>();
+
+  private final long windowMillis;
+
+  private final boolean needEmptyFile;
+
+  /**
+   * @param windowMillis the width of a time partition.
+   * @param needEmptyFile whether need to create an empty store file if we haven't written out
+   *          anything.
+   */
+  public TimePartitionedMultiFileWriter(long windowMillis, boolean needEmptyFile) {
+    this.windowMillis = windowMillis;
+    this.needEmptyFile = needEmptyFile;
+  }
+
+  @Override
+  public void append(Cell cell) throws IOException {
+    long partition = Math.floorDiv(cell.getTimestamp(), windowMillis) * windowMillis;
+    StoreFileWriter writer = partition2Writer.get(partition);
+    if (writer == null) {
+      writer = writerFactory.createWriter();
+      partition2Writer.put(partition, writer);
+    }
+    writer.append(cell);
+  }
+
+  @Override
+  protected Collection<StoreFileWriter> writers() {
+    return partition2Writer.values();
+  }
+
+  @Override
+  protected void preCommitWriters() throws IOException {
+    if (!needEmptyFile || !partition2Writer.isEmpty()) {
+      return;
+    }
+    // we haven't written out any data, create an empty file to retain metadata
+    partition2Writer.put(0L, writerFactory.createWriter());
+  }
+}
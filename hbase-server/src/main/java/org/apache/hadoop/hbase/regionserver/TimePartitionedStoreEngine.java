@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.compactions.TimePartitionedCompactionPolicy;
+import org.apache.hadoop.hbase.regionserver.compactions.TimePartitionedCompactor;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * This store engine keeps the store files strictly partitioned in time: every file only holds
+ * cells whose timestamps fall into one fixed-size window, configured with
+ * {@link TimePartitionedCompactionPolicy#PARTITION_WINDOW_MILLIS_KEY} (one day by default).
+ * <ul>
+ * <li>Flushes write one file per partition touched by the memstore snapshot.</li>
+ * <li>Minor compactions only merge files of the same partition.</li>
+ * <li>Once a partition falls out of the TTL its files are dropped as a whole, without being
+ * rewritten.</li>
+ * <li>Scans with a time range only get the files of the overlapping partitions.</li>
+ * </ul>
+ * As there is at least one file per live partition, the blocking store file count should be set
+ * well above the number of partitions within the TTL.
+ */
+@InterfaceAudience.Private
+public class TimePartitionedStoreEngine extends StoreEngine<TimePartitionedStoreFlusher,
+    TimePartitionedCompactionPolicy, TimePartitionedCompactor, TimePartitionedStoreFileManager> {
+
+  @Override
+  public boolean needsCompaction(List<HStoreFile> filesCompacting) {
+    return compactionPolicy.needsCompaction(storeFileManager.getStorefiles(), filesCompacting);
+  }
+
+  @Override
+  public CompactionContext createCompaction() throws IOException {
+    return new TimePartitionedCompactionContext();
+  }
+
+  @Override
+  protected void createComponents(Configuration conf, HStore store, CellComparator kvComparator)
+      throws IOException {
+    this.compactionPolicy = new TimePartitionedCompactionPolicy(conf, store);
+    long windowMillis = compactionPolicy.getPartitionWindowMillis();
+    this.storeFileManager =
+        new TimePartitionedStoreFileManager(kvComparator, conf, compactionPolicy);
+    this.storeFlusher = new TimePartitionedStoreFlusher(conf, store, windowMillis);
+    this.compactor = new TimePartitionedCompactor(conf, store, windowMillis);
+  }
+
+  private final class TimePartitionedCompactionContext extends CompactionContext {
+
+    @Override
+    public List<HStoreFile> preSelect(List<HStoreFile> filesCompacting) {
+      return compactionPolicy.preSelectCompactionForCoprocessor(storeFileManager.getStorefiles(),
+        filesCompacting);
+    }
+
+    @Override
+    public boolean select(List<HStoreFile> filesCompacting, boolean isUserCompaction,
+        boolean mayUseOffPeak, boolean forceMajor) throws IOException {
+      request = compactionPolicy.selectCompaction(storeFileManager.getStorefiles(), filesCompacting,
+        isUserCompaction, mayUseOffPeak, forceMajor);
+      return request != null;
+    }
+
+    @Override
+    public List<Path> compact(ThroughputController throughputController, User user)
+        throws IOException {
+      return compactor.compact(request, throughputController, user);
+    }
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.apache.hadoop.hbase.regionserver.compactions.TimePartitionedCompactionPolicy.UNPARTITIONED;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.NavigableMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.regionserver.compactions.TimePartitionedCompactionPolicy;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import org.apache.hbase.thirdparty.com.google.common.collect.ImmutableCollection;
+
+/**
+ * StoreFileManager for the time partitioned store engine. On top of the seqId ordered list kept by
+ * {@link DefaultStoreFileManager} it maintains a map from time partition to the files of that
+ * partition, which is used to prune the files of a scan by its time range before any scanner is
+ * created. Since the files of a partition never hold cells newer than the partition end, the
+ * per-file TTL expiry of the default manager drops whole partitions at once.
+ */
+@InterfaceAudience.Private
+class TimePartitionedStoreFileManager extends DefaultStoreFileManager {
+
+  private final TimePartitionedCompactionPolicy policy;
+
+  /**
+   * Store files grouped by partition start, rebuilt whenever the store file list changes. Files
+   * spanning several partitions are kept under
+   * {@link TimePartitionedCompactionPolicy#UNPARTITIONED}.
+   */
+  private volatile NavigableMap<Long, List<HStoreFile>> partitions;
+
+  public TimePartitionedStoreFileManager(CellComparator cellComparator, Configuration conf,
+      TimePartitionedCompactionPolicy policy) {
+    super(cellComparator, StoreFileComparators.SEQ_ID_MAX_TIMESTAMP, conf, policy.getConf());
+    this.policy = policy;
+    this.partitions = policy.partition(getStorefiles());
+  }
+
+  @Override
+  public void loadFiles(List<HStoreFile> storeFiles) {
+    super.loadFiles(storeFiles);
+    updatePartitions();
+  }
+
+  @Override
+  public void insertNewFiles(Collection<HStoreFile> sfs) throws IOException {
+    super.insertNewFiles(sfs);
+    updatePartitions();
+  }
+
+  @Override
+  public ImmutableCollection<HStoreFile> clearFiles() {
+    ImmutableCollection<HStoreFile> result = super.clearFiles();
+    updatePartitions();
+    return result;
+  }
+
+  @Override
+  public void addCompactionResults(Collection<HStoreFile> newCompactedfiles,
+      Collection<HStoreFile> results) {
+    super.addCompactionResults(newCompactedfiles, results);
+    updatePartitions();
+  }
+
+  private void updatePartitions() {
+    this.partitions = policy.partition(getStorefiles());
+  }
+
+  /**
+   * @return the number of time partitions currently holding at least one store file, not counting
+   *         the files which span several partitions.
+   */
+  int getPartitionCount() {
+    NavigableMap<Long, List<HStoreFile>> current = partitions;
+    return current.containsKey(UNPARTITIONED) ? current.size() - 1 : current.size();
+  }
+
+  @Override
+  public Collection<HStoreFile> getFilesForScan(byte[] startRow, boolean includeStartRow,
+      byte[] stopRow, boolean includeStopRow, TimeRange timeRange) {
+    if (timeRange == null || timeRange.isAllTime()) {
+      return getStorefiles();
+    }
+    NavigableMap<Long, List<HStoreFile>> current = partitions;
+    long from = policy.getPartitionStart(timeRange.getMin());
+    // The max of a TimeRange is exclusive.
+    long to = policy.getPartitionStart(Math.max(timeRange.getMin(), timeRange.getMax() - 1));
+    List<HStoreFile> files = new ArrayList<>();
+    current.subMap(from, true, to, true).values().forEach(files::addAll);
+    List<HStoreFile> unpartitioned = current.get(UNPARTITIONED);
+    if (unpartitioned != null) {
+      files.addAll(unpartitioned);
+    }
+    files.sort(getStoreFileComparator());
+    return files;
+  }
+}
@@ -0,0 +1,94 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.monitoring.MonitoredTask;
+import org.apache.hadoop.hbase.regionserver.throttle.ThroughputController;
+import org.apache.hadoop.util.StringUtils;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Time partitioned implementation of StoreFlusher. Flushes the memstore snapshot into one file
+ * per time partition, so no flushed file ever spans more than one partition.
+ */
+@InterfaceAudience.Private
+public class TimePartitionedStoreFlusher extends StoreFlusher {
+  private static final Logger LOG = LoggerFactory.getLogger(TimePartitionedStoreFlusher.class);
+  private final Object flushLock = new Object();
+  private final long windowMillis;
+
+  public TimePartitionedStoreFlusher(Configuration conf, HStore store, long windowMillis) {
+    super(conf, store);
+    this.windowMillis = windowMillis;
+  }
+
+  @Override
+  public List<Path> flushSnapshot(MemStoreSnapshot snapshot, long cacheFlushSeqNum,
+      MonitoredTask status, ThroughputController throughputController,
+      FlushLifeCycleTracker tracker) throws IOException {
+    List<Path> result = new ArrayList<>();
+    int cellsCount = snapshot.getCellsCount();
+    if (cellsCount == 0) return result; // don't flush if there are no entries
+
+    long smallestReadPoint = store.getSmallestReadPoint();
+    InternalScanner scanner = createScanner(snapshot.getScanners(), smallestReadPoint, tracker);
+
+    boolean success = false;
+    // Always write at least one file, the flushed sequence id is recorded in its metadata.
+    TimePartitionedMultiFileWriter mw = new TimePartitionedMultiFileWriter(windowMillis, true);
+    try {
+      StoreScanner storeScanner = (scanner instanceof StoreScanner) ? (StoreScanner) scanner : null;
+      mw.init(storeScanner, () -> store.createWriterInTmp(cellsCount,
+        store.getColumnFamilyDescriptor().getCompressionType(), false, true,
+        snapshot.isTagsPresent(), false));
+
+      synchronized (flushLock) {
+        status.setStatus("Flushing " + store + ": writing partitioned files");
+        performFlush(scanner, mw, smallestReadPoint, throughputController);
+        result = mw.commitWriters(cacheFlushSeqNum, false);
+        success = true;
+      }
+    } finally {
+      if (!success) {
+        for (Path leftoverFile : mw.abortWriters()) {
+          try {
+            store.getFileSystem().delete(leftoverFile, false);
+          } catch (Exception e) {
+            LOG.error("Failed to delete a file after failed flush: " + e);
+          }
+        }
+      }
+      try {
+        scanner.close();
+      } catch (IOException ex) {
+        LOG.warn("Failed to close flush scanner, ignoring", ex);
+      }
+    }
+    LOG.info("Flushed memstore data size={} at sequenceid={} into {} time partition file(s)",
+        StringUtils.byteDesc(snapshot.getDataSize()), cacheFlushSeqNum, result.size());
+    return result;
+  }
+}
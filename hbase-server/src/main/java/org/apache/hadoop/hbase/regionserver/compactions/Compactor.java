@@ -35,8 +35,10 @@ import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.io.compress.Compression;
+import org.apache.hadoop.hbase.io.hfile.CacheConfig;
 import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.io.hfile.HFileInfo;
+import org.apache.hadoop.hbase.io.hfile.HotKeyRanges;
 import org.apache.hadoop.hbase.regionserver.CellSink;
 import org.apache.hadoop.hbase.regionserver.HStore;
 import org.apache.hadoop.hbase.regionserver.HStoreFile;
@@ -130,6 +132,8 @@ public abstract class Compactor<T extends CellSink> {
     public int maxTagsLength = 0;
     /** Min SeqId to keep during a major compaction **/
     public long minSeqIdToKeep = 0;
+    /** Key ranges of the files which are in the block cache, null if none or not tracked */
+    public HotKeyRanges hotKeyRanges;
   }
 
   /**
@@ -209,6 +213,16 @@ public abstract class Compactor<T extends CellSink> {
           seqNum,
           (allFiles? ", earliestPutTs=" + earliestPutTs: ""));
     }
+    CacheConfig cacheConf = store.getCacheConfig();
+    if (cacheConf != null && cacheConf.shouldCacheCompactedHotBlocksOnWrite()) {
+      List<HFile.Reader> readers = new ArrayList<>(filesToCompact.size());
+      for (HStoreFile file : filesToCompact) {
+        readers.add(file.getReader().getHFileReader());
+      }
+      fd.hotKeyRanges = HotKeyRanges.create(cacheConf.getBlockCache().get(), readers,
+        cacheConf.getCacheCompactedHotBlocksBudget(),
+        cacheConf.getCacheCompactedHotBlocksMaxScanned());
+    }
     return fd;
   }
 
@@ -261,7 +275,7 @@ public abstract class Compactor<T extends CellSink> {
     // When all MVCC readpoints are 0, don't write them.
     // See HBASE-8166, HBASE-12600, and HBASE-13389.
     return store.createWriterInTmp(fd.maxKeyCount, this.compactionCompression, true,
-    fd.maxMVCCReadpoint > 0, fd.maxTagsLength > 0, shouldDropBehind);
+    fd.maxMVCCReadpoint > 0, fd.maxTagsLength > 0, shouldDropBehind, fd.hotKeyRanges);
   }
 
   private ScanInfo preCompactScannerOpen(CompactionRequestImpl request, ScanType scanType,
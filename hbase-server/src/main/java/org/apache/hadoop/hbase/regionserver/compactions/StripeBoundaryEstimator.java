@@ -0,0 +1,111 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import static org.apache.hadoop.hbase.regionserver.StripeStoreFileManager.OPEN_KEY;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.io.hfile.HFile;
+import org.apache.hadoop.hbase.regionserver.HStoreFile;
+import org.apache.hadoop.hbase.regionserver.StoreFileReader;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * Places stripe boundaries from the key distribution of a set of store files. The root level of
+ * the data block index of each file is used as a sample of its keys: every root entry covers about
+ * the same number of bytes, so each sampled row is weighted by the file length divided by the
+ * number of root entries. Recently written files get an extra weight, so key ranges taking most of
+ * the writes end up in narrower stripes. No data block is read.
+ */
+@InterfaceAudience.Private
+final class StripeBoundaryEstimator {
+
+  private StripeBoundaryEstimator() {
+  }
+
+  private static final class Sample {
+    final byte[] row;
+    final double weight;
+
+    Sample(byte[] row, double weight) {
+      this.row = row;
+      this.weight = weight;
+    }
+  }
+
+  /**
+   * @param files Files which will be compacted into the new stripes.
+   * @param startRow Start row of the compaction, inclusive; {@code OPEN_KEY} for the region start.
+   * @param endRow End row of the compaction, exclusive; {@code OPEN_KEY} for the region end.
+   * @param count Desired number of stripes.
+   * @param recentCutoffTs Files with cells newer than this timestamp are recently written.
+   * @param recentWeight Extra weight of the bytes of recently written files.
+   * @return Target boundaries, including startRow and endRow. Contains less than count + 1 rows if
+   *         the files do not have enough distinct sampled rows.
+   */
+  static List<byte[]> estimateBoundaries(Collection<HStoreFile> files, byte[] startRow,
+      byte[] endRow, int count, long recentCutoffTs, float recentWeight) {
+    List<Sample> samples = new ArrayList<>();
+    double totalWeight = 0;
+    for (HStoreFile sf : files) {
+      StoreFileReader reader = sf.getReader();
+      HFile.Reader hfileReader = reader == null ? null : reader.getHFileReader();
+      List<Cell> keys = hfileReader == null ? null : hfileReader.getRootIndexKeys();
+      if (keys == null || keys.isEmpty()) {
+        continue;
+      }
+      double weight = (double) reader.length() / keys.size();
+      if (reader.getMaxTimestamp() >= recentCutoffTs) {
+        weight *= 1 + recentWeight;
+      }
+      for (Cell key : keys) {
+        samples.add(new Sample(CellUtil.cloneRow(key), weight));
+        totalWeight += weight;
+      }
+    }
+    samples.sort((left, right) -> Bytes.BYTES_COMPARATOR.compare(left.row, right.row));
+
+    List<byte[]> boundaries = new ArrayList<>(count + 1);
+    boundaries.add(startRow);
+    double cumulativeWeight = 0;
+    int nextBoundary = 1;
+    for (Sample sample : samples) {
+      if (nextBoundary >= count) {
+        break;
+      }
+      // A boundary is the first row of a stripe, so it is placed before the sample which would
+      // make the current stripe go past its share.
+      if (cumulativeWeight + sample.weight / 2 >= totalWeight * nextBoundary / count) {
+        byte[] last = boundaries.get(boundaries.size() - 1);
+        if ((Bytes.equals(last, OPEN_KEY) || Bytes.compareTo(sample.row, last) > 0)
+            && (Bytes.equals(endRow, OPEN_KEY) || Bytes.compareTo(sample.row, endRow) < 0)) {
+          boundaries.add(sample.row);
+        }
+        nextBoundary++;
+      }
+      cumulativeWeight += sample.weight;
+    }
+    boundaries.add(endRow);
+    return boundaries;
+  }
+}
@@ -151,6 +151,12 @@ public class StripeCompactionPolicy extends CompactionPolicy {
     StripeCompactionRequest result = selectExpiredMergeCompaction(si, canDropDeletesNoL0);
     if (result != null) return result;
 
+    // Merge small stripes left behind by skewed boundaries or deletes.
+    if (config.isUsingAutoBoundaries() && canDropDeletesNoL0) {
+      result = selectSmallStripesMergeCompaction(si);
+      if (result != null) return result;
+    }
+
     // Ok, nothing special here, let's see if we need to do a common compaction.
     // This will also split the stripes that are too big if needed.
     return selectSingleStripeCompaction(si, false, canDropDeletesNoL0, isOffpeak);
@@ -161,7 +167,9 @@ public class StripeCompactionPolicy extends CompactionPolicy {
     return filesCompacting.isEmpty()
         && (StoreUtils.hasReferences(si.getStorefiles())
           || (si.getLevel0Files().size() >= this.config.getLevel0MinFiles())
-          || needsSingleStripeCompaction(si));
+          || needsSingleStripeCompaction(si)
+          || (config.isUsingAutoBoundaries() && si.getLevel0Files().isEmpty()
+            && findSmallStripesToMerge(si) != null));
   }
 
   @Override
@@ -221,6 +229,7 @@ public class StripeCompactionPolicy extends CompactionPolicy {
     int targetCount = 1;
     long targetKvs = Long.MAX_VALUE;
     boolean hasAllFiles = filesToCompact.size() == stripes.get(bqIndex).size();
+    List<byte[]> targetBoundaries = null;
     String splitString = "";
     if (hasAllFiles && bqTotalSize >= config.getSplitSize()) {
       if (includeL0) {
@@ -233,6 +242,18 @@ public class StripeCompactionPolicy extends CompactionPolicy {
       targetCount = kvsAndCount.getSecond();
       splitString = "; the stripe will be split into at most "
           + targetCount + " stripes with " + targetKvs + " target KVs";
+      // Learned boundaries may leave some new stripes empty; these are only written out, as empty
+      // files, when the compaction covers the major range.
+      if (config.isUsingAutoBoundaries() && canDropDeletesWithoutL0) {
+        targetBoundaries = estimateBoundaries(filesToCompact, si.getStartRow(bqIndex),
+          si.getEndRow(bqIndex), targetCount);
+        if (targetBoundaries.size() > 2) {
+          splitString = "; the stripe will be split into " + (targetBoundaries.size() - 1)
+              + " stripes at learned boundaries";
+        } else {
+          targetBoundaries = null;
+        }
+      }
     }
 
     LOG.debug("Found compaction in a stripe with end key ["
@@ -249,6 +270,8 @@ public class StripeCompactionPolicy extends CompactionPolicy {
       sfs.addSublist(filesToCompact);
       sfs.addSublist(l0Files);
       req = new BoundaryStripeCompactionRequest(sfs, si.getStripeBoundaries());
+    } else if (targetBoundaries != null) {
+      req = new BoundaryStripeCompactionRequest(filesToCompact, targetBoundaries);
     } else {
       req = new SplitStripeCompactionRequest(
           filesToCompact, si.getStartRow(bqIndex), si.getEndRow(bqIndex), targetCount, targetKvs);
@@ -276,6 +299,17 @@ public class StripeCompactionPolicy extends CompactionPolicy {
 
   private StripeCompactionRequest selectNewStripesCompaction(StripeInformationProvider si) {
     List<HStoreFile> l0Files = si.getLevel0Files();
+    if (config.isUsingAutoBoundaries()) {
+      // Ignore the initial count; create as many stripes as the data calls for.
+      int count = estimateTargetKvs(l0Files, 1).getSecond();
+      List<byte[]> boundaries = estimateBoundaries(l0Files, OPEN_KEY, OPEN_KEY, count);
+      LOG.debug("Creating " + (boundaries.size() - 1) + " initial stripes at learned boundaries"
+          + " via L0 compaction of " + l0Files.size() + " files");
+      BoundaryStripeCompactionRequest request =
+          new BoundaryStripeCompactionRequest(l0Files, boundaries);
+      request.setMajorRange(OPEN_KEY, OPEN_KEY); // L0 only, can drop deletes.
+      return request;
+    }
     Pair<Long, Integer> kvsAndCount = estimateTargetKvs(l0Files, config.getInitialCount());
     LOG.debug("Creating " + kvsAndCount.getSecond() + " initial stripes with "
         + kvsAndCount.getFirst() + " kvs each via L0 compaction of " + l0Files.size() + " files");
@@ -337,6 +371,56 @@ public class StripeCompactionPolicy extends CompactionPolicy {
     return result;
   }
 
+  /**
+   * Selects the longest run of adjacent stripes which together are smaller than the merge size,
+   * and merges them into one stripe. Used with automatic boundaries only; the caller must make sure
+   * there are no L0 files, so that the whole range of the new stripe can drop deletes.
+   */
+  private StripeCompactionRequest selectSmallStripesMergeCompaction(
+      StripeInformationProvider si) {
+    int[] run = findSmallStripesToMerge(si);
+    if (run == null) return null;
+    int endIndex = run[0] + run[1] - 1;
+    ConcatenatedLists<HStoreFile> sfs = new ConcatenatedLists<>();
+    sfs.addAllSublists(si.getStripes().subList(run[0], endIndex + 1));
+    LOG.debug("Merging " + run[1] + " small stripes with total size " + getTotalFileSize(sfs));
+    SplitStripeCompactionRequest result = new SplitStripeCompactionRequest(sfs,
+        si.getStartRow(run[0]), si.getEndRow(endIndex), 1, Long.MAX_VALUE);
+    result.setMajorRangeFull();
+    return result;
+  }
+
+  /**
+   * @return The start index and the length of the longest run of at least two adjacent stripes
+   *         whose total size is below the merge size, or null if there is none.
+   */
+  private int[] findSmallStripesToMerge(StripeInformationProvider si) {
+    long mergeSize = config.getMergeSize();
+    ArrayList<ImmutableList<HStoreFile>> stripes = si.getStripes();
+    int bestStart = -1, bestLength = 1;
+    int start = 0;
+    long runSize = 0;
+    for (int i = 0; i < stripes.size(); ++i) {
+      runSize += getTotalFileSize(stripes.get(i));
+      while (runSize >= mergeSize && start <= i) {
+        runSize -= getTotalFileSize(stripes.get(start));
+        ++start;
+      }
+      if (i - start + 1 > bestLength) {
+        bestStart = start;
+        bestLength = i - start + 1;
+      }
+    }
+    return bestStart == -1 ? null : new int[] { bestStart, bestLength };
+  }
+
+  private List<byte[]> estimateBoundaries(Collection<HStoreFile> files, byte[] startRow,
+      byte[] endRow, int count) {
+    long recentCutoffTs = EnvironmentEdgeManager.currentTime() - config.getRecentWriteWindow();
+    return StripeBoundaryEstimator.estimateBoundaries(files, startRow, endRow, count,
+      recentCutoffTs, config.getRecentWriteWeight());
+  }
+
   private static long getTotalKvCount(final Collection<HStoreFile> candidates) {
     long totalSize = 0;
     for (HStoreFile storeFile : candidates) {
@@ -0,0 +1,218 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver.compactions;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.OptionalLong;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.regionserver.HStoreFile;
+import org.apache.hadoop.hbase.regionserver.StoreConfigInformation;
+import org.apache.hadoop.hbase.regionserver.StoreUtils;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.yetus.audience.InterfaceAudience;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.hbase.thirdparty.com.google.common.base.Preconditions;
+import org.apache.hbase.thirdparty.com.google.common.collect.Iterables;
+
+/**
+ * Compaction policy for the time partitioned store engine. Every store file belongs to exactly one
+ * fixed-size time partition (e.g. an hour or a day), determined by the timestamps of the cells it
+ * contains. Minor compactions only ever select files from a single partition, so the output stays
+ * inside that partition and a partition can be dropped as a whole once it falls out of the TTL.
+ * <p>
+ * Files whose cells span more than one partition (bulk loads, files written by another store
+ * engine) are selected first; the compactor splits them up by partition. Major compactions, either
+ * forced by the user or periodic, rewrite the whole store so that delete markers can be dropped
+ * safely, but the output is still split by partition.
+ */
+@InterfaceAudience.Private
+public class TimePartitionedCompactionPolicy extends ExploringCompactionPolicy {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TimePartitionedCompactionPolicy.class);
+
+  public static final String PARTITION_WINDOW_MILLIS_KEY =
+      "hbase.hstore.timepartition.window.millis";
+  public static final long DEFAULT_PARTITION_WINDOW_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+  /**
+   * Partition key for files which do not fit in a single partition, or which do not carry time
+   * range information at all.
+   */
+  public static final long UNPARTITIONED = Long.MIN_VALUE;
+
+  private final long windowMillis;
+
+  // whether the store drops the files past the TTL, see HStore#removeUnneededFiles
+  private final boolean deleteExpired;
+
+  public TimePartitionedCompactionPolicy(Configuration conf,
+      StoreConfigInformation storeConfigInfo) {
+    super(conf, storeConfigInfo);
+    this.windowMillis = conf.getLong(PARTITION_WINDOW_MILLIS_KEY, DEFAULT_PARTITION_WINDOW_MILLIS);
+    Preconditions.checkArgument(windowMillis > 0, "%s must be positive, got %s",
+      PARTITION_WINDOW_MILLIS_KEY, windowMillis);
+    this.deleteExpired = conf.getBoolean("hbase.store.delete.expired.storefile", true);
+  }
+
+  /**
+   * @return the width of a single time partition, in milliseconds.
+   */
+  public long getPartitionWindowMillis() {
+    return windowMillis;
+  }
+
+  /**
+   * @return the lower (inclusive) boundary of the partition the given timestamp falls into.
+   */
+  public long getPartitionStart(long timestamp) {
+    return Math.floorDiv(timestamp, windowMillis) * windowMillis;
+  }
+
+  /**
+   * @return the start of the partition the given store file belongs to, or {@link #UNPARTITIONED}
+   *         if the file spans several partitions or has no usable time range.
+   */
+  public long getPartition(HStoreFile sf) {
+    OptionalLong minTs = sf.getMinimumTimestamp();
+    OptionalLong maxTs = sf.getMaximumTimestamp();
+    if (!minTs.isPresent() || !maxTs.isPresent() || minTs.getAsLong() > maxTs.getAsLong()) {
+      return UNPARTITIONED;
+    }
+    long start = getPartitionStart(minTs.getAsLong());
+    return maxTs.getAsLong() - start < windowMillis ? start : UNPARTITIONED;
+  }
+
+  /**
+   * Groups the given files by partition. The relative order of the files inside each partition is
+   * the order of the input collection.
+   */
+  public NavigableMap<Long, List<HStoreFile>> partition(Collection<HStoreFile> files) {
+    NavigableMap<Long, List<HStoreFile>> partitions = new TreeMap<>();
+    for (HStoreFile sf : files) {
+      partitions.computeIfAbsent(getPartition(sf), k -> new ArrayList<>()).add(sf);
+    }
+    return partitions;
+  }
+
+  @Override
+  public CompactionRequestImpl selectCompaction(Collection<HStoreFile> candidateFiles,
+      List<HStoreFile> filesCompacting, boolean isUserCompaction, boolean mayUseOffPeak,
+      boolean forceMajor) throws IOException {
+    if (StoreUtils.hasReferences(candidateFiles)) {
+      LOG.info("Split detected, delegate selection to the parent policy.");
+      return super.selectCompaction(candidateFiles, filesCompacting, isUserCompaction,
+        mayUseOffPeak, forceMajor);
+    }
+    if (forceMajor || (filesCompacting.isEmpty() && shouldPerformMajorCompaction(candidateFiles))) {
+      // Only a compaction over all the files may drop deletes, the compactor takes care of
+      // keeping the output partitioned.
+      return super.selectCompaction(candidateFiles, filesCompacting, isUserCompaction,
+        mayUseOffPeak, forceMajor);
+    }
+
+    NavigableMap<Long, List<HStoreFile>> partitions = partition(candidateFiles);
+    List<HStoreFile> unpartitioned = partitions.remove(UNPARTITIONED);
+    if (unpartitioned != null) {
+      List<HStoreFile> toSplit = unpartitioned.stream()
+          .filter(sf -> sf.getReader().getEntries() > 0 && !filesCompacting.contains(sf))
+          .limit(comConf.getMaxFilesToCompact()).collect(Collectors.toList());
+      if (!toSplit.isEmpty()) {
+        LOG.debug("Selected {} store files spanning several partitions to be split up",
+          toSplit.size());
+        return createPartitionRequest(toSplit, candidateFiles, mayUseOffPeak);
+      }
+    }
+
+    boolean mayBeStuck = (candidateFiles.size() - filesCompacting.size())
+        >= storeConfigInfo.getBlockingFileCount();
+    List<HStoreFile> bestSelection = new ArrayList<>(0);
+    long bestPartition = UNPARTITIONED;
+    for (Map.Entry<Long, List<HStoreFile>> entry : partitions.descendingMap().entrySet()) {
+      List<HStoreFile> partitionCompacting = entry.getValue().stream()
+          .filter(filesCompacting::contains).collect(Collectors.toList());
+      ArrayList<HStoreFile> eligible =
+          getCurrentEligibleFiles(new ArrayList<>(entry.getValue()), partitionCompacting);
+      filterBulk(eligible);
+      List<HStoreFile> selection = applyCompactionPolicy(eligible, mayBeStuck, mayUseOffPeak,
+        comConf.getMinFilesToCompact(), comConf.getMaxFilesToCompact());
+      if (selection.size() > bestSelection.size()) {
+        bestSelection = selection;
+        bestPartition = entry.getKey();
+      }
+    }
+    if (bestSelection.isEmpty()) {
+      return new CompactionRequestImpl(bestSelection);
+    }
+    LOG.debug("Selected {} store files from time partition {}", bestSelection.size(),
+      bestPartition);
+    return createPartitionRequest(bestSelection, candidateFiles, mayUseOffPeak);
+  }
+
+  private CompactionRequestImpl createPartitionRequest(List<HStoreFile> files,
+      Collection<HStoreFile> candidateFiles, boolean mayUseOffPeak) {
+    CompactionRequestImpl request = new CompactionRequestImpl(files);
+    boolean isAllFiles = files.size() == candidateFiles.size();
+    request.setOffPeak(!isAllFiles && mayUseOffPeak);
+    request.setIsMajor(false, isAllFiles);
+    return request;
+  }
+
+  @Override
+  public boolean needsCompaction(Collection<HStoreFile> storeFiles,
+      List<HStoreFile> filesCompacting) {
+    if (StoreUtils.hasReferences(storeFiles)) {
+      return super.needsCompaction(storeFiles, filesCompacting);
+    }
+    NavigableMap<Long, List<HStoreFile>> partitions = partition(storeFiles);
+    // The file with the highest sequence id is never dropped, see StoreFileManager#getUnneededFiles
+    HStoreFile newest = Iterables.getLast(storeFiles, null);
+    long ttl = storeConfigInfo.getStoreFileTtl();
+    // Nothing drops an expired partition if the store keeps expired files, asking for a compaction
+    // would only get the store queued again and again.
+    long expiredBefore = ttl == Long.MAX_VALUE || !deleteExpired ? UNPARTITIONED
+        : getPartitionStart(EnvironmentEdgeManager.currentTime() - ttl);
+    for (Map.Entry<Long, List<HStoreFile>> entry : partitions.entrySet()) {
+      long candidates = entry.getValue().stream().filter(sf -> !filesCompacting.contains(sf))
+          .count();
+      if (entry.getKey() == UNPARTITIONED) {
+        if (entry.getValue().stream()
+            .anyMatch(sf -> sf.getReader().getEntries() > 0 && !filesCompacting.contains(sf))) {
+          return true;
+        }
+      } else if (entry.getKey() < expiredBefore && entry.getValue().stream()
+          .anyMatch(sf -> sf != newest && !filesCompacting.contains(sf))) {
+        // The whole partition is past the TTL, a compaction request lets the store drop it.
+        return true;
+      } else if (candidates >= comConf.getMinFilesToCompact()) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
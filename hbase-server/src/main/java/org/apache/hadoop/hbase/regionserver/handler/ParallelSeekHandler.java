@@ -30,7 +30,8 @@ import org.apache.hadoop.hbase.executor.EventType;
 import org.apache.hadoop.hbase.regionserver.KeyValueScanner;
 
 /**
- * Handler to seek storefiles in parallel.
+ * Handler to seek storefiles in parallel. Enforces the seek requested earlier on the scanner if no
+ * key is given.
  */
 @InterfaceAudience.Private
 public class ParallelSeekHandler extends EventHandler {
@@ -53,7 +54,11 @@ public class ParallelSeekHandler extends EventHandler {
   @Override
   public void process() {
     try {
-      scanner.seek(keyValue);
+      if (keyValue != null) {
+        scanner.seek(keyValue);
+      } else {
+        scanner.enforceSeek();
+      }
     } catch (IOException e) {
       LOG.error("", e);
       setErr(e);
@@ -28,6 +28,7 @@ import org.apache.yetus.audience.InterfaceAudience;
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.filter.FilterCompiler;
 import org.apache.hadoop.hbase.io.TimeRange;
 import org.apache.hadoop.hbase.regionserver.RegionCoprocessorHost;
 import org.apache.hadoop.hbase.regionserver.ScanInfo;
@@ -72,7 +73,8 @@ public abstract class UserScanQueryMatcher extends ScanQueryMatcher {
       boolean hasNullColumn, long oldestUnexpiredTS, long now) {
     super(createStartKey(scan, scanInfo), scanInfo, columns, oldestUnexpiredTS, now);
     this.hasNullColumn = hasNullColumn;
-    this.filter = scan.getFilter();
+    // The matcher only asks the filter about cells, the region scanner asks about rows.
+    this.filter = FilterCompiler.compile(scan.getFilter());
     if (this.filter != null) {
       this.versionsAfterFilter =
           scan.isRaw() ? scan.getMaxVersions() : Math.min(scan.getMaxVersions(),
@@ -59,6 +59,7 @@ import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.client.RegionInfo;
 import org.apache.hadoop.hbase.exceptions.TimeoutIOException;
 import org.apache.hadoop.hbase.io.util.MemorySizeUtil;
+import org.apache.hadoop.hbase.ipc.RpcExecutor;
 import org.apache.hadoop.hbase.ipc.RpcServer;
 import org.apache.hadoop.hbase.ipc.ServerCall;
 import org.apache.hadoop.hbase.log.HBaseMarkers;
@@ -788,7 +789,12 @@ public abstract class AbstractFSWAL<W extends WriterBase> implements WAL {
         if (closed) {
           throw new IOException("WAL has been closed");
         } else {
-          syncFuture.get(walSyncTimeoutNs);
+          boolean blocking = RpcExecutor.beginBlocking();
+          try {
+            syncFuture.get(walSyncTimeoutNs);
+          } finally {
+            RpcExecutor.endBlocking(blocking);
+          }
         }
       }
     } catch (TimeoutIOException tioe) {
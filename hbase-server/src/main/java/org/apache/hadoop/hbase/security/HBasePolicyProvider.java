@@ -23,6 +23,7 @@ import org.apache.hadoop.hbase.shaded.protobuf.generated.AdminProtos.AdminServic
 import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ClientService;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.MasterService;
 import org.apache.hadoop.hbase.shaded.protobuf.generated.RegionServerStatusProtos.RegionServerStatusService;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.RemoteCompactionProtos.RemoteCompactionService;
 import org.apache.hadoop.security.authorize.PolicyProvider;
 import org.apache.hadoop.security.authorize.ProxyUsers;
 import org.apache.hadoop.security.authorize.Service;
@@ -42,7 +43,9 @@ public class HBasePolicyProvider extends PolicyProvider {
       MasterProtos.HbckService.BlockingInterface.class),
     new Service("security.admin.protocol.acl", MasterService.BlockingInterface.class),
     new Service("security.masterregion.protocol.acl",
-      RegionServerStatusService.BlockingInterface.class)
+      RegionServerStatusService.BlockingInterface.class),
+    new Service("security.compactionserver.protocol.acl",
+      RemoteCompactionService.BlockingInterface.class)
   };
 
   @Override
@@ -50,6 +50,8 @@ public class BloomFilterChunk implements BloomFilterBase {
   protected ByteBuffer bloom;
   /** The type of bloom */
   protected BloomType bloomType;
+  /** Whether all the bits of a key are set in a single block */
+  protected boolean blocked;
 
   /**
    * Loads bloom filter meta data from file input.
@@ -85,9 +87,14 @@ public class BloomFilterChunk implements BloomFilterBase {
   }
 
   public BloomFilterChunk(int hashType, BloomType bloomType) {
+    this(hashType, bloomType, false);
+  }
+
+  public BloomFilterChunk(int hashType, BloomType bloomType, boolean blocked) {
     this.hashType = hashType;
     this.hash = Hash.getInstance(hashType);
     this.bloomType = bloomType;
+    this.blocked = blocked;
   }
 
   /**
@@ -127,7 +134,7 @@ public class BloomFilterChunk implements BloomFilterBase {
    * @return a Bloom filter with the same configuration as this
    */
   public BloomFilterChunk createAnother() {
-    BloomFilterChunk bbf = new BloomFilterChunk(hashType, this.bloomType);
+    BloomFilterChunk bbf = new BloomFilterChunk(hashType, this.bloomType, this.blocked);
     bbf.byteSize = byteSize;
     bbf.hashCount = hashCount;
     bbf.maxKeys = maxKeys;
@@ -200,6 +207,14 @@ public class BloomFilterChunk implements BloomFilterBase {
   }
 
   private void setHashLoc(int hash1, int hash2) {
+    if (blocked) {
+      int blockBitOffset = BloomFilterUtil.getBlockBitOffset(hash1, this.byteSize);
+      for (int i = 0; i < this.hashCount; i++) {
+        set(BloomFilterUtil.getBitInBlock(blockBitOffset, hash1, hash2, i));
+      }
+      ++this.keyCount;
+      return;
+    }
     for (int i = 0; i < this.hashCount; i++) {
       long hashLoc = Math.abs((hash1 + i * hash2) % (this.byteSize * 8));
       set(hashLoc);
@@ -265,8 +280,10 @@ public class BloomFilterChunk implements BloomFilterBase {
       int newByteSize = (int)this.byteSize;
       int newMaxKeys = this.maxKeys;
 
+      // a blocked bloom has to keep whole blocks
+      int foldUnit = blocked ? BloomFilterUtil.BLOCK_BYTES << 1 : 2;
       // while exponentially smaller & folding is lossless
-      while ((newByteSize & 1) == 0 && newMaxKeys > (this.keyCount<<1)) {
+      while (newByteSize % foldUnit == 0 && newMaxKeys > (this.keyCount<<1)) {
         pieces <<= 1;
         newByteSize >>= 1;
         newMaxKeys >>= 1;
@@ -310,6 +327,10 @@ public class BloomFilterChunk implements BloomFilterBase {
     return hashCount;
   }
 
+  public boolean isBlocked() {
+    return blocked;
+  }
+
   @Override
   public String toString() {
     return BloomFilterUtil.toString(this);
@@ -81,6 +81,29 @@ public final class BloomFilterFactory {
   public static final String IO_STOREFILE_BLOOM_BLOCK_SIZE =
       "io.storefile.bloom.block.size";
 
+  /**
+   * Whether to write blocked Bloom filters, which set all the bits of a key in one cache line.
+   * Files written this way can only be read by versions knowing
+   * {@link CompoundBloomFilterBase#BLOCKED_VERSION}, so only turn it on once all the servers are
+   * upgraded.
+   */
+  public static final String IO_STOREFILE_BLOOM_BLOCKED = "io.storefile.bloom.blocked";
+
+  /**
+   * Length of the row prefixes to keep in a {@link RowPrefixBloomFilter} of every store file, so
+   * that scans of a short row range or with a {@link org.apache.hadoop.hbase.filter.PrefixFilter}
+   * can skip files. 0 disables it.
+   */
+  public static final String IO_STOREFILE_BLOOM_PREFIX_LENGTH =
+      "io.storefile.bloom.prefix.length";
+
+  /**
+   * Maximum number of distinct prefixes in a {@link RowPrefixBloomFilter}. Files with more
+   * prefixes have none, as the filter is kept in the file info and loaded with the file.
+   */
+  public static final String IO_STOREFILE_BLOOM_PREFIX_MAX_KEYS =
+      "io.storefile.bloom.prefix.max.keys";
+
   /** Maximum number of times a Bloom filter can be "folded" if oversized */
   private static final int MAX_ALLOWED_FOLD_FACTOR = 7;
 
@@ -103,6 +126,9 @@ public final class BloomFilterFactory {
       case CompoundBloomFilterBase.VERSION:
         return new CompoundBloomFilter(meta, reader);
 
+      case CompoundBloomFilterBase.BLOCKED_VERSION:
+        return new CompoundBloomFilter(meta, reader, true);
+
       default:
         throw new IllegalArgumentException(
           "Bad bloom filter format version " + version
@@ -144,6 +170,13 @@ public final class BloomFilterFactory {
     return conf.getInt(IO_STOREFILE_BLOOM_BLOCK_SIZE, 128 * 1024);
   }
 
+  /**
+   * @return true if blocked Bloom filters are to be written
+   */
+  public static boolean isBlockedBloomEnabled(Configuration conf) {
+    return conf.getBoolean(IO_STOREFILE_BLOOM_BLOCKED, false);
+  }
+
   /**
   * @return max key for the Bloom filter from the configuration
   */
@@ -194,7 +227,8 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter = new CompoundBloomFilterWriter(getBloomBlockSize(conf),
         err, Hash.getHashType(conf), maxFold, cacheConf.shouldCacheBloomsOnWrite(),
-        bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType);
+        bloomType == BloomType.ROWCOL ? CellComparatorImpl.COMPARATOR : null, bloomType,
+        isBlockedBloomEnabled(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
@@ -225,8 +259,26 @@ public final class BloomFilterFactory {
     // In case of compound Bloom filters we ignore the maxKeys hint.
     CompoundBloomFilterWriter bloomWriter = new CompoundBloomFilterWriter(getBloomBlockSize(conf),
         err, Hash.getHashType(conf), maxFold, cacheConf.shouldCacheBloomsOnWrite(),
-        null, BloomType.ROW);
+        null, BloomType.ROW, isBlockedBloomEnabled(conf));
     writer.addInlineBlockWriter(bloomWriter);
     return bloomWriter;
   }
+
+  /**
+   * Creates a new row prefix Bloom filter at the time of
+   * {@link org.apache.hadoop.hbase.regionserver.HStoreFile} writing.
+   * @param expectedKeys the expected number of keys of the file, an upper bound of the number of
+   *          prefixes, or 0 if unknown
+   * @return the new filter, or null if it is disabled
+   */
+  public static RowPrefixBloomFilter.Writer createRowPrefixBloomAtWrite(Configuration conf,
+      int expectedKeys) {
+    int prefixLength = conf.getInt(IO_STOREFILE_BLOOM_PREFIX_LENGTH, 0);
+    if (prefixLength <= 0 || !isGeneralBloomEnabled(conf)) {
+      return null;
+    }
+    return new RowPrefixBloomFilter.Writer(prefixLength, expectedKeys,
+        conf.getInt(IO_STOREFILE_BLOOM_PREFIX_MAX_KEYS, 100000), getErrorRate(conf),
+        Hash.getHashType(conf), getMaxFold(conf), getBloomBlockSize(conf));
+  }
 }
@@ -52,6 +52,15 @@ public final class BloomFilterUtil {
   private static Random randomGeneratorForTest;
 
   public static final String PREFIX_LENGTH_KEY = "RowPrefixBloomFilter.prefix_length";
+
+  /**
+   * Size of the blocks of a blocked Bloom filter, one cache line. All the bits of a key are set in
+   * the same block, so that a lookup touches a single cache line instead of one per hash function.
+   */
+  public static final int BLOCK_BYTES = 64;
+  private static final int BLOCK_BITS = BLOCK_BYTES * 8;
+  /** log2 of {@link #BLOCK_BYTES}, so that a blocked Bloom filter folds into whole blocks */
+  private static final int BLOCK_BYTES_SHIFT = 6;
   
   /** Bit-value lookup array to prevent doing the same work over and over */
   public static final byte [] bitvals = {
@@ -193,9 +202,27 @@ public final class BloomFilterUtil {
    */
   public static BloomFilterChunk createBySize(int byteSizeHint,
       double errorRate, int hashType, int foldFactor, BloomType bloomType) {
-    BloomFilterChunk bbf = new BloomFilterChunk(hashType, bloomType);
+    return createBySize(byteSizeHint, errorRate, hashType, foldFactor, bloomType, false);
+  }
+
+  /**
+   * Creates a Bloom filter chunk of the given size.
+   *
+   * @param byteSizeHint the desired number of bytes for the Bloom filter bit
+   *          array. Will be increased so that folding is possible.
+   * @param errorRate target false positive rate of the Bloom filter
+   * @param hashType Bloom filter hash function type
+   * @param foldFactor
+   * @param bloomType
+   * @param blocked whether to set all the bits of a key in a single block
+   * @return the new Bloom filter of the desired size
+   */
+  public static BloomFilterChunk createBySize(int byteSizeHint,
+      double errorRate, int hashType, int foldFactor, BloomType bloomType, boolean blocked) {
+    BloomFilterChunk bbf = new BloomFilterChunk(hashType, bloomType, blocked);
 
-    bbf.byteSize = computeFoldableByteSize(byteSizeHint * 8L, foldFactor);
+    bbf.byteSize = computeFoldableByteSize(byteSizeHint * 8L,
+      blocked ? foldFactor + BLOCK_BYTES_SHIFT : foldFactor);
     long bitSize = bbf.byteSize * 8;
     bbf.maxKeys = (int) idealMaxKeys(bitSize, errorRate);
     bbf.hashCount = optimalFunctionCount(bbf.maxKeys, bitSize);
@@ -211,8 +238,15 @@ public final class BloomFilterUtil {
   public static boolean contains(byte[] buf, int offset, int length,
       ByteBuff bloomBuf, int bloomOffset, int bloomSize, Hash hash,
       int hashCount) {
+    return contains(buf, offset, length, bloomBuf, bloomOffset, bloomSize, hash, hashCount, false);
+  }
+
+  public static boolean contains(byte[] buf, int offset, int length,
+      ByteBuff bloomBuf, int bloomOffset, int bloomSize, Hash hash,
+      int hashCount, boolean blocked) {
     HashKey<byte[]> hashKey = new ByteArrayHashKey(buf, offset, length);
-    return contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
+    return blocked ? containsBlocked(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey)
+        : contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
   }
 
   private static <T> boolean contains(ByteBuff bloomBuf, int bloomOffset, int bloomSize, Hash hash,
@@ -245,9 +279,44 @@ public final class BloomFilterUtil {
 
   public static boolean contains(Cell cell, ByteBuff bloomBuf, int bloomOffset, int bloomSize,
       Hash hash, int hashCount, BloomType type) {
+    return contains(cell, bloomBuf, bloomOffset, bloomSize, hash, hashCount, type, false);
+  }
+
+  public static boolean contains(Cell cell, ByteBuff bloomBuf, int bloomOffset, int bloomSize,
+      Hash hash, int hashCount, BloomType type, boolean blocked) {
     HashKey<Cell> hashKey = type == BloomType.ROWCOL ? new RowColBloomHashKey(cell)
         : new RowBloomHashKey(cell);
-    return contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
+    return blocked ? containsBlocked(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey)
+        : contains(bloomBuf, bloomOffset, bloomSize, hash, hashCount, hashKey);
+  }
+
+  private static <T> boolean containsBlocked(ByteBuff bloomBuf, int bloomOffset, int bloomSize,
+      Hash hash, int hashCount, HashKey<T> hashKey) {
+    int hash1 = hash.hash(hashKey, 0);
+    int hash2 = hash.hash(hashKey, hash1);
+    int blockBitOffset = getBlockBitOffset(hash1, bloomSize);
+    for (int i = 0; i < hashCount; i++) {
+      if (!checkBit(getBitInBlock(blockBitOffset, hash1, hash2, i), bloomBuf, bloomOffset)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the position of the first bit of the block a key goes to in a blocked Bloom filter.
+   *         Folding a filter in two keeps every key in the same block modulo the new block count.
+   */
+  static int getBlockBitOffset(int hash1, long bloomSize) {
+    return (int) Math.abs(hash1 % (bloomSize / BLOCK_BYTES)) * BLOCK_BITS;
+  }
+
+  /**
+   * @return the position of the i-th bit of a key in a blocked Bloom filter. The bits are derived
+   *         by combinatorial generation like for classic chunks, within the block.
+   */
+  static int getBitInBlock(int blockBitOffset, int hash1, int hash2, int i) {
+    return blockBitOffset + ((hash2 + i * ((hash1 >>> 16) | 1)) & (BLOCK_BITS - 1));
   }
 
   /**
@@ -0,0 +1,282 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.hbase.ByteBufferExtendedCell;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+/**
+ * A blocked Bloom filter of the distinct fixed-length row prefixes of a store file. Unlike the
+ * general Bloom filter it is kept in the file info, so it is always loaded, and it can be checked
+ * for any scan whose rows all share a prefix at least as long as the one of the filter: a short
+ * row range, a {@link org.apache.hadoop.hbase.filter.PrefixFilter} or a get. Rows shorter than
+ * the prefix length are not added, since no such scan can return them.
+ * <p>
+ * Like the compound Bloom filter, the prefixes are split into chunks by key range, so that the
+ * writer only allocates the bits for the prefixes it has seen so far and a lookup only checks the
+ * chunk whose range holds the prefix. Serialized as the prefix length, the hash type, the key
+ * count and the chunk count, as ints, followed by each chunk: its first prefix, its hash count
+ * and its byte size as ints, and its bits.
+ */
+@InterfaceAudience.Private
+public class RowPrefixBloomFilter {
+
+  private static final int HEADER_SIZE = 4 * Bytes.SIZEOF_INT;
+
+  private final int prefixLength;
+  private final Hash hash;
+  private final int keyCount;
+  private final ByteBuff bloom;
+  private final byte[] serialized;
+  // per chunk, the offset of its first prefix, its hash count, and the offset and size of its bits
+  private final int[] firstPrefixOffsets;
+  private final int[] hashCounts;
+  private final int[] bloomOffsets;
+  private final int[] bloomSizes;
+
+  /**
+   * @param serialized the filter as returned by {@link Writer#toBytes()}
+   */
+  public RowPrefixBloomFilter(byte[] serialized) {
+    if (serialized.length <= HEADER_SIZE) {
+      throw new IllegalArgumentException("Row prefix Bloom filter too short: "
+          + serialized.length);
+    }
+    this.prefixLength = Bytes.toInt(serialized, 0);
+    int hashType = Bytes.toInt(serialized, Bytes.SIZEOF_INT);
+    this.hash = Hash.getInstance(hashType);
+    if (hash == null) {
+      throw new IllegalArgumentException("Invalid hash type: " + hashType);
+    }
+    this.keyCount = Bytes.toInt(serialized, 2 * Bytes.SIZEOF_INT);
+    int chunkCount = Bytes.toInt(serialized, 3 * Bytes.SIZEOF_INT);
+    if (prefixLength <= 0 || chunkCount <= 0) {
+      throw new IllegalArgumentException("Invalid prefix length " + prefixLength
+          + " or chunk count " + chunkCount);
+    }
+    this.firstPrefixOffsets = new int[chunkCount];
+    this.hashCounts = new int[chunkCount];
+    this.bloomOffsets = new int[chunkCount];
+    this.bloomSizes = new int[chunkCount];
+    int offset = HEADER_SIZE;
+    for (int i = 0; i < chunkCount; i++) {
+      if (serialized.length - offset < prefixLength + 2 * Bytes.SIZEOF_INT) {
+        throw new IllegalArgumentException("Row prefix Bloom filter truncated in chunk " + i);
+      }
+      firstPrefixOffsets[i] = offset;
+      offset += prefixLength;
+      hashCounts[i] = Bytes.toInt(serialized, offset);
+      bloomSizes[i] = Bytes.toInt(serialized, offset + Bytes.SIZEOF_INT);
+      offset += 2 * Bytes.SIZEOF_INT;
+      if (bloomSizes[i] <= 0 || serialized.length - offset < bloomSizes[i]) {
+        throw new IllegalArgumentException("Row prefix Bloom filter truncated in chunk " + i);
+      }
+      bloomOffsets[i] = offset;
+      offset += bloomSizes[i];
+    }
+    this.serialized = serialized;
+    this.bloom = new SingleByteBuff(ByteBuffer.wrap(serialized));
+  }
+
+  public int getPrefixLength() {
+    return prefixLength;
+  }
+
+  public int getKeyCount() {
+    return keyCount;
+  }
+
+  public int getChunkCount() {
+    return bloomSizes.length;
+  }
+
+  /**
+   * @return false if no row of the file starts with the first {@link #getPrefixLength()} bytes of
+   *         the given key, true if some might or if the key is shorter than the prefix length
+   */
+  public boolean mightContain(byte[] key) {
+    if (key.length < prefixLength) {
+      return true;
+    }
+    // the last chunk starting at or before the key is the only one which can hold it
+    int low = 0;
+    int high = firstPrefixOffsets.length - 1;
+    int chunk = -1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (Bytes.compareTo(serialized, firstPrefixOffsets[mid], prefixLength, key, 0,
+        prefixLength) <= 0) {
+        chunk = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    if (chunk < 0) {
+      return false;
+    }
+    return BloomFilterUtil.contains(key, 0, prefixLength, bloom, bloomOffsets[chunk],
+      bloomSizes[chunk], hash, hashCounts[chunk], true);
+  }
+
+  /**
+   * Collects the prefixes of the rows appended to a store file. The rows must be added in order.
+   * The first chunk is sized for the expected number of prefixes, and each following one for
+   * twice as many as the previous, up to the chunk byte size. So a file with few prefixes only
+   * allocates a small filter, and a wrong estimate costs a few more chunks.
+   */
+  public static class Writer {
+    /** Number of prefixes of the first chunk when the expected count is unknown */
+    private static final int MIN_CHUNK_KEYS = 1024;
+
+    private final int prefixLength;
+    private final int maxKeys;
+    private final double errorRate;
+    private final int hashType;
+    private final int maxFold;
+    private final int chunkByteSize;
+
+    private final List<byte[]> firstPrefixes = new ArrayList<>();
+    private final List<BloomFilterChunk> chunks = new ArrayList<>();
+    private BloomFilterChunk chunk;
+    private long nextChunkKeys;
+    private long keyCount;
+    private byte[] lastPrefix;
+    private boolean overflow;
+
+    /**
+     * @param expectedKeys the expected number of distinct prefixes, 0 if unknown
+     * @param maxKeys the number of distinct prefixes above which no filter is kept
+     * @param chunkByteSize the maximum byte size of a chunk
+     */
+    public Writer(int prefixLength, int expectedKeys, int maxKeys, double errorRate, int hashType,
+        int maxFold, int chunkByteSize) {
+      this.prefixLength = prefixLength;
+      this.maxKeys = maxKeys;
+      this.errorRate = errorRate;
+      this.hashType = hashType;
+      this.maxFold = maxFold;
+      this.chunkByteSize = chunkByteSize;
+      this.nextChunkKeys = expectedKeys > 0 ? expectedKeys : MIN_CHUNK_KEYS;
+    }
+
+    public void add(Cell cell) {
+      if (overflow || cell.getRowLength() < prefixLength) {
+        return;
+      }
+      int cmp = lastPrefix == null ? 1 : comparePrefix(cell);
+      if (cmp == 0) {
+        return;
+      }
+      if (cmp < 0 || keyCount >= maxKeys) {
+        // Out of byte order, as in meta, or too many prefixes to be worth keeping in the file info.
+        overflow = true;
+        chunk = null;
+        chunks.clear();
+        firstPrefixes.clear();
+        return;
+      }
+      lastPrefix = new byte[prefixLength];
+      if (cell instanceof ByteBufferExtendedCell) {
+        ByteBufferUtils.copyFromBufferToArray(lastPrefix,
+          ((ByteBufferExtendedCell) cell).getRowByteBuffer(),
+          ((ByteBufferExtendedCell) cell).getRowPosition(), 0, prefixLength);
+      } else {
+        System.arraycopy(cell.getRowArray(), cell.getRowOffset(), lastPrefix, 0, prefixLength);
+      }
+      if (chunk != null && chunk.getKeyCount() >= chunk.getMaxKeys()) {
+        finishChunk();
+      }
+      if (chunk == null) {
+        startChunk();
+      }
+      chunk.add(lastPrefix, 0, prefixLength);
+      keyCount++;
+    }
+
+    private int comparePrefix(Cell cell) {
+      if (cell instanceof ByteBufferExtendedCell) {
+        return ByteBufferUtils.compareTo(((ByteBufferExtendedCell) cell).getRowByteBuffer(),
+          ((ByteBufferExtendedCell) cell).getRowPosition(), prefixLength, lastPrefix, 0,
+          prefixLength);
+      }
+      return Bytes.compareTo(cell.getRowArray(), cell.getRowOffset(), prefixLength, lastPrefix, 0,
+        prefixLength);
+    }
+
+    private void startChunk() {
+      // no need to size a chunk for more prefixes than can still be kept
+      long keys = Math.max(1, Math.min(nextChunkKeys, maxKeys - keyCount));
+      int byteSizeHint = (int) Math.min(chunkByteSize,
+        (BloomFilterUtil.computeBitSize(keys, errorRate) + 7) / 8);
+      chunk = BloomFilterUtil.createBySize(byteSizeHint, errorRate, hashType, maxFold,
+        BloomType.ROW, true);
+      chunk.allocBloom();
+      nextChunkKeys = 2 * chunk.getMaxKeys();
+      firstPrefixes.add(lastPrefix);
+    }
+
+    private void finishChunk() {
+      chunk.compactBloom();
+      chunks.add(chunk);
+      chunk = null;
+    }
+
+    /**
+     * @return the serialized filter, or null if there is nothing to write or too many prefixes
+     */
+    public byte[] toBytes() throws IOException {
+      if (overflow || keyCount == 0) {
+        return null;
+      }
+      if (chunk != null) {
+        finishChunk();
+      }
+      int size = HEADER_SIZE;
+      for (BloomFilterChunk c : chunks) {
+        size += prefixLength + 2 * Bytes.SIZEOF_INT + (int) c.getByteSize();
+      }
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream(size);
+      DataOutputStream out = new DataOutputStream(bytes);
+      out.writeInt(prefixLength);
+      out.writeInt(hashType);
+      out.writeInt((int) keyCount);
+      out.writeInt(chunks.size());
+      for (int i = 0; i < chunks.size(); i++) {
+        BloomFilterChunk c = chunks.get(i);
+        out.write(firstPrefixes.get(i));
+        out.writeInt(c.getHashCount());
+        out.writeInt((int) c.getByteSize());
+        c.writeBloom(out);
+      }
+      out.flush();
+      return bytes.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,290 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.RegionLocations;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.TableNotFoundException;
+import org.apache.hadoop.hbase.ipc.HBaseRpcController;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.testclassification.ClientTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.FutureUtils;
+import org.apache.hadoop.hbase.util.JVMClusterUtil;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.ByteString;
+import org.apache.hbase.thirdparty.com.google.protobuf.UnsafeByteOperations;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.LocateRegionResponse;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.MasterProtos.MasterService;
+
+/**
+ * Tests locating regions with the region states of the master, see
+ * {@link AsyncNonMetaRegionLocator#LOCATE_FROM_MASTER}.
+ */
+@Category({ MediumTests.class, ClientTests.class })
+public class TestAsyncNonMetaRegionLocatorFromMaster {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+    HBaseClassTestRule.forClass(TestAsyncNonMetaRegionLocatorFromMaster.class);
+
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private static byte[] FAMILY = Bytes.toBytes("cf");
+
+  private static AsyncConnectionImpl CONN;
+
+  private static AsyncNonMetaRegionLocator LOCATOR;
+
+  private static byte[][] SPLIT_KEYS;
+
+  @Rule
+  public TestName name = new TestName();
+
+  private TableName tableName;
+
+  private TableName otherTableName;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    TEST_UTIL.getConfiguration().setBoolean(AsyncNonMetaRegionLocator.LOCATE_FROM_MASTER, true);
+    TEST_UTIL.startMiniCluster(3);
+    TEST_UTIL.getAdmin().balancerSwitch(false, true);
+    AsyncRegistry registry = AsyncRegistryFactory.getRegistry(TEST_UTIL.getConfiguration());
+    CONN = new AsyncConnectionImpl(TEST_UTIL.getConfiguration(), registry,
+      registry.getClusterId().get(), null, User.getCurrent());
+    LOCATOR = new AsyncNonMetaRegionLocator(CONN);
+    SPLIT_KEYS = new byte[8][];
+    for (int i = 111; i < 999; i += 111) {
+      SPLIT_KEYS[i / 111 - 1] = Bytes.toBytes(String.format("%03d", i));
+    }
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    IOUtils.closeQuietly(CONN);
+    TEST_UTIL.shutdownMiniCluster();
+  }
+
+  @After
+  public void tearDownAfterTest() throws IOException {
+    for (TableName tn : new TableName[] { tableName, otherTableName }) {
+      if (tn != null && TEST_UTIL.getAdmin().tableExists(tn)) {
+        TEST_UTIL.deleteTable(tn);
+      }
+      if (tn != null) {
+        LOCATOR.clearCache(tn);
+      }
+    }
+  }
+
+  private void createTables() throws Exception {
+    tableName = TableName.valueOf(name.getMethodName());
+    otherTableName = TableName.valueOf(name.getMethodName() + "-other");
+    TEST_UTIL.createTable(tableName, FAMILY, SPLIT_KEYS);
+    TEST_UTIL.createTable(otherTableName, FAMILY);
+    TEST_UTIL.waitTableAvailable(tableName);
+    TEST_UTIL.waitTableAvailable(otherTableName);
+  }
+
+  private static HRegionLocation locate(TableName tableName, byte[] row)
+      throws InterruptedException, ExecutionException {
+    return LOCATOR.getRegionLocations(tableName, row, RegionReplicaUtil.DEFAULT_REPLICA_ID,
+      RegionLocateType.CURRENT, false).get().getDefaultRegionLocation();
+  }
+
+  private static ServerName getServerHoldingRow(TableName tableName, byte[] row)
+      throws IOException {
+    try (RegionLocator locator = TEST_UTIL.getConnection().getRegionLocator(tableName)) {
+      return locator.getRegionLocation(row, true).getServerName();
+    }
+  }
+
+  @Test
+  public void testLocate() throws Exception {
+    createTables();
+    byte[] row = Bytes.toBytes("333");
+    HRegionLocation loc = locate(tableName, row);
+    assertTrue(LOCATOR.getMasterLocationVersion() >= 0);
+    assertArrayEquals(SPLIT_KEYS[2], loc.getRegion().getStartKey());
+    assertArrayEquals(SPLIT_KEYS[3], loc.getRegion().getEndKey());
+    assertEquals(getServerHoldingRow(tableName, row), loc.getServerName());
+    // the master also returns the regions after the located one
+    assertEquals(SPLIT_KEYS.length - 2, LOCATOR.getNumberOfCachedRegionLocations(tableName));
+    RegionLocations cached = LOCATOR.getRegionLocationInCache(tableName, Bytes.toBytes("999"));
+    assertNotNull(cached);
+    assertEquals(getServerHoldingRow(tableName, Bytes.toBytes("999")),
+      cached.getDefaultRegionLocation().getServerName());
+  }
+
+  @Test
+  public void testFallbackToMeta() throws Exception {
+    // the master has no open region for the table, meta tells us it does not exist
+    try {
+      locate(TableName.valueOf(name.getMethodName()), Bytes.toBytes("333"));
+      fail("The table should not exist");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TableNotFoundException);
+    }
+    createTables();
+    // the master does not know the region before a row, it is read from meta
+    HRegionLocation loc = LOCATOR.getRegionLocations(tableName, SPLIT_KEYS[3],
+      RegionReplicaUtil.DEFAULT_REPLICA_ID, RegionLocateType.BEFORE, false).get()
+      .getDefaultRegionLocation();
+    assertArrayEquals(SPLIT_KEYS[2], loc.getRegion().getStartKey());
+    assertEquals(getServerHoldingRow(tableName, SPLIT_KEYS[2]), loc.getServerName());
+  }
+
+  @Test
+  public void testChangedRegionInvalidation() throws Exception {
+    createTables();
+    byte[] row = Bytes.toBytes("333");
+    HRegionLocation loc = locate(tableName, row);
+    ServerName serverName = loc.getServerName();
+    ServerName newServerName = TEST_UTIL.getHBaseCluster().getRegionServerThreads().stream()
+      .map(t -> t.getRegionServer().getServerName()).filter(sn -> !sn.equals(serverName)).findAny()
+      .get();
+    TEST_UTIL.getAdmin().move(loc.getRegion().getEncodedNameAsBytes(), newServerName);
+    while (!getServerHoldingRow(tableName, row).equals(newServerName)) {
+      Thread.sleep(100);
+    }
+    assertNotNull(LOCATOR.getRegionLocationInCache(tableName, row));
+    // the next lookup in master tells us about the moved region
+    locate(otherTableName, Bytes.toBytes("333"));
+    assertNull(LOCATOR.getRegionLocationInCache(tableName, row));
+    assertNotNull(LOCATOR.getRegionLocationInCache(tableName, Bytes.toBytes("555")));
+    assertEquals(newServerName, locate(tableName, row).getServerName());
+  }
+
+  private static LocateRegionResponse locateInMaster(MasterService.Interface stub,
+      LocateRegionRequest req) throws IOException {
+    HBaseRpcController controller = CONN.rpcControllerFactory.newController();
+    CompletableFuture<LocateRegionResponse> future = new CompletableFuture<>();
+    stub.locateRegion(controller, req, resp -> {
+      if (controller.failed()) {
+        future.completeExceptionally(controller.getFailed());
+      } else {
+        future.complete(resp);
+      }
+    });
+    return FutureUtils.get(future);
+  }
+
+  @Test
+  public void testLocateInBackupMaster() throws Exception {
+    createTables();
+    JVMClusterUtil.MasterThread backupMasterThread =
+      TEST_UTIL.getMiniHBaseCluster().startMaster();
+    ServerName backupMaster = backupMasterThread.getMaster().getServerName();
+    try {
+      TEST_UTIL.waitFor(30000, () -> CONN.registry.getBackupMasters().get().contains(backupMaster));
+      MasterService.Interface stub = CONN.getMasterStub(backupMaster);
+      byte[] row = Bytes.toBytes("333");
+      LocateRegionRequest req = LocateRegionRequest.newBuilder()
+        .setTableName(ProtobufUtil.toProtoTableName(tableName))
+        .setRow(UnsafeByteOperations.unsafeWrap(row)).setLimit(3).build();
+      // the backup master serves the locations once it has mirrored the active master
+      AtomicReference<LocateRegionResponse> resp = new AtomicReference<>();
+      TEST_UTIL.waitFor(30000, () -> {
+        try {
+          resp.set(locateInMaster(stub, req));
+          return true;
+        } catch (IOException e) {
+          return false;
+        }
+      });
+      assertEquals(3, resp.get().getRegionLocationCount());
+      for (int i = 0; i < 3; i++) {
+        HRegionLocation loc = ProtobufUtil.toRegionLocation(resp.get().getRegionLocation(i));
+        assertArrayEquals(SPLIT_KEYS[i + 2], loc.getRegion().getStartKey());
+        assertEquals(getServerHoldingRow(tableName, SPLIT_KEYS[i + 2]), loc.getServerName());
+      }
+
+      // the backup master tells about the moved regions too, with the versions of the active one
+      HRegionLocation loc = ProtobufUtil.toRegionLocation(resp.get().getRegionLocation(0));
+      ServerName newServerName = TEST_UTIL.getHBaseCluster().getRegionServerThreads().stream()
+        .map(t -> t.getRegionServer().getServerName())
+        .filter(sn -> !sn.equals(loc.getServerName())).findAny().get();
+      TEST_UTIL.getAdmin().move(loc.getRegion().getEncodedNameAsBytes(), newServerName);
+      LocateRegionRequest reqSince =
+        req.toBuilder().setKnownVersion(resp.get().getVersion()).build();
+      ByteString regionName = UnsafeByteOperations.unsafeWrap(loc.getRegion().getRegionName());
+      TEST_UTIL.waitFor(30000, () -> {
+        LocateRegionResponse since = locateInMaster(stub, reqSince);
+        return since.getChangedRegionNameList().contains(regionName) &&
+          since.getRegionLocationCount() > 0 && newServerName.equals(
+            ProtobufUtil.toRegionLocation(since.getRegionLocation(0)).getServerName());
+      });
+
+      // the lookups are spread over both masters and always find the region
+      for (int i = 0; i < 10; i++) {
+        LOCATOR.clearCache(tableName);
+        assertEquals(newServerName, locate(tableName, row).getServerName());
+      }
+    } finally {
+      backupMasterThread.getMaster().stop("test");
+      backupMasterThread.join();
+    }
+  }
+
+  @Test
+  public void testAllChanged() throws Exception {
+    createTables();
+    locate(tableName, Bytes.toBytes("333"));
+    assertTrue(LOCATOR.getNumberOfCachedRegionLocations(tableName) > 0);
+    // the new active master does not know the changes the old one has seen
+    TEST_UTIL.getMiniHBaseCluster().stopMaster(0).join();
+    TEST_UTIL.getMiniHBaseCluster().startMaster();
+    TEST_UTIL.getMiniHBaseCluster().waitForActiveAndReadyMaster();
+    // the first lookups may go to the old master and fall back to meta
+    TEST_UTIL.waitFor(30000, () -> {
+      LOCATOR.clearCache(otherTableName);
+      locate(otherTableName, Bytes.toBytes("333"));
+      return LOCATOR.getNumberOfCachedRegionLocations(tableName) == 0;
+    });
+    assertTrue(LOCATOR.getMasterLocationVersion() >= 0);
+  }
+}
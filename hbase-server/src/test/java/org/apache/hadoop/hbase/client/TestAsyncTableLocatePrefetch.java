@@ -17,8 +17,12 @@
  */
 package org.apache.hadoop.hbase.client;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
@@ -54,6 +58,8 @@ public class TestAsyncTableLocatePrefetch {
   @BeforeClass
   public static void setUp() throws Exception {
     TEST_UTIL.getConfiguration().setInt(AsyncNonMetaRegionLocator.LOCATE_PREFETCH_LIMIT, 100);
+    TEST_UTIL.getConfiguration()
+      .setInt(AsyncNonMetaRegionLocator.LOCATE_BULK_PREFETCH_THRESHOLD, 5);
     TEST_UTIL.startMiniCluster(3);
     TEST_UTIL.createMultiRegionTable(TABLE_NAME, FAMILY);
     TEST_UTIL.waitTableAvailable(TABLE_NAME);
@@ -79,4 +85,20 @@ public class TestAsyncTableLocatePrefetch {
       assertNotNull(LOCATOR.getRegionLocationInCache(TABLE_NAME, row));
     }
   }
+
+  @Test
+  public void testBulkPrefetch() throws InterruptedException, ExecutionException {
+    AsyncNonMetaRegionLocator locator = new AsyncNonMetaRegionLocator((AsyncConnectionImpl) CONN);
+    List<byte[]> rows = Arrays.asList(HBaseTestingUtility.KEYS_FOR_HBA_CREATE_TABLE);
+    // not enough rows to prefetch
+    locator.prefetchRegionLocations(TABLE_NAME, rows.subList(0, 5)).get();
+    assertEquals(0, locator.getNumberOfCachedRegionLocations(TABLE_NAME));
+
+    locator.prefetchRegionLocations(TABLE_NAME, rows).get();
+    for (byte[] row : rows) {
+      assertNotNull(locator.getRegionLocationInCache(TABLE_NAME, row));
+    }
+    // the first region is before the smallest row so it is not prefetched
+    assertNull(locator.getRegionLocationInCache(TABLE_NAME, Bytes.toBytes("aaa")));
+  }
 }
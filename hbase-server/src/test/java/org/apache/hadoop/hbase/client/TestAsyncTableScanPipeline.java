@@ -0,0 +1,249 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.client;
+
+import static org.apache.hadoop.hbase.coprocessor.CoprocessorHost.REGION_COPROCESSOR_CONF_KEY;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.Waiter.ExplainingPredicate;
+import org.apache.hadoop.hbase.coprocessor.ObserverContext;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessor;
+import org.apache.hadoop.hbase.coprocessor.RegionCoprocessorEnvironment;
+import org.apache.hadoop.hbase.coprocessor.RegionObserver;
+import org.apache.hadoop.hbase.regionserver.InternalScanner;
+import org.apache.hadoop.hbase.testclassification.ClientTests;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ MediumTests.class, ClientTests.class })
+public class TestAsyncTableScanPipeline {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestAsyncTableScanPipeline.class);
+
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private static TableName TABLE_NAME = TableName.valueOf("async");
+
+  private static byte[] FAMILY = Bytes.toBytes("cf");
+
+  private static byte[] CQ = Bytes.toBytes("cq");
+
+  private static int COUNT = 100;
+
+  private static final int CREDITS = 2;
+
+  private static final AtomicInteger SCAN_CALLS = new AtomicInteger();
+
+  private static AsyncConnection CONN;
+
+  private static AsyncTable<AdvancedScanResultConsumer> TABLE;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    TEST_UTIL.getConfiguration().setInt(ConnectionConfiguration.SCANNER_PIPELINE_CREDITS,
+      CREDITS);
+    TEST_UTIL.getConfiguration().set(REGION_COPROCESSOR_CONF_KEY,
+      CountingRegionObserver.class.getName());
+    TEST_UTIL.startMiniCluster(1);
+    TEST_UTIL.createTable(TABLE_NAME, FAMILY,
+      new byte[][] { Bytes.toBytes("25"), Bytes.toBytes("50"), Bytes.toBytes("75") });
+    TEST_UTIL.waitTableAvailable(TABLE_NAME);
+    CONN = ConnectionFactory.createAsyncConnection(TEST_UTIL.getConfiguration()).get();
+    TABLE = CONN.getTable(TABLE_NAME);
+    TABLE.putAll(IntStream.range(0, COUNT).mapToObj(
+      i -> new Put(Bytes.toBytes(String.format("%02d", i))).addColumn(FAMILY, CQ, Bytes.toBytes(i)))
+        .collect(Collectors.toList())).get();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    CONN.close();
+    TEST_UTIL.shutdownMiniCluster();
+  }
+
+  public static final class CountingRegionObserver implements RegionCoprocessor, RegionObserver {
+
+    @Override
+    public Optional<RegionObserver> getRegionObserver() {
+      return Optional.of(this);
+    }
+
+    @Override
+    public boolean preScannerNext(ObserverContext<RegionCoprocessorEnvironment> c,
+        InternalScanner s, List<Result> result, int limit, boolean hasNext) throws IOException {
+      if (c.getEnvironment().getRegionInfo().getTable().equals(TABLE_NAME)) {
+        SCAN_CALLS.incrementAndGet();
+      }
+      return hasNext;
+    }
+  }
+
+  private int getScannersCount() {
+    return TEST_UTIL.getHBaseCluster().getRegionServerThreads().stream()
+        .map(t -> t.getRegionServer()).mapToInt(rs -> rs.getRSRpcServices().getScannersCount())
+        .sum();
+  }
+
+  private static final class SuspendingConsumer implements AdvancedScanResultConsumer {
+
+    private final int terminateAfter;
+
+    private final List<Result> results = new ArrayList<>();
+
+    private Throwable error;
+
+    private boolean finished = false;
+
+    SuspendingConsumer(int terminateAfter) {
+      this.terminateAfter = terminateAfter;
+    }
+
+    @Override
+    public synchronized void onNext(Result[] results, ScanController controller) {
+      for (Result result : results) {
+        this.results.add(result);
+      }
+      if (this.results.size() >= terminateAfter) {
+        controller.terminate();
+        return;
+      }
+      // resume in another thread, so the prefetched response may arrive before or after it
+      ScanResumer resumer = controller.suspend();
+      ForkJoinPool.commonPool().execute(resumer::resume);
+    }
+
+    @Override
+    public synchronized void onError(Throwable error) {
+      this.finished = true;
+      this.error = error;
+      notifyAll();
+    }
+
+    @Override
+    public synchronized void onComplete() {
+      this.finished = true;
+      notifyAll();
+    }
+
+    public synchronized List<Result> get() throws Throwable {
+      while (!finished) {
+        wait();
+      }
+      if (error != null) {
+        throw error;
+      }
+      return results;
+    }
+  }
+
+  private static void assertResults(int expected, List<Result> results) {
+    assertEquals(expected, results.size());
+    for (int i = 0; i < expected; i++) {
+      assertEquals(i, Bytes.toInt(results.get(i).getValue(FAMILY, CQ)));
+    }
+  }
+
+  @Test
+  public void testScan() throws Throwable {
+    SuspendingConsumer consumer = new SuspendingConsumer(Integer.MAX_VALUE);
+    // one row per rpc call
+    TABLE.scan(new Scan().setMaxResultSize(1), consumer);
+    assertResults(COUNT, consumer.get());
+  }
+
+  @Test
+  public void testLimit() throws Throwable {
+    SuspendingConsumer consumer = new SuspendingConsumer(Integer.MAX_VALUE);
+    TABLE.scan(new Scan().setMaxResultSize(1).setLimit(30), consumer);
+    assertResults(30, consumer.get());
+  }
+
+  @Test
+  public void testFetchAheadOfConsumer() throws Throwable {
+    int callsBefore = SCAN_CALLS.get();
+    CompletableFuture<Integer> callsInOnNext = new CompletableFuture<>();
+    // one row per rpc call, all in the first region
+    TABLE.scan(new Scan().withStopRow(Bytes.toBytes("25")).setMaxResultSize(1),
+      new AdvancedScanResultConsumer() {
+
+        @Override
+        public void onNext(Result[] results, ScanController controller) {
+          try {
+            // the next requests reach the region server before we return, as many as the credits
+            TEST_UTIL.waitFor(10000, () -> SCAN_CALLS.get() - callsBefore >= 1 + CREDITS);
+            // and no more, as we have not given any credit back
+            Thread.sleep(1000);
+            callsInOnNext.complete(SCAN_CALLS.get() - callsBefore);
+          } catch (Throwable t) {
+            callsInOnNext.completeExceptionally(t);
+          }
+          controller.terminate();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+          callsInOnNext.completeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+        }
+      });
+    // the open scanner request, and the requests fetching ahead of the consumer
+    assertEquals(1 + CREDITS, callsInOnNext.get().intValue());
+  }
+
+  @Test
+  public void testTerminate() throws Throwable {
+    SuspendingConsumer consumer = new SuspendingConsumer(10);
+    TABLE.scan(new Scan().setMaxResultSize(1), consumer);
+    assertResults(10, consumer.get());
+    // the scanner with a prefetched response should also be closed
+    TEST_UTIL.waitFor(10000, 100, new ExplainingPredicate<Exception>() {
+
+      @Override
+      public boolean evaluate() throws Exception {
+        return getScannersCount() == 0;
+      }
+
+      @Override
+      public String explainFailure() throws Exception {
+        return "Still have " + getScannersCount() + " scanners opened";
+      }
+    });
+  }
+}
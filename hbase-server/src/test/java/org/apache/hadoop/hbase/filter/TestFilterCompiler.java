@@ -0,0 +1,264 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import org.apache.hadoop.hbase.ByteBufferKeyValue;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+import org.apache.hadoop.hbase.filter.FilterCompiler.CompiledFilter;
+import org.apache.hadoop.hbase.filter.FilterList.Operator;
+import org.apache.hadoop.hbase.testclassification.FilterTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+
+@Category({ FilterTests.class, SmallTests.class })
+public class TestFilterCompiler {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestFilterCompiler.class);
+
+  private static final byte[][] FAMILIES = { Bytes.toBytes("a"), Bytes.toBytes("b") };
+
+  private static List<Cell> cells() {
+    List<Cell> cells = new ArrayList<>();
+    for (byte[] family : FAMILIES) {
+      for (int q = 0; q < 4; q++) {
+        for (int v = 0; v < 4; v++) {
+          KeyValue kv = new KeyValue(Bytes.toBytes("row"), family, Bytes.toBytes("q" + q),
+              Bytes.toBytes("value" + v));
+          cells.add(kv);
+          ByteBuffer buffer = ByteBuffer.allocateDirect(kv.getLength());
+          buffer.put(kv.getBuffer(), kv.getOffset(), kv.getLength());
+          cells.add(new ByteBufferKeyValue(buffer, 0, kv.getLength()));
+        }
+      }
+    }
+    // a cell without family nor qualifier
+    cells.add(new KeyValue(Bytes.toBytes("row"), null, null, Bytes.toBytes("value1")));
+    return cells;
+  }
+
+  private static void assertSameDecisions(Filter filter) throws IOException {
+    Filter compiled = FilterCompiler.compile(filter);
+    assertNotSame(filter, compiled);
+    List<Cell> cells = cells();
+    ReturnCode[] codes = new ReturnCode[cells.size()];
+    boolean batch = ((CompiledFilter) compiled).canFilterCells();
+    if (batch) {
+      ((CompiledFilter) compiled).filterCells(cells, codes);
+    }
+    for (int i = 0; i < cells.size(); i++) {
+      Cell cell = cells.get(i);
+      filter.reset();
+      ReturnCode code = filter.filterCell(cell);
+      assertEquals(compiled + " on " + cell, code, compiled.filterCell(cell));
+      if (batch) {
+        assertEquals(compiled + " on batch " + cell, code, codes[i]);
+      }
+    }
+  }
+
+  /**
+   * Rows where the value of a:q1 is value2 in the latest version only, in the older version
+   * only, in both, or missing.
+   */
+  private static List<List<Cell>> rows() {
+    String[][] versions = { { "value2", "value0" }, { "value0", "value2" },
+      { "value2", "value2" }, {} };
+    List<List<Cell>> rows = new ArrayList<>();
+    for (int r = 0; r < versions.length; r++) {
+      byte[] row = Bytes.toBytes("row" + r);
+      List<Cell> cells = new ArrayList<>();
+      cells.add(new KeyValue(row, FAMILIES[0], Bytes.toBytes("q0"), Bytes.toBytes("value0")));
+      for (int v = 0; v < versions[r].length; v++) {
+        cells.add(new KeyValue(row, FAMILIES[0], Bytes.toBytes("q1"), versions[r].length - v,
+            Bytes.toBytes(versions[r][v])));
+      }
+      cells.add(new KeyValue(row, FAMILIES[0], Bytes.toBytes("q2"), Bytes.toBytes("value0")));
+      cells.add(new KeyValue(row, FAMILIES[1], Bytes.toBytes("q1"), Bytes.toBytes("value2")));
+      rows.add(cells);
+    }
+    return rows;
+  }
+
+  /**
+   * Compiles one instance of the filter and compares it with another instance, row by row, as the
+   * filter state is kept across the cells of a row.
+   */
+  private static void assertSameRowDecisions(Supplier<Filter> factory) throws IOException {
+    Filter interpreted = factory.get();
+    Filter filter = factory.get();
+    Filter compiled = FilterCompiler.compile(filter);
+    assertNotSame(filter, compiled);
+    assertFalse(((CompiledFilter) compiled).canFilterCells());
+    for (List<Cell> row : rows()) {
+      interpreted.reset();
+      filter.reset();
+      for (Cell cell : row) {
+        assertEquals(compiled + " on " + cell, interpreted.filterCell(cell),
+            compiled.filterCell(cell));
+      }
+      // the row is filtered by the original filter
+      assertEquals(compiled + " on " + row, interpreted.filterRow(), filter.filterRow());
+    }
+  }
+
+  @Test
+  public void testSingleFilters() throws IOException {
+    for (CompareOperator op : CompareOperator.values()) {
+      assertSameDecisions(new ValueFilter(op, new BinaryComparator(Bytes.toBytes("value2"))));
+      assertSameDecisions(new ValueFilter(op, new BinaryPrefixComparator(Bytes.toBytes("val"))));
+      assertSameDecisions(new QualifierFilter(op, new BinaryComparator(Bytes.toBytes("q1"))));
+      assertSameDecisions(new QualifierFilter(op, new SubstringComparator("1")));
+      assertSameDecisions(new FamilyFilter(op, new BinaryComparator(FAMILIES[1])));
+    }
+  }
+
+  @Test
+  public void testFilterLists() throws IOException {
+    Filter value = new ValueFilter(CompareOperator.GREATER, new BinaryComparator(
+        Bytes.toBytes("value1")));
+    Filter qualifier = new QualifierFilter(CompareOperator.NOT_EQUAL, new BinaryComparator(
+        Bytes.toBytes("q2")));
+    Filter family = new FamilyFilter(CompareOperator.EQUAL, new BinaryComparator(FAMILIES[0]));
+    Filter never = new ValueFilter(CompareOperator.NO_OP, new BinaryComparator(
+        Bytes.toBytes("value1")));
+
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL, value, qualifier, family));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL, family, value, qualifier));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ONE, value, qualifier));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL, value,
+        new FilterList(Operator.MUST_PASS_ALL, qualifier, family)));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL, family,
+        new FilterList(Operator.MUST_PASS_ONE, value, qualifier)));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ONE, never, value,
+        new FilterList(Operator.MUST_PASS_ONE, qualifier, never)));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL, value, never, family));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ONE, never));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ONE));
+  }
+
+  @Test
+  public void testSingleColumnValueFilter() throws IOException {
+    for (boolean filterIfMissing : new boolean[] { false, true }) {
+      for (boolean latestVersionOnly : new boolean[] { false, true }) {
+        for (CompareOperator op : CompareOperator.values()) {
+          Supplier<Filter> factory = () -> {
+            SingleColumnValueFilter filter = new SingleColumnValueFilter(FAMILIES[0],
+                Bytes.toBytes("q1"), op, new BinaryComparator(Bytes.toBytes("value2")));
+            filter.setFilterIfMissing(filterIfMissing);
+            filter.setLatestVersionOnly(latestVersionOnly);
+            return filter;
+          };
+          assertSameRowDecisions(factory);
+          assertSameRowDecisions(() -> new FilterList(Operator.MUST_PASS_ALL,
+              new QualifierFilter(CompareOperator.NOT_EQUAL,
+                  new BinaryComparator(Bytes.toBytes("q2"))), factory.get()));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testMergedHints() throws IOException {
+    Filter prefix = new ColumnPrefixFilter(Bytes.toBytes("q2"));
+    Filter range = new ColumnRangeFilter(Bytes.toBytes("q1"), true, Bytes.toBytes("q3"), false);
+    Filter value = new ValueFilter(CompareOperator.NOT_EQUAL, new BinaryComparator(
+        Bytes.toBytes("value1")));
+    assertSameDecisions(prefix);
+    assertSameDecisions(range);
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL, prefix, range));
+    assertSameDecisions(new FilterList(Operator.MUST_PASS_ALL, value, range, prefix));
+
+    Filter list = new FilterList(Operator.MUST_PASS_ALL, value, range, prefix);
+    CompiledFilter compiled = (CompiledFilter) FilterCompiler.compile(list);
+    assertFalse(compiled.canFilterCells());
+    Cell cell = new KeyValue(Bytes.toBytes("row"), FAMILIES[0], Bytes.toBytes("q0"),
+        Bytes.toBytes("value0"));
+    assertEquals(ReturnCode.SEEK_NEXT_USING_HINT, list.filterCell(cell));
+    assertEquals(ReturnCode.SEEK_NEXT_USING_HINT, compiled.filterCell(cell));
+    // the interpreter only seeks to the start of the range, where the prefix rejects the cells
+    assertTrue(CellUtil.matchingQualifier(list.getNextCellHint(cell), Bytes.toBytes("q1")));
+    assertTrue(CellUtil.matchingQualifier(compiled.getNextCellHint(cell), Bytes.toBytes("q2")));
+    Cell skipped = new KeyValue(Bytes.toBytes("row"), FAMILIES[0], Bytes.toBytes("q1"),
+        Bytes.toBytes("value0"));
+    assertNotEquals(ReturnCode.INCLUDE, list.filterCell(skipped));
+  }
+
+  @Test
+  public void testSerialization() throws IOException {
+    Filter list = new FilterList(Operator.MUST_PASS_ALL,
+        new ValueFilter(CompareOperator.GREATER, new BinaryComparator(Bytes.toBytes("value1"))),
+        new ColumnPrefixFilter(Bytes.toBytes("q")),
+        new SingleColumnValueFilter(FAMILIES[0], Bytes.toBytes("q1"), CompareOperator.EQUAL,
+            Bytes.toBytes("value2")));
+    Filter compiled = FilterCompiler.compile(list);
+    Filter deserialized = ProtobufUtil.toFilter(ProtobufUtil.toFilter(compiled));
+    assertTrue(deserialized instanceof CompiledFilter);
+    assertTrue(compiled.areSerializedFieldsEqual(deserialized));
+    assertTrue(list.areSerializedFieldsEqual(((CompiledFilter) deserialized).getOriginal()));
+  }
+
+  @Test
+  public void testNotCompiled() {
+    Filter value = new ValueFilter(CompareOperator.EQUAL, new BinaryComparator(
+        Bytes.toBytes("value1")));
+    Filter family = new FamilyFilter(CompareOperator.EQUAL, new BinaryComparator(FAMILIES[0]));
+    // rejecting with NEXT_ROW in a MUST_PASS_ONE list depends on the previous cells
+    Filter orWithFamily = new FilterList(Operator.MUST_PASS_ONE, value, family);
+    assertSame(orWithFamily, FilterCompiler.compile(orWithFamily));
+    // so is a MUST_PASS_ONE list seeking using hints or keeping state
+    Filter orWithPrefix = new FilterList(Operator.MUST_PASS_ONE, value,
+        new ColumnPrefixFilter(Bytes.toBytes("q")));
+    assertSame(orWithPrefix, FilterCompiler.compile(orWithPrefix));
+    Filter orWithColumnValue = new FilterList(Operator.MUST_PASS_ONE, value,
+        new SingleColumnValueFilter(FAMILIES[0], Bytes.toBytes("q1"), CompareOperator.EQUAL,
+            Bytes.toBytes("value2")));
+    assertSame(orWithColumnValue, FilterCompiler.compile(orWithColumnValue));
+    // other filters are left to the interpreter
+    Filter withCount = new FilterList(Operator.MUST_PASS_ALL, value, new ColumnCountGetFilter(1));
+    assertSame(withCount, FilterCompiler.compile(withCount));
+    Filter subclass = new ValueFilter(CompareOperator.EQUAL, new BinaryComparator(
+        Bytes.toBytes("value1"))) {
+    };
+    assertSame(subclass, FilterCompiler.compile(subclass));
+  }
+}
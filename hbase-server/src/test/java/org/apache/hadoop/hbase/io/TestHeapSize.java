@@ -401,6 +401,8 @@ public class TestHeapSize  {
     expected += ClassSize.estimateBase(SyncTimeRangeTracker.class, false);
     expected += ClassSize.estimateBase(ConcurrentSkipListMap.class, false);
     expected += ClassSize.estimateBase(AtomicBoolean.class, false);
+    // row samples
+    expected += ClassSize.align(ClassSize.ARRAY + MutableSegment.ROW_SAMPLES * ClassSize.REFERENCE);
     if (expected != actual) {
       ClassSize.estimateBase(cl, true);
       ClassSize.estimateBase(AtomicLong.class, true);
@@ -19,6 +19,7 @@ package org.apache.hadoop.hbase.io.encoding;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -32,6 +33,8 @@ import org.apache.hadoop.hbase.KeyValue.Type;
 import org.apache.hadoop.hbase.codec.Codec.Decoder;
 import org.apache.hadoop.hbase.codec.Codec.Encoder;
 import org.apache.hadoop.hbase.codec.KeyValueCodecWithTags;
+import org.apache.hadoop.hbase.io.encoding.BufferedDataBlockEncoder.KeyArena;
+import org.apache.hadoop.hbase.io.encoding.BufferedDataBlockEncoder.OffheapDecodedExtendedCell;
 import org.apache.hadoop.hbase.io.encoding.BufferedDataBlockEncoder.OnheapDecodedCell;
 import org.apache.hadoop.hbase.testclassification.IOTests;
 import org.apache.hadoop.hbase.testclassification.MediumTests;
@@ -136,4 +139,60 @@ public class TestBufferedDataBlockEncoder {
     assertTrue(CellUtil.equals(c3, decoder.current()));
     assertFalse(decoder.advance());
   }
+
+  @Test
+  public void testDecodedCellsWithKeysInArena() throws Exception {
+    KeyArena arena = new KeyArena();
+    KeyValue kv1 = new KeyValue(Bytes.toBytes("r1"), Bytes.toBytes("f"), Bytes.toBytes("1"),
+        HConstants.LATEST_TIMESTAMP, Bytes.toBytes("1"));
+    KeyValue kv2 = new KeyValue(Bytes.toBytes("r22"), Bytes.toBytes("fam"), Bytes.toBytes("22"),
+        HConstants.LATEST_TIMESTAMP, Bytes.toBytes("22"));
+    byte[] key = kv1.getKey();
+    assertTrue(arena.copy(key, key.length));
+    int offset1 = arena.getLastOffset();
+    // the seeker reuses its key buffer, which must not change the cells already returned
+    key = kv2.getKey();
+    assertTrue(arena.copy(key, key.length));
+    int offset2 = arena.getLastOffset();
+    assertEquals(kv1.getKey().length, offset2 - offset1);
+    OnheapDecodedCell c1 = new OnheapDecodedCell(arena.getArray(), offset1,
+        kv1.getKeyLength(), kv1.getRowLength(), kv1.getFamilyOffset() - KeyValue.ROW_OFFSET,
+        kv1.getFamilyLength(), kv1.getQualifierOffset() - KeyValue.ROW_OFFSET,
+        kv1.getQualifierLength(), kv1.getTimestamp(), kv1.getTypeByte(), kv1.getValueArray(),
+        kv1.getValueOffset(), kv1.getValueLength(), kv1.getSequenceId(), kv1.getTagsArray(),
+        kv1.getTagsOffset(), kv1.getTagsLength());
+    OffheapDecodedExtendedCell c2 = new OffheapDecodedExtendedCell(arena.getBuffer(), offset2,
+        kv2.getKeyLength(), kv2.getRowLength(), kv2.getFamilyOffset() - KeyValue.ROW_OFFSET,
+        kv2.getFamilyLength(), kv2.getQualifierOffset() - KeyValue.ROW_OFFSET,
+        kv2.getQualifierLength(), kv2.getTimestamp(), kv2.getTypeByte(),
+        ByteBuffer.wrap(kv2.getValueArray()), kv2.getValueOffset(), kv2.getValueLength(),
+        kv2.getSequenceId(), ByteBuffer.wrap(kv2.getTagsArray()), kv2.getTagsOffset(),
+        kv2.getTagsLength());
+    assertTrue(CellUtil.equals(kv1, c1));
+    assertTrue(CellUtil.equals(kv2, c2));
+
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    Encoder encoder = new KeyValueCodecWithTags().getEncoder(os);
+    encoder.write(c1);
+    encoder.write(c2);
+    Decoder decoder = new KeyValueCodecWithTags()
+        .getDecoder(new ByteArrayInputStream(os.toByteArray()));
+    assertTrue(decoder.advance());
+    assertTrue(CellUtil.equals(kv1, decoder.current()));
+    assertTrue(decoder.advance());
+    assertTrue(CellUtil.equals(kv2, decoder.current()));
+    assertFalse(decoder.advance());
+
+    // a full array is replaced rather than reused
+    byte[] array = arena.getArray();
+    byte[] large = new byte[KeyArena.SIZE / 4];
+    while (arena.getArray() == array) {
+      assertTrue(arena.copy(large, large.length));
+    }
+    assertNotSame(array, arena.getArray());
+    assertEquals(0, arena.getLastOffset());
+    assertTrue(CellUtil.equals(kv1, c1));
+    // larger keys are not copied to the arena
+    assertFalse(arena.copy(new byte[KeyArena.SIZE], KeyArena.SIZE));
+  }
 }
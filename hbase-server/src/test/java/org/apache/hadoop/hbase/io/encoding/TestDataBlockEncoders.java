@@ -39,6 +39,7 @@ import org.apache.hadoop.hbase.HBaseTestingUtility;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.KeyValue.Type;
+import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.PrivateCellUtil;
 import org.apache.hadoop.hbase.Tag;
 import org.apache.hadoop.hbase.io.ByteArrayOutputStream;
@@ -348,6 +349,53 @@ public class TestDataBlockEncoders {
     Assert.assertEquals(expectedKV.getLength(), ((KeyValue) cell).getLength());
   }
 
+  @Test
+  public void testSeekingOnWideRows() throws IOException {
+    List<KeyValue> kvList = new ArrayList<>();
+    byte[] family = Bytes.toBytes("f");
+    for (int row = 0; row < 4; row++) {
+      for (int column = 0; column < 200; column += 2) {
+        kvList.add(new KeyValue(Bytes.toBytes("row" + row), family,
+            Bytes.toBytes(String.format("q%03d", column)), 1L, Type.Put,
+            Bytes.toBytes("value" + column)));
+      }
+    }
+    DataBlockEncoding encoding = DataBlockEncoding.ROW_COLUMN_INDEX_V1;
+    DataBlockEncoder encoder = encoding.getEncoder();
+    ByteBuffer encodedBuffer = encodeKeyValues(encoding, kvList,
+      getEncodingContext(Algorithm.NONE, encoding), this.useOffheapData);
+    HFileContext meta =
+        new HFileContextBuilder().withHBaseCheckSum(false).withIncludesMvcc(includesMemstoreTS)
+            .withIncludesTags(includesTags).withCompression(Compression.Algorithm.NONE).build();
+    DataBlockEncoder.EncodedSeeker seeker = encoder.createSeeker(CellComparatorImpl.COMPARATOR,
+      encoder.newDataBlockDecodingContext(meta));
+    seeker.setCurrentBuffer(new SingleByteBuff(encodedBuffer));
+    for (int i = 0; i < kvList.size(); i++) {
+      KeyValue kv = kvList.get(i);
+      seeker.rewind();
+      assertEquals(0, seeker.seekToKeyInBlock(kv, false));
+      assertTrue(CellUtil.equals(kv, seeker.getCell()));
+
+      // a missing column lands on the previous cell
+      Cell missing = KeyValueUtil.createFirstOnRow(CellUtil.cloneRow(kv), family,
+        Bytes.toBytes(String.format("q%03d", Integer.parseInt(
+          Bytes.toString(CellUtil.cloneQualifier(kv)).substring(1)) + 1)));
+      seeker.rewind();
+      assertEquals(1, seeker.seekToKeyInBlock(missing, false));
+      assertTrue(CellUtil.equals(kv, seeker.getCell()));
+      assertEquals(i < kvList.size() - 1, seeker.next());
+      if (i < kvList.size() - 1) {
+        assertTrue(CellUtil.equals(kvList.get(i + 1), seeker.getCell()));
+      }
+
+      if (i > 0) {
+        seeker.rewind();
+        assertEquals(1, seeker.seekToKeyInBlock(kv, true));
+        assertTrue(CellUtil.equals(kvList.get(i - 1), seeker.getCell()));
+      }
+    }
+  }
+
   private void checkSeekingConsistency(List<DataBlockEncoder.EncodedSeeker> encodedSeekers,
       boolean seekBefore, Cell keyValue) {
     Cell expectedKeyValue = null;
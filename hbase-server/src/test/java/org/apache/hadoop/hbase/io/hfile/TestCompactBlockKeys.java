@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestCompactBlockKeys {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestCompactBlockKeys.class);
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private static byte[] key(String row) {
+    return new KeyValue(Bytes.toBytes(row), FAMILY, QUALIFIER, 1L, KeyValue.Type.Put).getKey();
+  }
+
+  private static Cell cell(byte[] key) {
+    return new KeyValue.KeyOnlyKeyValue(key, 0, key.length);
+  }
+
+  /**
+   * Long rows sharing a prefix, with a uniform and a skewed part.
+   */
+  private static byte[][] sortedKeys(Random random, int count) {
+    TreeSet<String> rows = new TreeSet<>();
+    while (rows.size() < count) {
+      long id = random.nextInt(4) == 0 ? random.nextInt(1000) : random.nextInt(Integer.MAX_VALUE);
+      rows.add(String.format("user-events-%012d-%s", id, random.nextInt(100)));
+    }
+    byte[][] keys = new byte[count][];
+    int i = 0;
+    for (String row : rows) {
+      keys[i++] = key(row);
+    }
+    return keys;
+  }
+
+  private static void assertSameSearch(byte[][] keys, CompactBlockKeys compact, Cell probe) {
+    Cell[] cells = new Cell[keys.length];
+    for (int i = 0; i < keys.length; i++) {
+      cells[i] = cell(keys[i]);
+    }
+    int pos = Bytes.binarySearch(cells, probe, CellComparatorImpl.COMPARATOR);
+    int expected = pos >= 0 ? pos : -pos - 2;
+    assertEquals(probe.toString(), expected, compact.search(probe));
+  }
+
+  @Test
+  public void testSearchAndGet() {
+    Random random = new Random(12345);
+    for (int count : new int[] { 0, 1, CompactBlockKeys.RESTART_INTERVAL,
+        CompactBlockKeys.RESTART_INTERVAL + 1, 1000 }) {
+      byte[][] keys = sortedKeys(random, count);
+      for (boolean learned : new boolean[] { false, true }) {
+        CompactBlockKeys compact =
+            CompactBlockKeys.build(CellComparatorImpl.COMPARATOR, keys, learned);
+        assertEquals(count, compact.size());
+        assertEquals(learned && count > CompactBlockKeys.RESTART_INTERVAL, compact.hasModel());
+        for (int i = 0; i < count; i++) {
+          assertEquals(0, CellComparatorImpl.COMPARATOR.compare(cell(keys[i]), compact.getKey(i)));
+          assertSameSearch(keys, compact, cell(keys[i]));
+        }
+        // between, before and after the keys
+        assertSameSearch(keys, compact, cell(key("a")));
+        assertSameSearch(keys, compact, cell(key("z")));
+        for (int i = 0; i < 200; i++) {
+          assertSameSearch(keys, compact, cell(key(String.format("user-events-%012d",
+            random.nextInt(Integer.MAX_VALUE)))));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testModelWithSharedPrefixes() {
+    // all the rows have the same first 8 bytes, the model is of no help but must stay correct
+    byte[][] keys = sortedKeys(new Random(1), 500);
+    CompactBlockKeys compact = CompactBlockKeys.build(CellComparatorImpl.COMPARATOR, keys, true);
+    for (byte[] key : keys) {
+      assertSameSearch(keys, compact, cell(key));
+    }
+  }
+
+  @Test
+  public void testModelSegments() {
+    List<byte[]> keys = new ArrayList<>();
+    for (int i = 0; i < 100 * CompactBlockKeys.RESTART_INTERVAL; i++) {
+      keys.add(key(String.format("%08d", i * 7)));
+    }
+    byte[][] array = keys.toArray(new byte[0][]);
+    CompactBlockKeys compact = CompactBlockKeys.build(CellComparatorImpl.COMPARATOR, array, true);
+    assertTrue(compact.hasModel());
+    CompactBlockKeys.PositionModel model = new CompactBlockKeys.PositionModel(compact);
+    assertTrue(model.getSegmentCount() < 100);
+    for (int group = 0; group < 100; group++) {
+      int predicted = model.predict(cell(array[group * CompactBlockKeys.RESTART_INTERVAL]));
+      assertTrue(Math.abs(predicted - group) <= CompactBlockKeys.PositionModel.MAX_ERROR);
+    }
+    assertFalse(CompactBlockKeys.build(CellComparatorImpl.COMPARATOR, array, false).hasModel());
+  }
+
+  @Test
+  public void testIndexReader() throws IOException {
+    byte[][] keys = sortedKeys(new Random(7), 300);
+    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(baos);
+    for (int i = 0; i < keys.length; i++) {
+      out.writeLong(i * 1000L);
+      out.writeInt(1000);
+      Bytes.writeByteArray(out, keys[i]);
+    }
+    HFileBlockIndex.CellBasedKeyBlockIndexReader plain =
+        new HFileBlockIndex.CellBasedKeyBlockIndexReader(CellComparatorImpl.COMPARATOR, 1);
+    HFileBlockIndex.CellBasedKeyBlockIndexReader compact =
+        new HFileBlockIndex.CellBasedKeyBlockIndexReader(CellComparatorImpl.COMPARATOR, 1, true,
+            true);
+    plain.readRootIndex(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())),
+      keys.length);
+    compact.readRootIndex(new DataInputStream(new ByteArrayInputStream(baos.toByteArray())),
+      keys.length);
+    assertEquals(keys.length, compact.getRootBlockCount());
+    for (int i = 0; i < keys.length; i++) {
+      assertEquals(0, CellComparatorImpl.COMPARATOR.compare(plain.getRootBlockKey(i),
+        compact.getRootBlockKey(i)));
+      assertEquals(plain.rootBlockContainingKey(cell(keys[i])),
+        compact.rootBlockContainingKey(cell(keys[i])));
+    }
+    assertEquals(-1, compact.rootBlockContainingKey(cell(key("a"))));
+    assertTrue(compact.heapSize() < plain.heapSize());
+  }
+}
@@ -0,0 +1,209 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestHFileBlockStats {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestHFileBlockStats.class);
+
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private static final int BLOCKS = 10;
+  private static final int CELLS_PER_BLOCK = 3;
+  private static final long BASE_TS = 1000;
+  private static final int DELETE_BLOCK = 5;
+
+  /**
+   * The cells of a block share their timestamp, BASE_TS + block, and qualifier, "q" + block. The
+   * first cell of DELETE_BLOCK is a delete marker.
+   */
+  private static KeyValue toKV(int i) {
+    int block = i / CELLS_PER_BLOCK;
+    KeyValue.Type type = block == DELETE_BLOCK && i % CELLS_PER_BLOCK == 0
+        ? KeyValue.Type.DeleteColumn : KeyValue.Type.Put;
+    return new KeyValue(Bytes.toBytes(String.format("row%03d", i)), Bytes.toBytes("family"),
+        Bytes.toBytes("q" + block), BASE_TS + block, type, Bytes.toBytes("value"));
+  }
+
+  private Path writeFile(String name, boolean stats) throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    FSDataOutputStream out = TEST_UTIL.getTestFileSystem().create(path);
+    HFileContext context =
+        new HFileContextBuilder().withBlockSize(toKV(0).getLength() * CELLS_PER_BLOCK).build();
+    Configuration conf = new Configuration(TEST_UTIL.getConfiguration());
+    conf.setBoolean(HFileBlockStats.BLOCK_STATS_ENABLED_KEY, stats);
+    HFile.Writer writer = HFile.getWriterFactoryNoCache(conf).withOutputStream(out)
+        .withFileContext(context).withComparator(CellComparatorImpl.COMPARATOR).create();
+    for (int i = 0; i < BLOCKS * CELLS_PER_BLOCK; i++) {
+      writer.append(toKV(i));
+    }
+    writer.close();
+    out.close();
+    return path;
+  }
+
+  private HFile.Reader openFile(Path path) throws IOException {
+    FileSystem fs = TEST_UTIL.getTestFileSystem();
+    Configuration conf = TEST_UTIL.getConfiguration();
+    return HFile.createReader(fs, path, CacheConfig.DISABLED, true, conf);
+  }
+
+  /**
+   * @return the timestamps of the cells read from the first one
+   */
+  private static List<Long> scan(HFile.Reader reader, HFileBlockStats.ScanPredicate predicate)
+      throws IOException {
+    List<Long> timestamps = new ArrayList<>();
+    HFileScanner scanner = reader.getScanner(false, true);
+    scanner.setBlockPredicate(predicate);
+    if (scanner.seekTo()) {
+      do {
+        Cell cell = scanner.getCell();
+        timestamps.add(cell.getTimestamp());
+      } while (scanner.next());
+    }
+    scanner.close();
+    return timestamps;
+  }
+
+  private static List<Long> expected(int... blocks) {
+    List<Long> timestamps = new ArrayList<>();
+    for (int block : blocks) {
+      for (int i = 0; i < CELLS_PER_BLOCK; i++) {
+        timestamps.add(BASE_TS + block);
+      }
+    }
+    return timestamps;
+  }
+
+  @Test
+  public void testWriteAndLoad() throws IOException {
+    HFile.Reader reader = openFile(writeFile("without-stats", false));
+    assertNull(HFileBlockStats.load(reader));
+    reader.close();
+
+    reader = openFile(writeFile("with-stats", true));
+    HFileBlockStats stats = HFileBlockStats.load(reader);
+    assertEquals(BLOCKS, stats.getBlockCount());
+    assertEquals(reader.getTrailer().getFirstDataBlockOffset(), stats.getOffset(0));
+    assertEquals(reader.getTrailer().getLastDataBlockOffset(), stats.getOffset(BLOCKS - 1));
+    for (int block = 0; block < BLOCKS; block++) {
+      assertEquals(BASE_TS + block, stats.getMinTimestamp(block));
+      assertEquals(BASE_TS + block, stats.getMaxTimestamp(block));
+      assertEquals(block == DELETE_BLOCK, stats.hasDeletes(block));
+      assertEquals(block, stats.indexOf(stats.getOffset(block)));
+    }
+    // all the cells are read without a predicate
+    assertEquals(BLOCKS * CELLS_PER_BLOCK, scan(reader, null).size());
+    reader.close();
+  }
+
+  @Test
+  public void testWriterReadFields() throws IOException {
+    HFileBlockStats.Writer writer = new HFileBlockStats.Writer();
+    for (int i = 0; i < BLOCKS * CELLS_PER_BLOCK; i++) {
+      writer.add(toKV(i));
+      if (i % CELLS_PER_BLOCK == CELLS_PER_BLOCK - 1) {
+        writer.finishBlock(i / CELLS_PER_BLOCK * 100);
+      }
+    }
+    DataOutputBuffer out = new DataOutputBuffer();
+    writer.write(out);
+    DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+    HFileBlockStats.Writer read = new HFileBlockStats.Writer();
+    read.readFields(in);
+    assertEquals(BLOCKS, read.getBlockCount());
+    DataOutputBuffer reout = new DataOutputBuffer();
+    read.write(reout);
+    assertArrayEquals(Arrays.copyOf(out.getData(), out.getLength()),
+      Arrays.copyOf(reout.getData(), reout.getLength()));
+  }
+
+  @Test
+  public void testSkipByTimeRange() throws IOException {
+    HFile.Reader reader = openFile(writeFile("time-range", true));
+    HFileBlockStats stats = HFileBlockStats.load(reader);
+
+    // the delete markers older than the time range are skipped as well
+    HFileBlockStats.ScanPredicate predicate = new HFileBlockStats.ScanPredicate(stats,
+        TimeRange.between(BASE_TS + 7, BASE_TS + 9), null, false, null, false);
+    assertEquals(expected(0, 7, 8), scan(reader, predicate));
+    assertEquals(7, predicate.getSkippedBlocks());
+
+    // but not the newer ones, which could mask the cells of the following blocks
+    predicate = new HFileBlockStats.ScanPredicate(stats,
+        TimeRange.between(BASE_TS + 2, BASE_TS + 3), null, false, null, false);
+    assertEquals(expected(0, 2, DELETE_BLOCK), scan(reader, predicate));
+
+    // no block after the last one
+    predicate = new HFileBlockStats.ScanPredicate(stats, TimeRange.from(BASE_TS + BLOCKS), null,
+        false, null, false);
+    assertEquals(expected(0), scan(reader, predicate));
+    reader.close();
+  }
+
+  @Test
+  public void testSkipByColumnRange() throws IOException {
+    HFile.Reader reader = openFile(writeFile("column-range", true));
+    HFileBlockStats stats = HFileBlockStats.load(reader);
+
+    HFileBlockStats.ScanPredicate predicate = new HFileBlockStats.ScanPredicate(stats,
+        TimeRange.allTime(), Bytes.toBytes("q2"), false, Bytes.toBytes("q4"), true);
+    assertEquals(expected(0, 3, 4, DELETE_BLOCK), scan(reader, predicate));
+
+    predicate = new HFileBlockStats.ScanPredicate(stats, TimeRange.allTime(), null, false,
+        Bytes.toBytes("q2"), false);
+    assertEquals(expected(0, 1, DELETE_BLOCK), scan(reader, predicate));
+
+    predicate = new HFileBlockStats.ScanPredicate(stats, TimeRange.allTime(), Bytes.toBytes("q8"),
+        true, null, false);
+    assertEquals(expected(0, DELETE_BLOCK, 8, 9), scan(reader, predicate));
+    reader.close();
+  }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.io.hfile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Collections;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.testclassification.IOTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ IOTests.class, SmallTests.class })
+public class TestHotKeyRanges {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestHotKeyRanges.class);
+
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private static KeyValue toKV(char row) {
+    return new KeyValue(Bytes.toBytes(String.valueOf(row)), Bytes.toBytes("family"),
+        Bytes.toBytes("qualifier"), Bytes.toBytes("value"));
+  }
+
+  private Path writeFile(String name) throws IOException {
+    Path path = new Path(TEST_UTIL.getDataTestDir(), name);
+    FSDataOutputStream out = TEST_UTIL.getTestFileSystem().create(path);
+    // three cells per block
+    HFileContext context =
+        new HFileContextBuilder().withBlockSize(toKV('a').getLength() * 3).build();
+    HFile.Writer writer = HFile.getWriterFactoryNoCache(TEST_UTIL.getConfiguration())
+        .withOutputStream(out).withFileContext(context)
+        .withComparator(CellComparatorImpl.COMPARATOR).create();
+    for (char row = 'a'; row <= 'z'; row++) {
+      writer.append(toKV(row));
+    }
+    writer.close();
+    out.close();
+    return path;
+  }
+
+  @Test
+  public void testRangesOfCachedBlocks() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    LruBlockCache cache = new LruBlockCache(32 * 1024 * 1024, 1024);
+    HFile.Reader reader = HFile.createReader(TEST_UTIL.getTestFileSystem(),
+      writeFile("hot.hfile"), new CacheConfig(conf, cache), true, conf);
+    try {
+      assertNull(HotKeyRanges.create(cache, Collections.singletonList(reader), 1024 * 1024,
+        Long.MAX_VALUE));
+
+      // Bring the block holding 'm', 'n' and 'o' into the cache
+      HFileScanner scanner = reader.getScanner(true, true);
+      assertEquals(0, scanner.seekTo(toKV('n')));
+      scanner.close();
+
+      HotKeyRanges ranges =
+          HotKeyRanges.create(cache, Collections.singletonList(reader), 1024 * 1024,
+            Long.MAX_VALUE);
+      assertNotNull(ranges);
+      assertTrue(ranges.overlaps(toKV('n'), toKV('n')));
+      assertTrue(ranges.overlaps(toKV('k'), toKV('m')));
+      assertTrue(ranges.overlaps(toKV('o'), toKV('q')));
+      assertTrue(ranges.overlaps(toKV('a'), toKV('z')));
+      assertFalse(ranges.overlaps(toKV('a'), toKV('l')));
+      assertFalse(ranges.overlaps(toKV('p'), toKV('z')));
+    } finally {
+      reader.close(true);
+    }
+  }
+
+  @Test
+  public void testBudget() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    LruBlockCache cache = new LruBlockCache(32 * 1024 * 1024, 1024);
+    HFile.Reader reader = HFile.createReader(TEST_UTIL.getTestFileSystem(),
+      writeFile("budget.hfile"), new CacheConfig(conf, cache), true, conf);
+    try {
+      HFileScanner scanner = reader.getScanner(true, true);
+      assertTrue(scanner.seekTo());
+      scanner.close();
+
+      HotKeyRanges ranges = HotKeyRanges.create(cache, Collections.singletonList(reader), 100,
+        Long.MAX_VALUE);
+      assertNotNull(ranges);
+      assertFalse(ranges.shouldCacheBlock(toKV('x'), toKV('z'), 10));
+      assertTrue(ranges.shouldCacheBlock(toKV('a'), toKV('c'), 60));
+      assertEquals(40, ranges.getRemainingBudget());
+      assertFalse(ranges.shouldCacheBlock(toKV('a'), toKV('c'), 60));
+      assertTrue(ranges.shouldCacheBlock(toKV('b'), toKV('b'), 40));
+      assertEquals(0, ranges.getRemainingBudget());
+    } finally {
+      reader.close(true);
+    }
+  }
+
+  @Test
+  public void testMaxScannedBlocks() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    LruBlockCache cache = new LruBlockCache(32 * 1024 * 1024, 1024);
+    HFile.Reader other = HFile.createReader(TEST_UTIL.getTestFileSystem(),
+      writeFile("other.hfile"), new CacheConfig(conf, cache), true, conf);
+    HFile.Reader reader = HFile.createReader(TEST_UTIL.getTestFileSystem(),
+      writeFile("scanned.hfile"), new CacheConfig(conf, cache), true, conf);
+    try {
+      // Fill the cache with the blocks of another file, and one block of ours
+      HFileScanner scanner = other.getScanner(true, true);
+      assertTrue(scanner.seekTo());
+      while (scanner.next()) {
+      }
+      scanner.close();
+      scanner = reader.getScanner(true, true);
+      assertEquals(0, scanner.seekTo(toKV('n')));
+      scanner.close();
+
+      assertNull(HotKeyRanges.create(cache, Collections.singletonList(reader), 1024 * 1024, 0));
+      assertNotNull(HotKeyRanges.create(cache, Collections.singletonList(reader), 1024 * 1024,
+        cache.getBlockCount()));
+    } finally {
+      reader.close(true);
+      other.close(true);
+    }
+  }
+}
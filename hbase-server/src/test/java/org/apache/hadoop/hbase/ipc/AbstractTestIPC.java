@@ -40,10 +40,13 @@ import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellScanner;
 import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompatibilityFactory;
 import org.apache.hadoop.hbase.DoNotRetryIOException;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.Server;
+import org.apache.hadoop.hbase.Waiter;
+import org.apache.hadoop.hbase.codec.KeyValueCodec;
 import org.apache.hadoop.hbase.ipc.RpcServer.BlockingServiceAndInterface;
 import org.apache.hbase.thirdparty.com.google.protobuf.ServiceException;
 import org.apache.hadoop.hbase.shaded.ipc.protobuf.generated.TestProtos.EchoRequestProto;
@@ -54,6 +57,7 @@ import org.apache.hadoop.hbase.shaded.ipc.protobuf.generated.TestProtos.PauseReq
 import org.apache.hadoop.hbase.shaded.ipc.protobuf.generated.TestRpcServiceProtos.TestProtobufRpcProto.BlockingInterface;
 import org.apache.hadoop.hbase.shaded.ipc.protobuf.generated.TestRpcServiceProtos.TestProtobufRpcProto.Interface;
 import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.test.MetricsAssertHelper;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.util.StringUtils;
@@ -150,6 +154,88 @@ public abstract class AbstractTestIPC {
     }
   }
 
+  private static final MetricsAssertHelper METRICS_HELPER =
+      CompatibilityFactory.getInstance(MetricsAssertHelper.class);
+
+  private static List<Cell> createCells(int count) {
+    List<Cell> cells = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      cells.add(CELL);
+    }
+    return cells;
+  }
+
+  private static int getCellBlockSize(List<Cell> cells) throws IOException {
+    return new CellBlockBuilder(CONF)
+        .buildCellBlock(new KeyValueCodec(), null, CellUtil.createCellScanner(cells)).remaining();
+  }
+
+  /**
+   * @return the number of bytes the server sent for the response to the echo of {@code cells}
+   */
+  private static long echo(RpcServer rpcServer, AbstractRpcClient<?> client, List<Cell> cells)
+      throws Exception {
+    MetricsHBaseServerSource source = rpcServer.getMetrics().getMetricsSource();
+    long sentBytes = METRICS_HELPER.getCounter(MetricsHBaseServerSource.SENT_BYTES_NAME, source);
+    BlockingInterface stub = newBlockingStub(client, rpcServer.getListenerAddress());
+    HBaseRpcController pcrc = new HBaseRpcControllerImpl(CellUtil.createCellScanner(cells));
+    String message = "hello";
+    assertEquals(message,
+      stub.echo(pcrc, EchoRequestProto.newBuilder().setMessage(message).build()).getMessage());
+    int index = 0;
+    CellScanner cellScanner = pcrc.cellScanner();
+    assertNotNull(cellScanner);
+    while (cellScanner.advance()) {
+      assertEquals(CELL, cellScanner.current());
+      index++;
+    }
+    assertEquals(cells.size(), index);
+    // the server counts the bytes once they are written, which may be after we read them
+    Waiter.waitFor(CONF, 10000, () -> METRICS_HELPER
+        .getCounter(MetricsHBaseServerSource.SENT_BYTES_NAME, source) > sentBytes);
+    return METRICS_HELPER.getCounter(MetricsHBaseServerSource.SENT_BYTES_NAME, source) -
+        sentBytes;
+  }
+
+  @Test
+  public void testCellBlockResponseCompression() throws Exception {
+    Configuration serverConf = new Configuration(CONF);
+    int minSize = 1024;
+    serverConf.setInt(RpcServer.CELL_BLOCK_COMPRESSION_MIN_SIZE, minSize);
+    List<Cell> smallCells = createCells(10);
+    List<Cell> largeCells = createCells(100);
+    int smallSize = getCellBlockSize(smallCells);
+    int largeSize = getCellBlockSize(largeCells);
+    assertTrue(smallSize < minSize);
+    assertTrue(largeSize >= minSize);
+    RpcServer rpcServer = createRpcServer(null, "testRpcServer",
+        Lists.newArrayList(new RpcServer.BlockingServiceAndInterface(
+            SERVICE, null)), new InetSocketAddress("localhost", 0), serverConf,
+        new FifoRpcScheduler(serverConf, 1));
+    try {
+      rpcServer.start();
+      Configuration conf = HBaseConfiguration.create();
+      conf.set(RpcClient.CELL_BLOCK_RESPONSE_COMPRESSION_KEY, "gz");
+      try (AbstractRpcClient<?> client = createRpcClient(conf)) {
+        assertTrue(echo(rpcServer, client, largeCells) < largeSize);
+        // not worth compressing
+        assertTrue(echo(rpcServer, client, smallCells) > smallSize);
+      }
+      // the server can not load the codec, so it does not compress
+      conf.set(RpcClient.CELL_BLOCK_RESPONSE_COMPRESSION_KEY, "lzo");
+      try (AbstractRpcClient<?> client = createRpcClient(conf)) {
+        assertTrue(echo(rpcServer, client, largeCells) > largeSize);
+      }
+      // the client does not know the algorithm, so it does not offer it
+      conf.set(RpcClient.CELL_BLOCK_RESPONSE_COMPRESSION_KEY, "unknown");
+      try (AbstractRpcClient<?> client = createRpcClient(conf)) {
+        assertTrue(echo(rpcServer, client, largeCells) > largeSize);
+      }
+    } finally {
+      rpcServer.stop();
+    }
+  }
+
   protected abstract AbstractRpcClient<?> createRpcClientRTEDuringConnectionSetup(
       Configuration conf) throws IOException;
 
@@ -18,6 +18,9 @@
 
 package org.apache.hadoop.hbase.ipc;
 
+import java.util.Collections;
+import java.util.Map;
+
 public class MetricsHBaseServerWrapperStub implements MetricsHBaseServerWrapper{
   @Override
   public long getTotalQueueSize() {
@@ -118,4 +121,14 @@ public class MetricsHBaseServerWrapperStub implements MetricsHBaseServerWrapper{
   public int getActiveMetaPriorityRpcHandlerCount() {
     return 1;
   }
+
+  @Override
+  public Map<String, Long> getTenantCallCounts() {
+    return Collections.singletonMap("user", 7L);
+  }
+
+  @Override
+  public Map<String, Long> getTenantQueueTimes() {
+    return Collections.singletonMap("user", 70L);
+  }
 }
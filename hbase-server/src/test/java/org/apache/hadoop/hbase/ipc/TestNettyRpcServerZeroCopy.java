@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.io.ByteBuffAllocator;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RPCTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests the responses of {@link NettyRpcServer} which send the large cells from their blocks, see
+ * {@link NettyRpcServer#ZERO_COPY_RESPONSE_CONF_KEY}.
+ */
+@Category({ RPCTests.class, MediumTests.class })
+public class TestNettyRpcServerZeroCopy {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestNettyRpcServerZeroCopy.class);
+
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f1");
+  private static final byte[] LARGE_COL = Bytes.toBytes("large");
+  private static final byte[] SMALL_COL = Bytes.toBytes("small");
+  private static final int ROWS = 100;
+
+  @Rule
+  public TestName name = new TestName();
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    TEST_UTIL.getConfiguration().set(RpcServerFactory.CUSTOM_RPC_SERVER_IMPL_CONF_KEY,
+      NettyRpcServer.class.getName());
+    TEST_UTIL.getConfiguration().setBoolean(NettyRpcServer.ZERO_COPY_RESPONSE_CONF_KEY, true);
+    TEST_UTIL.getConfiguration().setInt(NettyRpcServer.ZERO_COPY_RESPONSE_MIN_CELL_SIZE_KEY, 1024);
+    TEST_UTIL.startMiniCluster();
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    TEST_UTIL.shutdownMiniCluster();
+  }
+
+  private static byte[] largeValue(int i) {
+    byte[] value = new byte[8 * 1024];
+    for (int j = 0; j < value.length; j++) {
+      value[j] = (byte) (i + j);
+    }
+    return value;
+  }
+
+  /**
+   * Creates a table with small blocks, so that a response references the cells of many of them.
+   */
+  private Table createTable() throws Exception {
+    TableName tableName = TableName.valueOf(name.getMethodName());
+    TEST_UTIL.getAdmin().createTable(TableDescriptorBuilder.newBuilder(tableName)
+        .setColumnFamily(
+          ColumnFamilyDescriptorBuilder.newBuilder(FAMILY).setBlocksize(16 * 1024).build())
+        .build());
+    Table table = TEST_UTIL.getConnection().getTable(tableName);
+    List<Put> puts = new ArrayList<>(ROWS);
+    for (int i = 0; i < ROWS; i++) {
+      puts.add(new Put(Bytes.toBytes(i)).addColumn(FAMILY, LARGE_COL, largeValue(i))
+          .addColumn(FAMILY, SMALL_COL, Bytes.toBytes("info " + i)));
+    }
+    table.put(puts);
+    return table;
+  }
+
+  private static void assertRow(int rownum, Result r) {
+    assertEquals(rownum, Bytes.toInt(r.getRow()));
+    assertArrayEquals(largeValue(rownum), r.getValue(FAMILY, LARGE_COL));
+    assertEquals("info " + rownum, Bytes.toString(r.getValue(FAMILY, SMALL_COL)));
+  }
+
+  private static void assertScan(Table table) throws Exception {
+    int rowcnt = 0;
+    try (ResultScanner rs = table.getScanner(new Scan().setCaching(16))) {
+      for (Result r : rs) {
+        assertRow(rowcnt++, r);
+      }
+    }
+    assertEquals(ROWS, rowcnt);
+    assertRow(42, table.get(new Get(Bytes.toBytes(42))));
+  }
+
+  private static void waitForBuffersReturned() throws Exception {
+    ByteBuffAllocator allocator = TEST_UTIL.getMiniHBaseCluster().getRegionServer(0)
+        .getRpcServer().getByteBuffAllocator();
+    TEST_UTIL.waitFor(10000,
+      () -> allocator.getFreeBufferCount() == allocator.getTotalBufferCount());
+  }
+
+  @Test
+  public void testScan() throws Exception {
+    try (Table table = createTable()) {
+      // the memstore cells are copied
+      assertScan(table);
+      TEST_UTIL.flush(table.getName());
+      // the large cells are sent from the blocks read, then from the block cache
+      assertScan(table);
+      assertScan(table);
+    }
+    waitForBuffersReturned();
+  }
+
+  @Test
+  public void testCloseWithBlocksPinned() throws Exception {
+    try (Table table = createTable()) {
+      TEST_UTIL.flush(table.getName());
+      // the last response closes the scanner, its blocks are released once it has been written
+      try (ResultScanner rs =
+          table.getScanner(new Scan().setCaching(ROWS).setLimit(ROWS / 2))) {
+        for (int i = 0; i < ROWS / 2; i++) {
+          Result r = rs.next();
+          assertNotNull(r);
+          assertRow(i, r);
+        }
+      }
+      // the client closes a scanner which has sent some rows
+      try (ResultScanner rs = table.getScanner(new Scan().setCaching(5))) {
+        for (int i = 0; i < 12; i++) {
+          assertRow(i, rs.next());
+        }
+      }
+      assertScan(table);
+    }
+    waitForBuffersReturned();
+  }
+}
@@ -83,6 +83,8 @@ public class TestRpcMetrics {
     HELPER.assertGauge("numCallsInWriteQueue", 50, serverSource);
     HELPER.assertGauge("numCallsInReadQueue", 50, serverSource);
     HELPER.assertGauge("numCallsInScanQueue", 2, serverSource);
+    HELPER.assertCounter("tenant_user_numCallsTaken", 7, serverSource);
+    HELPER.assertCounter("tenant_user_queueCallTimeTotal", 70, serverSource);
   }
 
   /**
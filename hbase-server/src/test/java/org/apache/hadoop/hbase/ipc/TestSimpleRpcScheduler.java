@@ -40,6 +40,7 @@ import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.HBaseConfiguration;
@@ -227,6 +228,148 @@ public class TestSimpleRpcScheduler {
     assertEquals(3, ImmutableSet.copyOf(handlerThreads.values()).size());
   }
 
+  @Test
+  public void testElasticHandlers() throws Exception {
+    Configuration schedConf = HBaseConfiguration.create();
+    schedConf.setBoolean(RpcExecutor.ELASTIC_HANDLERS_CONF_KEY, true);
+    PriorityFunction qosFunction = mock(PriorityFunction.class);
+    SimpleRpcScheduler scheduler =
+        new SimpleRpcScheduler(schedConf, 2, 0, 0, qosFunction, HConstants.HIGH_QOS);
+    scheduler.init(CONTEXT);
+    scheduler.start();
+    try {
+      CountDownLatch release = new CountDownLatch(1);
+      CountDownLatch done = new CountDownLatch(5);
+      Set<Thread> threads = new HashSet<>();
+      for (int i = 0; i < 5; i++) {
+        CallRunner task = createMockTask();
+        doAnswer(invocation -> {
+          synchronized (threads) {
+            threads.add(Thread.currentThread());
+          }
+          release.await();
+          done.countDown();
+          return null;
+        }).when(task).run();
+        scheduler.dispatch(task);
+      }
+      // the handler count bounds the calls running at once, the others wait in the queue
+      while (scheduler.getActiveGeneralRpcHandlerCount() < 2) {
+        Thread.sleep(10);
+      }
+      Thread.sleep(100);
+      assertEquals(2, scheduler.getActiveGeneralRpcHandlerCount());
+      assertEquals(3, scheduler.getGeneralQueueLength());
+      release.countDown();
+      done.await();
+      synchronized (threads) {
+        assertTrue(threads.size() >= 2);
+      }
+      while (scheduler.getActiveGeneralRpcHandlerCount() > 0) {
+        Thread.sleep(10);
+      }
+      assertEquals(0, scheduler.getGeneralQueueLength());
+    } finally {
+      scheduler.stop();
+    }
+  }
+
+  @Test
+  public void testElasticHandlersRunOtherCallsWhileBlocked() throws Exception {
+    Configuration schedConf = HBaseConfiguration.create();
+    schedConf.setBoolean(RpcExecutor.ELASTIC_HANDLERS_CONF_KEY, true);
+    PriorityFunction qosFunction = mock(PriorityFunction.class);
+    SimpleRpcScheduler scheduler =
+        new SimpleRpcScheduler(schedConf, 1, 0, 0, qosFunction, HConstants.HIGH_QOS);
+    scheduler.init(CONTEXT);
+    scheduler.start();
+    try {
+      CountDownLatch blocked = new CountDownLatch(1);
+      CountDownLatch otherDone = new CountDownLatch(1);
+      CallRunner blockingTask = createMockTask();
+      doAnswer(invocation -> {
+        boolean blocking = RpcExecutor.beginBlocking();
+        try {
+          assertTrue(blocking);
+          // a nested section does nothing
+          assertFalse(RpcExecutor.beginBlocking());
+          blocked.countDown();
+          // only completes if the other call runs while this one waits
+          assertTrue(otherDone.await(10, TimeUnit.SECONDS));
+        } finally {
+          RpcExecutor.endBlocking(blocking);
+        }
+        return null;
+      }).when(blockingTask).run();
+      CallRunner otherTask = createMockTask();
+      doAnswer(invocation -> {
+        otherDone.countDown();
+        return null;
+      }).when(otherTask).run();
+      scheduler.dispatch(blockingTask);
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+      scheduler.dispatch(otherTask);
+      verify(blockingTask, timeout(10000)).run();
+      verify(otherTask, timeout(10000)).run();
+      assertEquals(0, otherDone.getCount());
+      // outside of a handler
+      assertFalse(RpcExecutor.beginBlocking());
+    } finally {
+      scheduler.stop();
+    }
+  }
+
+  @Test
+  public void testElasticHandlersMoreWritersThanPermits() throws Exception {
+    Configuration schedConf = HBaseConfiguration.create();
+    schedConf.setBoolean(RpcExecutor.ELASTIC_HANDLERS_CONF_KEY, true);
+    PriorityFunction qosFunction = mock(PriorityFunction.class);
+    SimpleRpcScheduler scheduler =
+        new SimpleRpcScheduler(schedConf, 1, 0, 0, qosFunction, HConstants.HIGH_QOS);
+    scheduler.init(CONTEXT);
+    scheduler.start();
+    try {
+      int writers = 4;
+      CountDownLatch synced = new CountDownLatch(writers);
+      CountDownLatch written = new CountDownLatch(writers);
+      List<CallRunner> tasks = new ArrayList<>();
+      for (int i = 0; i < writers; i++) {
+        CallRunner task = createMockTask();
+        doAnswer(invocation -> {
+          // like a group commit, the sync completes once all the writers have appended
+          boolean blocking = RpcExecutor.beginBlocking();
+          try {
+            synced.countDown();
+            assertTrue(synced.await(10, TimeUnit.SECONDS));
+          } finally {
+            RpcExecutor.endBlocking(blocking);
+          }
+          // like the mvcc completion, waits for the other writers without releasing the permit
+          written.countDown();
+          assertTrue(written.await(10, TimeUnit.SECONDS));
+          return null;
+        }).when(task).run();
+        tasks.add(task);
+        scheduler.dispatch(task);
+      }
+      for (CallRunner task : tasks) {
+        verify(task, timeout(10000)).run();
+      }
+      assertTrue(written.await(10, TimeUnit.SECONDS));
+      // the permits taken over the limit were not given back, so there is still one
+      CountDownLatch otherDone = new CountDownLatch(1);
+      CallRunner otherTask = createMockTask();
+      doAnswer(invocation -> {
+        otherDone.countDown();
+        return null;
+      }).when(otherTask).run();
+      scheduler.dispatch(otherTask);
+      assertTrue(otherDone.await(10, TimeUnit.SECONDS));
+    } finally {
+      scheduler.stop();
+    }
+  }
+
   private CallRunner createMockTask() {
     ServerCall call = mock(ServerCall.class);
     CallRunner task = mock(CallRunner.class);
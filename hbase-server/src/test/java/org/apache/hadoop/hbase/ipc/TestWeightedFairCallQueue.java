@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.ipc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.testclassification.RPCTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.hbase.thirdparty.com.google.protobuf.Message;
+
+import org.apache.hadoop.hbase.shaded.protobuf.ProtobufUtil;
+import org.apache.hadoop.hbase.shaded.protobuf.RequestConverter;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.Action;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.MultiRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.RegionAction;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ScanRequest;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.HBaseProtos.RegionSpecifier.RegionSpecifierType;
+
+@Category({ RPCTests.class, SmallTests.class })
+public class TestWeightedFairCallQueue {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestWeightedFairCallQueue.class);
+
+  private Configuration conf;
+  private WeightedFairCallQueue.TenantQueueTimes queueTimes;
+
+  @Before
+  public void setUp() {
+    conf = HBaseConfiguration.create();
+    queueTimes = new WeightedFairCallQueue.TenantQueueTimes();
+  }
+
+  private static CallRunner call(String user, Message param) {
+    ServerCall call = mock(ServerCall.class);
+    when(call.getRequestUserName()).thenReturn(Optional.of(user));
+    when(call.getParam()).thenReturn(param);
+    CallRunner callRunner = mock(CallRunner.class);
+    when(callRunner.getRpcCall()).thenReturn(call);
+    return callRunner;
+  }
+
+  private static MultiRequest multiGet(int gets) throws Exception {
+    RegionAction.Builder regionAction = RegionAction.newBuilder()
+        .setRegion(RequestConverter.buildRegionSpecifier(RegionSpecifierType.ENCODED_REGION_NAME,
+          Bytes.toBytes("region")));
+    for (int i = 0; i < gets; i++) {
+      regionAction.addAction(Action.newBuilder().setIndex(i)
+          .setGet(ProtobufUtil.toGet(new Get(Bytes.toBytes(i)))));
+    }
+    return MultiRequest.newBuilder().addRegionAction(regionAction).build();
+  }
+
+  private static List<String> takeUsers(WeightedFairCallQueue queue, int count)
+      throws InterruptedException {
+    List<String> users = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      users.add(queue.take().getRpcCall().getRequestUserName().get());
+    }
+    return users;
+  }
+
+  @Test
+  public void testLargeCallsDoNotStarveSmallOnes() throws Exception {
+    WeightedFairCallQueue queue = new WeightedFairCallQueue(100, conf, queueTimes);
+    MultiRequest multi = multiGet(50);
+    for (int i = 0; i < 10; i++) {
+      assertTrue(queue.offer(call("heavy", multi)));
+    }
+    for (int i = 0; i < 3; i++) {
+      assertTrue(queue.offer(call("light", null)));
+    }
+    assertEquals(13, queue.size());
+    List<String> users = takeUsers(queue, 3);
+    assertEquals(3, users.stream().filter("light"::equals).count());
+    assertEquals(10, takeUsers(queue, 10).stream().filter("heavy"::equals).count());
+    assertNull(queue.poll());
+    assertNull(queue.poll(10, TimeUnit.MILLISECONDS));
+
+    assertEquals(10L, (long) queueTimes.getCallCounts().get("heavy"));
+    assertEquals(3L, (long) queueTimes.getCallCounts().get("light"));
+    assertTrue(queueTimes.getQueueTimes().containsKey("heavy"));
+  }
+
+  @Test
+  public void testEqualTenantsAlternate() throws Exception {
+    WeightedFairCallQueue queue = new WeightedFairCallQueue(100, conf, queueTimes);
+    for (int i = 0; i < 3; i++) {
+      queue.offer(call("a", null));
+    }
+    for (int i = 0; i < 3; i++) {
+      queue.offer(call("b", null));
+    }
+    List<String> users = takeUsers(queue, 6);
+    for (int i = 0; i < 6; i += 2) {
+      assertFalse(users.get(i).equals(users.get(i + 1)));
+    }
+  }
+
+  @Test
+  public void testWeights() throws Exception {
+    conf.set(WeightedFairCallQueue.WEIGHTS_CONF_KEY, "a:3, invalid, b:x");
+    WeightedFairCallQueue queue = new WeightedFairCallQueue(100, conf, queueTimes);
+    for (int i = 0; i < 6; i++) {
+      queue.offer(call("a", null));
+      queue.offer(call("b", null));
+    }
+    List<String> users = takeUsers(queue, 4);
+    assertEquals(3, users.stream().filter("a"::equals).count());
+  }
+
+  @Test
+  public void testCapacityAndCost() throws Exception {
+    WeightedFairCallQueue queue = new WeightedFairCallQueue(2, conf, queueTimes);
+    CallRunner first = call("a", null);
+    assertTrue(queue.offer(first));
+    assertTrue(queue.offer(call("a", null)));
+    assertFalse(queue.offer(call("a", null)));
+    assertEquals(0, queue.remainingCapacity());
+    assertSame(first, queue.peek());
+
+    assertEquals(1, queue.estimateCost(call("a", null).getRpcCall()));
+    assertEquals(50, queue.estimateCost(call("a", multiGet(50)).getRpcCall()));
+    assertEquals(WeightedFairCallQueue.DEFAULT_SCAN_MAX_COST, queue.estimateCost(
+      call("a", ScanRequest.newBuilder().setNumberOfRows(Integer.MAX_VALUE).build())
+          .getRpcCall()));
+    RpcCall large = call("a", null).getRpcCall();
+    when(large.getSize()).thenReturn(10 * WeightedFairCallQueue.DEFAULT_COST_BYTES);
+    assertEquals(10, queue.estimateCost(large));
+  }
+}
@@ -17,9 +17,14 @@
  */
 package org.apache.hadoop.hbase.master.assignment;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorCompletionService;
@@ -28,9 +33,14 @@ import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.RegionLocations;
+import org.apache.hadoop.hbase.ServerName;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.RegionInfo;
 import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.RegionReplicaUtil;
+import org.apache.hadoop.hbase.master.RegionState.State;
 import org.apache.hadoop.hbase.procedure2.util.StringUtils;
 import org.apache.hadoop.hbase.testclassification.MasterTests;
 import org.apache.hadoop.hbase.testclassification.MediumTests;
@@ -173,6 +183,131 @@ public class TestRegionStates {
         .build();
   }
 
+  private static void setState(RegionStates stateMap, RegionInfo hri, State state,
+      ServerName serverName) {
+    RegionStateNode node = stateMap.getOrCreateRegionStateNode(hri);
+    node.setState(state);
+    node.setRegionLocation(serverName);
+    node.setOpenSeqNum(1);
+  }
+
+  @Test
+  public void testLocateRegions() {
+    final TableName tableName = TableName.valueOf("testLocateRegions");
+    final ServerName server1 = ServerName.valueOf("server1", 16020, 1);
+    final ServerName server2 = ServerName.valueOf("server2", 16020, 1);
+    final RegionStates stateMap = new RegionStates();
+    for (int i = 0; i < 5; i++) {
+      setState(stateMap, createRegionInfo(tableName, i), i == 3 ? State.CLOSED : State.OPEN,
+        i == 3 ? null : server1);
+    }
+    RegionInfo replica =
+      RegionReplicaUtil.getRegionInfoForReplica(createRegionInfo(tableName, 4), 1);
+    setState(stateMap, replica, State.OPEN, server2);
+
+    // stops at the closed region
+    List<RegionLocations> locs =
+      stateMap.locateRegions(tableName, Bytes.add(Bytes.toBytes(1L), Bytes.toBytes("row")), 10);
+    assertEquals(2, locs.size());
+    assertArrayEquals(Bytes.toBytes(1L), locs.get(0).getRegionLocation().getRegion().getStartKey());
+    assertEquals(server1, locs.get(0).getRegionLocation().getServerName());
+    assertArrayEquals(Bytes.toBytes(2L), locs.get(1).getRegionLocation().getRegion().getStartKey());
+
+    assertEquals(2, stateMap.locateRegions(tableName, Bytes.toBytes(0L), 2).size());
+    assertTrue(stateMap.locateRegions(tableName, Bytes.toBytes(3L), 10).isEmpty());
+    assertTrue(stateMap.locateRegions(tableName, Bytes.toBytes("a"), 10).isEmpty());
+    assertTrue(
+      stateMap.locateRegions(TableName.valueOf("testLocateOther"), Bytes.toBytes(1L), 10)
+        .isEmpty());
+
+    locs = stateMap.locateRegions(tableName, Bytes.toBytes(4L), 10);
+    assertEquals(1, locs.size());
+    assertEquals(2, locs.get(0).numNonNullElements());
+    assertEquals(server2, locs.get(0).getRegionLocation(1).getServerName());
+  }
+
+  @Test
+  public void testLocateRegionsInMetaOrder() {
+    final TableName tableName = TableName.valueOf("testLocateRegionsInMetaOrder");
+    final ServerName server = ServerName.valueOf("server1", 16020, 1);
+    final RegionStates stateMap = new RegionStates();
+    // "a!" sorts before "a," in byte order, so its region name sorts before the one of "a"
+    byte[][] startKeys = new byte[][] { HConstants.EMPTY_START_ROW, Bytes.toBytes("a"),
+      Bytes.toBytes("a!"), Bytes.toBytes("b") };
+    for (int i = 0; i < startKeys.length; i++) {
+      setState(stateMap, RegionInfoBuilder.newBuilder(tableName).setStartKey(startKeys[i])
+        .setEndKey(i + 1 < startKeys.length ? startKeys[i + 1] : HConstants.EMPTY_END_ROW)
+        .build(), State.OPEN, server);
+    }
+    List<RegionLocations> locs = stateMap.locateRegions(tableName, Bytes.toBytes("a"), 10);
+    assertEquals(3, locs.size());
+    for (int i = 0; i < locs.size(); i++) {
+      assertArrayEquals(startKeys[i + 1],
+        locs.get(i).getRegionLocation().getRegion().getStartKey());
+    }
+    locs = stateMap.locateRegions(tableName, Bytes.toBytes("a!x"), 1);
+    assertEquals(1, locs.size());
+    assertArrayEquals(startKeys[2], locs.get(0).getRegionLocation().getRegion().getStartKey());
+    locs = stateMap.locateRegions(tableName, Bytes.toBytes("a "), 1);
+    assertEquals(1, locs.size());
+    assertArrayEquals(startKeys[1], locs.get(0).getRegionLocation().getRegion().getStartKey());
+  }
+
+  @Test
+  public void testLocationChanges() {
+    final TableName tableName = TableName.valueOf("testLocationChanges");
+    final RegionStates stateMap = new RegionStates();
+    long version = stateMap.getLocationVersion();
+    assertTrue(stateMap.getLocationChangesSince(version).isEmpty());
+    assertNull(stateMap.getLocationChangesSince(version - 1));
+    assertNull(stateMap.getLocationChangesSince(version + 1));
+
+    RegionInfo hri0 = createRegionInfo(tableName, 0);
+    RegionInfo hri1 = createRegionInfo(tableName, 1);
+    stateMap.locationChanged(hri0);
+    stateMap.locationChanged(hri1);
+    assertEquals(version + 2, stateMap.getLocationVersion());
+    assertEquals(2, stateMap.getLocationChangesSince(version).size());
+    List<byte[]> changed = stateMap.getLocationChangesSince(version + 1);
+    assertEquals(1, changed.size());
+    assertArrayEquals(hri1.getRegionName(), changed.get(0));
+    assertTrue(stateMap.getLocationChangesSince(version + 2).isEmpty());
+
+    // the old changes are forgotten
+    for (int i = 0; i < RegionStates.MAX_LOCATION_CHANGES; i++) {
+      stateMap.locationChanged(hri0);
+    }
+    assertNull(stateMap.getLocationChangesSince(version + 1));
+    assertEquals(RegionStates.MAX_LOCATION_CHANGES,
+      stateMap.getLocationChangesSince(version + 2).size());
+  }
+
+  @Test
+  public void testMirroredLocationChanges() {
+    final TableName tableName = TableName.valueOf("testMirroredLocationChanges");
+    byte[] name0 = createRegionInfo(tableName, 0).getRegionName();
+    byte[] name1 = createRegionInfo(tableName, 1).getRegionName();
+    LocationChangeLog log = new LocationChangeLog(2, 0);
+    log.reset(100);
+    assertNull(log.getChangesSince(99));
+    assertTrue(log.getChangesSince(100).isEmpty());
+
+    // a mirrored batch of changes shares the version of the active master
+    log.add(110, Arrays.asList(name0, name1));
+    assertEquals(110, log.getVersion());
+    assertEquals(2, log.getChangesSince(100).size());
+    assertTrue(log.getChangesSince(110).isEmpty());
+    log.add(120, Collections.emptyList());
+    assertEquals(120, log.getVersion());
+    assertTrue(log.getChangesSince(110).isEmpty());
+
+    // forgetting one change of a batch forgets the batch
+    log.add(name0);
+    assertEquals(121, log.getVersion());
+    assertNull(log.getChangesSince(100));
+    assertEquals(1, log.getChangesSince(110).size());
+  }
+
   @Test
   public void testPerf() throws Exception {
     final TableName TABLE_NAME = TableName.valueOf("testPerf");
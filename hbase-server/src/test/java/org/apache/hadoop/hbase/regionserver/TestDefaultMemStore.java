@@ -155,6 +155,39 @@ public class TestDefaultMemStore {
     }
   }
 
+  @Test
+  public void testSampleActiveRows() {
+    assertTrue(this.memstore.sampleActiveRows(10).isEmpty());
+    byte[] qf = Bytes.toBytes("q");
+    for (int i = 9; i >= 0; i--) {
+      this.memstore.add(new KeyValue(Bytes.toBytes(String.format("row%05d", i)), FAMILY, qf, qf),
+        null);
+    }
+    List<byte[]> rows = this.memstore.sampleActiveRows(100);
+    assertEquals(10, rows.size());
+    for (int i = 0; i < 10; i++) {
+      assertEquals(String.format("row%05d", i), Bytes.toString(rows.get(i)));
+    }
+
+    // once the segment outgrows the reservoir, the samples stay bounded and spread over all rows
+    int count = 3 * MutableSegment.ROW_SAMPLES;
+    for (int i = 10; i < count; i++) {
+      this.memstore.add(new KeyValue(Bytes.toBytes(String.format("row%05d", i)), FAMILY, qf, qf),
+        null);
+    }
+    rows = this.memstore.sampleActiveRows(count);
+    assertEquals(MutableSegment.ROW_SAMPLES, rows.size());
+    byte[] middle = Bytes.toBytes(String.format("row%05d", count / 2));
+    int below = 0;
+    for (int i = 0; i < rows.size(); i++) {
+      assertTrue(i == 0 || Bytes.compareTo(rows.get(i - 1), rows.get(i)) <= 0);
+      below += Bytes.compareTo(rows.get(i), middle) < 0 ? 1 : 0;
+    }
+    assertTrue(below > MutableSegment.ROW_SAMPLES / 4);
+    assertTrue(below < 3 * MutableSegment.ROW_SAMPLES / 4);
+    assertEquals(100, this.memstore.sampleActiveRows(100).size());
+  }
+
   /**
    * Test memstore snapshot happening while scanning.
    * @throws IOException
@@ -51,6 +51,7 @@ import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
 import org.apache.hadoop.hbase.client.RegionInfo;
 import org.apache.hadoop.hbase.client.RegionInfoBuilder;
 import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
 import org.apache.hadoop.hbase.io.FSDataInputStreamWrapper;
 import org.apache.hadoop.hbase.io.HFileLink;
 import org.apache.hadoop.hbase.io.encoding.DataBlockEncoding;
@@ -613,6 +614,92 @@ public class TestHStoreFile extends HBaseTestCase {
     bloomWriteRead(writer, fs);
   }
 
+  @Test
+  public void testBlockedBloomFilter() throws Exception {
+    FileSystem fs = FileSystem.getLocal(conf);
+    conf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE, (float) 0.01);
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_BLOCKED, true);
+    try {
+      Path f = new Path(ROOT_DIR, getName());
+      HFileContext meta = new HFileContextBuilder().withBlockSize(BLOCKSIZE_SMALL)
+          .withChecksumType(CKTYPE).withBytesPerCheckSum(CKBYTES).build();
+      StoreFileWriter writer = new StoreFileWriter.Builder(conf, cacheConf, this.fs)
+          .withFilePath(f).withBloomType(BloomType.ROW).withMaxKeyCount(2000)
+          .withFileContext(meta).build();
+      bloomWriteRead(writer, fs);
+    } finally {
+      conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_BLOCKED, false);
+    }
+  }
+
+  @Test
+  public void testRowPrefixBloomFilter() throws Exception {
+    FileSystem fs = FileSystem.getLocal(conf);
+    conf.setFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE, (float) 0.01);
+    conf.setBoolean(BloomFilterFactory.IO_STOREFILE_BLOOM_ENABLED, true);
+    conf.setInt(BloomFilterFactory.IO_STOREFILE_BLOOM_PREFIX_LENGTH, 9);
+    float err = conf.getFloat(BloomFilterFactory.IO_STOREFILE_BLOOM_ERROR_RATE, 0);
+    Path f = new Path(ROOT_DIR, getName());
+    try {
+      HFileContext meta = new HFileContextBuilder().withBlockSize(BLOCKSIZE_SMALL)
+          .withChecksumType(CKTYPE).withBytesPerCheckSum(CKBYTES).build();
+      StoreFileWriter writer = new StoreFileWriter.Builder(conf, cacheConf, this.fs)
+          .withFilePath(f).withBloomType(BloomType.ROW).withMaxKeyCount(20000)
+          .withFileContext(meta).build();
+      // only the rows whose first 9 bytes, i.e. i / 10, are even
+      long now = System.currentTimeMillis();
+      for (int i = 0; i < 20000; i++) {
+        if ((i / 10) % 2 == 0) {
+          writer.append(new KeyValue(Bytes.toBytes(String.format(localFormatter, i)),
+              Bytes.toBytes("family"), Bytes.toBytes("col"), now, Bytes.toBytes("value")));
+        }
+      }
+      writer.close();
+    } finally {
+      conf.setInt(BloomFilterFactory.IO_STOREFILE_BLOOM_PREFIX_LENGTH, 0);
+    }
+
+    ReaderContext context = new ReaderContextBuilder().withFileSystemAndPath(fs, f).build();
+    HFileInfo fileInfo = new HFileInfo(context, conf);
+    StoreFileReader reader =
+        new StoreFileReader(context, fileInfo, cacheConf, new AtomicInteger(0), conf);
+    fileInfo.initMetaAndIndex(reader.getHFileReader());
+    reader.loadFileInfo();
+    reader.loadBloomfilter();
+    StoreFileScanner scanner = getStoreFileScanner(reader, false, false);
+    HStore store = mock(HStore.class);
+    when(store.getColumnFamilyDescriptor()).thenReturn(ColumnFamilyDescriptorBuilder.of("family"));
+
+    int falsePos = 0;
+    int falseNeg = 0;
+    for (int i = 0; i < 2000; i++) {
+      byte[] prefix = Bytes.toBytes(String.format("%09d", i));
+      // a scan of the whole table, only bounded by the prefix filter
+      Scan prefixFilterScan = new Scan().setFilter(new PrefixFilter(prefix));
+      // a short range scan, within the prefix
+      Scan rangeScan = new Scan().withStartRow(Bytes.add(prefix, Bytes.toBytes("2")))
+          .withStopRow(Bytes.add(prefix, Bytes.toBytes("5")));
+      for (Scan scan : Arrays.asList(prefixFilterScan, rangeScan)) {
+        boolean exists = scanner.shouldUseScanner(scan, store, Long.MIN_VALUE);
+        if (i % 2 == 0) {
+          if (!exists) falseNeg++;
+        } else {
+          if (exists) falsePos++;
+        }
+      }
+    }
+    // a prefix shorter than the one of the filter cannot be checked
+    assertTrue(scanner.shouldUseScanner(new Scan().setFilter(
+      new PrefixFilter(Bytes.toBytes("00000001"))), store, Long.MIN_VALUE));
+    reader.close(true);
+    fs.delete(f, true);
+    assertEquals("False negatives: " + falseNeg, 0, falseNeg);
+    int maxFalsePos = (int) (2 * 2 * 1000 * err);
+    assertTrue("Too many false positives: " + falsePos + " (err=" + err
+        + ", expected no more than " + maxFalsePos + ")", falsePos <= maxFalsePos);
+  }
+
   @Test
   public void testDeleteFamilyBloomFilter() throws Exception {
     FileSystem fs = FileSystem.getLocal(conf);
@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.executor.ExecutorType;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+/**
+ * Tests which seeks read their store files in parallel.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestParallelSeek {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestParallelSeek.class);
+
+  private static final HBaseTestingUtility TEST_UTIL = new HBaseTestingUtility();
+
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+
+  private static final byte[] QUALIFIER = Bytes.toBytes("q");
+
+  private static final byte[] ROW = Bytes.toBytes("row");
+
+  private static final int MIN_FILES = 4;
+
+  private static final int FILES = 6;
+
+  @Rule
+  public TestName name = new TestName();
+
+  @BeforeClass
+  public static void setUpBeforeClass() throws Exception {
+    Configuration conf = TEST_UTIL.getConfiguration();
+    conf.setBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, true);
+    conf.setInt(StoreScanner.STORESCANNER_PARALLEL_SEEK_MIN_FILES, MIN_FILES);
+    TEST_UTIL.startMiniCluster(1);
+  }
+
+  @AfterClass
+  public static void tearDownAfterClass() throws Exception {
+    TEST_UTIL.shutdownMiniCluster();
+  }
+
+  private static long getParallelSeekTaskCount() {
+    return TEST_UTIL.getMiniHBaseCluster().getRegionServer(0).getExecutorService()
+        .getExecutorThreadPool(ExecutorType.RS_PARALLEL_SEEK).getTaskCount();
+  }
+
+  /**
+   * Creates a table whose only region has one store file per put of {@link #ROW}. Every file also
+   * has a row of its own. If {@code sameTimestamp} is false, the cells of file i have timestamp
+   * i + 1.
+   */
+  private Table createTableWithFiles(int files, boolean sameTimestamp) throws IOException {
+    TableName tableName = TableName.valueOf(name.getMethodName());
+    TEST_UTIL.getAdmin().createTable(TableDescriptorBuilder.newBuilder(tableName)
+        .setCompactionEnabled(false).setColumnFamily(ColumnFamilyDescriptorBuilder
+            .newBuilder(FAMILY).setBloomFilterType(BloomType.ROW).build())
+        .build());
+    Table table = TEST_UTIL.getConnection().getTable(tableName);
+    for (int i = 0; i < files; i++) {
+      long ts = sameTimestamp ? 1 : i + 1;
+      table.put(new Put(ROW).addColumn(FAMILY, QUALIFIER, ts, Bytes.toBytes(i)));
+      table.put(new Put(Bytes.toBytes("row-" + i)).addColumn(FAMILY, QUALIFIER, ts,
+        Bytes.toBytes(i)));
+      TEST_UTIL.flush(tableName);
+    }
+    HRegion region = TEST_UTIL.getMiniHBaseCluster().getRegions(tableName).get(0);
+    assertEquals(files, region.getStore(FAMILY).getStorefilesCount());
+    return table;
+  }
+
+  private static int countRows(Table table, Scan scan) throws IOException {
+    int count = 0;
+    try (ResultScanner scanner = table.getScanner(scan)) {
+      while (scanner.next() != null) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testMinFiles() throws Exception {
+    try (Table table = createTableWithFiles(FILES, false)) {
+      // all the files have to be read, the last one by the calling thread
+      long taskCount = getParallelSeekTaskCount();
+      assertEquals(FILES + 1, countRows(table, new Scan()));
+      assertEquals(taskCount + FILES - 1, getParallelSeekTaskCount());
+
+      // the time range leaves fewer files than needed for a parallel seek
+      taskCount = getParallelSeekTaskCount();
+      assertEquals(MIN_FILES, countRows(table, new Scan().setTimeRange(1, MIN_FILES)));
+      assertEquals(taskCount, getParallelSeekTaskCount());
+    }
+  }
+
+  @Test
+  public void testNotEnoughFiles() throws Exception {
+    try (Table table = createTableWithFiles(MIN_FILES - 1, false)) {
+      long taskCount = getParallelSeekTaskCount();
+      assertEquals(MIN_FILES, countRows(table, new Scan()));
+      assertEquals(1, table.get(new Get(ROW).addColumn(FAMILY, QUALIFIER)).size());
+      assertEquals(taskCount, getParallelSeekTaskCount());
+    }
+  }
+
+  @Test
+  public void testLazyGet() throws Exception {
+    try (Table table = createTableWithFiles(FILES, true)) {
+      // a get with explicit columns seeks lazily, the pending seeks of all the files which may
+      // have the row are enforced at once
+      long taskCount = getParallelSeekTaskCount();
+      Result result = table.get(new Get(ROW).addColumn(FAMILY, QUALIFIER));
+      assertEquals(FILES - 1, Bytes.toInt(result.getValue(FAMILY, QUALIFIER)));
+      assertEquals(taskCount + FILES - 1, getParallelSeekTaskCount());
+
+      // the Bloom filters rule out the other files, so there is no parallel seek
+      taskCount = getParallelSeekTaskCount();
+      result = table.get(new Get(Bytes.toBytes("row-2")).addColumn(FAMILY, QUALIFIER));
+      assertEquals(2, Bytes.toInt(result.getValue(FAMILY, QUALIFIER)));
+      assertEquals(taskCount, getParallelSeekTaskCount());
+    }
+  }
+}
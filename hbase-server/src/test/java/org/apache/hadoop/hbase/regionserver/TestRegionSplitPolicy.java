@@ -24,15 +24,20 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
 import org.apache.hadoop.hbase.HBaseConfiguration;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.HRegionInfo;
 import org.apache.hadoop.hbase.HTableDescriptor;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.io.hfile.HFile;
 import org.apache.hadoop.hbase.testclassification.RegionServerTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.apache.hadoop.hbase.util.Bytes;
@@ -345,6 +350,61 @@ public class TestRegionSplitPolicy {
         Bytes.toString(policy.getSplitPoint()));
   }
 
+  @Test
+  public void testLoadBalancingSplitPolicy() throws IOException {
+    conf.set(HConstants.HBASE_REGION_SPLIT_POLICY_KEY, LoadBalancingSplitPolicy.class.getName());
+    LoadBalancingSplitPolicy policy =
+        (LoadBalancingSplitPolicy) RegionSplitPolicy.create(mockRegion, conf);
+    assertNull(policy.estimateSplitPoint());
+
+    // 100 bytes of old data evenly spread over rows a to j.
+    List<Cell> keys = new ArrayList<>();
+    for (char row = 'a'; row <= 'j'; row++) {
+      keys.add(new KeyValue(Bytes.toBytes(String.valueOf(row)), 0L));
+    }
+    HFile.Reader hfileReader = Mockito.mock(HFile.Reader.class);
+    Mockito.doReturn(keys).when(hfileReader).getRootIndexKeys();
+    StoreFileReader reader = Mockito.mock(StoreFileReader.class);
+    Mockito.doReturn(100L).when(reader).length();
+    Mockito.doReturn(hfileReader).when(reader).getHFileReader();
+    HStoreFile sf = Mockito.mock(HStoreFile.class);
+    Mockito.doReturn(reader).when(sf).getReader();
+    HStore mockStore = Mockito.mock(HStore.class);
+    Mockito.doReturn(true).when(mockStore).canSplit();
+    Mockito.doReturn(Collections.singletonList(sf)).when(mockStore).getStorefiles();
+    Mockito.doReturn(Collections.emptyList()).when(mockStore).sampleMemStoreRows(Mockito.anyInt());
+    stores.add(mockStore);
+
+    LoadBalancingSplitPolicy.SplitPointEstimate estimate = policy.estimateSplitPoint();
+    assertEquals("f", Bytes.toString(estimate.getSplitPoint()));
+    assertEquals(0.5, estimate.getFirstDaughterSizeFraction(), 0.01);
+    assertEquals("f", Bytes.toString(policy.getSplitPoint()));
+
+    // Another 100 bytes just written to rows i and j move the split point towards them.
+    Mockito.doReturn(Arrays.asList(Bytes.toBytes("i"), Bytes.toBytes("i"), Bytes.toBytes("j"),
+      Bytes.toBytes("j"))).when(mockStore).sampleMemStoreRows(Mockito.anyInt());
+    Mockito.doReturn(new MemStoreSize(100, 100, 0, 4)).when(mockStore).getMemStoreSize();
+    estimate = policy.estimateSplitPoint();
+    assertEquals("j", Bytes.toString(estimate.getSplitPoint()));
+    assertEquals(0.7, estimate.getFirstDaughterSizeFraction(), 0.01);
+    assertEquals(0.5, estimate.getFirstDaughterWritesFraction(), 0.01);
+
+    // Unless only the size is balanced.
+    conf.setFloat(LoadBalancingSplitPolicy.WRITE_WEIGHT_KEY, 0f);
+    HRegion otherRegion = Mockito.mock(HRegion.class);
+    Mockito.doReturn(htd).when(otherRegion).getTableDescriptor();
+    Mockito.doReturn(mockRegion.getRegionInfo()).when(otherRegion).getRegionInfo();
+    Mockito.doReturn(stores).when(otherRegion).getStores();
+    policy = (LoadBalancingSplitPolicy) RegionSplitPolicy.create(otherRegion, conf);
+    estimate = policy.estimateSplitPoint();
+    assertEquals("i", Bytes.toString(estimate.getSplitPoint()));
+    assertEquals(0.4, estimate.getFirstDaughterSizeFraction(), 0.01);
+
+    // Not splittable with references.
+    Mockito.doReturn(false).when(mockStore).canSplit();
+    assertNull(policy.estimateSplitPoint());
+  }
+
   @Test
   public void testDelimitedKeyPrefixRegionSplitPolicy() throws IOException {
     HTableDescriptor myHtd = new HTableDescriptor(TableName.valueOf(name.getMethodName()));
@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionContext;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequestImpl;
+import org.apache.hadoop.hbase.regionserver.throttle.NoLimitThroughputController;
+import org.apache.hadoop.hbase.security.AccessDeniedException;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.CommonFSUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TestName;
+
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestRemoteCompaction {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestRemoteCompaction.class);
+
+  private static final HBaseTestingUtility UTIL = HBaseTestingUtility.createLocalHTU();
+
+  private static final byte[] FAMILY = Bytes.toBytes("cf");
+
+  @Rule
+  public TestName name = new TestName();
+
+  private RemoteCompactionServer server;
+  private RemoteCompactionClient client;
+  private HRegion region;
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = UTIL.getConfiguration();
+    conf.set(RemoteCompactionServer.BIND_ADDRESS_KEY, "localhost");
+    conf.setInt(RemoteCompactionServer.PORT_KEY, 0);
+    conf.setBoolean(RemoteCompactionClient.FALLBACK_KEY, false);
+    // the regions are created under the test data dir
+    Configuration serverConf = new Configuration(conf);
+    CommonFSUtils.setRootDir(serverConf, UTIL.getDataTestDir());
+    server = new RemoteCompactionServer(serverConf);
+    server.start();
+    client = createClient();
+    TableDescriptor htd = TableDescriptorBuilder.newBuilder(TableName.valueOf(name.getMethodName()))
+        .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY)).build();
+    region = UTIL.createLocalHRegion(htd, null, null);
+  }
+
+  private RemoteCompactionClient createClient() throws IOException {
+    return new RemoteCompactionClient(UTIL.getConfiguration(), HConstants.CLUSTER_ID_DEFAULT,
+        Collections.singletonList(ServerName.valueOf("localhost",
+          server.getListenerAddress().getPort(), ServerName.NON_STARTCODE)));
+  }
+
+  private void loadStoreFiles() throws IOException {
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 10; j++) {
+        region.put(new Put(Bytes.toBytes(i * 10 + j)).addColumn(FAMILY, FAMILY, Bytes.toBytes(j)));
+      }
+      region.flush(true);
+    }
+    region.delete(new Delete(Bytes.toBytes(0)));
+    region.flush(true);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    HBaseTestingUtility.closeRegionAndWAL(region);
+    client.close();
+    server.stop();
+  }
+
+  @Test
+  public void testCompactOnCompactionServer() throws Exception {
+    loadStoreFiles();
+    HStore store = region.getStore(FAMILY);
+    assertEquals(4, store.getStorefilesCount());
+    store.triggerMajorCompaction();
+    Optional<CompactionContext> compaction = store.requestCompaction();
+    assertTrue(compaction.isPresent());
+    assertTrue(client.canOffload(store, compaction.get()));
+    assertTrue(region.compact(client.offload(store, compaction.get()), store,
+      NoLimitThroughputController.INSTANCE, null));
+
+    assertEquals(1, store.getStorefilesCount());
+    List<Cell> cells = new ArrayList<>();
+    try (RegionScanner scanner = region.getScanner(new Scan())) {
+      List<Cell> row = new ArrayList<>();
+      boolean more;
+      do {
+        more = scanner.next(row);
+        cells.addAll(row);
+        row.clear();
+      } while (more);
+    }
+    assertEquals(29, cells.size());
+    // the delete marker has been dropped by the major compaction
+    assertEquals(29, store.getStorefiles().iterator().next().getReader().getEntries());
+  }
+
+  @Test
+  public void testSelectWithStoreEngine() throws Exception {
+    loadStoreFiles();
+    HStore store = region.getStore(FAMILY);
+    CompactionContext compaction = store.getStoreEngine().createCompaction();
+    assertTrue(client.canOffload(store, compaction));
+    CompactionContext remote = client.offload(store, compaction);
+    assertTrue(remote.select(Collections.emptyList(), true, false, true));
+    assertEquals(4, remote.getRequest().getFiles().size());
+    assertTrue(remote.getRequest().isMajor());
+    assertEquals(compaction.getRequest(), remote.getRequest());
+  }
+
+  @Test
+  public void testOnlySuperUsersCompact() throws Exception {
+    loadStoreFiles();
+    HStore store = region.getStore(FAMILY);
+    CompactionRequestImpl request = new CompactionRequestImpl(store.getStorefiles());
+    User user = User.createUserForTesting(UTIL.getConfiguration(), "nobody", new String[0]);
+    user.runAs((PrivilegedExceptionAction<Void>) () -> {
+      try (RemoteCompactionClient userClient = createClient()) {
+        userClient.compact(store, request);
+        fail("Only superusers may compact");
+      } catch (AccessDeniedException e) {
+        // expected
+      }
+      return null;
+    });
+    assertEquals(4, store.getStorefilesCount());
+  }
+}
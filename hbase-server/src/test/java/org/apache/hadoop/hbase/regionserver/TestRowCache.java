@@ -0,0 +1,216 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestRowCache {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestRowCache.class);
+
+  private static final HBaseTestingUtility UTIL = new HBaseTestingUtility();
+
+  private static final TableName TABLE_NAME = TableName.valueOf("TestRowCache");
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[] Q1 = Bytes.toBytes("q1");
+  private static final byte[] Q2 = Bytes.toBytes("q2");
+  private static final byte[] ROW = Bytes.toBytes("row");
+
+  private RowCache cache;
+  private HRegion region;
+  private RowCache.RegionRowCache regionCache;
+
+  @Before
+  public void setUp() throws IOException {
+    TableDescriptor desc = TableDescriptorBuilder.newBuilder(TABLE_NAME)
+        .setValue(RowCache.ROW_CACHE_ENABLED_KEY, "true")
+        .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY)).build();
+    region = UTIL.createLocalHRegion(desc, null, null);
+    cache = new RowCache(1024 * 1024);
+    region.setRowCache(cache);
+    regionCache = region.getRowCache();
+    assertNotNull(regionCache);
+    region.put(new Put(ROW).addColumn(FAMILY, Q1, Bytes.toBytes("v1"))
+        .addColumn(FAMILY, Q2, Bytes.toBytes("v2")));
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    if (!region.isClosed()) {
+      region.close(true);
+    }
+    UTIL.cleanupTestDir();
+  }
+
+  private void assertValue(Get get, byte[] qualifier, String expected) throws IOException {
+    Result result = region.get(get);
+    assertEquals(expected, Bytes.toString(result.getValue(FAMILY, qualifier)));
+  }
+
+  @Test
+  public void testHitAndInvalidateOnMutation() throws IOException {
+    assertValue(new Get(ROW), Q1, "v1");
+    assertEquals(0, regionCache.getHitCount());
+    assertEquals(1, regionCache.getMissCount());
+    assertValue(new Get(ROW), Q1, "v1");
+    assertEquals(1, regionCache.getHitCount());
+
+    // a Get of other columns is cached separately
+    assertValue(new Get(ROW).addColumn(FAMILY, Q2), Q2, "v2");
+    assertEquals(2, regionCache.getMissCount());
+    assertEquals(1, region.get(new Get(ROW).addColumn(FAMILY, Q2)).size());
+    assertEquals(2, regionCache.getHitCount());
+
+    region.put(new Put(ROW).addColumn(FAMILY, Q1, Bytes.toBytes("v1-2")));
+    assertValue(new Get(ROW), Q1, "v1-2");
+    assertValue(new Get(ROW), Q1, "v1-2");
+
+    region.delete(new Delete(ROW).addColumns(FAMILY, Q1));
+    assertTrue(region.get(new Get(ROW).addColumn(FAMILY, Q1)).isEmpty());
+    assertValue(new Get(ROW), Q2, "v2");
+
+    region.increment(new Increment(ROW).addColumn(FAMILY, Q1, 5));
+    assertEquals(5, Bytes.toLong(region.get(new Get(ROW)).getValue(FAMILY, Q1)));
+  }
+
+  @Test
+  public void testConcurrentIncrements() throws Exception {
+    byte[] counter = Bytes.toBytes("counter");
+    byte[] increments = Bytes.toBytes("increments");
+    region.put(new Put(ROW).addColumn(FAMILY, counter, Bytes.toBytes(0L)));
+    int threads = 4;
+    int count = 100;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(() -> {
+          for (int j = 0; j < count; j++) {
+            // the read caches the row, the check under the row lock must not use it
+            for (;;) {
+              byte[] value = region.get(new Get(ROW).addColumn(FAMILY, counter))
+                  .getValue(FAMILY, counter);
+              if (region.checkAndMutate(ROW, FAMILY, counter, CompareOperator.EQUAL,
+                new BinaryComparator(value), null, new Put(ROW).addColumn(FAMILY, counter,
+                  Bytes.toBytes(Bytes.toLong(value) + 1)))) {
+                break;
+              }
+            }
+            region.increment(new Increment(ROW).addColumn(FAMILY, increments, 1));
+            region.get(new Get(ROW).addColumn(FAMILY, increments));
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertTrue(regionCache.getHitCount() > 0);
+    Result result = region.get(new Get(ROW).addColumn(FAMILY, counter));
+    assertEquals(threads * count, Bytes.toLong(result.getValue(FAMILY, counter)));
+    result = region.get(new Get(ROW).addColumn(FAMILY, increments));
+    assertEquals(threads * count, Bytes.toLong(result.getValue(FAMILY, increments)));
+  }
+
+  @Test
+  public void testInvalidateOnFlushAndCompaction() throws IOException {
+    assertValue(new Get(ROW), Q1, "v1");
+    assertEquals(1, cache.size());
+    region.flush(true);
+    assertValue(new Get(ROW), Q1, "v1");
+    assertEquals(2, regionCache.getMissCount());
+    region.put(new Put(ROW).addColumn(FAMILY, Q1, Bytes.toBytes("v1-2")));
+    region.flush(true);
+    region.compact(true);
+    assertValue(new Get(ROW), Q1, "v1-2");
+    assertEquals(3, regionCache.getMissCount());
+  }
+
+  @Test
+  public void testNotCacheable() throws IOException {
+    Get filtered = new Get(ROW).setFilter(
+      new ValueFilter(CompareOperator.EQUAL, new BinaryComparator(Bytes.toBytes("v2"))));
+    assertEquals(1, region.get(filtered).size());
+    assertValue(new Get(ROW).readVersions(2), Q1, "v1");
+    assertValue(new Get(ROW).setTimeRange(0, Long.MAX_VALUE - 1), Q1, "v1");
+    assertEquals(0, regionCache.getHitCount() + regionCache.getMissCount());
+    assertFalse(RowCache.isCacheable(filtered));
+    assertTrue(RowCache.isCacheable(new Get(ROW).addFamily(FAMILY)));
+  }
+
+  @Test
+  public void testDisabled() throws IOException {
+    HRegion other = UTIL.createLocalHRegion(TableDescriptorBuilder
+        .newBuilder(TableName.valueOf("TestRowCacheDisabled"))
+        .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY)).build(), null, null);
+    try {
+      other.setRowCache(cache);
+      assertNull(other.getRowCache());
+    } finally {
+      other.close(true);
+    }
+    assertNull(RowCache.create(UTIL.getConfiguration()));
+  }
+
+  @Test
+  public void testClose() throws IOException {
+    assertValue(new Get(ROW), Q1, "v1");
+    assertEquals(1, cache.size());
+    region.close(true);
+    assertEquals(0, cache.size());
+  }
+}
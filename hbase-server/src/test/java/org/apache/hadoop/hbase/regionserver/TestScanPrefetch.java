@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.ipc.HBaseRpcController;
+import org.apache.hadoop.hbase.ipc.HBaseRpcControllerImpl;
+import org.apache.hadoop.hbase.ipc.RpcClient;
+import org.apache.hadoop.hbase.ipc.RpcClientFactory;
+import org.apache.hadoop.hbase.security.User;
+import org.apache.hadoop.hbase.testclassification.MediumTests;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import org.apache.hadoop.hbase.shaded.protobuf.RequestConverter;
+import org.apache.hadoop.hbase.shaded.protobuf.ResponseConverter;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ClientService;
+import org.apache.hadoop.hbase.shaded.protobuf.generated.ClientProtos.ScanResponse;
+
+/**
+ * Scans with {@link RSRpcServices#SCAN_PREFETCH_ENABLED_KEY} set must return the same rows as
+ * without it.
+ */
+@Category({ RegionServerTests.class, MediumTests.class })
+public class TestScanPrefetch {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestScanPrefetch.class);
+
+  private static final HBaseTestingUtility UTIL = new HBaseTestingUtility();
+
+  private static final TableName TABLE_NAME = TableName.valueOf("TestScanPrefetch");
+  private static final byte[] FAMILY = Bytes.toBytes("f");
+  private static final byte[][] QUALIFIERS = { Bytes.toBytes("q1"), Bytes.toBytes("q2") };
+  private static final int ROWS = 500;
+
+  private static Table table;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    UTIL.getConfiguration().setBoolean(RSRpcServices.SCAN_PREFETCH_ENABLED_KEY, true);
+    UTIL.getConfiguration().setLong(RSRpcServices.SCAN_PREFETCH_MAX_RESULT_SIZE_KEY, 4096);
+    UTIL.startMiniCluster(1);
+    table = UTIL.createTable(TABLE_NAME, FAMILY);
+    List<Put> puts = new ArrayList<>();
+    for (int i = 0; i < ROWS; i++) {
+      Put put = new Put(row(i));
+      for (byte[] qualifier : QUALIFIERS) {
+        put.addColumn(FAMILY, qualifier, Bytes.toBytes("value-" + i));
+      }
+      puts.add(put);
+    }
+    table.put(puts);
+    UTIL.flush(TABLE_NAME);
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    table.close();
+    UTIL.shutdownMiniCluster();
+  }
+
+  private static byte[] row(int i) {
+    return Bytes.toBytes(String.format("row-%05d", i));
+  }
+
+  private static void assertRows(List<Result> results, int first, int count) {
+    assertEquals(count, results.size());
+    for (int i = 0; i < count; i++) {
+      Result result = results.get(i);
+      assertEquals(Bytes.toString(row(first + i)), Bytes.toString(result.getRow()));
+      assertEquals(QUALIFIERS.length, result.size());
+    }
+  }
+
+  private static List<Result> scan(Scan scan) throws IOException {
+    List<Result> results = new ArrayList<>();
+    try (ResultScanner scanner = table.getScanner(scan)) {
+      for (Result result; (result = scanner.next()) != null;) {
+        results.add(result);
+      }
+    }
+    return results;
+  }
+
+  @Test
+  public void testScan() throws IOException {
+    assertRows(scan(new Scan().setCaching(7)), 0, ROWS);
+    assertRows(scan(new Scan().setCaching(1)), 0, ROWS);
+    // the prefetched batches are smaller than the requested ones
+    assertRows(scan(new Scan().setCaching(1000)), 0, ROWS);
+    assertRows(scan(new Scan().withStartRow(row(100)).withStopRow(row(300)).setCaching(13)), 100,
+      200);
+  }
+
+  @Test
+  public void testScanWithSizeLimits() throws IOException {
+    assertRows(scan(new Scan().setCaching(50).setMaxResultSize(200)), 0, ROWS);
+    // partial rows are returned and read ahead as well
+    List<Result> results = new ArrayList<>();
+    try (ResultScanner scanner =
+        table.getScanner(new Scan().setAllowPartialResults(true).setMaxResultSize(1))) {
+      for (Result result; (result = scanner.next()) != null;) {
+        results.add(result);
+      }
+    }
+    assertEquals(ROWS * QUALIFIERS.length, results.size());
+  }
+
+  @Test
+  public void testScanWithLimitAndEarlyClose() throws IOException {
+    assertRows(scan(new Scan().setCaching(7).setLimit(120)), 0, 120);
+    // close a scanner with a batch read ahead
+    try (ResultScanner scanner = table.getScanner(new Scan().setCaching(5))) {
+      for (int i = 0; i < 12; i++) {
+        assertNotNull(scanner.next());
+      }
+    }
+    assertRows(scan(new Scan().setCaching(11)), 0, ROWS);
+  }
+
+  @Test
+  public void testLowerCachingMidScan() throws Exception {
+    HRegionServer rs = UTIL.getMiniHBaseCluster().getRegionServer(0);
+    byte[] regionName = rs.getRegions(TABLE_NAME).get(0).getRegionInfo().getRegionName();
+    try (RpcClient rpcClient = RpcClientFactory.createClient(UTIL.getConfiguration(),
+      UTIL.getMiniHBaseCluster().getMaster().getClusterId())) {
+      ClientService.BlockingInterface stub = ClientService.newBlockingStub(
+        rpcClient.createBlockingRpcChannel(rs.getServerName(), User.getCurrent(), 0));
+      HBaseRpcController hrc = new HBaseRpcControllerImpl();
+      ScanResponse resp =
+          stub.scan(hrc, RequestConverter.buildScanRequest(regionName, new Scan(), 20, false));
+      List<Result> results = new ArrayList<>();
+      Collections.addAll(results, ResponseConverter.getResults(hrc.cellScanner(), resp));
+      long scannerId = resp.getScannerId();
+      long nextCallSeq = 1;
+      // the first batch read ahead has 20 rows, most of them are kept for the next requests
+      while (resp.getMoreResults() && resp.getMoreResultsInRegion()) {
+        hrc.reset();
+        resp = stub.scan(hrc,
+          RequestConverter.buildScanRequest(scannerId, 3, false, nextCallSeq++, false, false, -1));
+        Collections.addAll(results, ResponseConverter.getResults(hrc.cellScanner(), resp));
+      }
+      assertRows(results, 0, ROWS);
+    }
+  }
+
+  @Test
+  public void testAsyncScan() throws Exception {
+    try (AsyncConnection conn =
+        ConnectionFactory.createAsyncConnection(UTIL.getConfiguration()).get()) {
+      List<Result> results =
+          conn.getTable(TABLE_NAME).scanAll(new Scan().setCaching(9)).get();
+      assertRows(results, 0, ROWS);
+    }
+  }
+}
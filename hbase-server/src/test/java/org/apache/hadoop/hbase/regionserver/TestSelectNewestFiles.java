@@ -0,0 +1,82 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Tests which store files a lazy get reads first, see
+ * {@link StoreScanner#selectNewestFiles(List, int)}.
+ */
+@Category({ RegionServerTests.class, SmallTests.class })
+public class TestSelectNewestFiles {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestSelectNewestFiles.class);
+
+  private static StoreFileScanner file(long minTimestamp, long maxTimestamp) {
+    StoreFileReader reader = mock(StoreFileReader.class);
+    when(reader.getMinTimestamp()).thenReturn(minTimestamp);
+    when(reader.getMaxTimestamp()).thenReturn(maxTimestamp);
+    StoreFileScanner scanner = mock(StoreFileScanner.class);
+    when(scanner.getReader()).thenReturn(reader);
+    return scanner;
+  }
+
+  @Test
+  public void testTimeOrderedFiles() {
+    // one file per hour, as flushed by a time series workload
+    List<StoreFileScanner> files = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      files.add(file(i * 3600, i * 3600 + 3599));
+    }
+    assertEquals(Arrays.asList(files.get(11)), StoreScanner.selectNewestFiles(files, 1));
+    assertEquals(Arrays.asList(files.get(11)), StoreScanner.selectNewestFiles(files, 3));
+    // all of them are likely to be read
+    assertEquals(files, StoreScanner.selectNewestFiles(files, 12));
+    assertEquals(files, StoreScanner.selectNewestFiles(files, Integer.MAX_VALUE));
+  }
+
+  @Test
+  public void testOverlappingFiles() {
+    StoreFileScanner compacted = file(0, 10000);
+    StoreFileScanner newest = file(9000, 12000);
+    StoreFileScanner overlapping = file(8000, 9500);
+    StoreFileScanner older = file(5000, 8999);
+    // a bulk loaded file without time range metadata may hold any timestamp
+    StoreFileScanner unknown = file(0, Long.MAX_VALUE);
+    List<StoreFileScanner> files = Arrays.asList(compacted, older, overlapping, newest);
+    assertEquals(Arrays.asList(compacted, overlapping, newest),
+      StoreScanner.selectNewestFiles(files, 1));
+    files = Arrays.asList(compacted, older, overlapping, newest, unknown);
+    assertEquals(files, StoreScanner.selectNewestFiles(files, 1));
+  }
+}
@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.regionserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.CellComparatorImpl;
+import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.io.TimeRange;
+import org.apache.hadoop.hbase.regionserver.compactions.CompactionRequestImpl;
+import org.apache.hadoop.hbase.regionserver.compactions.TimePartitionedCompactionPolicy;
+import org.apache.hadoop.hbase.testclassification.RegionServerTests;
+import org.apache.hadoop.hbase.testclassification.SmallTests;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+import org.apache.hadoop.hbase.util.ManualEnvironmentEdge;
+import org.junit.After;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+@Category({RegionServerTests.class, SmallTests.class})
+public class TestTimePartitionedStoreEngine {
+
+  @ClassRule
+  public static final HBaseClassTestRule CLASS_RULE =
+      HBaseClassTestRule.forClass(TestTimePartitionedStoreEngine.class);
+
+  private static final long WINDOW = 1000;
+
+  @After
+  public void tearDown() {
+    EnvironmentEdgeManager.reset();
+  }
+
+  @Test
+  public void testPartitionsPruneScans() throws Exception {
+    TimePartitionedStoreEngine se = createEngine(Long.MAX_VALUE);
+    HStoreFile f1 = createFile(1, 0, 999);
+    HStoreFile f2 = createFile(2, 1000, 1500);
+    HStoreFile f3 = createFile(3, 1100, 1999);
+    HStoreFile spanning = createFile(4, 500, 2500);
+    HStoreFile f5 = createFile(5, 2000, 2100);
+    se.getStoreFileManager().loadFiles(al(f1, f2, f3, spanning, f5));
+    TimePartitionedStoreFileManager sfm =
+        (TimePartitionedStoreFileManager) se.getStoreFileManager();
+    assertEquals(3, sfm.getPartitionCount());
+
+    assertEquals(Arrays.asList(f2, f3, spanning),
+      new ArrayList<>(getFilesForScan(sfm, TimeRange.between(1000, 2000))));
+    assertEquals(Arrays.asList(f1, spanning),
+      new ArrayList<>(getFilesForScan(sfm, TimeRange.between(0, 1000))));
+    assertEquals(Arrays.asList(spanning, f5),
+      new ArrayList<>(getFilesForScan(sfm, TimeRange.from(2050))));
+    assertEquals(5, getFilesForScan(sfm, TimeRange.allTime()).size());
+  }
+
+  @Test
+  public void testCompactionStaysWithinPartition() throws Exception {
+    TimePartitionedStoreEngine se = createEngine(Long.MAX_VALUE);
+    // three small files in the first partition, two in the second
+    List<HStoreFile> files = al(createFile(1, 0, 10), createFile(2, 1000, 1010),
+      createFile(3, 20, 30), createFile(4, 1020, 1030), createFile(5, 40, 50));
+    se.getStoreFileManager().loadFiles(files);
+    TimePartitionedCompactionPolicy policy =
+        (TimePartitionedCompactionPolicy) se.getCompactionPolicy();
+    assertTrue(se.needsCompaction(Collections.emptyList()));
+    CompactionRequestImpl request =
+        policy.selectCompaction(se.getStoreFileManager().getStorefiles(), new ArrayList<>(), false,
+          false, false);
+    assertEquals(Arrays.asList(files.get(0), files.get(2), files.get(4)),
+      new ArrayList<>(request.getFiles()));
+    assertFalse(request.isMajor());
+    assertFalse(request.isAllFiles());
+  }
+
+  @Test
+  public void testSpanningFilesAreSplitFirst() throws Exception {
+    TimePartitionedStoreEngine se = createEngine(Long.MAX_VALUE);
+    HStoreFile spanning = createFile(1, 0, 5000);
+    se.getStoreFileManager().loadFiles(al(spanning, createFile(2, 6000, 6010)));
+    assertTrue(se.needsCompaction(Collections.emptyList()));
+    CompactionRequestImpl request =
+        ((TimePartitionedCompactionPolicy) se.getCompactionPolicy()).selectCompaction(
+          se.getStoreFileManager().getStorefiles(), new ArrayList<>(), false, false, false);
+    assertEquals(Collections.singletonList(spanning), new ArrayList<>(request.getFiles()));
+  }
+
+  @Test
+  public void testExpiredPartitionTriggersCompaction() throws Exception {
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    EnvironmentEdgeManager.injectEdge(edge);
+    edge.setValue(10000);
+    TimePartitionedStoreEngine se = createEngine(5000);
+    List<HStoreFile> files = al(createFile(1, 1000, 1100), createFile(2, 9000, 9100));
+    se.getStoreFileManager().loadFiles(files);
+    assertTrue(se.needsCompaction(Collections.emptyList()));
+    Collection<HStoreFile> unneeded =
+        se.getStoreFileManager().getUnneededFiles(edge.currentTime() - 5000, new ArrayList<>());
+    assertEquals(Collections.singletonList(files.get(0)), new ArrayList<>(unneeded));
+
+    // the partition holding the newest file can not be dropped
+    se.getStoreFileManager().loadFiles(al(files.get(1)));
+    edge.setValue(20000);
+    assertFalse(se.needsCompaction(Collections.emptyList()));
+  }
+
+  @Test
+  public void testExpiredPartitionKeptWithoutDeletion() throws Exception {
+    ManualEnvironmentEdge edge = new ManualEnvironmentEdge();
+    EnvironmentEdgeManager.injectEdge(edge);
+    edge.setValue(10000);
+    Configuration conf = createConf();
+    conf.setBoolean("hbase.store.delete.expired.storefile", false);
+    TimePartitionedStoreEngine se = createEngine(conf, 5000);
+    se.getStoreFileManager().loadFiles(al(createFile(1, 1000, 1100), createFile(2, 9000, 9100)));
+    // the store would not drop the expired partition, so there is no point in asking
+    assertFalse(se.needsCompaction(Collections.emptyList()));
+  }
+
+  private static Collection<HStoreFile> getFilesForScan(StoreFileManager sfm,
+      TimeRange timeRange) {
+    return sfm.getFilesForScan(HConstants.EMPTY_START_ROW, true, HConstants.EMPTY_END_ROW, false,
+      timeRange);
+  }
+
+  private static HStoreFile createFile(long seqId, long minTs, long maxTs) throws Exception {
+    HStoreFile sf = mock(HStoreFile.class);
+    StoreFileReader reader = mock(StoreFileReader.class);
+    when(reader.length()).thenReturn(100L);
+    when(reader.getEntries()).thenReturn(10L);
+    when(reader.getMaxTimestamp()).thenReturn(maxTs);
+    when(sf.getReader()).thenReturn(reader);
+    when(sf.getMaxSequenceId()).thenReturn(seqId);
+    when(sf.getMinimumTimestamp()).thenReturn(OptionalLong.of(minTs));
+    when(sf.getMaximumTimestamp()).thenReturn(OptionalLong.of(maxTs));
+    when(sf.getPath()).thenReturn(new Path("file" + seqId));
+    when(sf.getBulkLoadTimestamp()).thenReturn(OptionalLong.empty());
+    return sf;
+  }
+
+  private static Configuration createConf() {
+    Configuration conf = HBaseConfiguration.create();
+    conf.set(StoreEngine.STORE_ENGINE_CLASS_KEY, TimePartitionedStoreEngine.class.getName());
+    conf.setLong(TimePartitionedCompactionPolicy.PARTITION_WINDOW_MILLIS_KEY, WINDOW);
+    conf.setLong(HConstants.MAJOR_COMPACTION_PERIOD, 0);
+    return conf;
+  }
+
+  private static TimePartitionedStoreEngine createEngine(long ttl) throws Exception {
+    return createEngine(createConf(), ttl);
+  }
+
+  private static TimePartitionedStoreEngine createEngine(Configuration conf, long ttl)
+      throws Exception {
+    HStore store = mock(HStore.class);
+    when(store.getBlockingFileCount()).thenReturn(100L);
+    when(store.getStoreFileTtl()).thenReturn(ttl);
+    CellComparatorImpl kvComparator = mock(CellComparatorImpl.class);
+    return (TimePartitionedStoreEngine) StoreEngine.create(store, conf, kvComparator);
+  }
+
+  private static ArrayList<HStoreFile> al(HStoreFile... sfs) {
+    return new ArrayList<>(Arrays.asList(sfs));
+  }
+}
@@ -348,6 +348,64 @@ public class TestStripeCompactionPolicy {
     verifyWholeStripesCompaction(policy, si, 1, 1,    false, null, splitTargetSize);
   }
 
+  @Test
+  public void testAutoBoundariesNewStripes() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(StripeStoreConfig.AUTO_BOUNDARIES_KEY, true);
+    StripeCompactionPolicy policy = createPolicy(conf);
+    // 40 bytes of L0 with a split part size of 10 make 4 stripes, whatever the initial count.
+    List<HStoreFile> l0Files = new ArrayList<>();
+    for (int i = 0; i < 4; ++i) {
+      l0Files.add(createFileWithRootKeys(10, 0, KEY_A, KEY_B, KEY_C, KEY_D));
+    }
+    StripeInformationProvider si = createStripesWithFiles(null, new ArrayList<>(), l0Files);
+    verifyCompaction(policy, si, l0Files, OPEN_KEY, OPEN_KEY,
+      Arrays.asList(OPEN_KEY, KEY_B, KEY_C, KEY_D, OPEN_KEY));
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testAutoBoundariesSplitStripe() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.unset("hbase.hstore.compaction.min.size");
+    conf.setFloat(CompactionConfiguration.HBASE_HSTORE_COMPACTION_RATIO_KEY, 500f);
+    conf.setInt(StripeStoreConfig.MIN_FILES_KEY, 2);
+    conf.setBoolean(StripeStoreConfig.AUTO_BOUNDARIES_KEY, true);
+    StripeCompactionPolicy policy = createPolicy(conf);
+    long now = EnvironmentEdgeManager.currentTime();
+    // Split by size only.
+    List<HStoreFile> files = al(createFileWithRootKeys(12, 0, KEY_A, KEY_B, KEY_C),
+      createFileWithRootKeys(8, 0, KEY_D, KEY_E));
+    StripeInformationProvider si = createStripesWithFiles(new ArrayList<>(),
+      Arrays.asList(files), new ArrayList<>());
+    verifyCompaction(policy, si, files, OPEN_KEY, OPEN_KEY,
+      Arrays.asList(OPEN_KEY, KEY_C, OPEN_KEY));
+    // The recently written keys get a narrower stripe.
+    files = al(createFileWithRootKeys(12, 0, KEY_A, KEY_B, KEY_C),
+      createFileWithRootKeys(8, now, KEY_D, KEY_E));
+    si = createStripesWithFiles(new ArrayList<>(),
+      Arrays.asList(files), new ArrayList<>());
+    verifyCompaction(policy, si, files, OPEN_KEY, OPEN_KEY,
+      Arrays.asList(OPEN_KEY, KEY_D, OPEN_KEY));
+  }
+
+  @Test
+  public void testAutoBoundariesMergeSmallStripes() throws Exception {
+    Configuration conf = HBaseConfiguration.create();
+    conf.setBoolean(StripeStoreConfig.AUTO_BOUNDARIES_KEY, true);
+    StripeCompactionPolicy policy = createPolicy(conf);
+    // The merge size is half of the split part size of 10.
+    StripeInformationProvider si = createStripesWithSizes(0, 0,
+      new Long[] { 8L }, new Long[] { 1L }, new Long[] { 2L, 1L }, new Long[] { 3L });
+    verifyWholeStripesCompaction(policy, si, 1, 2, true, 1, Long.MAX_VALUE);
+    // Nothing to merge if the stripes are big enough.
+    si = createStripesWithSizes(0, 0, new Long[] { 8L }, new Long[] { 4L }, new Long[] { 3L });
+    verifyNoCompaction(policy, si);
+    // Or if deletes cannot be dropped.
+    si = createStripesWithSizes(2, 2, new Long[] { 8L }, new Long[] { 1L }, new Long[] { 1L });
+    verifyNoCompaction(policy, si);
+  }
+
   @SuppressWarnings("unchecked")
   @Test
   public void testMergeExpiredFiles() throws Exception {
@@ -765,6 +823,18 @@ public class TestStripeCompactionPolicy {
     return sf;
   }
 
+  private static HStoreFile createFileWithRootKeys(long size, long maxTimestamp, byte[]... rows)
+      throws Exception {
+    HStoreFile sf = createFile(size);
+    List<Cell> keys = new ArrayList<>();
+    for (byte[] row : rows) {
+      keys.add(new KeyValue(row, 0L));
+    }
+    when(sf.getReader().getHFileReader().getRootIndexKeys()).thenReturn(keys);
+    when(sf.getReader().getMaxTimestamp()).thenReturn(maxTimestamp);
+    return sf;
+  }
+
   private static HStoreFile createFile() throws Exception {
     return createFile(0);
   }
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hbase.util;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.hbase.HBaseCommonTestingUtility;
+import org.apache.hadoop.hbase.HBaseInterfaceAudience;
+import org.apache.hadoop.hbase.nio.ByteBuff;
+import org.apache.hadoop.hbase.nio.SingleByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
+import org.apache.yetus.audience.InterfaceAudience;
+
+import org.apache.hbase.thirdparty.com.google.common.base.Preconditions;
+import org.apache.hbase.thirdparty.com.google.common.base.Stopwatch;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.CommandLine;
+import org.apache.hbase.thirdparty.org.apache.commons.cli.Option;
+
+/**
+ * Tool to compare the lookup cost and the false positive rate of classic and blocked Bloom filter
+ * chunks of the same size. Use a chunk larger than the CPU caches to see the effect of touching a
+ * single cache line per lookup.
+ * Example command:
+ * $ bin/hbase org.apache.hadoop.hbase.util.BloomFilterPerformanceEvaluation
+ *   -keys 1000000 -lookups 10000000 -error 0.01
+ */
+@InterfaceAudience.LimitedPrivate(HBaseInterfaceAudience.TOOLS)
+public class BloomFilterPerformanceEvaluation extends AbstractHBaseTool {
+
+  protected static final HBaseCommonTestingUtility UTIL = new HBaseCommonTestingUtility();
+
+  private static final int DEFAULT_NUM_KEYS = 1000000;
+  private static Option NUM_KEYS_OPT = new Option("keys", true,
+      "Number of keys added to the Bloom filters. Default: " + DEFAULT_NUM_KEYS);
+
+  private static final int DEFAULT_NUM_LOOKUPS = 10000000;
+  private static Option NUM_LOOKUPS_OPT = new Option("lookups", true,
+      "Number of lookups, half of them of added keys. Default: " + DEFAULT_NUM_LOOKUPS);
+
+  private static final double DEFAULT_ERROR_RATE = 0.01;
+  private static Option ERROR_RATE_OPT = new Option("error", true,
+      "Target false positive rate. Default: " + DEFAULT_ERROR_RATE);
+
+  private int numKeys;
+  private int numLookups;
+  private double errorRate;
+
+  @Override
+  protected void addOptions() {
+    addOption(NUM_KEYS_OPT);
+    addOption(NUM_LOOKUPS_OPT);
+    addOption(ERROR_RATE_OPT);
+  }
+
+  @Override
+  protected void processOptions(CommandLine cmd) {
+    numKeys = getOptionAsInt(cmd, NUM_KEYS_OPT.getOpt(), DEFAULT_NUM_KEYS);
+    Preconditions.checkArgument(numKeys > 0, "Invalid number of keys!");
+    numLookups = getOptionAsInt(cmd, NUM_LOOKUPS_OPT.getOpt(), DEFAULT_NUM_LOOKUPS);
+    Preconditions.checkArgument(numLookups > 0, "Invalid number of lookups!");
+    errorRate = getOptionAsDouble(cmd, ERROR_RATE_OPT.getOpt(), DEFAULT_ERROR_RATE);
+    Preconditions.checkArgument(errorRate > 0 && errorRate < 1, "Invalid error rate!");
+  }
+
+  private void evaluate(boolean blocked) {
+    int byteSize = (int) ((BloomFilterUtil.computeBitSize(numKeys, errorRate) + 7) / 8);
+    BloomFilterChunk chunk = BloomFilterUtil.createBySize(byteSize, errorRate, Hash.MURMUR_HASH,
+      0, BloomType.ROW, blocked);
+    chunk.allocBloom();
+    String name = blocked ? "blocked" : "classic";
+
+    Stopwatch watch = Stopwatch.createStarted();
+    byte[] key = new byte[Bytes.SIZEOF_INT];
+    for (int i = 0; i < numKeys; i++) {
+      Bytes.putInt(key, 0, i);
+      chunk.add(key, 0, key.length);
+    }
+    long addMillis = watch.elapsed(TimeUnit.MILLISECONDS);
+
+    ByteBuff bloom = new SingleByteBuff(chunk.bloom);
+    int falsePositives = 0;
+    watch.reset().start();
+    for (int i = 0; i < numLookups; i++) {
+      // alternate added keys and absent ones, spread over the whole filter
+      int k = (i & 1) == 0 ? (i >>> 1) % numKeys : numKeys + (i >>> 1);
+      Bytes.putInt(key, 0, k);
+      if (BloomFilterUtil.contains(key, 0, key.length, bloom, 0, (int) chunk.getByteSize(),
+        chunk.hash, chunk.getHashCount(), blocked) && k >= numKeys) {
+        falsePositives++;
+      }
+    }
+    long lookupNanos = watch.elapsed(TimeUnit.NANOSECONDS);
+    System.out.printf("%s: size=%d bytes, hashCount=%d, add=%dms, lookup=%.1fns/op,"
+        + " falsePositiveRate=%.5f%n", name, chunk.getByteSize(), chunk.getHashCount(), addMillis,
+      (double) lookupNanos / numLookups, (double) falsePositives / (numLookups / 2));
+  }
+
+  @Override
+  protected int doWork() throws Exception {
+    // warm up both code paths before measuring
+    for (int i = 0; i < 2; i++) {
+      evaluate(false);
+      evaluate(true);
+    }
+    return EXIT_SUCCESS;
+  }
+
+  public static void main(String[] args) throws IOException {
+    BloomFilterPerformanceEvaluation tool = new BloomFilterPerformanceEvaluation();
+    tool.setConf(UTIL.getConfiguration());
+    tool.run(args);
+  }
+}
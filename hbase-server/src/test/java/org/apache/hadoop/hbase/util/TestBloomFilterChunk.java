@@ -22,7 +22,9 @@ import java.io.DataOutputStream;
 import java.nio.ByteBuffer;
 import junit.framework.TestCase;
 import org.apache.hadoop.hbase.HBaseClassTestRule;
+import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.nio.MultiByteBuff;
+import org.apache.hadoop.hbase.regionserver.BloomType;
 import org.apache.hadoop.hbase.testclassification.MiscTests;
 import org.apache.hadoop.hbase.testclassification.SmallTests;
 import org.junit.ClassRule;
@@ -123,6 +125,105 @@ public class TestBloomFilterChunk extends TestCase {
     // test: foldFactor > log(max/actual)
   }
 
+  public void testBlockedBloom() throws Exception {
+    float err = (float) 0.01;
+    BloomFilterChunk b = BloomFilterUtil.createBySize(64 * 1024, err, Hash.MURMUR_HASH, 3,
+        BloomType.ROW, true);
+    b.allocBloom();
+    assertTrue(b.isBlocked());
+    assertEquals(0, b.getByteSize() % (BloomFilterUtil.BLOCK_BYTES << 3));
+    long origSize = b.getByteSize();
+    int keys = (int) (b.getMaxKeys() / 20);
+    for (int i = 0; i < keys; ++i) {
+      byte[] ib = Bytes.toBytes(i);
+      b.add(ib, 0, ib.length);
+    }
+    // folding has to keep whole blocks for the keys to stay in their block
+    b.compactBloom();
+    assertEquals(origSize >> 3, b.getByteSize());
+    assertEquals(0, b.getByteSize() % BloomFilterUtil.BLOCK_BYTES);
+
+    int falsePositives = 0;
+    for (int i = 0; i < 2 * keys; ++i) {
+      byte[] bytes = Bytes.toBytes(i);
+      if (BloomFilterUtil.contains(bytes, 0, bytes.length, new MultiByteBuff(b.bloom), 0,
+          (int) b.byteSize, b.hash, b.hashCount, true)) {
+        if (i >= keys) {
+          falsePositives++;
+        }
+      } else {
+        assertFalse(i < keys);
+      }
+    }
+    // blocked filters trade a slightly higher false positive rate for a single cache line access
+    assertTrue("False positives: " + falsePositives, falsePositives <= keys * err * 2);
+  }
+
+  public void testRowPrefixBloomFilter() throws Exception {
+    RowPrefixBloomFilter.Writer writer =
+        new RowPrefixBloomFilter.Writer(4, 0, 1000, 0.01, Hash.MURMUR_HASH, 7, 128 * 1024);
+    for (int i = 0; i < 100; i++) {
+      byte[] row = Bytes.add(Bytes.toBytes(i * 2), Bytes.toBytes("row"));
+      writer.add(new KeyValue(row, Bytes.toBytes("f"), Bytes.toBytes("q")));
+    }
+    // too short to be added
+    writer.add(new KeyValue(Bytes.toBytes("a"), Bytes.toBytes("f"), Bytes.toBytes("q")));
+    RowPrefixBloomFilter filter = new RowPrefixBloomFilter(writer.toBytes());
+    assertEquals(4, filter.getPrefixLength());
+    assertEquals(100, filter.getKeyCount());
+    int falsePositives = 0;
+    for (int i = 0; i < 200; i++) {
+      if (filter.mightContain(Bytes.toBytes(i))) {
+        if (i % 2 == 1) {
+          falsePositives++;
+        }
+      } else {
+        assertFalse(i % 2 == 0);
+      }
+    }
+    assertTrue("False positives: " + falsePositives, falsePositives <= 5);
+    assertTrue(filter.mightContain(Bytes.toBytes("a")));
+
+    // too many prefixes to be kept
+    writer = new RowPrefixBloomFilter.Writer(4, 0, 10, 0.01, Hash.MURMUR_HASH, 7, 128 * 1024);
+    for (int i = 0; i < 1000; i++) {
+      writer.add(new KeyValue(Bytes.toBytes(i), Bytes.toBytes("f"), Bytes.toBytes("q")));
+    }
+    assertNull(writer.toBytes());
+
+    // rows out of byte order
+    writer = new RowPrefixBloomFilter.Writer(4, 0, 1000, 0.01, Hash.MURMUR_HASH, 7, 128 * 1024);
+    writer.add(new KeyValue(Bytes.toBytes(2), Bytes.toBytes("f"), Bytes.toBytes("q")));
+    writer.add(new KeyValue(Bytes.toBytes(1), Bytes.toBytes("f"), Bytes.toBytes("q")));
+    assertNull(writer.toBytes());
+  }
+
+  public void testRowPrefixBloomFilterChunks() throws Exception {
+    // expecting few prefixes without folding, so the filter has to grow by chunks
+    RowPrefixBloomFilter.Writer writer =
+        new RowPrefixBloomFilter.Writer(4, 10, 10000, 0.01, Hash.MURMUR_HASH, 0, 1024);
+    int keys = 5000;
+    for (int i = 1; i <= keys; i++) {
+      writer.add(new KeyValue(Bytes.toBytes(i * 2), Bytes.toBytes("f"), Bytes.toBytes("q")));
+    }
+    RowPrefixBloomFilter filter = new RowPrefixBloomFilter(writer.toBytes());
+    assertEquals(keys, filter.getKeyCount());
+    assertTrue("Chunks: " + filter.getChunkCount(), filter.getChunkCount() > 1);
+    // before the first chunk
+    assertFalse(filter.mightContain(Bytes.toBytes(0)));
+    int falsePositives = 0;
+    for (int i = 1; i <= 2 * keys; i++) {
+      if (filter.mightContain(Bytes.toBytes(i))) {
+        if (i % 2 == 1) {
+          falsePositives++;
+        }
+      } else {
+        assertFalse(i % 2 == 0);
+      }
+    }
+    assertTrue("False positives: " + falsePositives, falsePositives <= keys * 0.01 * 2);
+  }
+
   public void testBloomPerf() throws Exception {
     // add
     float err = (float)0.01;
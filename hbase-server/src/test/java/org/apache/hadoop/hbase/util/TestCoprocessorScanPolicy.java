@@ -105,6 +105,8 @@ public class TestCoprocessorScanPolicy {
   public TestCoprocessorScanPolicy(boolean parallelSeekEnable) {
     TEST_UTIL.getMiniHBaseCluster().getConf()
         .setBoolean(StoreScanner.STORESCANNER_PARALLEL_SEEK_ENABLE, parallelSeekEnable);
+    TEST_UTIL.getMiniHBaseCluster().getConf()
+        .setInt(StoreScanner.STORESCANNER_PARALLEL_SEEK_MIN_FILES, 2);
   }
 
   @Test
@@ -908,6 +908,7 @@ public final class ThriftUtilities {
       case 3: return DataBlockEncoding.DIFF;
       case 4: return DataBlockEncoding.FAST_DIFF;
       case 7: return DataBlockEncoding.ROW_INDEX_V1;
+      case 8: return DataBlockEncoding.ROW_COLUMN_INDEX_V1;
       default: return DataBlockEncoding.NONE;
     }
   }
@@ -1132,6 +1133,7 @@ public final class ThriftUtilities {
       case DIFF: return TDataBlockEncoding.DIFF;
       case FAST_DIFF: return TDataBlockEncoding.FAST_DIFF;
       case ROW_INDEX_V1: return TDataBlockEncoding.ROW_INDEX_V1;
+      case ROW_COLUMN_INDEX_V1: return TDataBlockEncoding.ROW_COLUMN_INDEX_V1;
       default: return TDataBlockEncoding.NONE;
     }
   }
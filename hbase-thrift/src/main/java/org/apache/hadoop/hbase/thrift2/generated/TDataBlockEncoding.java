@@ -20,7 +20,8 @@ public enum TDataBlockEncoding implements org.apache.thrift.TEnum {
   PREFIX(2),
   DIFF(3),
   FAST_DIFF(4),
-  ROW_INDEX_V1(7);
+  ROW_INDEX_V1(7),
+  ROW_COLUMN_INDEX_V1(8);
 
   private final int value;
 
@@ -52,6 +53,8 @@ public enum TDataBlockEncoding implements org.apache.thrift.TEnum {
         return FAST_DIFF;
       case 7:
         return ROW_INDEX_V1;
+      case 8:
+        return ROW_COLUMN_INDEX_V1;
       default:
         return null;
     }